@@ -0,0 +1,430 @@
+package gameClasses;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Общая часть реализаций игровой карты: ленивый учет риса, строка состояния клетки и слушатели изменений.
+ * Уровень риса на клетках игроков считается лениво: для клетки хранится уровень на момент последнего изменения и номер дня,
+ * а урожай игрока за день складывается из суммы по его клеткам, поэтому день стоит O(игроков + изменившихся клеток), а не O(клеток).
+ * Наследники хранят состояние клеток и предоставляют доступ к нему через абстрактные методы.
+ * Уровни риса хранятся в фиксированной точке (см. FixedPoint) и переводятся в double только в публичных методах.
+ */
+public abstract class AbstractGameMap implements GameMapI, Serializable {
+    private static final long serialVersionUID = 1L;
+    /**Учет риса по игрокам*/
+    private Map<Player, RiceAccount> riceAccounts = new IdentityHashMap<>();
+    /**Слушатели изменений клеток, не сохраняются вместе с картой*/
+    private transient List<TileChangeListener> listeners;
+
+    /**
+     * Возвращает базовое количество юнитов для захвата клетки без случайного разброса.
+     * Сложность растет от углов карты к побочной диагонали: x + y выше нее и 2 * (size - 1) - x - y ниже.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param size Размер карты.
+     * @return Базовое количество необходимых юнитов.
+     */
+    static int baseRequiredUnits(int x, int y, int size) {
+        return x + y < size ? x + y : 2 * (size - 1) - x - y;
+    }
+
+    /**
+     * Возвращает количество юнитов для захвата клетки карты, не хранящей клетки объектами:
+     * базовое количество плюс разброс 0-2, полученный хешированием зерна и координат.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param size Размер карты.
+     * @param seed Зерно карты.
+     * @return Количество необходимых юнитов.
+     */
+    static int seededRequiredUnits(int x, int y, int size, long seed) {
+        long h = seed ^ ((long) x << 32 | (y & 0xFFFFFFFFL));
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return baseRequiredUnits(x, y, size) + (int) Long.remainderUnsigned(h, 3);
+    }
+
+    /**
+     * Возвращает владельца клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Владелец клетки или null, если клетка не занята.
+     */
+    protected abstract Player ownerAt(int x, int y);
+
+    /**
+     * Возвращает записанный уровень риса клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Записанный уровень риса в фиксированной точке.
+     */
+    protected abstract int storedRice(int x, int y);
+
+    /**
+     * Записывает уровень риса клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param amount Уровень риса в фиксированной точке.
+     */
+    protected abstract void setStoredRice(int x, int y, int amount);
+
+    /**
+     * Возвращает номер дня сбора урожая, на который записан уровень риса клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Номер дня или -1, если уровень записан явно.
+     */
+    protected abstract int riceDay(int x, int y);
+
+    /**
+     * Записывает номер дня сбора урожая, на который записан уровень риса клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param day Номер дня или -1, если уровень записан явно.
+     */
+    protected abstract void setRiceDay(int x, int y, int day);
+
+    /**
+     * Записывает владельца, полив и дом клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param owner Владелец клетки или null, если клетка не занята.
+     * @param watered Полита ли клетка.
+     * @param housed Есть ли на клетке дом.
+     */
+    protected abstract void setTileState(int x, int y, Player owner, boolean watered, boolean housed);
+
+    /**
+     * Переводит все устойчивые клетки игрока в явные, вызывая materialize для каждой из них.
+     * @param player Игрок.
+     */
+    protected abstract void materializeAll(Player player);
+
+    /**
+     * Сообщает слушателю о каждой занятой клетке карты так, как будто она только что изменилась.
+     * Позволяет построить индекс по карте, не перебирая свободные клетки.
+     * @param listener Слушатель, метод tileChanged которого вызывается для каждой занятой клетки.
+     */
+    protected abstract void replayOccupiedTiles(TileChangeListener listener);
+
+    /**
+     * Создает независимую копию карты в памяти: клетки, уровни риса и учет риса переносятся на копии игроков.
+     * Слушатели изменений не копируются.
+     * @param players Копии игроков по исходным игрокам.
+     * @return Копия карты.
+     * @throws UnsupportedOperationException Если клетки карты хранятся вне кучи.
+     */
+    protected abstract AbstractGameMap copy(Map<Player, Player> players);
+
+    /**
+     * Увеличивает количество риса на клетках, контролируемых указанным игроком.
+     * Рис растет на 1 единицу в день, если клетка не полита, и на 2 единицы, если полита.
+     * Максимальный уровень риса на клетке ограничен 3 единицами.
+     * Рост устойчивых клеток учитывается лениво, поклеточно обрабатываются только явные клетки.
+     * @param player Игрок, контролирующий клетки.
+     */
+    public void growRice(Player player) {
+        RiceAccount account = riceAccount(player);
+        if (account.grown) {
+            materializeAll(player);
+        }
+        for (long index : account.explicitTiles) {
+            int x = (int) (index / getHeight());
+            int y = (int) (index % getHeight());
+            setStoredRice(x, y, RiceAccount.grow(storedRice(x, y), isWatered(x, y)));
+            fireRiceChanged(x, y);
+        }
+        account.grown = true;
+    }
+
+    /**
+     * Собирает урожай риса с клеток, контролируемых указанным игроком.
+     * С каждой клетки собирается весь рис, а на клетке остается на 1 единицу меньше.
+     * Устойчивые клетки дают заранее подсчитанную сумму, поклеточно обрабатываются только явные клетки.
+     * @param player Игрок, контролирующий клетки.
+     * @return Собранный рис.
+     */
+    public double harvestRice(Player player) {
+        RiceAccount account = riceAccount(player);
+        if (!account.grown) {
+            materializeAll(player);
+        }
+        long harvest = account.steadyHarvest;
+        account.days++;
+        account.grown = false;
+        Iterator<Long> iterator = account.explicitTiles.iterator();
+        while (iterator.hasNext()) {
+            long index = iterator.next();
+            int x = (int) (index / getHeight());
+            int y = (int) (index % getHeight());
+            int level = storedRice(x, y);
+            harvest += level;
+            level -= RiceAccount.ONE;
+            setStoredRice(x, y, level);
+            boolean watered = isWatered(x, y);
+            if (RiceAccount.isSteady(level, watered)) {
+                setRiceDay(x, y, account.days);
+                account.steadyHarvest += RiceAccount.dailyHarvest(level, watered);
+                iterator.remove();
+            }
+            fireRiceChanged(x, y);
+        }
+        return FixedPoint.toDouble(harvest);
+    }
+
+    /**
+     * Возвращает строку, описывающую состояние клетки.
+     * Строка содержит информацию о том, занята ли клетка, кто его владелец, есть ли на ней дом и полит ли рис.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player Игрок, относительно которого определяется состояние клетки.
+     * @return Строка, описывающая состояние клетки. Возможные значения: EMPTY, RICE1, RICE2, RICEWATER1, RICEWATER2, HOUSE1, HOUSE2, HOUSEWATER1, HOUSEWATER2.
+     */
+    public String getStateString(int x, int y, Player player) {
+        Player owner = ownerAt(x, y);
+        if (owner == null) {
+            return "EMPTY";
+        }
+        String suffix = owner == player ? "1" : "2";
+        if (isHoused(x, y)) {
+            return (isWatered(x, y) ? "HOUSEWATER" : "HOUSE") + suffix;
+        } else {
+            return (isWatered(x, y) ? "RICEWATER" : "RICE") + suffix;
+        }
+    }
+
+    /**
+     * Проверяет, контролирует ли указанный игрок клетку.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player Игрок.
+     * @return True, если игрок контролирует клетку, false - иначе.
+     */
+    public boolean isControlled(int x, int y, Player player){
+        return ownerAt(x, y) == player;
+    }
+
+    /**
+     * Возвращает количество риса на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество риса на клетке.
+     */
+    public double getRiceAt(int x, int y){
+        return FixedPoint.toDouble(riceAt(x, y));
+    }
+
+    /**
+     * Возвращает количество риса на клетке в фиксированной точке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество риса на клетке в долях единицы.
+     */
+    protected int riceAt(int x, int y) {
+        int day = riceDay(x, y);
+        if (day < 0) {
+            return storedRice(x, y);
+        }
+        RiceAccount account = riceAccount(ownerAt(x, y));
+        boolean watered = isWatered(x, y);
+        int level = RiceAccount.advance(storedRice(x, y), watered, account.days - day);
+        return account.grown ? RiceAccount.grow(level, watered) : level;
+    }
+
+    /**
+     * Записывает текущие уровни риса столбца клеток в фиксированной точке.
+     * Используется для обхода всей карты; наследники с плоскими массивами считают столбец через RiceKernel.
+     * @param x Координата x столбца.
+     * @param out Уровни риса клеток (x, 0) ... (x, высота - 1); длина не меньше высоты карты.
+     */
+    protected void riceColumn(int x, int[] out) {
+        for (int y = 0; y < getHeight(); y++) {
+            out[y] = riceAt(x, y);
+        }
+    }
+
+    /**
+     * Записывает текущие уровни риса столбца клеток любой карты в фиксированной точке.
+     * @param gameMap Игровая карта.
+     * @param x Координата x столбца.
+     * @param out Уровни риса клеток столбца; длина не меньше высоты карты.
+     */
+    static void readRiceColumn(GameMapI gameMap, int x, int[] out) {
+        if (gameMap instanceof AbstractGameMap) {
+            ((AbstractGameMap) gameMap).riceColumn(x, out);
+        } else {
+            for (int y = 0; y < gameMap.getHeight(); y++) {
+                out[y] = FixedPoint.ofTile(gameMap.getRiceAt(x, y));
+            }
+        }
+    }
+
+    /**
+     * Устанавливает количество риса на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param amount Количество риса.
+     */
+    public void setRiceAt(int x, int y, double amount){
+        materialize(x, y);
+        setStoredRice(x, y, FixedPoint.ofTile(amount));
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Восстанавливает сохраненное ранее состояние клетки, например при отмене хода.
+     * Восстановленная клетка становится явной в учете риса своего владельца.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param owner Владелец клетки или null, если клетка не занята.
+     * @param watered Полита ли клетка.
+     * @param housed Есть ли на клетке дом.
+     * @param rice Количество риса на клетке.
+     */
+    public void restoreTile(int x, int y, Player owner, boolean watered, boolean housed, double rice) {
+        releaseTile(x, y);
+        setTileState(x, y, owner, watered, housed);
+        setStoredRice(x, y, FixedPoint.ofTile(rice));
+        if (owner != null) {
+            tileAcquired(x, y, owner);
+        }
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Добавляет слушателя изменений клеток.
+     * @param listener Слушатель.
+     */
+    public void addTileChangeListener(TileChangeListener listener) {
+        if (listeners == null) {
+            listeners = new ArrayList<>();
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Удаляет слушателя изменений клеток.
+     * @param listener Слушатель.
+     */
+    public void removeTileChangeListener(TileChangeListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Уведомляет слушателей об изменении клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    protected void fireTileChanged(int x, int y) {
+        if (listeners != null) {
+            for (TileChangeListener listener : listeners) {
+                listener.tileChanged(x, y);
+            }
+        }
+    }
+
+    /**
+     * Уведомляет слушателей об изменении уровня риса явной клетки при росте или сборе урожая.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    protected void fireRiceChanged(int x, int y) {
+        if (listeners != null) {
+            for (TileChangeListener listener : listeners) {
+                listener.riceChanged(x, y);
+            }
+        }
+    }
+
+    /**
+     * Учитывает клетку, только что перешедшую к игроку: ее рис обрабатывается поклеточно до конца дня.
+     * Вызывается после смены владельца клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player Новый владелец клетки.
+     */
+    protected void tileAcquired(int x, int y, Player player) {
+        riceAccount(player).explicitTiles.add(tileIndex(x, y));
+    }
+
+    /**
+     * Исключает клетку из учета риса ее владельца перед сменой владельца.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    protected void releaseTile(int x, int y) {
+        materialize(x, y);
+        Player owner = ownerAt(x, y);
+        if (owner != null) {
+            riceAccount(owner).explicitTiles.remove(tileIndex(x, y));
+        }
+    }
+
+    /**
+     * Переводит устойчивую клетку в явные: записывает ее текущий уровень риса и исключает ее урожай из суммы владельца.
+     * Вызывается перед любым изменением клетки, влияющим на рост риса.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    protected void materialize(int x, int y) {
+        if (riceDay(x, y) < 0) {
+            return;
+        }
+        RiceAccount account = riceAccount(ownerAt(x, y));
+        account.steadyHarvest -= RiceAccount.dailyHarvest(storedRice(x, y), isWatered(x, y));
+        setStoredRice(x, y, riceAt(x, y));
+        setRiceDay(x, y, -1);
+        account.explicitTiles.add(tileIndex(x, y));
+    }
+
+    /**
+     * Возвращает учет риса игрока, создавая его при первом обращении.
+     * @param player Игрок.
+     * @return Учет риса игрока.
+     */
+    protected RiceAccount riceAccount(Player player) {
+        if (riceAccounts == null) {
+            riceAccounts = new IdentityHashMap<>();
+        }
+        return riceAccounts.computeIfAbsent(player, p -> new RiceAccount());
+    }
+
+    /**
+     * Копирует учет риса другой карты, заменяя игроков их копиями. Вызывается при копировании карты.
+     * @param source Исходная карта.
+     * @param players Копии игроков по исходным игрокам.
+     */
+    protected void copyRiceAccounts(AbstractGameMap source, Map<Player, Player> players) {
+        riceAccounts = new IdentityHashMap<>();
+        if (source.riceAccounts != null) {
+            for (Map.Entry<Player, RiceAccount> entry : source.riceAccounts.entrySet()) {
+                riceAccounts.put(players.get(entry.getKey()), entry.getValue().copy());
+            }
+        }
+    }
+
+    /**
+     * Возвращает состояние учета риса игрока, не создавая учет: от него вместе с сохраненными уровнями клеток
+     * зависят текущие уровни риса устойчивых клеток игрока.
+     * @param player Игрок.
+     * @return Номер дня учета, умноженный на два, плюс единица после роста риса; -1, если учета нет.
+     */
+    long riceClock(Player player) {
+        RiceAccount account = riceAccounts == null ? null : riceAccounts.get(player);
+        return account == null ? -1 : 2L * account.days + (account.grown ? 1 : 0);
+    }
+
+    /**
+     * Возвращает сквозной номер клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Номер клетки x * высота + y.
+     */
+    protected long tileIndex(int x, int y) {
+        return (long) x * getHeight() + y;
+    }
+}
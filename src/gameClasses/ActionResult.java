@@ -0,0 +1,141 @@
+package gameClasses;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+
+/**
+ * Результат действия игрока или стратегии бота.
+ * Действия возвращают результат без текста, поэтому партии без интерфейса и циклы ИИ не создают строк;
+ * текст для окна событий берется из набора ресурсов gameClasses.messages только при показе сообщения.
+ * Для перевода достаточно добавить набор messages_&lt;язык&gt;.properties.
+ */
+public enum ActionResult {
+    /**Игрок набрал воду*/
+    WATER_COLLECTED("action.waterCollected", PlayerCommand.RESULT_OK),
+    /**Игрок освоил территорию*/
+    TERRITORY_CLAIMED("action.territoryClaimed", PlayerCommand.RESULT_OK),
+    /**Игрок не смог освоить территорию*/
+    TERRITORY_NOT_CLAIMED("action.territoryNotClaimed", PlayerCommand.RESULT_NOT_ALLOWED),
+    /**Игрок полил рис*/
+    RICE_WATERED("action.riceWatered", PlayerCommand.RESULT_OK),
+    /**Для полива не хватает воды*/
+    NOT_ENOUGH_WATER("action.notEnoughWater", PlayerCommand.RESULT_NOT_ENOUGH_WATER),
+    /**Рис в клетке нельзя полить*/
+    RICE_NOT_WATERED("action.riceNotWatered", PlayerCommand.RESULT_NOT_ALLOWED),
+    /**Игрок построил дом*/
+    HOUSE_BUILT("action.houseBuilt", PlayerCommand.RESULT_OK),
+    /**Для постройки дома не хватает ресурсов*/
+    NOT_ENOUGH_RESOURCES("action.notEnoughResources", PlayerCommand.RESULT_NOT_ENOUGH_RESOURCES),
+    /**В клетке нельзя построить дом*/
+    HOUSE_NOT_BUILT("action.houseNotBuilt", PlayerCommand.RESULT_NOT_ALLOWED),
+    /**Стратегия не смогла выполнить действие; параметры: имя стратегии, тип действия, координаты*/
+    BOT_FAILED("bot.failed", PlayerCommand.RESULT_NOT_ALLOWED),
+    /**Стратегия набрала воду*/
+    BOT_WATER_COLLECTED("bot.waterCollected", PlayerCommand.RESULT_OK),
+    /**Стратегия освоила территорию*/
+    BOT_TERRITORY_CLAIMED("bot.territoryClaimed", PlayerCommand.RESULT_OK),
+    /**Стратегия полила рис*/
+    BOT_RICE_WATERED("bot.riceWatered", PlayerCommand.RESULT_OK),
+    /**Стратегия построила дом*/
+    BOT_HOUSE_BUILT("bot.houseBuilt", PlayerCommand.RESULT_OK);
+
+    /**Имя набора ресурсов с текстами сообщений*/
+    static final String BUNDLE = "gameClasses.messages";
+
+    /**Ключ текста сообщения в наборе ресурсов*/
+    private final String key;
+    /**Код результата (константа RESULT_* класса PlayerCommand)*/
+    private final int code;
+
+    ActionResult(String key, int code) {
+        this.key = key;
+        this.code = code;
+    }
+
+    /**
+     * Возвращает результат действия человека по типу действия и коду результата.
+     * @param type Тип действия.
+     * @param code Код результата (константа RESULT_* класса PlayerCommand).
+     * @return Результат действия.
+     */
+    public static ActionResult of(PlayerCommand.Type type, int code) {
+        switch (type) {
+            case COLLECT_WATER:
+                return WATER_COLLECTED;
+            case CLAIM_TERRITORY:
+                return code == PlayerCommand.RESULT_OK ? TERRITORY_CLAIMED : TERRITORY_NOT_CLAIMED;
+            case WATER_RICE:
+                switch (code) {
+                    case PlayerCommand.RESULT_OK:
+                        return RICE_WATERED;
+                    case PlayerCommand.RESULT_NOT_ENOUGH_WATER:
+                        return NOT_ENOUGH_WATER;
+                    default:
+                        return RICE_NOT_WATERED;
+                }
+            default:
+                switch (code) {
+                    case PlayerCommand.RESULT_OK:
+                        return HOUSE_BUILT;
+                    case PlayerCommand.RESULT_NOT_ENOUGH_RESOURCES:
+                        return NOT_ENOUGH_RESOURCES;
+                    default:
+                        return HOUSE_NOT_BUILT;
+                }
+        }
+    }
+
+    /**
+     * Возвращает результат хода стратегии бота.
+     * @param type Тип действия.
+     * @param code Код результата (константа RESULT_* класса PlayerCommand).
+     * @return Результат хода.
+     */
+    public static ActionResult ofBot(PlayerCommand.Type type, int code) {
+        if (code != PlayerCommand.RESULT_OK) {
+            return BOT_FAILED;
+        }
+        switch (type) {
+            case COLLECT_WATER:
+                return BOT_WATER_COLLECTED;
+            case CLAIM_TERRITORY:
+                return BOT_TERRITORY_CLAIMED;
+            case WATER_RICE:
+                return BOT_RICE_WATERED;
+            default:
+                return BOT_HOUSE_BUILT;
+        }
+    }
+
+    /**
+     * Возвращает код результата.
+     * @return Код результата (константа RESULT_* класса PlayerCommand).
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Проверяет, выполнено ли действие.
+     * @return True, если код результата RESULT_OK.
+     */
+    public boolean isSuccess() {
+        return code == PlayerCommand.RESULT_OK;
+    }
+
+    /**
+     * Возвращает текст сообщения для окна событий на языке по умолчанию.
+     * Числовые параметры выводятся без разделителей разрядов.
+     * @param args Параметры сообщения: координаты клеток или имя стратегии, тип действия и координаты.
+     * @return Текст сообщения.
+     */
+    public String getText(Object... args) {
+        Object[] values = args.clone();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Integer) {
+                values[i] = values[i].toString();
+            }
+        }
+        return MessageFormat.format(ResourceBundle.getBundle(BUNDLE).getString(key), values);
+    }
+}
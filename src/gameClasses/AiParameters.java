@@ -0,0 +1,135 @@
+package gameClasses;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Набор порогов, которыми руководствуется стандартная стратегия ИИ, в виде вектора параметров.
+ * По умолчанию (DEFAULT) ИИ расширяется, когда юнитов не меньше, чем клеток, поливает рис, пока риса меньше 3 на юнита
+ * или меньше 25, тратит воду от 15 единиц и ищет свободную клетку в половине клеток карты.
+ * Неизменяем; новый набор получается из вектора методом fromVector, который приводит значения к допустимым границам.
+ */
+public final class AiParameters implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**Названия параметров в порядке вектора*/
+    public static final String[] NAMES = {"claimRatio", "ricePerUnit", "riceReserve", "waterThreshold", "searchRadius"};
+    /**Нижние границы параметров*/
+    private static final double[] LOWER = {0.25, 0, 0, 10, 0};
+    /**Верхние границы параметров*/
+    private static final double[] UPPER = {4, 10, 100, 60, 1};
+    /**Параметры встроенного ИИ*/
+    public static final AiParameters DEFAULT = new AiParameters(new double[]{1, 3, 25, 15, 0.5});
+
+    /**Значения параметров в порядке NAMES*/
+    private final double[] values;
+
+    /**
+     * Создает набор параметров из вектора, значения которого уже лежат в границах.
+     * @param values Значения параметров.
+     */
+    private AiParameters(double[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Создает набор параметров из вектора, приводя каждое значение к его границам.
+     * @param vector Значения параметров в порядке NAMES.
+     * @return Набор параметров.
+     * @throws IllegalArgumentException Если длина вектора не совпадает с количеством параметров.
+     */
+    public static AiParameters fromVector(double[] vector) {
+        if (vector.length != NAMES.length) {
+            throw new IllegalArgumentException("Expected " + NAMES.length + " parameters, got " + vector.length);
+        }
+        double[] values = new double[vector.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.max(LOWER[i], Math.min(UPPER[i], vector[i]));
+        }
+        return new AiParameters(values);
+    }
+
+    /**
+     * Возвращает копию вектора параметров.
+     * @return Значения параметров в порядке NAMES.
+     */
+    public double[] toVector() {
+        return values.clone();
+    }
+
+    /**
+     * Возвращает нижнюю границу параметра.
+     * @param index Номер параметра.
+     * @return Нижняя граница.
+     */
+    public static double lowerBound(int index) {
+        return LOWER[index];
+    }
+
+    /**
+     * Возвращает верхнюю границу параметра.
+     * @param index Номер параметра.
+     * @return Верхняя граница.
+     */
+    public static double upperBound(int index) {
+        return UPPER[index];
+    }
+
+    /**
+     * Возвращает долю юнитов на клетку, начиная с которой ИИ расширяет территорию (units >= claimRatio * клеток).
+     * @return Доля юнитов на клетку.
+     */
+    public double getClaimRatio() {
+        return values[0];
+    }
+
+    /**
+     * Возвращает запас риса на одного юнита, ниже которого ИИ поливает рис вместо постройки дома.
+     * @return Запас риса на юнита.
+     */
+    public double getRicePerUnit() {
+        return values[1];
+    }
+
+    /**
+     * Возвращает минимальный запас риса, ниже которого ИИ поливает рис вместо постройки дома.
+     * @return Минимальный запас риса.
+     */
+    public double getRiceReserve() {
+        return values[2];
+    }
+
+    /**
+     * Возвращает запас воды, начиная с которого ИИ поливает рис или строит дом, а не набирает воду.
+     * @return Порог воды.
+     */
+    public double getWaterThreshold() {
+        return values[3];
+    }
+
+    /**
+     * Возвращает радиус поиска свободной клетки от угла (0, 0) как долю от количества клеток карты.
+     * @return Доля количества клеток.
+     */
+    public double getSearchRadius() {
+        return values[4];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AiParameters && Arrays.equals(values, ((AiParameters) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(NAMES[i]).append('=').append(values[i]);
+        }
+        return builder.toString();
+    }
+}
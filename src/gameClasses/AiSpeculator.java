@@ -0,0 +1,496 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Заблаговременный расчет ответных ходов ИИ, пока человек думает.
+ * Когда поток игровой логики простаивает, партия копируется в памяти в базовый снимок, а фоновые потоки с низким
+ * приоритетом копируют снимок, выполняют на копиях вероятные действия человека (сбор воды и действия на выбранной
+ * им клетке) и вычисляют ответ стратегии ИИ. Изменения клеток относительно снимка собираются через
+ * TileChangeListener вместе с хешем Зобриста, поэтому ключ состояния после действия человека считается
+ * за время, пропорциональное числу изменившихся клеток, а не размеру карты. Ответ в кэше хранит изменившиеся клетки
+ * и ресурсы, по которым проверяется совпадение состояния, так что совпадение хешей разных состояний не дает
+ * чужого ответа. Когда человек делает ход, ответ для получившегося состояния берется из кэша, а незавершенные
+ * расчеты прерываются.
+ * Копии партии получают копии планировщиков расширения, а выбор маршрутов планировщика не зависит от порядка
+ * изменений, поэтому рассчитанный заранее ответ совпадает с ходом, который ИИ сделал бы без кэша.
+ * Карты, клетки которых хранятся вне кучи (MappedGameMap), не копируются: для таких партий расчет не ведется.
+ * Стратегия должна допускать одновременные вызовы decide и выбирать ход только по представлению партии.
+ */
+public class AiSpeculator implements Closeable {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(AiSpeculator.class);
+    /**Стратегия ИИ второго игрока*/
+    private final Strategy strategy;
+    /**Кэш ответов по ключу состояния; доступ под блокировкой кэша*/
+    private final Map<Long, Reply> cache;
+    /**Фоновые потоки расчета*/
+    private final ExecutorService executor;
+    /**Идущие и ожидающие расчеты текущего снимка*/
+    private final List<Future<?>> running = new ArrayList<>();
+    /**Партия, с которой снят базовый снимок*/
+    private GameSession session;
+    /**Базовый снимок партии; не меняется, пока по нему идут расчеты*/
+    private GameSession base;
+    /**Номер базового снимка; ответы по другим снимкам не используются*/
+    private long version;
+    /**Изменения клеток партии после снимка; вызывается в потоке игровой логики*/
+    private Changes changes;
+    /**Признак простоя: партия не менялась после снимка*/
+    private boolean idle;
+    /**Признак того, что карта партии не копируется и расчет не ведется*/
+    private boolean refused;
+    /**Клетки, выбранные человеком, для расчета по следующему снимку*/
+    private final Set<Long> hints = new LinkedHashSet<>();
+    /**Количество выполненных расчетов*/
+    private final AtomicInteger computed = new AtomicInteger();
+    /**Количество ходов, ответ на которые нашелся в кэше*/
+    private int hits;
+    /**Количество ходов без готового ответа*/
+    private int misses;
+
+    /**
+     * Создает расчет ответов.
+     * @param strategy Стратегия ИИ второго игрока.
+     * @param threads Количество фоновых потоков.
+     * @param capacity Емкость кэша ответов; при переполнении вытесняется давно не использованный ответ.
+     */
+    public AiSpeculator(Strategy strategy, int threads, int capacity) {
+        this.strategy = strategy;
+        this.cache = new LinkedHashMap<Long, Reply>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Reply> eldest) {
+                return size() > capacity;
+            }
+        };
+        AtomicInteger number = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "ai-speculation-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Снимает копию партии в простое и запускает расчет ответов на сбор воды и на действия
+     * на клетках, выбранных человеком. Вызывается в потоке игровой логики, когда очередь задач пуста.
+     * @param session Партия.
+     */
+    public synchronized void prepare(GameSession session) {
+        cancel();
+        forget();
+        if (session.isGameOver() || refused) {
+            hints.clear();
+            return;
+        }
+        try {
+            base = session.copy();
+        } catch (UnsupportedOperationException e) {
+            refused = true;
+            hints.clear();
+            logger.info("AI speculation disabled: " + e.getMessage());
+            return;
+        }
+        this.session = session;
+        version++;
+        synchronized (cache) {
+            cache.clear();
+        }
+        changes = new Changes(base, session);
+        idle = true;
+        schedule(PlayerCommand.Type.COLLECT_WATER, 0, 0);
+        for (long hint : hints) {
+            scheduleTile((int) (hint >> 32), (int) hint);
+        }
+        hints.clear();
+    }
+
+    /**
+     * Сообщает о клетке, выбранной человеком: рассчитываются ответы на все действия на этой клетке.
+     * Может вызываться из любого потока; если партия сейчас меняется, расчет начнется по следующему снимку.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public synchronized void hint(int x, int y) {
+        if (refused) {
+            return;
+        }
+        if (idle) {
+            scheduleTile(x, y);
+        } else {
+            hints.add(((long) x << 32) | (y & 0xFFFFFFFFL));
+        }
+    }
+
+    /**
+     * Возвращает готовый ответ ИИ на состояние партии после действия человека и прерывает незавершенные расчеты.
+     * Ключ и проверка ответа считаются по клеткам, изменившимся после снимка.
+     * Вызывается в потоке игровой логики сразу после действия человека.
+     * @param session Партия.
+     * @return Команда второго игрока или null, если ответ не был рассчитан заранее.
+     */
+    public PlayerCommand take(GameSession session) {
+        Changes current;
+        long expected;
+        synchronized (this) {
+            cancel();
+            current = session == this.session ? changes : null;
+            expected = version;
+        }
+        PlayerCommand command = null;
+        if (current != null) {
+            long key = current.key();
+            Reply reply;
+            synchronized (cache) {
+                reply = cache.get(key);
+            }
+            if (reply != null && reply.matches(expected, current.tiles(), resources(session))) {
+                command = reply.command;
+            }
+        }
+        synchronized (this) {
+            if (command == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+        logger.debug("Speculation " + (command == null ? "miss" : "hit"));
+        return command;
+    }
+
+    /**
+     * Сообщает, что партия начала меняться: новые расчеты по снимку не начинаются, незавершенные прерываются.
+     * Изменения партии продолжают собираться до следующего снимка.
+     * Вызывается в потоке игровой логики перед задачей.
+     */
+    public synchronized void invalidate() {
+        cancel();
+    }
+
+    /**
+     * Возвращает количество ходов, ответ на которые нашелся в кэше.
+     * @return Количество попаданий.
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Возвращает количество ходов без готового ответа.
+     * @return Количество промахов.
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Возвращает количество выполненных расчетов ответов.
+     * @return Количество расчетов.
+     */
+    public int getComputed() {
+        return computed.get();
+    }
+
+    /**
+     * Ждет окончания расчетов, запущенных по текущему снимку. Используется в проверках.
+     * @param timeout Наибольшее время ожидания, мс.
+     * @return True, если все расчеты закончились.
+     * @throws InterruptedException Если ожидание прервано.
+     */
+    boolean await(long timeout) throws InterruptedException {
+        List<Future<?>> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<>(running);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (Future<?> task : tasks) {
+            try {
+                task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | CancellationException e) {
+                logger.debug("Speculation task failed: " + e);
+            } catch (TimeoutException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Прерывает расчеты, отписывается от карты партии и останавливает фоновые потоки.
+     */
+    public synchronized void close() {
+        cancel();
+        forget();
+        executor.shutdownNow();
+        logger.info("AI speculation: " + hits + " hits, " + misses + " misses, " + computed.get() + " replies computed");
+    }
+
+    /**
+     * Запускает расчет ответов на действия человека на клетке, кроме сбора воды.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    private void scheduleTile(int x, int y) {
+        schedule(PlayerCommand.Type.CLAIM_TERRITORY, x, y);
+        schedule(PlayerCommand.Type.WATER_RICE, x, y);
+        schedule(PlayerCommand.Type.BUILD_HOUSE, x, y);
+    }
+
+    /**
+     * Запускает расчет ответа на действие человека по текущему снимку.
+     * @param type Тип действия человека.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    private void schedule(PlayerCommand.Type type, int x, int y) {
+        GameSession snapshot = base;
+        long snapshotVersion = version;
+        running.add(executor.submit(() -> {
+            GameSession copy = snapshot.copy();
+            Changes copyChanges = new Changes(snapshot, copy);
+            copy.apply(copy.getPlayer1(), type, x, y);
+            copyChanges.detach();
+            long key = copyChanges.key();
+            long[] tiles = copyChanges.tiles();
+            long[] resources = resources(copy);
+            synchronized (cache) {
+                Reply cached = cache.get(key);
+                if (cached != null && cached.matches(snapshotVersion, tiles, resources)) {
+                    return;
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            SessionView view = new SessionView(copy, copy.getPlayer2());
+            PlayerCommand command;
+            try {
+                command = strategy.decide(view);
+            } finally {
+                view.close();
+            }
+            if (command == null) {
+                command = new PlayerCommand(1, PlayerCommand.Type.COLLECT_WATER, 0, 0);
+            }
+            Reply reply = new Reply(snapshotVersion, tiles, resources,
+                    new PlayerCommand(1, command.getType(), command.getX(), command.getY()));
+            synchronized (cache) {
+                cache.put(key, reply);
+            }
+            computed.incrementAndGet();
+        }));
+    }
+
+    /**
+     * Прерывает расчеты по текущему снимку; новые расчеты начнутся по следующему снимку.
+     */
+    private void cancel() {
+        for (Future<?> future : running) {
+            future.cancel(true);
+        }
+        running.clear();
+        idle = false;
+    }
+
+    /**
+     * Забывает снимок и отписывается от карты партии.
+     */
+    private void forget() {
+        if (changes != null) {
+            changes.detach();
+            changes = null;
+        }
+        session = null;
+        base = null;
+    }
+
+    /**
+     * Возвращает ресурсы партии, от которых кроме клеток зависит ход стратегии: день, ресурсы игроков
+     * и состояние учета риса игроков.
+     * @param session Партия.
+     * @return Значения ресурсов.
+     */
+    private static long[] resources(GameSession session) {
+        AbstractGameMap gameMap = (AbstractGameMap) session.getGameMap();
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        long[] resources = new long[1 + 5 * players.length];
+        resources[0] = session.getGameDay();
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i];
+            resources[1 + 5 * i] = Double.doubleToLongBits(player.getWater());
+            resources[2 + 5 * i] = Double.doubleToLongBits(player.getRice());
+            resources[3 + 5 * i] = player.getUnits();
+            resources[4 + 5 * i] = player.getHouses();
+            resources[5 + 5 * i] = gameMap.riceClock(player);
+        }
+        return resources;
+    }
+
+    /**
+     * Перемешивает биты значения (финализатор SplitMix64).
+     * @param value Значение.
+     * @return Перемешанное значение.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Ответ ИИ вместе с состоянием, для которого он рассчитан.
+     */
+    private static final class Reply {
+        /**Номер снимка*/
+        private final long version;
+        /**Изменившиеся после снимка клетки (см. Changes.tiles)*/
+        private final long[] tiles;
+        /**Ресурсы партии*/
+        private final long[] resources;
+        /**Команда второго игрока*/
+        private final PlayerCommand command;
+
+        Reply(long version, long[] tiles, long[] resources, PlayerCommand command) {
+            this.version = version;
+            this.tiles = tiles;
+            this.resources = resources;
+            this.command = command;
+        }
+
+        /**
+         * Проверяет, что ответ рассчитан для того же состояния.
+         * @param version Номер снимка.
+         * @param tiles Изменившиеся после снимка клетки.
+         * @param resources Ресурсы партии.
+         * @return true, если состояния совпадают.
+         */
+        boolean matches(long version, long[] tiles, long[] resources) {
+            return this.version == version && Arrays.equals(this.tiles, tiles)
+                    && Arrays.equals(this.resources, resources);
+        }
+    }
+
+    /**
+     * Изменения клеток партии относительно базового снимка. Хранит последнее состояние каждой изменившейся клетки
+     * и хеш Зобриста: XOR ключей (клетка, состояние) по клеткам, состояние которых отличается от снимка.
+     * Хеш обновляется при каждом уведомлении карты, поэтому не зависит от порядка изменений.
+     * Снимок только читается и может одновременно использоваться несколькими потоками.
+     */
+    private static final class Changes implements TileChangeListener {
+        /**Базовый снимок*/
+        private final GameSession base;
+        /**Отслеживаемая партия*/
+        private final GameSession session;
+        /**Состояния клеток, отличающиеся от снимка, по номеру клетки x << 32 | y*/
+        private final Map<Long, long[]> states = new HashMap<>();
+        /**Хеш Зобриста изменившихся клеток*/
+        private long hash;
+
+        Changes(GameSession base, GameSession session) {
+            this.base = base;
+            this.session = session;
+            session.getGameMap().addTileChangeListener(this);
+        }
+
+        @Override
+        public void tileChanged(int x, int y) {
+            long tile = ((long) x << 32) | (y & 0xFFFFFFFFL);
+            long[] state = state(session, x, y);
+            long[] previous = states.get(tile);
+            if (previous != null) {
+                hash ^= zobrist(tile, previous);
+            }
+            if (Arrays.equals(state, state(base, x, y))) {
+                states.remove(tile);
+            } else {
+                states.put(tile, state);
+                hash ^= zobrist(tile, state);
+            }
+        }
+
+        @Override
+        public void riceChanged(int x, int y) {
+            tileChanged(x, y);
+        }
+
+        /**
+         * Отписывается от карты партии.
+         */
+        void detach() {
+            session.getGameMap().removeTileChangeListener(this);
+        }
+
+        /**
+         * Возвращает ключ состояния партии: хеш изменившихся клеток, смешанный с ресурсами.
+         * @return Ключ состояния.
+         */
+        long key() {
+            long key = hash;
+            for (long value : resources(session)) {
+                key = mix(key ^ value) + 0x9E3779B97F4A7C15L;
+            }
+            return key;
+        }
+
+        /**
+         * Возвращает текущие состояния клеток, отличающихся от снимка, тройками (клетка, состояние, рис)
+         * в порядке номеров клеток. Состояния перечитываются с карты, а не берутся из уведомлений.
+         * @return Изменившиеся клетки.
+         */
+        long[] tiles() {
+            long[] keys = new long[states.size()];
+            int count = 0;
+            for (long tile : states.keySet()) {
+                keys[count++] = tile;
+            }
+            Arrays.sort(keys);
+            long[] tiles = new long[3 * keys.length];
+            count = 0;
+            for (long tile : keys) {
+                int x = (int) (tile >> 32), y = (int) tile;
+                long[] state = state(session, x, y);
+                if (!Arrays.equals(state, state(base, x, y))) {
+                    tiles[count++] = tile;
+                    tiles[count++] = state[0];
+                    tiles[count++] = state[1];
+                }
+            }
+            return Arrays.copyOf(tiles, count);
+        }
+
+        /**
+         * Возвращает состояние клетки: владельца, полив и дом одним числом и уровень риса.
+         * @param session Партия.
+         * @param x Координата x клетки.
+         * @param y Координата y клетки.
+         * @return Пара (владелец | полив << 2 | дом << 3, биты уровня риса).
+         */
+        private static long[] state(GameSession session, int x, int y) {
+            GameMapI gameMap = session.getGameMap();
+            int owner = gameMap.isControlled(x, y, session.getPlayer1()) ? 1
+                    : gameMap.isControlled(x, y, session.getPlayer2()) ? 2 : 0;
+            long flags = owner | (gameMap.isWatered(x, y) ? 4 : 0) | (gameMap.isHoused(x, y) ? 8 : 0);
+            return new long[]{flags, Double.doubleToLongBits(gameMap.getRiceAt(x, y))};
+        }
+
+        /**
+         * Возвращает ключ Зобриста состояния клетки.
+         * @param tile Номер клетки.
+         * @param state Состояние клетки.
+         * @return Ключ.
+         */
+        private static long zobrist(long tile, long[] state) {
+            return mix(mix(mix(tile) ^ state[0]) ^ state[1]);
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Планировщик ходов ботов с ограничением времени хода.
+ * Каждая стратегия думает в собственном потоке, поэтому процессорное время хода измеряется по потоку стратегии
+ * (ThreadMXBean), а зависшая стратегия не мешает остальным. Сторожевой поток раз в миллисекунду проверяет идущие ходы
+ * и прерывает ход, превысивший бюджет процессорного времени или предел времени ожидания (для стратегий, которые
+ * блокируются, не расходуя процессор). Вместо прерванного, упавшего или пустого хода выполняется запасное действие -
+ * сбор воды. Поток стратегии, которая не вернула управление за INTERRUPT_GRACE_MS после прерывания,
+ * оставляется с наименьшим приоритетом, а следующие ходы стратегия делает в новом потоке. Для каждой стратегии
+ * копятся задержки решений, по которым считаются процентили. Ход можно прервать досрочно методом cancel,
+ * а его ход выполнения (долю израсходованного бюджета) узнать методом getProgress.
+ */
+public class BotScheduler implements Closeable {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(BotScheduler.class);
+    /**Период проверки ходов сторожевым потоком, мс*/
+    private static final long WATCHDOG_PERIOD_MS = 1;
+    /**Время, за которое прерванная стратегия должна завершить ход, чтобы ее поток не был оставлен, мс*/
+    private static final long INTERRUPT_GRACE_MS = 50;
+    /**Измеритель процессорного времени потоков*/
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    /**Бюджет процессорного времени хода, нс*/
+    private final long cpuBudget;
+    /**Предел времени ожидания хода, нс*/
+    private final long wallLimit;
+    /**Потоки и статистика стратегий*/
+    private final Map<Strategy, Bot> bots = new IdentityHashMap<>();
+    /**Идущие ходы*/
+    private final Set<Move> moves = ConcurrentHashMap.newKeySet();
+    /**Сторожевой поток*/
+    private final ScheduledExecutorService watchdog;
+    /**Измеряется ли процессорное время потоков*/
+    private final boolean cpuTimeSupported;
+
+    /**
+     * Статистика ходов одной стратегии.
+     */
+    public static final class BotStats {
+        /**Количество ходов*/
+        private int moves;
+        /**Количество ходов, прерванных по времени*/
+        private int timeouts;
+        /**Количество ходов, завершившихся исключением или пустой командой*/
+        private int errors;
+        /**Суммарное процессорное время ходов, нс*/
+        private long cpuNanos;
+        /**Задержки решений по ходам, нс*/
+        private long[] latencies = new long[64];
+
+        /**
+         * Учитывает ход.
+         * @param latency Задержка решения, нс.
+         * @param cpu Процессорное время хода, нс.
+         */
+        private synchronized void add(long latency, long cpu) {
+            if (moves == latencies.length) {
+                latencies = Arrays.copyOf(latencies, moves * 2);
+            }
+            latencies[moves++] = latency;
+            cpuNanos += cpu;
+        }
+
+        /**
+         * Возвращает количество ходов.
+         * @return Количество ходов.
+         */
+        public synchronized int getMoves() {
+            return moves;
+        }
+
+        /**
+         * Возвращает количество ходов, прерванных по времени.
+         * @return Количество ходов.
+         */
+        public synchronized int getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * Возвращает количество ходов, завершившихся исключением или пустой командой.
+         * @return Количество ходов.
+         */
+        public synchronized int getErrors() {
+            return errors;
+        }
+
+        /**
+         * Возвращает среднее процессорное время хода.
+         * @return Процессорное время, нс, или 0, если ходов не было.
+         */
+        public synchronized long getMeanCpuNanos() {
+            return moves == 0 ? 0 : cpuNanos / moves;
+        }
+
+        /**
+         * Возвращает процентиль задержки решения (метод ближайшего ранга).
+         * @param percent Процент от 0 до 100, например 50, 95 или 99.
+         * @return Задержка, нс, или 0, если ходов не было.
+         */
+        public synchronized long percentile(double percent) {
+            if (moves == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, moves);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percent / 100 * moves);
+            return sorted[Math.max(0, Math.min(moves, rank) - 1)];
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "moves=" + moves + ", timeouts=" + timeouts + ", errors=" + errors
+                    + ", p50=" + percentile(50) / 1000 + " us, p95=" + percentile(95) / 1000
+                    + " us, p99=" + percentile(99) / 1000 + " us, max=" + percentile(100) / 1000
+                    + " us, mean cpu=" + getMeanCpuNanos() / 1000 + " us";
+        }
+    }
+
+    /**
+     * Поток и статистика одной стратегии.
+     */
+    private static final class Bot {
+        /**Стратегия*/
+        private final Strategy strategy;
+        /**Статистика ходов*/
+        private final BotStats stats = new BotStats();
+        /**Поток стратегии*/
+        private ExecutorService executor;
+
+        Bot(Strategy strategy) {
+            this.strategy = strategy;
+            this.executor = newExecutor();
+        }
+
+        /**
+         * Создает поток стратегии.
+         * @return Однопоточный исполнитель.
+         */
+        private ExecutorService newExecutor() {
+            return Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "bot-" + strategy.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Выполненный ход стратегии.
+     */
+    public static final class Turn {
+        /**Команда хода*/
+        private final PlayerCommand command;
+        /**Код результата*/
+        private final int result;
+        /**Имя стратегии для сообщения*/
+        private final String strategy;
+
+        Turn(PlayerCommand command, int result, String strategy) {
+            this.command = command;
+            this.result = result;
+            this.strategy = strategy;
+        }
+
+        /**
+         * Возвращает команду хода.
+         * @return Команда хода.
+         */
+        public PlayerCommand getCommand() {
+            return command;
+        }
+
+        /**
+         * Возвращает код результата.
+         * @return Код результата (константа RESULT_* класса PlayerCommand).
+         */
+        public int getResult() {
+            return result;
+        }
+
+        /**
+         * Возвращает результат хода.
+         * @return Результат хода.
+         */
+        public ActionResult getOutcome() {
+            return ActionResult.ofBot(command.getType(), result);
+        }
+
+        /**
+         * Возвращает сообщение о результате хода для окна событий; текст формируется при вызове.
+         * @return Сообщение.
+         */
+        public String getMessage() {
+            return getOutcome().getText(strategy, command.getType(), command.getX(), command.getY());
+        }
+    }
+
+    /**
+     * Идущий ход стратегии.
+     */
+    private static final class Move {
+        /**Стратегия хода*/
+        private final Strategy strategy;
+        /**Представление партии*/
+        private final SessionView view;
+        /**Время начала хода, нс*/
+        private final long start = System.nanoTime();
+        /**Поток стратегии; null, пока ход не начался*/
+        private volatile Thread thread;
+        /**Процессорное время потока на начало хода, нс*/
+        private volatile long startCpu;
+        /**Процессорное время хода, нс*/
+        private volatile long cpu;
+        /**Выполняется ли еще стратегия*/
+        private volatile boolean running;
+        /**Прерван ли ход по времени*/
+        private volatile boolean timedOut;
+        /**Прерван ли ход методом cancel*/
+        private volatile boolean cancelled;
+        /**Счетчик окончания работы стратегии: обнуляется, когда стратегия вернула управление*/
+        private final CountDownLatch finished = new CountDownLatch(1);
+        /**Результат хода*/
+        private Future<PlayerCommand> future;
+
+        Move(Strategy strategy, SessionView view) {
+            this.strategy = strategy;
+            this.view = view;
+        }
+
+        /**
+         * Проверяет, прерван ли ход по времени или методом cancel.
+         * @return True, если ход прерван.
+         */
+        boolean interrupted() {
+            return timedOut || cancelled;
+        }
+    }
+
+    /**
+     * Создает планировщик.
+     * @param cpuBudget Бюджет процессорного времени хода, нс.
+     * @param wallLimit Предел времени ожидания хода, нс; должен быть не меньше бюджета.
+     */
+    public BotScheduler(long cpuBudget, long wallLimit) {
+        this.cpuBudget = cpuBudget;
+        this.wallLimit = Math.max(wallLimit, cpuBudget);
+        boolean supported = threads.isThreadCpuTimeSupported();
+        if (supported && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        this.cpuTimeSupported = supported;
+        if (!supported) {
+            logger.warn("Thread CPU time is not supported, bot moves are limited by wall time only");
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "bot-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.scheduleAtFixedRate(this::checkMoves, WATCHDOG_PERIOD_MS, WATCHDOG_PERIOD_MS, TimeUnit.MILLISECONDS);
+        logger.info("Bot scheduler started: cpu budget " + cpuBudget / 1000 + " us, wall limit " + this.wallLimit / 1000 + " us");
+    }
+
+    /**
+     * Выбирает действие игрока стратегией с ограничением времени хода.
+     * Вызывающий поток ждет окончания хода; партия не должна меняться во время ожидания.
+     * Одна стратегия делает не больше одного хода одновременно.
+     * @param session Партия.
+     * @param player Игрок стратегии.
+     * @param strategy Стратегия.
+     * @return Команда игрока; при превышении времени, исключении или пустой команде - сбор воды.
+     */
+    public PlayerCommand decide(GameSession session, Player player, Strategy strategy) {
+        Bot bot = bot(strategy);
+        Move move = new Move(strategy, new SessionView(session, player));
+        int playerIndex = player == session.getPlayer1() ? 0 : 1;
+        move.future = bot.executor.submit(() -> {
+            move.thread = Thread.currentThread();
+            move.startCpu = cpuTime(move.thread);
+            move.running = true;
+            try {
+                return strategy.decide(move.view);
+            } finally {
+                move.running = false;
+                move.cpu = cpuTime(move.thread) - move.startCpu;
+                move.finished.countDown();
+            }
+        });
+        moves.add(move);
+        PlayerCommand command = null;
+        try {
+            command = move.future.get();
+            if (move.interrupted()) {
+                command = null;
+            } else if (command == null) {
+                logger.warn("Bot " + strategy.getName() + " returned no command");
+                countError(bot);
+            }
+        } catch (CancellationException e) {
+            if (move.timedOut) {
+                logger.warn("Bot " + strategy.getName() + " exceeded the move time limit");
+            } else {
+                logger.info("Bot " + strategy.getName() + " move cancelled");
+            }
+        } catch (ExecutionException e) {
+            logger.error("Bot " + strategy.getName() + " failed: " + e.getCause());
+            countError(bot);
+        } catch (InterruptedException e) {
+            move.future.cancel(true);
+            Thread.currentThread().interrupt();
+        } finally {
+            moves.remove(move);
+            move.view.close();
+        }
+        long latency = System.nanoTime() - move.start;
+        if (move.timedOut) {
+            synchronized (bot.stats) {
+                bot.stats.timeouts++;
+            }
+        }
+        if (move.interrupted() && !awaitFinish(move)) {
+            if (move.running) {
+                move.thread.setPriority(Thread.MIN_PRIORITY);
+                bot.executor.shutdownNow();
+                bot.executor = bot.newExecutor();
+                logger.warn("Bot " + strategy.getName() + " ignores interruption, its thread is abandoned");
+            }
+        }
+        bot.stats.add(latency, move.running ? cpuTime(move.thread) - move.startCpu : move.cpu);
+        if (command == null) {
+            return new PlayerCommand(playerIndex, PlayerCommand.Type.COLLECT_WATER, 0, 0);
+        }
+        return new PlayerCommand(playerIndex, command.getType(), command.getX(), command.getY());
+    }
+
+    /**
+     * Ждет, пока прерванная стратегия вернет управление.
+     * Future.get бросает CancellationException сразу после прерывания, когда стратегия, проверяющая прерывание,
+     * еще может выходить из своих методов, поэтому о том, что стратегия не отвечает, судят только после ожидания.
+     * @param move Прерванный ход.
+     * @return True, если стратегия завершила ход или ход так и не начался.
+     */
+    private static boolean awaitFinish(Move move) {
+        if (move.thread == null) {
+            return true;
+        }
+        try {
+            return move.finished.await(INTERRUPT_GRACE_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return move.finished.getCount() == 0;
+        }
+    }
+
+    /**
+     * Выполняет ход стратегии: выбирает действие и применяет его к партии.
+     * @param session Партия.
+     * @param player Игрок стратегии.
+     * @param strategy Стратегия.
+     * @return Сообщение о результате хода для окна событий.
+     */
+    public String play(GameSession session, Player player, Strategy strategy) {
+        return playTurn(session, player, strategy).getMessage();
+    }
+
+    /**
+     * Выполняет ход стратегии: выбирает действие и применяет его к партии.
+     * @param session Партия.
+     * @param player Игрок стратегии.
+     * @param strategy Стратегия.
+     * @return Выполненный ход: команда, код результата и сообщение для окна событий.
+     */
+    public Turn playTurn(GameSession session, Player player, Strategy strategy) {
+        GameEvents.AiTurn event = new GameEvents.AiTurn();
+        event.begin();
+        return play(session, player, strategy, decide(session, player, strategy), event);
+    }
+
+    /**
+     * Выполняет ход стратегии, выбранный заранее, например рассчитанный AiSpeculator, пока человек думал.
+     * @param session Партия.
+     * @param player Игрок стратегии.
+     * @param strategy Стратегия, выбравшая ход.
+     * @param command Команда хода.
+     * @return Выполненный ход: команда, код результата и сообщение для окна событий.
+     */
+    public Turn playTurn(GameSession session, Player player, Strategy strategy, PlayerCommand command) {
+        GameEvents.AiTurn event = new GameEvents.AiTurn();
+        event.begin();
+        return play(session, player, strategy, command, event);
+    }
+
+    /**
+     * Применяет команду стратегии к партии и записывает событие хода ИИ.
+     * @param session Партия.
+     * @param player Игрок стратегии.
+     * @param strategy Стратегия.
+     * @param command Команда хода.
+     * @param event Начатое событие хода ИИ.
+     * @return Выполненный ход.
+     */
+    private Turn play(GameSession session, Player player, Strategy strategy, PlayerCommand command,
+                      GameEvents.AiTurn event) {
+        int tiles = player.controlledTiles();
+        int result = session.apply(player, command.getType(), command.getX(), command.getY());
+        event.end();
+        if (event.shouldCommit()) {
+            GameMapI gameMap = session.getGameMap();
+            event.strategy = strategy.getName();
+            event.action = command.getType().name();
+            event.succeeded = result == PlayerCommand.RESULT_OK;
+            event.tilesClaimed = player.controlledTiles() - tiles;
+            event.day = session.getGameDay();
+            event.mapTiles = gameMap.getWidth() * gameMap.getHeight();
+            event.commit();
+        }
+        return new Turn(command, result, strategy.getName());
+    }
+
+    /**
+     * Прерывает идущий ход стратегии; вместо него выполняется запасное действие.
+     * Может вызываться из любого потока.
+     * @param strategy Стратегия.
+     * @return True, если ход стратегии шел и был прерван.
+     */
+    public boolean cancel(Strategy strategy) {
+        boolean cancelled = false;
+        for (Move move : moves) {
+            if (move.strategy == strategy && !move.interrupted()) {
+                move.cancelled = true;
+                move.view.close();
+                move.future.cancel(true);
+                cancelled = true;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Возвращает ход выполнения идущего хода стратегии: большую из долей бюджета процессорного времени
+     * и предела ожидания, израсходованных ходом. Может вызываться из любого потока.
+     * @param strategy Стратегия.
+     * @return Доля от 0 до 1 или 0, если стратегия сейчас не ходит.
+     */
+    public double getProgress(Strategy strategy) {
+        long now = System.nanoTime();
+        double progress = 0;
+        for (Move move : moves) {
+            if (move.strategy != strategy) {
+                continue;
+            }
+            double wall = (double) (now - move.start) / wallLimit;
+            Thread thread = move.thread;
+            double cpu = cpuTimeSupported && thread != null && move.running
+                    ? (double) (cpuTime(thread) - move.startCpu) / cpuBudget : 0;
+            progress = Math.max(progress, Math.max(wall, cpu));
+        }
+        return Math.min(progress, 1);
+    }
+
+    /**
+     * Возвращает статистику ходов стратегии.
+     * @param strategy Стратегия.
+     * @return Статистика ходов.
+     */
+    public BotStats getStats(Strategy strategy) {
+        return bot(strategy).stats;
+    }
+
+    /**
+     * Останавливает сторожевой поток и потоки стратегий.
+     */
+    public synchronized void close() {
+        watchdog.shutdownNow();
+        for (Map.Entry<Strategy, Bot> entry : bots.entrySet()) {
+            entry.getValue().executor.shutdownNow();
+            logger.info("Bot " + entry.getKey().getName() + ": " + entry.getValue().stats);
+        }
+    }
+
+    /**
+     * Проверяет идущие ходы и прерывает ходы, превысившие бюджет процессорного времени или предел ожидания.
+     * Выполняется сторожевым потоком.
+     */
+    private void checkMoves() {
+        long now = System.nanoTime();
+        for (Move move : moves) {
+            Thread thread = move.thread;
+            if (thread == null || move.interrupted() || !move.running) {
+                continue;
+            }
+            boolean overBudget = cpuTimeSupported && cpuTime(thread) - move.startCpu > cpuBudget;
+            if (overBudget || now - move.start > wallLimit) {
+                move.timedOut = true;
+                move.view.close();
+                move.future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Возвращает поток и статистику стратегии, создавая их при первом ходе.
+     * @param strategy Стратегия.
+     * @return Поток и статистика стратегии.
+     */
+    private synchronized Bot bot(Strategy strategy) {
+        return bots.computeIfAbsent(strategy, Bot::new);
+    }
+
+    /**
+     * Учитывает ход, завершившийся ошибкой.
+     * @param bot Стратегия.
+     */
+    private static void countError(Bot bot) {
+        synchronized (bot.stats) {
+            bot.stats.errors++;
+        }
+    }
+
+    /**
+     * Возвращает процессорное время потока.
+     * @param thread Поток.
+     * @return Процессорное время, нс, или 0, если оно не измеряется.
+     */
+    private long cpuTime(Thread thread) {
+        if (!cpuTimeSupported) {
+            return 0;
+        }
+        long time = threads.getThreadCpuTime(thread.getId());
+        return Math.max(time, 0);
+    }
+}
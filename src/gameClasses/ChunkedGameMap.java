@@ -0,0 +1,424 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Разреженная игровая карта для огромных и почти пустых миров.
+ * Карта делится на блоки 64x64 клетки, которые хранятся в хеш-таблице и создаются только тогда,
+ * когда в блоке впервые меняется клетка. Нетронутые клетки пусты, а количество юнитов для их захвата
+ * вычисляется на лету из зерна карты по той же диагональной формуле, что и в GameMap,
+ * или берется из процедурного генератора MapGenerator вместе с начальными уровнями риса.
+ * Поэтому занимаемая память растет с количеством изменений, а не с площадью карты. Количество юнитов карт без
+ * генератора не копируется и в созданные блоки: оно неизменяемо и вычисляется из зерна, поэтому у партий GameHost
+ * неизменяемая часть карты не занимает памяти.
+ * Реализует интерфейс GameMapI и сериализуем для сохранения/загрузки игры.
+ */
+public class ChunkedGameMap extends AbstractGameMap {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(ChunkedGameMap.class);
+    /**Двоичный логарифм стороны блока*/
+    static final int CHUNK_SHIFT = 6;
+    /**Сторона блока в клетках*/
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    /**Маска координаты внутри блока*/
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /**Приблизительный размер блока в памяти без количества юнитов для захвата клеток, байт*/
+    private static final long CHUNK_BYTES = (long) CHUNK_SIZE * CHUNK_SIZE * (1 + 1 + 4 + 4) + 128;
+    /**Размер количества юнитов для захвата клеток блока карты с генератором, байт*/
+    private static final long CHUNK_UNITS_BYTES = (long) CHUNK_SIZE * CHUNK_SIZE * 4;
+    /**Флаг клетки: полита*/
+    private static final byte WATERED = 1;
+    /**Флаг клетки: построен дом*/
+    private static final byte HOUSED = 2;
+    /**Размер карты*/
+    private final int size;
+    /**Зерно карты*/
+    private final long seed;
+    /**Генератор нетронутых клеток или null, если клетки вычисляются из зерна*/
+    private final MapGenerator generator;
+    /**Созданные блоки по номеру блока*/
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    /**Владельцы клеток; в блоке хранится номер владельца в этом списке плюс 1*/
+    private final List<Player> owners = new ArrayList<>();
+
+    /**
+     * Блок клеток 64x64. Клетка внутри блока имеет номер (x % 64) * 64 + y % 64.
+     */
+    private static class Chunk implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /**Флаги клеток: полита, построен дом*/
+        final byte[] flags = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        /**Номера владельцев клеток, 0 - клетка не занята*/
+        final byte[] owners = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        /**
+         * Количество юнитов для захвата клеток, взятое из генератора, или null у карт без генератора.
+         * В сохранениях, сделанных до отказа от копирования, заполнено и у карт без генератора, но не читается
+         */
+        int[] requiredUnits;
+        /**Записанные уровни риса в фиксированной точке*/
+        final int[] rice = new int[CHUNK_SIZE * CHUNK_SIZE];
+        /**Номера дней, на которые записаны уровни риса, или -1*/
+        final int[] riceDays = new int[CHUNK_SIZE * CHUNK_SIZE];
+    }
+
+    /**
+     * Создает разреженную карту. Блоки клеток не создаются, пока клетки не начнут меняться.
+     * @param size Размер карты (квадратная карта size x size).
+     * @param seed Зерно, из которого вычисляется разброс количества необходимых юнитов.
+     */
+    public ChunkedGameMap(int size, long seed) {
+        this.size = size;
+        this.seed = seed;
+        this.generator = null;
+        logger.info("Created chunked game map with size: " + size + ", seed: " + seed);
+    }
+
+    /**
+     * Создает разреженную карту по процедурному генератору. Карта не генерируется заранее:
+     * нетронутые клетки вычисляются генератором при обращении, а блок заполняется им при первом изменении клетки.
+     * @param generator Генератор карты.
+     */
+    public ChunkedGameMap(MapGenerator generator) {
+        this.size = generator.getSize();
+        this.seed = generator.getSeed();
+        this.generator = generator;
+        logger.info("Created chunked game map with size: " + size + " from generator with seed: " + seed);
+    }
+
+    /**
+     * Создает копию карты, заменяя владельцев клеток копиями игроков. Генератор неизменяем и не копируется.
+     * @param source Исходная карта.
+     * @param players Копии игроков по исходным игрокам.
+     */
+    private ChunkedGameMap(ChunkedGameMap source, Map<Player, Player> players) {
+        this.size = source.size;
+        this.seed = source.seed;
+        this.generator = source.generator;
+        for (Map.Entry<Long, Chunk> entry : source.chunks.entrySet()) {
+            Chunk from = entry.getValue();
+            Chunk chunk = new Chunk();
+            System.arraycopy(from.flags, 0, chunk.flags, 0, chunk.flags.length);
+            System.arraycopy(from.owners, 0, chunk.owners, 0, chunk.owners.length);
+            chunk.requiredUnits = from.requiredUnits == null ? null : from.requiredUnits.clone();
+            System.arraycopy(from.rice, 0, chunk.rice, 0, chunk.rice.length);
+            System.arraycopy(from.riceDays, 0, chunk.riceDays, 0, chunk.riceDays.length);
+            chunks.put(entry.getKey(), chunk);
+        }
+        for (Player owner : source.owners) {
+            owners.add(players.get(owner));
+        }
+        copyRiceAccounts(source, players);
+    }
+
+    /**
+     * Попытка захвата клетки игроком.
+     * Если клетка не занята и у игрока достаточно юнитов, клетка захватывается, и количество юнитов игрока уменьшается.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player Игрок, пытающийся захватить клетку.
+     * @return True, если захват успешен, false - в противном случае.
+     */
+    public boolean claimTile(int x, int y, Player player) {
+        if (ownerAt(x, y) != null) {
+            return false;
+        }
+        int requiredUnits = requiredUnitsAt(x, y);
+        if (player.getUnits() >= requiredUnits) {
+            chunk(x, y).owners[local(x, y)] = ownerIndex(player);
+            tileAcquired(x, y, player);
+            player.setUnits(player.getUnits() - requiredUnits);
+            fireTileChanged(x, y);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Устанавливает начальную клетку для игрока.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player Игрок.
+     */
+    public void setStartTile(int x, int y, Player player) {
+        releaseTile(x, y);
+        chunk(x, y).owners[local(x, y)] = ownerIndex(player);
+        tileAcquired(x, y, player);
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Проверяет, находятся ли координаты внутри границ карты.
+     * @param x Координата x.
+     * @param y Координата y.
+     * @return True, если координаты внутри границ, false - иначе.
+     */
+    public boolean isWithinBounds(int x, int y) {
+        return x >= 0 && x < size && y >= 0 && y < size;
+    }
+
+    /**
+     * Поливает клетку.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void waterTile(int x, int y) {
+        materialize(x, y);
+        chunk(x, y).flags[local(x, y)] |= WATERED;
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Строит дом на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void houseTile(int x, int y) {
+        chunk(x, y).flags[local(x, y)] |= HOUSED;
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Возвращает ширину карты.
+     * @return Ширина карты.
+     */
+    public int getWidth() {
+        return size;
+    }
+
+    /**
+     * Возвращает высоту карты.
+     * @return Высота карты.
+     */
+    public int getHeight() {
+        return size;
+    }
+
+    /**
+     * Проверяет, полита ли клетка.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если клетки полита, false - иначе.
+     */
+    public boolean isWatered(int x, int y) {
+        Chunk chunk = existingChunk(x, y);
+        return chunk != null && (chunk.flags[local(x, y)] & WATERED) != 0;
+    }
+
+    /**
+     * Проверяет, есть ли дом на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если на клетке есть дом, false - иначе.
+     */
+    public boolean isHoused(int x, int y) {
+        Chunk chunk = existingChunk(x, y);
+        return chunk != null && (chunk.flags[local(x, y)] & HOUSED) != 0;
+    }
+
+    /**
+     * Возвращает копию клетки по координатам.
+     * Клетки разреженной карты не хранятся объектами, поэтому изменения возвращенной клетки не попадают на карту;
+     * для изменения карты используются методы claimTile, waterTile и houseTile.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Копия клетки.
+     */
+    public Tile getTile(int x, int y) {
+        Tile tile = new Tile(requiredUnitsAt(x, y));
+        Player owner = ownerAt(x, y);
+        if (owner != null) {
+            tile.setOccupied(owner);
+        }
+        tile.setWatered(isWatered(x, y));
+        tile.setHoused(isHoused(x, y));
+        return tile;
+    }
+
+    /**
+     * Оценивает объем памяти, занимаемой картой.
+     * @return Приблизительный размер созданных блоков в байтах.
+     */
+    public long estimateMemory() {
+        return chunks.size() * (generator == null ? CHUNK_BYTES : CHUNK_BYTES + CHUNK_UNITS_BYTES);
+    }
+
+    /**
+     * Возвращает количество созданных блоков.
+     * @return Количество блоков.
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    protected Player ownerAt(int x, int y) {
+        Chunk chunk = existingChunk(x, y);
+        if (chunk == null) {
+            return null;
+        }
+        int owner = chunk.owners[local(x, y)] & 0xFF;
+        return owner == 0 ? null : owners.get(owner - 1);
+    }
+
+    protected int storedRice(int x, int y) {
+        Chunk chunk = existingChunk(x, y);
+        if (chunk != null) {
+            return chunk.rice[local(x, y)];
+        }
+        return generator == null ? RiceAccount.ONE : generator.riceLevel(x, y);
+    }
+
+    protected void setStoredRice(int x, int y, int amount) {
+        chunk(x, y).rice[local(x, y)] = amount;
+    }
+
+    protected int riceDay(int x, int y) {
+        Chunk chunk = existingChunk(x, y);
+        return chunk == null ? -1 : chunk.riceDays[local(x, y)];
+    }
+
+    protected void setRiceDay(int x, int y, int day) {
+        chunk(x, y).riceDays[local(x, y)] = day;
+    }
+
+    protected void setTileState(int x, int y, Player owner, boolean watered, boolean housed) {
+        Chunk chunk = chunk(x, y);
+        chunk.owners[local(x, y)] = owner == null ? 0 : ownerIndex(owner);
+        chunk.flags[local(x, y)] = (byte) ((watered ? WATERED : 0) | (housed ? HOUSED : 0));
+    }
+
+    protected void replayOccupiedTiles(TileChangeListener listener) {
+        for (Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+            int baseX = (int) (entry.getKey() >>> 32) << CHUNK_SHIFT;
+            int baseY = (int) (long) entry.getKey() << CHUNK_SHIFT;
+            byte[] tileOwners = entry.getValue().owners;
+            for (int i = 0; i < tileOwners.length; i++) {
+                if (tileOwners[i] != 0) {
+                    listener.tileChanged(baseX + (i >>> CHUNK_SHIFT), baseY + (i & CHUNK_MASK));
+                }
+            }
+        }
+    }
+
+    protected ChunkedGameMap copy(Map<Player, Player> players) {
+        return new ChunkedGameMap(this, players);
+    }
+
+    protected void materializeAll(Player player) {
+        for (Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+            int baseX = (int) (entry.getKey() >>> 32) << CHUNK_SHIFT;
+            int baseY = (int) (long) entry.getKey() << CHUNK_SHIFT;
+            Chunk chunk = entry.getValue();
+            for (int i = 0; i < chunk.riceDays.length; i++) {
+                int x = baseX + (i >>> CHUNK_SHIFT);
+                int y = baseY + (i & CHUNK_MASK);
+                if (chunk.riceDays[i] >= 0 && ownerAt(x, y) == player) {
+                    materialize(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает количество юнитов, необходимых для захвата клетки, не создавая блок.
+     * У карты без генератора оно всегда вычисляется из зерна, у карты с генератором берется из блока, если он создан.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество необходимых юнитов.
+     */
+    private int requiredUnitsAt(int x, int y) {
+        if (generator == null) {
+            return seededRequiredUnits(x, y, size, seed);
+        }
+        Chunk chunk = existingChunk(x, y);
+        return chunk != null ? chunk.requiredUnits[local(x, y)] : generator.requiredUnits(x, y);
+    }
+
+    /**
+     * Возвращает блок, содержащий клетку, или null, если блок еще не создан.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Блок или null.
+     */
+    private Chunk existingChunk(int x, int y) {
+        return chunks.get(chunkKey(x, y));
+    }
+
+    /**
+     * Возвращает блок, содержащий клетку, создавая его при первом изменении клетки.
+     * Новый блок заполняется состоянием нетронутых клеток, пока он еще не добавлен в таблицу блоков.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Блок.
+     */
+    private Chunk chunk(int x, int y) {
+        long key = chunkKey(x, y);
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = new Chunk();
+            if (generator != null) {
+                chunk.requiredUnits = new int[CHUNK_SIZE * CHUNK_SIZE];
+            }
+            int baseX = x & ~CHUNK_MASK;
+            int baseY = y & ~CHUNK_MASK;
+            for (int i = 0; i < chunk.rice.length; i++) {
+                int tileX = baseX + (i >>> CHUNK_SHIFT);
+                int tileY = baseY + (i & CHUNK_MASK);
+                if (isWithinBounds(tileX, tileY)) {
+                    if (chunk.requiredUnits != null) {
+                        chunk.requiredUnits[i] = requiredUnitsAt(tileX, tileY);
+                    }
+                    chunk.rice[i] = storedRice(tileX, tileY);
+                } else {
+                    chunk.rice[i] = RiceAccount.ONE;
+                }
+                chunk.riceDays[i] = -1;
+            }
+            chunks.put(key, chunk);
+            logger.debug("Allocated chunk at (" + baseX + ", " + baseY + "), total chunks: " + chunks.size());
+        }
+        return chunk;
+    }
+
+    /**
+     * Возвращает номер блока, содержащего клетку.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Номер блока.
+     */
+    private static long chunkKey(int x, int y) {
+        return (long) (x >>> CHUNK_SHIFT) << 32 | (y >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * Возвращает номер клетки внутри блока.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Номер клетки в блоке.
+     */
+    private static int local(int x, int y) {
+        return (x & CHUNK_MASK) << CHUNK_SHIFT | (y & CHUNK_MASK);
+    }
+
+    /**
+     * Возвращает номер игрока для хранения в блоке, регистрируя игрока при первом обращении.
+     * @param player Игрок.
+     * @return Номер игрока (от 1).
+     */
+    private byte ownerIndex(Player player) {
+        for (int i = 0; i < owners.size(); i++) {
+            if (owners.get(i) == player) {
+                return (byte) (i + 1);
+            }
+        }
+        owners.add(player);
+        return (byte) owners.size();
+    }
+}
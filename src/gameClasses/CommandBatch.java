@@ -0,0 +1,68 @@
+package gameClasses;
+
+import java.util.List;
+
+/**
+ * Пакетное применение команд игроков.
+ * Проверяет и применяет список команд за один проход и возвращает коды результатов,
+ * не создавая текстовых сообщений. Предназначено для ботов, повторов и серверов.
+ */
+public final class CommandBatch {
+    private CommandBatch() {
+    }
+
+    /**
+     * Применяет команды по порядку.
+     * @param commands Список команд.
+     * @param players Игроки, номер игрока в команде - индекс в этом массиве.
+     * @param gameMap Игровая карта.
+     * @return Коды результатов (константы RESULT_* класса PlayerCommand) в порядке команд.
+     */
+    public static int[] apply(List<PlayerCommand> commands, Player[] players, GameMapI gameMap) {
+        int[] results = new int[commands.size()];
+        for (int i = 0; i < results.length; i++) {
+            PlayerCommand command = commands.get(i);
+            results[i] = apply(command.getPlayer(), command.getType(), command.getX(), command.getY(), players, gameMap);
+        }
+        return results;
+    }
+
+    /**
+     * Применяет упакованные команды по порядку.
+     * @param commands Массив упакованных команд.
+     * @param players Игроки, номер игрока в команде - индекс в этом массиве.
+     * @param gameMap Игровая карта.
+     * @return Коды результатов (константы RESULT_* класса PlayerCommand) в порядке команд;
+     * RESULT_NOT_ALLOWED для команд с неизвестным типом действия.
+     */
+    public static int[] apply(long[] commands, Player[] players, GameMapI gameMap) {
+        int[] results = new int[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            long packed = commands[i];
+            results[i] = apply(PlayerCommand.packedPlayer(packed), PlayerCommand.packedType(packed),
+                    PlayerCommand.packedX(packed), PlayerCommand.packedY(packed), players, gameMap);
+        }
+        return results;
+    }
+
+    /**
+     * Применяет одну команду.
+     * @param player Номер игрока.
+     * @param type Тип действия.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param players Игроки.
+     * @param gameMap Игровая карта.
+     * @return Код результата; RESULT_UNKNOWN_PLAYER, если номера игрока нет в массиве игроков,
+     * и RESULT_NOT_ALLOWED, если тип действия неизвестен (null).
+     */
+    private static int apply(int player, PlayerCommand.Type type, int x, int y, Player[] players, GameMapI gameMap) {
+        if (player < 0 || player >= players.length) {
+            return PlayerCommand.RESULT_UNKNOWN_PLAYER;
+        }
+        if (type == null) {
+            return PlayerCommand.RESULT_NOT_ALLOWED;
+        }
+        return players[player].apply(type, x, y, gameMap);
+    }
+}
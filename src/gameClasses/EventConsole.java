@@ -0,0 +1,314 @@
+package gameClasses;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Окно событий игры: последние сообщения о ходах игроков и партии.
+ * Сообщения хранятся в кольцевом буфере фиксированной емкости, самые старые вытесняются новыми,
+ * поэтому затраты на сообщение не зависят от длины партии. Список рисует только видимые строки.
+ * Сообщения можно добавлять из любого потока: они копятся и добавляются в список одной пачкой раз за кадр.
+ * Над списком находятся фильтры по игроку и по типу действия.
+ */
+public class EventConsole extends JPanel {
+    private static final long serialVersionUID = 1L;
+    /**Период добавления накопленных сообщений в список, мс*/
+    private static final int FRAME_MILLIS = 16;
+    /**Названия фильтров по игроку*/
+    private static final String[] PLAYER_FILTERS = {"Все игроки", "Игрок 1", "Игрок 2", "Игра"};
+    /**Номера игроков фильтров по игроку (-1 - все, 0 - сообщения партии)*/
+    private static final int[] PLAYER_VALUES = {-1, 1, 2, 0};
+    /**Названия фильтров по типу; после типов действий PlayerCommand.Type идет фильтр прочих сообщений*/
+    private static final String[] TYPE_FILTERS = {"Все события", "Набрать воду", "Освоить территорию", "Полить рис",
+            "Построить дом", "Прочие"};
+
+    /**
+     * Сообщение окна событий.
+     */
+    public static final class Entry {
+        /**Номер дня*/
+        private final int day;
+        /**Номер игрока (1 или 2, 0 - сообщение партии)*/
+        private final int player;
+        /**Тип действия или null для прочих сообщений*/
+        private final PlayerCommand.Type type;
+        /**Текст сообщения*/
+        private final String text;
+
+        /**
+         * Создает сообщение.
+         * @param day Номер дня.
+         * @param player Номер игрока (1 или 2, 0 - сообщение партии).
+         * @param type Тип действия или null для прочих сообщений.
+         * @param text Текст сообщения.
+         */
+        public Entry(int day, int player, PlayerCommand.Type type, String text) {
+            this.day = day;
+            this.player = player;
+            this.type = type;
+            this.text = text;
+        }
+
+        /**
+         * Возвращает номер дня.
+         * @return Номер дня.
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * Возвращает номер игрока.
+         * @return Номер игрока (1 или 2, 0 - сообщение партии).
+         */
+        public int getPlayer() {
+            return player;
+        }
+
+        /**
+         * Возвращает тип действия.
+         * @return Тип действия или null для прочих сообщений.
+         */
+        public PlayerCommand.Type getType() {
+            return type;
+        }
+
+        /**
+         * Возвращает текст сообщения.
+         * @return Текст сообщения.
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return "День " + day + ": " + text;
+        }
+    }
+
+    /**
+     * Модель списка: кольцевой буфер всех сообщений и кольцо номеров сообщений, прошедших фильтр.
+     * Сообщение с порядковым номером n хранится в ячейке n % емкость и доступно, пока не вытеснено.
+     */
+    private static final class Model extends AbstractListModel<Entry> {
+        private static final long serialVersionUID = 1L;
+        /**Кольцевой буфер сообщений*/
+        private final Entry[] entries;
+        /**Количество сообщений, добавленных за все время*/
+        private long total;
+        /**Кольцо порядковых номеров видимых сообщений*/
+        private final long[] visible;
+        /**Начало кольца видимых сообщений*/
+        private int visibleStart;
+        /**Количество видимых сообщений*/
+        private int visibleCount;
+        /**Фильтр по игроку (-1 - все игроки)*/
+        private int playerFilter = -1;
+        /**Фильтр по типу: номер в TYPE_FILTERS (0 - все события)*/
+        private int typeFilter;
+
+        /**
+         * Создает пустую модель.
+         * @param capacity Количество хранимых сообщений.
+         */
+        Model(int capacity) {
+            entries = new Entry[capacity];
+            visible = new long[capacity];
+        }
+
+        public int getSize() {
+            return visibleCount;
+        }
+
+        public Entry getElementAt(int index) {
+            return entries[(int) (visible[(visibleStart + index) % visible.length] % entries.length)];
+        }
+
+        /**
+         * Проверяет, проходит ли сообщение фильтры.
+         * @param entry Сообщение.
+         * @return True, если сообщение видимо.
+         */
+        private boolean accepts(Entry entry) {
+            if (playerFilter >= 0 && entry.player != playerFilter) {
+                return false;
+            }
+            if (typeFilter == 0) {
+                return true;
+            }
+            int type = entry.type == null ? TYPE_FILTERS.length - 2 : entry.type.ordinal();
+            return type == typeFilter - 1;
+        }
+
+        /**
+         * Добавляет пачку сообщений, вытесняя самые старые, и сообщает списку о вытесненных и добавленных строках.
+         * @param batch Сообщения в порядке поступления.
+         */
+        void add(List<Entry> batch) {
+            int oldCount = visibleCount;
+            int added = 0;
+            for (Entry entry : batch) {
+                entries[(int) (total % entries.length)] = entry;
+                long sequence = total++;
+                if (accepts(entry)) {
+                    visible[(visibleStart + visibleCount) % visible.length] = sequence;
+                    if (visibleCount == visible.length) {
+                        visibleStart = (visibleStart + 1) % visible.length;
+                    } else {
+                        visibleCount++;
+                    }
+                    added++;
+                }
+            }
+            long oldest = total - entries.length;
+            while (visibleCount > 0 && visible[visibleStart] < oldest) {
+                visibleStart = (visibleStart + 1) % visible.length;
+                visibleCount--;
+            }
+            int removed = oldCount + added - visibleCount;
+            int removedOld = Math.min(removed, oldCount);
+            if (removedOld > 0) {
+                fireIntervalRemoved(this, 0, removedOld - 1);
+            }
+            added -= removed - removedOld;
+            if (added > 0) {
+                fireIntervalAdded(this, visibleCount - added, visibleCount - 1);
+            }
+        }
+
+        /**
+         * Устанавливает фильтры и заново отбирает видимые сообщения из буфера.
+         * @param player Фильтр по игроку (-1 - все игроки).
+         * @param type Фильтр по типу: номер в TYPE_FILTERS.
+         */
+        void setFilter(int player, int type) {
+            int oldCount = visibleCount;
+            playerFilter = player;
+            typeFilter = type;
+            visibleStart = 0;
+            visibleCount = 0;
+            if (oldCount > 0) {
+                fireIntervalRemoved(this, 0, oldCount - 1);
+            }
+            for (long sequence = Math.max(0, total - entries.length); sequence < total; sequence++) {
+                if (accepts(entries[(int) (sequence % entries.length)])) {
+                    visible[visibleCount++] = sequence;
+                }
+            }
+            if (visibleCount > 0) {
+                fireIntervalAdded(this, 0, visibleCount - 1);
+            }
+        }
+    }
+
+    /**Модель списка*/
+    private final Model model;
+    /**Список сообщений*/
+    private final JList<Entry> list;
+    /**Прокрутка списка*/
+    private final JScrollPane scrollPane;
+    /**Сообщения, ожидающие добавления в список*/
+    private final List<Entry> pending = new ArrayList<>();
+    /**Таймер добавления накопленных сообщений*/
+    private final Timer flushTimer;
+    /**Фильтр по игроку*/
+    private final JComboBox<String> playerBox = new JComboBox<>(PLAYER_FILTERS);
+    /**Фильтр по типу действия*/
+    private final JComboBox<String> typeBox = new JComboBox<>(TYPE_FILTERS);
+
+    /**
+     * Создает окно событий.
+     * @param capacity Количество хранимых сообщений.
+     * @param visibleRows Количество строк, видимых без прокрутки.
+     */
+    public EventConsole(int capacity, int visibleRows) {
+        super(new BorderLayout());
+        model = new Model(capacity);
+        list = new JList<>(model);
+        list.setVisibleRowCount(visibleRows);
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 2);
+        list.setFixedCellWidth(1);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                          boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                Entry entry = (Entry) value;
+                setToolTipText(entry.getText());
+                if (!isSelected) {
+                    setForeground(entry.getPlayer() == 1 ? Color.BLUE
+                            : entry.getPlayer() == 2 ? new Color(160, 0, 0) : Color.DARK_GRAY);
+                }
+                return this;
+            }
+        });
+        scrollPane = new JScrollPane(list);
+        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+        scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+
+        playerBox.addActionListener(e -> applyFilter());
+        typeBox.addActionListener(e -> applyFilter());
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 3, 0));
+        filterPanel.add(playerBox);
+        filterPanel.add(typeBox);
+        add(filterPanel, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+
+        flushTimer = new Timer(FRAME_MILLIS, e -> flush());
+        flushTimer.setRepeats(false);
+    }
+
+    /**
+     * Добавляет сообщение. Может вызываться из любого потока; сообщение появится в списке в ближайшем кадре.
+     * @param entry Сообщение.
+     */
+    public void add(Entry entry) {
+        synchronized (pending) {
+            pending.add(entry);
+            if (pending.size() > 1) {
+                return;
+            }
+        }
+        flushTimer.start();
+    }
+
+    /**
+     * Возвращает количество сообщений, прошедших фильтры и находящихся в списке.
+     * @return Количество строк списка.
+     */
+    public int getRowCount() {
+        return model.getSize();
+    }
+
+    /**
+     * Добавляет в список накопленные сообщения и прокручивает его к последнему сообщению,
+     * если список был прокручен до конца.
+     */
+    private void flush() {
+        List<Entry> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        BoundedRangeModel scroll = scrollPane.getVerticalScrollBar().getModel();
+        boolean atEnd = scroll.getValue() + scroll.getExtent() >= scroll.getMaximum();
+        model.add(batch);
+        if (atEnd && model.getSize() > 0) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+
+    /**
+     * Применяет выбранные фильтры и прокручивает список к последнему сообщению.
+     */
+    private void applyFilter() {
+        model.setFilter(PLAYER_VALUES[playerBox.getSelectedIndex()], typeBox.getSelectedIndex());
+        if (model.getSize() > 0) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Двоичный журнал игровых событий: действия игроков, завершение дня и окончание партии.
+ * Каждое событие - запись фиксированной длины (партия, тип, день, игрок, координаты, код результата),
+ * поэтому запись события не форматирует строк и сводится к нескольким записям в отображенную память.
+ * Журнал состоит из кольца файлов-сегментов одинакового размера: когда заполнен последний сегмент,
+ * перезаписывается самый старый, так что на диске хранятся только последние события.
+ * Порядок сегментов задается номером поколения в заголовке сегмента. Журнал читается EventLogReader.
+ * В один журнал могут писать одновременно много партий, например все партии GameHost.
+ */
+public class EventLog implements Closeable {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(EventLog.class);
+    /**Сигнатура файла сегмента*/
+    static final int MAGIC = 0x45564C31;
+    /**Размер заголовка сегмента, байт*/
+    static final int HEADER_BYTES = 64;
+    /**Размер записи события, байт*/
+    static final int RECORD_BYTES = 24;
+    /**Смещение размера записи в заголовке сегмента*/
+    static final int HEADER_RECORD_BYTES = 4;
+    /**Смещение емкости сегмента в записях*/
+    static final int HEADER_CAPACITY = 8;
+    /**Смещение количества записанных событий*/
+    static final int HEADER_COUNT = 12;
+    /**Смещение номера поколения сегмента (0 - сегмент еще не использовался)*/
+    static final int HEADER_GENERATION = 16;
+    /**Смещение идентификатора партии в записи события*/
+    static final int GAME = 0;
+    /**Смещение номера дня*/
+    static final int DAY = 8;
+    /**Смещение координаты x*/
+    static final int X = 12;
+    /**Смещение координаты y*/
+    static final int Y = 16;
+    /**Смещение типа события*/
+    static final int TYPE = 20;
+    /**Смещение номера игрока*/
+    static final int PLAYER = 21;
+    /**Смещение кода результата*/
+    static final int RESULT = 22;
+
+    /**
+     * Типы событий журнала. Первые четыре совпадают с действиями PlayerCommand.Type.
+     */
+    public enum Type {
+        /**Сбор воды*/
+        COLLECT_WATER,
+        /**Захват территории*/
+        CLAIM_TERRITORY,
+        /**Полив риса*/
+        WATER_RICE,
+        /**Постройка дома*/
+        BUILD_HOUSE,
+        /**Завершение дня; номер дня - номер завершенного дня, игрок 0*/
+        END_OF_DAY,
+        /**Окончание партии; код результата - номер победившего игрока*/
+        GAME_OVER;
+
+        /**Типы по номеру*/
+        private static final Type[] VALUES = values();
+
+        /**
+         * Возвращает тип события действия игрока.
+         * @param type Тип действия.
+         * @return Тип события.
+         */
+        public static Type of(PlayerCommand.Type type) {
+            return VALUES[type.ordinal()];
+        }
+
+        /**
+         * Возвращает тип события по номеру.
+         * @param ordinal Номер типа.
+         * @return Тип события.
+         */
+        static Type of(int ordinal) {
+            return VALUES[ordinal];
+        }
+    }
+
+    /**Каталог журнала*/
+    private final Path directory;
+    /**Емкость сегмента в записях*/
+    private final int capacity;
+    /**Каналы файлов сегментов*/
+    private final FileChannel[] channels;
+    /**Отображенные сегменты*/
+    private final MappedByteBuffer[] segments;
+    /**Номер текущего сегмента*/
+    private int current;
+    /**Количество событий в текущем сегменте*/
+    private int count;
+    /**Поколение текущего сегмента*/
+    private long generation;
+
+    /**
+     * Открывает журнал в каталоге, создавая каталог и файлы сегментов при необходимости.
+     * Запись продолжается в сегмент с наибольшим поколением.
+     * @param directory Каталог журнала.
+     * @param segmentCount Количество сегментов в кольце.
+     * @param segmentRecords Емкость сегмента в записях; для существующего журнала должна совпадать с записанной.
+     * @throws IOException Если существующий сегмент имеет другой формат или возникает ошибка ввода-вывода.
+     */
+    public EventLog(Path directory, int segmentCount, int segmentRecords) throws IOException {
+        this.directory = directory;
+        this.capacity = segmentRecords;
+        this.channels = new FileChannel[segmentCount];
+        this.segments = new MappedByteBuffer[segmentCount];
+        Files.createDirectories(directory);
+        try {
+            for (int i = 0; i < segmentCount; i++) {
+                channels[i] = FileChannel.open(segmentFile(directory, i), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                boolean empty = channels[i].size() == 0;
+                segments[i] = channels[i].map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_BYTES + (long) segmentRecords * RECORD_BYTES);
+                if (empty) {
+                    segments[i].putInt(0, MAGIC);
+                    segments[i].putInt(HEADER_RECORD_BYTES, RECORD_BYTES);
+                    segments[i].putInt(HEADER_CAPACITY, segmentRecords);
+                } else if (segments[i].getInt(0) != MAGIC || segments[i].getInt(HEADER_RECORD_BYTES) != RECORD_BYTES
+                        || segments[i].getInt(HEADER_CAPACITY) != segmentRecords) {
+                    throw new IOException("Event log segment has another format: " + segmentFile(directory, i));
+                }
+                if (segments[i].getLong(HEADER_GENERATION) > generation) {
+                    generation = segments[i].getLong(HEADER_GENERATION);
+                    current = i;
+                }
+            }
+        } catch (IOException e) {
+            closeChannels();
+            throw e;
+        }
+        if (generation == 0) {
+            generation = 1;
+            segments[current].putLong(HEADER_GENERATION, generation);
+        }
+        count = segments[current].getInt(HEADER_COUNT);
+        logger.info("Event log opened in " + directory + ": " + segmentCount + " segments of " + segmentRecords
+                + " records, generation " + generation);
+    }
+
+    /**
+     * Возвращает путь к файлу сегмента.
+     * @param directory Каталог журнала.
+     * @param index Номер сегмента.
+     * @return Путь к файлу сегмента.
+     */
+    static Path segmentFile(Path directory, int index) {
+        return directory.resolve(String.format("events-%03d.seg", index));
+    }
+
+    /**
+     * Дописывает событие. Если текущий сегмент заполнен, запись продолжается в следующий сегмент кольца,
+     * а его прежнее содержимое отбрасывается.
+     * @param gameId Идентификатор партии.
+     * @param type Тип события.
+     * @param day Номер дня.
+     * @param player Номер игрока (1 или 2, 0 - событие партии).
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param result Код результата (константа RESULT_* класса PlayerCommand).
+     */
+    public synchronized void append(long gameId, Type type, int day, int player, int x, int y, int result) {
+        if (count == capacity) {
+            current = (current + 1) % segments.length;
+            generation++;
+            segments[current].putInt(HEADER_COUNT, 0);
+            segments[current].putLong(HEADER_GENERATION, generation);
+            count = 0;
+        }
+        MappedByteBuffer segment = segments[current];
+        int offset = HEADER_BYTES + count * RECORD_BYTES;
+        segment.putLong(offset + GAME, gameId);
+        segment.putInt(offset + DAY, day);
+        segment.putInt(offset + X, x);
+        segment.putInt(offset + Y, y);
+        segment.put(offset + TYPE, (byte) type.ordinal());
+        segment.put(offset + PLAYER, (byte) player);
+        segment.putShort(offset + RESULT, (short) result);
+        count++;
+        segment.putInt(HEADER_COUNT, count);
+    }
+
+    /**
+     * Возвращает каталог журнала.
+     * @return Каталог журнала.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Записывает измененные страницы сегментов на диск.
+     */
+    public synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Сбрасывает события на диск и закрывает файлы сегментов.
+     * Отображенные сегменты освобождаются сборщиком мусора.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public synchronized void close() throws IOException {
+        force();
+        closeChannels();
+        logger.info("Event log closed: " + directory);
+    }
+
+    /**
+     * Закрывает открытые каналы сегментов.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void closeChannels() throws IOException {
+        for (FileChannel channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package gameClasses;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Чтение двоичного журнала событий, записанного EventLog.
+ * Сегменты отображаются в память только для чтения и обходятся в порядке поколений,
+ * события передаются обходчику в одном переиспользуемом объекте, поэтому чтение не создает объектов на событие.
+ * Метод main - инструмент выборки событий из журнала по партии, типу, игроку и дням.
+ */
+public class EventLogReader {
+    /**
+     * Обходчик событий журнала.
+     */
+    public interface EventVisitor {
+        /**
+         * Вызывается для каждого события журнала. Событие действительно только во время вызова.
+         * @param event Событие.
+         */
+        void visit(Entry event);
+    }
+
+    /**
+     * Событие журнала.
+     */
+    public static final class Entry {
+        /**Сегмент события*/
+        private MappedByteBuffer segment;
+        /**Смещение записи события в сегменте*/
+        private int offset;
+
+        /**
+         * Возвращает идентификатор партии.
+         * @return Идентификатор партии.
+         */
+        public long getGameId() {
+            return segment.getLong(offset + EventLog.GAME);
+        }
+
+        /**
+         * Возвращает тип события.
+         * @return Тип события.
+         */
+        public EventLog.Type getType() {
+            return EventLog.Type.of(segment.get(offset + EventLog.TYPE));
+        }
+
+        /**
+         * Возвращает номер дня.
+         * @return Номер дня.
+         */
+        public int getDay() {
+            return segment.getInt(offset + EventLog.DAY);
+        }
+
+        /**
+         * Возвращает номер игрока.
+         * @return Номер игрока (1 или 2, 0 - событие партии).
+         */
+        public int getPlayer() {
+            return segment.get(offset + EventLog.PLAYER);
+        }
+
+        /**
+         * Возвращает координату x клетки.
+         * @return Координата x.
+         */
+        public int getX() {
+            return segment.getInt(offset + EventLog.X);
+        }
+
+        /**
+         * Возвращает координату y клетки.
+         * @return Координата y.
+         */
+        public int getY() {
+            return segment.getInt(offset + EventLog.Y);
+        }
+
+        /**
+         * Возвращает код результата.
+         * @return Код результата.
+         */
+        public int getResult() {
+            return segment.getShort(offset + EventLog.RESULT);
+        }
+    }
+
+    private EventLogReader() {
+    }
+
+    /**
+     * Обходит все события журнала от старых к новым.
+     * @param directory Каталог журнала.
+     * @param visitor Обходчик событий.
+     * @return Количество событий в журнале.
+     * @throws IOException Если сегмент имеет другой формат или возникает ошибка ввода-вывода.
+     */
+    public static long read(Path directory, EventVisitor visitor) throws IOException {
+        List<MappedByteBuffer> segments = new ArrayList<>();
+        for (int i = 0; Files.exists(EventLog.segmentFile(directory, i)); i++) {
+            Path file = EventLog.segmentFile(directory, i);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (segment.limit() < EventLog.HEADER_BYTES || segment.getInt(0) != EventLog.MAGIC
+                        || segment.getInt(EventLog.HEADER_RECORD_BYTES) != EventLog.RECORD_BYTES) {
+                    throw new IOException("Not an event log segment: " + file);
+                }
+                if (segment.getLong(EventLog.HEADER_GENERATION) != 0) {
+                    segments.add(segment);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(s -> s.getLong(EventLog.HEADER_GENERATION)));
+        Entry entry = new Entry();
+        long total = 0;
+        for (MappedByteBuffer segment : segments) {
+            int count = Math.min(segment.getInt(EventLog.HEADER_COUNT), segment.getInt(EventLog.HEADER_CAPACITY));
+            entry.segment = segment;
+            for (int i = 0; i < count; i++) {
+                entry.offset = EventLog.HEADER_BYTES + i * EventLog.RECORD_BYTES;
+                visitor.visit(entry);
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Выбирает события из журнала и печатает их или сводку по ним.
+     * Первый аргумент - каталог журнала, далее условия выборки game=ID, type=ТИП, player=N, day=ОТ-ДО (или day=N)
+     * и режим вывода: --print печатает события строками CSV, без него печатается количество событий
+     * каждого типа с каждым кодом результата.
+     * @param args Аргументы командной строки.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: EventLogReader <directory> [game=ID] [type=TYPE] [player=N] [day=FROM-TO] [--print]");
+            return;
+        }
+        long game = -1;
+        int type = -1;
+        int player = -1;
+        int fromDay = Integer.MIN_VALUE;
+        int toDay = Integer.MAX_VALUE;
+        boolean print = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.equals("--print")) {
+                print = true;
+            } else if (arg.startsWith("game=")) {
+                game = Long.parseLong(value);
+            } else if (arg.startsWith("type=")) {
+                type = EventLog.Type.valueOf(value.toUpperCase()).ordinal();
+            } else if (arg.startsWith("player=")) {
+                player = Integer.parseInt(value);
+            } else if (arg.startsWith("day=")) {
+                int dash = value.indexOf('-', 1);
+                fromDay = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+                toDay = dash < 0 ? fromDay : Integer.parseInt(value.substring(dash + 1));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        long gameFilter = game;
+        int typeFilter = type;
+        int playerFilter = player;
+        int from = fromDay;
+        int to = toDay;
+        boolean printEvents = print;
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+        long[][] counts = new long[EventLog.Type.values().length][PlayerCommand.RESULT_UNKNOWN_PLAYER + 1];
+        long[] matched = new long[1];
+        if (printEvents) {
+            out.println("game,type,day,player,x,y,result");
+        }
+        long total = read(Paths.get(args[0]), event -> {
+            if ((gameFilter >= 0 && event.getGameId() != gameFilter)
+                    || (typeFilter >= 0 && event.getType().ordinal() != typeFilter)
+                    || (playerFilter >= 0 && event.getPlayer() != playerFilter)
+                    || event.getDay() < from || event.getDay() > to) {
+                return;
+            }
+            matched[0]++;
+            if (printEvents) {
+                out.println(event.getGameId() + "," + event.getType() + "," + event.getDay() + "," + event.getPlayer()
+                        + "," + event.getX() + "," + event.getY() + "," + event.getResult());
+            } else {
+                int result = Math.min(Math.max(event.getResult(), 0), counts[0].length - 1);
+                counts[event.getType().ordinal()][result]++;
+            }
+        });
+        if (!printEvents) {
+            for (EventLog.Type t : EventLog.Type.values()) {
+                for (int result = 0; result < counts[t.ordinal()].length; result++) {
+                    if (counts[t.ordinal()][result] != 0) {
+                        out.println(t + " result " + result + ": " + counts[t.ordinal()][result]);
+                    }
+                }
+            }
+        }
+        out.println("Matched " + matched[0] + " of " + total + " events");
+        out.flush();
+    }
+}
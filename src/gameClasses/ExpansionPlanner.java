@@ -0,0 +1,773 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * Планировщик расширения территории игрока.
+ * Хранит поле кратчайших расстояний от всех клеток игрока до остальных клеток карты, где шаг на свободную клетку
+ * стоит столько юнитов, сколько нужно для ее захвата, а клетки соперника непроходимы.
+ * Поле считается алгоритмом Дейкстры с очередью-корзинами (алгоритм Дайала), потому что стоимости шагов - небольшие целые числа:
+ * корзины лежат в циклическом массиве по расстоянию по модулю его длины, которая больше наибольшей стоимости шага.
+ * Из кратчайших маршрутов до клетки выбирается маршрут с наибольшим числом платных захватов, затем с наименьшим
+ * числом захватов, затем с наименьшей стоимостью первого захвата, затем с предыдущей клеткой по первому направлению
+ * в порядке DX, DY. Такой выбор зависит только от карты, а не от порядка изменений, поэтому пересчитанное поле
+ * совпадает с построенным заново, пока не установлен горизонт.
+ * Между ходами поле не пересчитывается целиком: при смене владельца клеток пересчитываются только поддеревья
+ * кратчайших путей, проходивших через них. Изменения копятся и применяются одним проходом при следующем запросе,
+ * поэтому массовые изменения (например, отмена нескольких ходов) не пересчитывают одно и то же поддерево многократно.
+ * Состояние клеток хранится блоками 64 x 64, как в ChunkedGameMap, и только для блоков, до которых дошла волна,
+ * поэтому планировщик работает и на больших разреженных картах. Если волна при построении обходит больше
+ * MAX_EXPLORED клеток, расстояния дальше достигнутого в этот момент (горизонт) не считаются.
+ */
+public class ExpansionPlanner implements TileChangeListener {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(ExpansionPlanner.class);
+    /**Состояние клетки: свободна*/
+    private static final byte FREE = 0;
+    /**Состояние клетки: принадлежит игроку*/
+    private static final byte OWN = 1;
+    /**Состояние клетки: принадлежит сопернику*/
+    private static final byte BLOCKED = 2;
+    /**Расстояние до недостижимой клетки*/
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    /**Наибольшее количество клеток, которое волна обходит при построении, прежде чем установить горизонт*/
+    static final int MAX_EXPLORED = 1 << 20;
+    /**Двоичный логарифм стороны блока*/
+    private static final int CHUNK_SHIFT = ChunkedGameMap.CHUNK_SHIFT;
+    /**Сторона блока в клетках*/
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    /**Маска координаты внутри блока*/
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /**Смещения соседних клеток по x и y; направление d ^ 1 противоположно направлению d*/
+    private static final int[] DX = {-1, 1, 0, 0}, DY = {0, 0, -1, 1};
+    /**Игровая карта*/
+    private final GameMapI gameMap;
+    /**Игрок, для которого планируется расширение*/
+    private final Player player;
+    /**Ширина и высота карты*/
+    private final int width, height;
+    /**Блоки клеток по ключу (x / 64) << 32 | (y / 64)*/
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    /**Ключ и блок последнего обращения*/
+    private long lastKey = -1;
+    private Chunk lastChunk;
+    /**
+     * Корзины очереди: корзина расстояния d лежит по индексу d & (длина - 1). Длина - степень двойки больше
+     * наибольшей стоимости шага, поэтому расстояния в очереди, от cursor до cursor + стоимость шага, не пересекаются.
+     */
+    private Bucket[] buckets = new Bucket[64];
+    /**Непустые корзины: бит i слова i / 64; по нему курсор переходит к следующей непустой корзине без перебора пустых*/
+    private long[] occupied = new long[1];
+    /**Количество клеток в очереди*/
+    private int queued;
+    /**Текущее наименьшее расстояние в очереди*/
+    private int cursor;
+    /**Наибольшее расстояние, до которого строится поле*/
+    private int horizon = UNREACHABLE - 1;
+    /**Количество клеток, до которых найден путь*/
+    private long explored;
+    /**Клетки, сменившие владельца после последнего пересчета, по номеру x << 32 | y*/
+    private final List<Long> pending = new ArrayList<>();
+
+    /**
+     * Блок клеток планировщика. Клетка (x, y) блока хранится по индексу (x % 64) * 64 + y % 64.
+     */
+    private static final class Chunk {
+        /**Количество юнитов для захвата клеток плюс 1, 0 - еще не прочитано с карты*/
+        final int[] cost = new int[CHUNK_SIZE * CHUNK_SIZE];
+        /**Состояния клеток относительно игрока*/
+        final byte[] state = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        /**Стоимость кратчайшего пути от территории игрока до клеток*/
+        final int[] dist = new int[CHUNK_SIZE * CHUNK_SIZE];
+        /**Количество захватов на кратчайшем пути до клеток*/
+        final int[] steps = new int[CHUNK_SIZE * CHUNK_SIZE];
+        /**Количество захватов клеток с ненулевой стоимостью на кратчайшем пути до клеток*/
+        final int[] paid = new int[CHUNK_SIZE * CHUNK_SIZE];
+        /**Направление (индекс в DX, DY) на предыдущую клетку кратчайшего пути или -1*/
+        final byte[] parent = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        /**Стоимость захвата первой клетки кратчайшего пути*/
+        final int[] firstCost = new int[CHUNK_SIZE * CHUNK_SIZE];
+        /**Лучшая цель блока без учета юнитов игрока или -1; действительна, если блок не изменился*/
+        int best = -1;
+        /**Изменился ли блок после выбора лучшей цели*/
+        boolean dirty = true;
+
+        Chunk() {
+            Arrays.fill(dist, UNREACHABLE);
+            Arrays.fill(parent, (byte) -1);
+        }
+
+        /**
+         * Создает копию блока.
+         * @param source Исходный блок.
+         */
+        Chunk(Chunk source) {
+            System.arraycopy(source.cost, 0, cost, 0, cost.length);
+            System.arraycopy(source.state, 0, state, 0, state.length);
+            System.arraycopy(source.dist, 0, dist, 0, dist.length);
+            System.arraycopy(source.steps, 0, steps, 0, steps.length);
+            System.arraycopy(source.paid, 0, paid, 0, paid.length);
+            System.arraycopy(source.parent, 0, parent, 0, parent.length);
+            System.arraycopy(source.firstCost, 0, firstCost, 0, firstCost.length);
+            best = source.best;
+            dirty = source.dirty;
+        }
+    }
+
+    /**
+     * Корзина очереди: стек клеток с одинаковым расстоянием.
+     */
+    private static final class Bucket {
+        /**Клетки по номеру x << 32 | y*/
+        long[] tiles = new long[4];
+        /**Количество клеток*/
+        int size;
+    }
+
+    /**
+     * Строит поле расстояний для игрока и подписывается на изменения клеток карты.
+     * @param gameMap Игровая карта.
+     * @param player Игрок.
+     */
+    public ExpansionPlanner(GameMapI gameMap, Player player) {
+        this.gameMap = gameMap;
+        this.player = player;
+        this.width = gameMap.getWidth();
+        this.height = gameMap.getHeight();
+
+        List<Long> seeds = new ArrayList<>();
+        TileChangeListener collector = (x, y) -> {
+            if (gameMap.isControlled(x, y, player)) {
+                seeds.add(tile(x, y));
+            }
+        };
+        if (gameMap instanceof AbstractGameMap) {
+            ((AbstractGameMap) gameMap).replayOccupiedTiles(collector);
+        } else {
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    collector.tileChanged(x, y);
+                }
+            }
+        }
+        Collections.sort(seeds);
+        for (long seed : seeds) {
+            Chunk chunk = chunk(seed);
+            chunk.dist[local(seed)] = 0;
+            chunk.dirty = true;
+        }
+        explored = seeds.size();
+        run(seeds, true);
+        gameMap.addTileChangeListener(this);
+        logger.info("Expansion planner built on " + width + "x" + height + " map: " + explored + " tiles in "
+                + chunks.size() + " chunks" + (horizon < UNREACHABLE - 1 ? ", horizon " + horizon : ""));
+    }
+
+    /**
+     * Создает копию планировщика для копии карты и игрока и подписывается на изменения копии карты.
+     * Накопленные изменения исходного планировщика сначала применяются; исходный планировщик без накопленных
+     * изменений только читается, поэтому его могут одновременно копировать несколько потоков.
+     * @param source Исходный планировщик.
+     * @param gameMap Копия карты.
+     * @param player Копия игрока.
+     */
+    private ExpansionPlanner(ExpansionPlanner source, GameMapI gameMap, Player player) {
+        source.update();
+        this.gameMap = gameMap;
+        this.player = player;
+        this.width = source.width;
+        this.height = source.height;
+        for (Map.Entry<Long, Chunk> entry : source.chunks.entrySet()) {
+            chunks.put(entry.getKey(), new Chunk(entry.getValue()));
+        }
+        this.horizon = source.horizon;
+        this.explored = source.explored;
+        gameMap.addTileChangeListener(this);
+    }
+
+    /**
+     * Копирует планировщик для копии карты и игрока, не строя поле расстояний заново.
+     * @param gameMap Копия карты с теми же клетками.
+     * @param player Копия игрока.
+     * @return Копия планировщика.
+     */
+    ExpansionPlanner copy(GameMapI gameMap, Player player) {
+        return new ExpansionPlanner(this, gameMap, player);
+    }
+
+    /**
+     * Возвращает карту, для которой построен планировщик.
+     * @return Игровая карта.
+     */
+    public GameMapI getGameMap() {
+        return gameMap;
+    }
+
+    /**
+     * Отписывает планировщик от изменений карты.
+     */
+    public void detach() {
+        gameMap.removeTileChangeListener(this);
+    }
+
+    /**
+     * Запоминает клетку для пересчета поля расстояний, если у нее сменился владелец.
+     * Клетки блоков, до которых волна еще не дошла, запоминаются, только если перешли к игроку.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void tileChanged(int x, int y) {
+        long tile = tile(x, y);
+        Chunk chunk = existingChunk(tile);
+        byte current = stateOf(gameMap.getTile(x, y));
+        if (chunk == null ? current == OWN : current != chunk.state[local(tile)]) {
+            pending.add(tile);
+        }
+    }
+
+    /**
+     * Возвращает стоимость кратчайшего пути от территории игрока до клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество юнитов или -1, если клетка недостижима или лежит за горизонтом.
+     */
+    public int getDistance(int x, int y) {
+        update();
+        long tile = tile(x, y);
+        Chunk chunk = existingChunk(tile);
+        int value = chunk == null ? UNREACHABLE : chunk.dist[local(tile)];
+        return value == UNREACHABLE ? -1 : value;
+    }
+
+    /**
+     * Возвращает самый дешевый маршрут расширения до клетки: клетки, которые нужно захватывать по очереди,
+     * начиная с граничащей с территорией игрока.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Список координат клеток маршрута или пустой список, если клетка недостижима или уже принадлежит игроку.
+     */
+    public List<int[]> route(int x, int y) {
+        update();
+        List<int[]> route = new ArrayList<>();
+        long tile = tile(x, y);
+        Chunk chunk = existingChunk(tile);
+        if (chunk == null || chunk.dist[local(tile)] == UNREACHABLE) {
+            return route;
+        }
+        while (chunk.state[local(tile)] == FREE) {
+            route.add(new int[]{x(tile), y(tile)});
+            int direction = chunk.parent[local(tile)];
+            if (direction < 0) {
+                break;
+            }
+            tile = neighbour(tile, direction);
+            chunk = chunk(tile);
+        }
+        Collections.reverse(route);
+        return route;
+    }
+
+    /**
+     * Выбирает цель расширения: свободную клетку, маршрут до которой дает больше всего клеток на единицу стоимости,
+     * а первый шаг маршрута игрок может оплатить сейчас. Из равных целей выбирается клетка с меньшим x, затем y.
+     * Лучшая цель каждого блока запоминается до его изменения, поэтому заново просматриваются только блоки,
+     * изменившиеся после прошлого выбора, и блоки, лучшую цель которых игрок не может оплатить.
+     * @param units Количество юнитов игрока.
+     * @return Координаты цели {x, y} или null, если подходящих клеток нет.
+     */
+    public int[] chooseTarget(int units) {
+        update();
+        long best = -1;
+        Chunk bestChunk = null;
+        for (Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+            Chunk chunk = entry.getValue();
+            if (chunk.dirty) {
+                chunk.best = bestInChunk(chunk, Integer.MAX_VALUE);
+                chunk.dirty = false;
+            }
+            int local = chunk.best;
+            if (local >= 0 && chunk.firstCost[local] > units) {
+                local = bestInChunk(chunk, units);
+            }
+            if (local < 0) {
+                continue;
+            }
+            long key = entry.getKey();
+            long tile = tile((int) (key >>> 32) << CHUNK_SHIFT | local >>> CHUNK_SHIFT,
+                    (int) key << CHUNK_SHIFT | local & CHUNK_MASK);
+            if (best < 0 || better(chunk, local, tile, bestChunk, local(best), best)) {
+                best = tile;
+                bestChunk = chunk;
+            }
+        }
+        return best < 0 ? null : new int[]{x(best), y(best)};
+    }
+
+    /**
+     * Возвращает первую клетку маршрута до цели, то есть клетку, которую нужно захватить в этот ход.
+     * @param target Координаты цели {x, y}.
+     * @return Координаты клетки {x, y}.
+     */
+    public int[] firstStep(int[] target) {
+        update();
+        long tile = tile(target[0], target[1]);
+        while (true) {
+            int direction = chunk(tile).parent[local(tile)];
+            long previous = neighbour(tile, direction);
+            if (chunk(previous).state[local(previous)] == OWN) {
+                return new int[]{x(tile), y(tile)};
+            }
+            tile = previous;
+        }
+    }
+
+    /**
+     * Применяет накопленные изменения владельцев клеток.
+     * Кратчайшие пути, проходившие через изменившиеся клетки, сбрасываются и строятся заново от соседних клеток.
+     */
+    private void update() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Long> subtree = new ArrayList<>();
+        for (long tile : pending) {
+            invalidate(tile, subtree);
+            Chunk chunk = chunk(tile);
+            chunk.state[local(tile)] = stateOf(gameMap.getTile(x(tile), y(tile)));
+        }
+        for (long tile : subtree) {
+            Chunk chunk = chunk(tile);
+            int local = local(tile);
+            if (chunk.state[local] == OWN) {
+                chunk.dist[local] = 0;
+                explored++;
+            } else if (chunk.state[local] == FREE) {
+                for (int direction = 0; direction < DX.length; direction++) {
+                    long neighbour = neighbour(tile, direction);
+                    if (neighbour >= 0 && distance(neighbour) != UNREACHABLE) {
+                        relax(neighbour, tile, direction);
+                    }
+                }
+            }
+        }
+        List<Long> seeds = new ArrayList<>();
+        for (long tile : subtree) {
+            if (distance(tile) != UNREACHABLE) {
+                seeds.add(tile);
+            }
+        }
+        seeds.sort(Comparator.comparingInt(this::distance).thenComparingLong(tile -> tile));
+        run(seeds, false);
+        logger.debug("Expansion planner updated " + subtree.size() + " tiles after " + pending.size() + " changes");
+        pending.clear();
+    }
+
+    /**
+     * Продвигает волну алгоритма Дайала от начальных клеток.
+     * Клетки с одинаковым расстоянием обрабатываются в порядке, обратном порядку добавления в очередь.
+     * @param seeds Начальные клетки, упорядоченные по возрастанию расстояния.
+     * @param limit Установить горизонт, если волна обойдет больше MAX_EXPLORED клеток.
+     */
+    private void run(List<Long> seeds, boolean limit) {
+        int next = 0;
+        if (!seeds.isEmpty()) {
+            cursor = distance(seeds.get(0));
+        }
+        while (true) {
+            while (next < seeds.size() && distance(seeds.get(next)) <= cursor) {
+                long seed = seeds.get(next++);
+                if (distance(seed) == cursor) {
+                    push(seed);
+                }
+            }
+            int index = cursor & buckets.length - 1;
+            Bucket bucket = buckets[index];
+            if (bucket == null || bucket.size == 0) {
+                if (queued > 0) {
+                    int nearest = cursor + nextOccupied(index);
+                    cursor = next < seeds.size() ? Math.min(nearest, distance(seeds.get(next))) : nearest;
+                } else if (next < seeds.size()) {
+                    cursor = distance(seeds.get(next));
+                } else {
+                    return;
+                }
+                continue;
+            }
+            long tile = bucket.tiles[--bucket.size];
+            if (bucket.size == 0) {
+                occupied[index >>> 6] &= ~(1L << index);
+            }
+            queued--;
+            if (distance(tile) != cursor) {
+                continue;
+            }
+            for (int direction = 0; direction < DX.length; direction++) {
+                long neighbour = neighbour(tile, direction);
+                if (neighbour >= 0 && chunk(neighbour).state[local(neighbour)] == FREE
+                        && relax(tile, neighbour, direction ^ 1)) {
+                    push(neighbour);
+                }
+            }
+            if (limit && explored > MAX_EXPLORED && horizon == UNREACHABLE - 1) {
+                limitHorizon();
+            }
+        }
+    }
+
+    /**
+     * Устанавливает горизонт на текущем расстоянии волны и сбрасывает клетки очереди за горизонтом.
+     */
+    private void limitHorizon() {
+        horizon = cursor;
+        for (Bucket bucket : buckets) {
+            if (bucket == null || bucket == buckets[cursor & buckets.length - 1]) {
+                continue;
+            }
+            queued -= bucket.size;
+            for (int i = 0; i < bucket.size; i++) {
+                long tile = bucket.tiles[i];
+                Chunk chunk = chunk(tile);
+                int local = local(tile);
+                if (chunk.dist[local] > horizon && chunk.dist[local] != UNREACHABLE) {
+                    chunk.dist[local] = UNREACHABLE;
+                    chunk.parent[local] = -1;
+                    chunk.dirty = true;
+                    explored--;
+                }
+            }
+            bucket.size = 0;
+        }
+        int index = cursor & buckets.length - 1;
+        Arrays.fill(occupied, 0);
+        if (buckets[index] != null && buckets[index].size > 0) {
+            occupied[index >>> 6] = 1L << index;
+        }
+        logger.info("Expansion planner explored " + explored + " tiles, horizon set to " + horizon);
+    }
+
+    /**
+     * Пробует улучшить путь до клетки через соседнюю клетку. Путь лучше, если он короче, а при равной
+     * стоимости - по порядку выбора маршрутов из описания класса.
+     * @param from Соседняя клетка с известным расстоянием.
+     * @param to Свободная клетка.
+     * @param direction Направление от клетки to на клетку from.
+     * @return True, если путь до клетки изменился.
+     */
+    private boolean relax(long from, long to, int direction) {
+        Chunk fromChunk = chunk(from);
+        int fromLocal = local(from);
+        Chunk toChunk = chunk(to);
+        int toLocal = local(to);
+        int cost = cost(toChunk, toLocal, to);
+        long candidate = (long) fromChunk.dist[fromLocal] + cost;
+        if (candidate > horizon) {
+            return false;
+        }
+        boolean own = fromChunk.state[fromLocal] == OWN;
+        int steps = own ? 1 : fromChunk.steps[fromLocal] + 1;
+        int paid = (own ? 0 : fromChunk.paid[fromLocal]) + (cost > 0 ? 1 : 0);
+        int firstCost = own ? cost : fromChunk.firstCost[fromLocal];
+        if (toChunk.dist[toLocal] == UNREACHABLE) {
+            explored++;
+        } else if (!preferred((int) candidate, paid, steps, firstCost, direction, toChunk, toLocal)) {
+            return false;
+        }
+        toChunk.dist[toLocal] = (int) candidate;
+        toChunk.parent[toLocal] = (byte) direction;
+        toChunk.steps[toLocal] = steps;
+        toChunk.paid[toLocal] = paid;
+        toChunk.firstCost[toLocal] = firstCost;
+        toChunk.dirty = true;
+        return true;
+    }
+
+    /**
+     * Сравнивает новый путь до клетки с текущим по порядку выбора маршрутов из описания класса.
+     * Вдоль пути расстояние не убывает, а при шаге на бесплатную клетку растет число захватов при том же числе
+     * платных, поэтому каждый путь хуже пути до предыдущей клетки и выбор не зависит от порядка пересчета.
+     * @param dist Стоимость нового пути.
+     * @param paid Количество платных захватов нового пути.
+     * @param steps Количество захватов нового пути.
+     * @param firstCost Стоимость первого захвата нового пути.
+     * @param direction Направление на предыдущую клетку нового пути.
+     * @param chunk Блок клетки.
+     * @param local Индекс клетки в блоке.
+     * @return True, если новый путь лучше текущего.
+     */
+    private static boolean preferred(int dist, int paid, int steps, int firstCost, int direction, Chunk chunk,
+                                     int local) {
+        if (dist != chunk.dist[local]) {
+            return dist < chunk.dist[local];
+        }
+        if (paid != chunk.paid[local]) {
+            return paid > chunk.paid[local];
+        }
+        if (steps != chunk.steps[local]) {
+            return steps < chunk.steps[local];
+        }
+        if (firstCost != chunk.firstCost[local]) {
+            return firstCost < chunk.firstCost[local];
+        }
+        return direction < chunk.parent[local];
+    }
+
+    /**
+     * Добавляет клетку в корзину ее расстояния, удлиняя массив корзин, если расстояние выходит за него.
+     * @param tile Клетка.
+     */
+    private void push(long tile) {
+        int dist = distance(tile);
+        if (dist - cursor >= buckets.length) {
+            resizeBuckets(dist - cursor + 1);
+        }
+        int index = dist & buckets.length - 1;
+        Bucket bucket = buckets[index];
+        if (bucket == null) {
+            bucket = buckets[index] = new Bucket();
+        }
+        if (bucket.size == bucket.tiles.length) {
+            bucket.tiles = Arrays.copyOf(bucket.tiles, bucket.size * 2);
+        }
+        bucket.tiles[bucket.size++] = tile;
+        occupied[index >>> 6] |= 1L << index;
+        queued++;
+    }
+
+    /**
+     * Находит ближайшую после курсора непустую корзину; очередь не должна быть пустой.
+     * @param index Индекс корзины курсора.
+     * @return Разность расстояний найденной корзины и курсора.
+     */
+    private int nextOccupied(int index) {
+        int start = index + 1 & buckets.length - 1;
+        int word = start >>> 6;
+        long bits = occupied[word] & -1L << start;
+        while (bits == 0) {
+            word = word + 1 == occupied.length ? 0 : word + 1;
+            bits = occupied[word];
+        }
+        int found = word << 6 | Long.numberOfTrailingZeros(bits);
+        return (found - index - 1 & buckets.length - 1) + 1;
+    }
+
+    /**
+     * Удлиняет циклический массив корзин и переносит корзины по их расстояниям от cursor.
+     * @param span Количество расстояний, которые должны помещаться в массив.
+     */
+    private void resizeBuckets(int span) {
+        Bucket[] resized = new Bucket[Integer.highestOneBit(span) << 1];
+        long[] resizedOccupied = new long[resized.length >>> 6];
+        for (int i = 0; i < buckets.length; i++) {
+            int index = cursor + (i - cursor & buckets.length - 1) & resized.length - 1;
+            resized[index] = buckets[i];
+            if (buckets[i] != null && buckets[i].size > 0) {
+                resizedOccupied[index >>> 6] |= 1L << index;
+            }
+        }
+        buckets = resized;
+        occupied = resizedOccupied;
+    }
+
+    /**
+     * Сбрасывает расстояния клетки и всех клеток, кратчайший путь до которых проходит через нее.
+     * Клетки, уже сброшенные при обработке другой изменившейся клетки, повторно не обходятся.
+     * @param tile Клетка.
+     * @param subtree Список сброшенных клеток, в который добавляются новые.
+     */
+    private void invalidate(long tile, List<Long> subtree) {
+        int start = subtree.size();
+        subtree.add(tile);
+        reset(tile);
+        for (int i = start; i < subtree.size(); i++) {
+            long current = subtree.get(i);
+            for (int direction = 0; direction < DX.length; direction++) {
+                long neighbour = neighbour(current, direction);
+                if (neighbour >= 0) {
+                    Chunk chunk = existingChunk(neighbour);
+                    if (chunk != null && chunk.parent[local(neighbour)] == (direction ^ 1)) {
+                        reset(neighbour);
+                        subtree.add(neighbour);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает расстояние и путь клетки.
+     * @param tile Клетка.
+     */
+    private void reset(long tile) {
+        Chunk chunk = chunk(tile);
+        int local = local(tile);
+        if (chunk.dist[local] != UNREACHABLE) {
+            explored--;
+        }
+        chunk.dist[local] = UNREACHABLE;
+        chunk.parent[local] = -1;
+        chunk.dirty = true;
+    }
+
+    /**
+     * Находит лучшую цель в блоке: свободную достижимую клетку с наибольшим числом клеток маршрута на единицу
+     * стоимости, при равенстве - с меньшей стоимостью, затем с меньшими координатами.
+     * @param chunk Блок.
+     * @param units Наибольшая стоимость захвата первой клетки маршрута.
+     * @return Индекс клетки в блоке или -1, если подходящих клеток нет.
+     */
+    private static int bestInChunk(Chunk chunk, int units) {
+        int best = -1;
+        for (int local = 0; local < chunk.dist.length; local++) {
+            if (chunk.state[local] != FREE || chunk.dist[local] == UNREACHABLE || chunk.firstCost[local] > units) {
+                continue;
+            }
+            if (best < 0 || better(chunk, local, local, chunk, best, best)) {
+                best = local;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Сравнивает две цели: больше клеток маршрута на единицу стоимости, при равенстве - меньшая стоимость,
+     * затем меньший номер клетки.
+     * @param chunk Блок первой цели.
+     * @param local Индекс первой цели в блоке.
+     * @param order Номер первой цели для сравнения при полном равенстве.
+     * @param otherChunk Блок второй цели.
+     * @param otherLocal Индекс второй цели в блоке.
+     * @param otherOrder Номер второй цели для сравнения при полном равенстве.
+     * @return True, если первая цель лучше второй.
+     */
+    private static boolean better(Chunk chunk, int local, long order, Chunk otherChunk, int otherLocal, long otherOrder) {
+        long left = (long) chunk.dist[local] * otherChunk.steps[otherLocal];
+        long right = (long) otherChunk.dist[otherLocal] * chunk.steps[local];
+        if (left != right) {
+            return left < right;
+        }
+        if (chunk.dist[local] != otherChunk.dist[otherLocal]) {
+            return chunk.dist[local] < otherChunk.dist[otherLocal];
+        }
+        return order < otherOrder;
+    }
+
+    /**
+     * Возвращает стоимость захвата клетки, читая ее с карты при первом обращении.
+     * @param chunk Блок клетки.
+     * @param local Индекс клетки в блоке.
+     * @param tile Клетка.
+     * @return Количество юнитов.
+     */
+    private int cost(Chunk chunk, int local, long tile) {
+        if (chunk.cost[local] == 0) {
+            chunk.cost[local] = gameMap.getTile(x(tile), y(tile)).getRequiredUnits() + 1;
+        }
+        return chunk.cost[local] - 1;
+    }
+
+    /**
+     * Возвращает расстояние до клетки.
+     * @param tile Клетка.
+     * @return Расстояние или UNREACHABLE.
+     */
+    private int distance(long tile) {
+        Chunk chunk = existingChunk(tile);
+        return chunk == null ? UNREACHABLE : chunk.dist[local(tile)];
+    }
+
+    /**
+     * Возвращает блок клетки, создавая его и читая состояния его клеток с карты при первом обращении.
+     * @param tile Клетка.
+     * @return Блок.
+     */
+    private Chunk chunk(long tile) {
+        Chunk chunk = existingChunk(tile);
+        if (chunk == null) {
+            chunk = new Chunk();
+            int baseX = x(tile) & ~CHUNK_MASK;
+            int baseY = y(tile) & ~CHUNK_MASK;
+            for (int i = 0; i < CHUNK_SIZE && baseX + i < width; i++) {
+                for (int j = 0; j < CHUNK_SIZE && baseY + j < height; j++) {
+                    chunk.state[i << CHUNK_SHIFT | j] = stateOf(gameMap.getTile(baseX + i, baseY + j));
+                }
+            }
+            lastKey = chunkKey(tile);
+            lastChunk = chunk;
+            chunks.put(lastKey, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Возвращает блок клетки, не создавая его.
+     * @param tile Клетка.
+     * @return Блок или null, если волна до него еще не дошла.
+     */
+    private Chunk existingChunk(long tile) {
+        long key = chunkKey(tile);
+        if (key != lastKey) {
+            Chunk chunk = chunks.get(key);
+            if (chunk == null) {
+                return null;
+            }
+            lastKey = key;
+            lastChunk = chunk;
+        }
+        return lastChunk;
+    }
+
+    /**
+     * Возвращает соседнюю клетку.
+     * @param tile Клетка.
+     * @param direction Направление: индекс в DX, DY.
+     * @return Номер соседней клетки или -1, если она за границей карты.
+     */
+    private long neighbour(long tile, int direction) {
+        int x = x(tile) + DX[direction];
+        int y = y(tile) + DY[direction];
+        return x < 0 || x >= width || y < 0 || y >= height ? -1 : tile(x, y);
+    }
+
+    /**
+     * Возвращает номер клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Номер x << 32 | y; номера упорядочены так же, как клетки по x, затем по y.
+     */
+    private static long tile(int x, int y) {
+        return (long) x << 32 | y;
+    }
+
+    private static int x(long tile) {
+        return (int) (tile >>> 32);
+    }
+
+    private static int y(long tile) {
+        return (int) tile;
+    }
+
+    private static int local(long tile) {
+        return (x(tile) & CHUNK_MASK) << CHUNK_SHIFT | y(tile) & CHUNK_MASK;
+    }
+
+    private static long chunkKey(long tile) {
+        return (long) (x(tile) >>> CHUNK_SHIFT) << 32 | (y(tile) >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * Определяет состояние клетки относительно игрока.
+     * @param tile Клетка.
+     * @return FREE, OWN или BLOCKED.
+     */
+    private byte stateOf(Tile tile) {
+        if (tile.getOwner() == null) {
+            return FREE;
+        }
+        return tile.getOwner() == player ? OWN : BLOCKED;
+    }
+}
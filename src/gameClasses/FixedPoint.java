@@ -0,0 +1,44 @@
+package gameClasses;
+
+/**
+ * Запись ресурсов (риса и воды) целыми числами с фиксированной точкой: значение хранится в тысячных долях единицы.
+ * Все правила игры прибавляют и вычитают целые количества, поэтому расчеты в фиксированной точке точны
+ * и дают одинаковый результат на любой платформе, при повторе партии и при параллельных расчетах.
+ * Вещественные значения остаются только на границе: в публичных методах игрока и карты, в графиках и файлах повторов;
+ * перевод целых значений туда и обратно не теряет точности.
+ */
+final class FixedPoint {
+    /**Количество долей в единице ресурса*/
+    static final int SCALE = 1000;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Переводит количество ресурса в фиксированную точку, округляя до ближайшей доли.
+     * @param value Количество ресурса.
+     * @return Количество в долях единицы.
+     */
+    static long of(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    /**
+     * Переводит уровень риса клетки в фиксированную точку.
+     * @param value Уровень риса.
+     * @return Уровень в долях единицы.
+     * @throws ArithmeticException Если уровень не помещается в int.
+     */
+    static int ofTile(double value) {
+        return Math.toIntExact(of(value));
+    }
+
+    /**
+     * Переводит количество ресурса из фиксированной точки.
+     * @param fixed Количество в долях единицы.
+     * @return Количество ресурса.
+     */
+    static double toDouble(long fixed) {
+        return (double) fixed / SCALE;
+    }
+}
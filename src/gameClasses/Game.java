@@ -7,11 +7,14 @@ import java.awt.event.WindowEvent;
 import java.io.*;
 import javax.swing.*;
 import java.awt.*;
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import org.jfree.chart.*;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.PlotOrientation;
@@ -31,20 +34,54 @@ public class Game extends JFrame implements GameI, Serializable {
      * Логгер для записи сообщений в лог-файл.
      */
     private static final Logger logger = LogManager.getLogger(Game.class);
-    /**Игроки*/
+    /**Файл повтора текущей партии*/
+    private static final String REPLAY_FILE = "replay.rpl";
+    /**Период опорных кадров повтора в днях*/
+    private static final int REPLAY_KEYFRAME_INTERVAL = 10;
+    /**Каталог двоичного журнала событий*/
+    private static final String EVENT_LOG_DIRECTORY = "events";
+    /**Количество сегментов журнала событий*/
+    private static final int EVENT_LOG_SEGMENTS = 4;
+    /**Емкость сегмента журнала событий в записях*/
+    private static final int EVENT_LOG_SEGMENT_RECORDS = 1 << 16;
+    /**Файл истории ресурсов партий, дописывается от запуска к запуску*/
+    private static final String RESOURCE_HISTORY_FILE = "resources.rsh";
+    /**Количество дней в блоке истории ресурсов*/
+    private static final int RESOURCE_HISTORY_BLOCK_DAYS = 64;
+    /**Количество сообщений, хранимых окном событий*/
+    private static final int CONSOLE_CAPACITY = 500;
+    /**Бюджет процессорного времени хода ИИ, нс*/
+    private static final long AI_CPU_BUDGET = 200_000_000L;
+    /**Предел времени ожидания хода ИИ, нс*/
+    private static final long AI_WALL_LIMIT = 1_000_000_000L;
+    /**Период обновления индикатора хода, мс*/
+    private static final int PROGRESS_MILLIS = 50;
+    /**Наибольшее количество клеток, обновляемых за кадр*/
+    private static final int TILE_UPDATES_PER_FRAME = 2048;
+    /**Папка сохраненных игр*/
+    private static final String SAVE_DIRECTORY = "saves";
+    /**Файл единственного сохранения прежних версий; переносится в каталог сохранений слотом с тем же именем*/
+    private static final String LEGACY_SAVE_FILE = "file";
+    /**Размер клетки уменьшенной карты в списке сохранений, пиксели*/
+    private static final int THUMBNAIL_SCALE = 3;
+    /**Каталог сохраненных игр или null, если его не удалось открыть*/
+    private SaveCatalog saveCatalog;
+    /**Слот, из которого загружена или в который сохранялась партия, или null*/
+    private String saveSlot;
+    /**Партия: карта, игроки и текущий день*/
+    private GameSession session;
+    /**Игроки текущей партии*/
     private Player player1, player2;
-    /**Игровая карта*/
-    private GameMap gameMap;
-    /**Текущий день игры*/
-    private int gameDay;
+    /**Игровая карта текущей партии*/
+    private GameMapI gameMap;
     /**Размер карты*/
     int mapSize;
     /**Окно меню*/
     private JFrame menuFrame;
     /**Кнопки карты*/
     private JButton[][] mapButtons;
-    /**Изображения для клеток*/
-    private Map<String, BufferedImage> tileImages = new HashMap<>();
+    /**Надписи с количеством крестьян для освоения клеток карты*/
+    private JLabel[][] unitLabels;
     /**Флаг, указывающий на выбранную клетку*/
     private boolean isTileSelected = false;
     /**Кнопки действий*/
@@ -64,7 +101,39 @@ public class Game extends JFrame implements GameI, Serializable {
     /**Массив характеристик игрока 2*/
     private JLabel[] player2Labels;
     /**Консольное окно-панель*/
-    private JTextArea consoleArea;
+    private EventConsole console;
+    /**История ходов для отмены и повтора*/
+    private TurnHistory turnHistory;
+    /**Кнопки отмены и повтора хода*/
+    private JButton undoButton, redoButton;
+    /**Планировщик ходов ИИ*/
+    private final BotScheduler botScheduler = new BotScheduler(AI_CPU_BUDGET, AI_WALL_LIMIT);
+    /**Стратегия ИИ второго игрока*/
+    private final Strategy aiStrategy = new StandardStrategy();
+    /**Двоичный журнал событий или null, если его не удалось открыть*/
+    private EventLog eventLog;
+    /**Файл истории ресурсов или null, если его не удалось открыть*/
+    private ResourceHistoryWriter resourceHistory;
+    /**Планировщик обновления окна игры*/
+    private final RefreshScheduler refreshScheduler = new RefreshScheduler();
+    /**Область окна с картой*/
+    private RefreshScheduler.Region mapRegion;
+    /**Область окна с характеристиками игроков*/
+    private RefreshScheduler.Region playersRegion;
+    /**Поток игровой логики*/
+    private GameLoop gameLoop;
+    /**Последний результат потока логики или null, если ходов еще не было*/
+    private GameLoop.Result lastResult;
+    /**Клетки, ожидающие обновления на карте*/
+    private final ArrayDeque<GameLoop.TileUpdate> pendingTiles = new ArrayDeque<>();
+    /**Показано ли окно результата игры*/
+    private boolean gameOverShown;
+    /**Индикатор хода*/
+    private JProgressBar progressBar;
+    /**Кнопка прерывания хода ИИ*/
+    private JButton cancelAiButton;
+    /**Таймер обновления индикатора хода*/
+    private Timer progressTimer;
 
     /**
      * Конструктор класса Game.
@@ -73,20 +142,94 @@ public class Game extends JFrame implements GameI, Serializable {
      */
     public Game(int mapSize) {
         this.mapSize = mapSize;
-        gameDay = 0;
-        gameMap = new GameMap(mapSize);
-        player1 = new Player(gameMap.getWidth() - 1, gameMap.getHeight() - 1, 20, 10, 15, gameMap);
-        player2 = new Player(0, 0, 20, 10, 15, gameMap);
+        setSession(new GameSession(mapSize));
         logger.info("Game initialized with map size: " + mapSize);
     }
 
+    /**
+     * Делает указанную партию текущей для окна игры.
+     * @param session Партия.
+     */
+    private void setSession(GameSession session) {
+        if (this.session != null) {
+            finishResourceHistory();
+        }
+        this.session = session;
+        player1 = session.getPlayer1();
+        player2 = session.getPlayer2();
+        gameMap = session.getGameMap();
+        if (eventLog == null) {
+            try {
+                eventLog = new EventLog(new File(EVENT_LOG_DIRECTORY).toPath(), EVENT_LOG_SEGMENTS, EVENT_LOG_SEGMENT_RECORDS);
+            } catch (IOException e) {
+                logger.error("Error opening event log, events are not recorded: " + e.getMessage());
+            }
+        }
+        long gameId = System.currentTimeMillis();
+        session.setEventLog(eventLog, gameId);
+        if (resourceHistory == null) {
+            try {
+                resourceHistory = new ResourceHistoryWriter(new File(RESOURCE_HISTORY_FILE).toPath(), RESOURCE_HISTORY_BLOCK_DAYS);
+            } catch (IOException e) {
+                logger.error("Error opening resource history, history is not recorded: " + e.getMessage());
+            }
+        }
+        if (resourceHistory != null) {
+            session.setHistory(resourceHistory.open(gameId));
+        }
+    }
+
+    /**
+     * Записывает накопленные дни истории ресурсов текущей партии и отключает журнал партии.
+     */
+    private void finishResourceHistory() {
+        ResourceHistoryWriter.GameLog history = session.getHistory();
+        if (history != null) {
+            try {
+                history.finish();
+            } catch (IOException e) {
+                logger.error("Error writing resource history: " + e.getMessage());
+            }
+            session.setHistory(null);
+        }
+    }
+
+    /**
+     * Дописывает историю ресурсов текущей партии и закрывает файл истории перед выходом из игры.
+     */
+    private void closeResourceHistory() {
+        finishResourceHistory();
+        if (resourceHistory != null) {
+            try {
+                resourceHistory.close();
+            } catch (IOException e) {
+                logger.error("Error closing resource history: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Закрывает двоичный журнал событий перед выходом из игры.
+     */
+    private void closeEventLog() {
+        if (eventLog != null) {
+            try {
+                eventLog.close();
+            } catch (IOException e) {
+                logger.error("Error closing event log: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Отображает главное меню игры.
      * Создает окно меню с кнопками "Начать новую игру", "Загрузить игру" и "Выход".
-     * Обрабатывает события нажатия кнопок, запускает новую игру, загрузку игры или завершает работу приложения.
+     * Обрабатывает события нажатия кнопок, запускает новую игру, выбор сохранения для загрузки или завершает работу приложения.
      */
     public void menu(){
         logger.debug("Entering game menu.");
+        TileSprites.preload();
+        openSaveCatalog();
         try {
             menuFrame = new JFrame();
             menuFrame.setTitle("Rice Game - Меню");
@@ -120,11 +263,16 @@ public class Game extends JFrame implements GameI, Serializable {
                 interfaceBuilder(10);
             });
             loadGame.addActionListener(e -> {
+                String slot = chooseSave(menuFrame);
+                if (slot == null) {
+                    return;
+                }
                 try {
-                    loadGame("file");
+                    loadGame(saveCatalog.getFile(slot).toString());
                 } catch (IOException | ClassNotFoundException ex) {
                     throw new RuntimeException(ex);
                 }
+                saveSlot = slot;
                 menuFrame.dispose();
                 interfaceBuilder(10);
             });
@@ -149,6 +297,7 @@ public class Game extends JFrame implements GameI, Serializable {
      */
     public void interfaceBuilder(int mapSize) {
         logger.debug("Entering game interface.");
+        long buildStart = System.nanoTime();
         try {
             JFrame gameFrame = new JFrame();
             gameFrame.setTitle("Rice Game - Игра");
@@ -161,14 +310,28 @@ public class Game extends JFrame implements GameI, Serializable {
 
                     switch (result) {
                         case JOptionPane.YES_OPTION:
+                            String slot = askSaveSlot(gameFrame);
+                            if (slot == null) {
+                                break;
+                            }
+                            closeGameLoop();
                             try {
-                                saveGame("file");
+                                saveToSlot(slot);
                             } catch (IOException ex) {
                                 throw new RuntimeException(ex);
                             }
+                            stopReplay();
+                            botScheduler.close();
+                            closeEventLog();
+                            closeResourceHistory();
                             System.exit(0);
                             break;
                         case JOptionPane.NO_OPTION:
+                            closeGameLoop();
+                            stopReplay();
+                            botScheduler.close();
+                            closeEventLog();
+                            closeResourceHistory();
                             System.exit(0);
                             break;
                         case JOptionPane.CANCEL_OPTION:
@@ -176,13 +339,27 @@ public class Game extends JFrame implements GameI, Serializable {
                     }
                 }
             });
+            gameFrame.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    EventQueue.invokeLater(() -> logger.info("Time to first frame: "
+                            + (System.nanoTime() - buildStart) / 1_000_000 + " ms after start of interface building, "
+                            + (System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime())
+                            + " ms after application start"));
+                }
+            });
             gameFrame.setSize(725, 680);
             gameFrame.setLayout(new GridBagLayout());
             gameFrame.setLocationRelativeTo(null);
             logger.debug("Game frame created.");
 
+            startReplay();
+            turnHistory = new TurnHistory(session);
+            gameLoop = new GameLoop(session, turnHistory, botScheduler, aiStrategy, this::showResult);
+
             mapPanel = new JPanel(new GridLayout(mapSize, mapSize));
             mapButtons = new JButton[mapSize][mapSize];
+            unitLabels = new JLabel[mapSize][mapSize];
             loadTileImages();
 
             for (int i = 0; i < mapSize; i++) {
@@ -210,13 +387,15 @@ public class Game extends JFrame implements GameI, Serializable {
             player2Labels = addPlayerCharacteristics(player2Panel, player2);
 
             logger.debug("Player panels created.");
-            SwingUtilities.invokeLater(() -> updatePlayerCharacteristics());
 
             JPanel topPanel = new JPanel(new BorderLayout());
             topPanel.add(mapPanel, BorderLayout.EAST); // карта в центре
             JPanel playerPanels = new JPanel(new GridLayout(1, 2));
             playerPanels.add(player1Panel);
             playerPanels.add(player2Panel);
+            mapRegion = refreshScheduler.addRegion("map", mapPanel, this::applyTileUpdates);
+            playersRegion = refreshScheduler.addRegion("players", playerPanels, this::showPlayerStats);
+            refreshScheduler.request(playersRegion);
             topPanel.add(playerPanels, BorderLayout.WEST);
             logger.debug("Top panel constructed.");
 
@@ -228,21 +407,32 @@ public class Game extends JFrame implements GameI, Serializable {
             eventPanel.setBorder(BorderFactory.createTitledBorder("События"));
             eventPanel.setLayout(new BorderLayout());
 
-            consoleArea = new JTextArea(2, 30);
-            consoleArea.setEditable(false);
-            consoleArea.setLineWrap(true);
-            consoleArea.setWrapStyleWord(true);
-            consoleArea.setBackground(Color.WHITE);
-            consoleArea.setForeground(Color.BLUE);
-
-            JScrollPane scrollPane = new JScrollPane(consoleArea);
-            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
-            eventPanel.add(scrollPane);
+            console = new EventConsole(CONSOLE_CAPACITY, 3);
+            eventPanel.add(console);
 
             createActionButtons(actionPanel);
             JButton rulesButton = new JButton("Правила");
             rulesButton.addActionListener(e -> showRules());
             actionPanel.add(rulesButton);
+            undoButton = new JButton("Отменить ход");
+            redoButton = new JButton("Вернуть ход");
+            undoButton.addActionListener(e -> undoTurn());
+            redoButton.addActionListener(e -> redoTurn());
+            undoButton.setEnabled(false);
+            redoButton.setEnabled(false);
+            actionPanel.add(undoButton);
+            actionPanel.add(redoButton);
+
+            progressBar = new JProgressBar(0, 100);
+            progressBar.setStringPainted(true);
+            progressBar.setString("");
+            cancelAiButton = new JButton("Прервать ход ИИ");
+            cancelAiButton.setEnabled(false);
+            cancelAiButton.addActionListener(e -> cancelAiTurn());
+            progressTimer = new Timer(PROGRESS_MILLIS, e -> updateProgress());
+            JPanel progressPanel = new JPanel(new BorderLayout(5, 0));
+            progressPanel.add(progressBar, BorderLayout.CENTER);
+            progressPanel.add(cancelAiButton, BorderLayout.EAST);
 
             logger.debug("Action and event panels created.");
 
@@ -251,6 +441,8 @@ public class Game extends JFrame implements GameI, Serializable {
 
             bottomPanel.add(actionPanel);
             bottomPanel.add(Box.createVerticalStrut(3));
+            bottomPanel.add(progressPanel);
+            bottomPanel.add(Box.createVerticalStrut(3));
             bottomPanel.add(eventPanel);
 
             gameFrame.getContentPane().setLayout(new BorderLayout());
@@ -280,51 +472,52 @@ public class Game extends JFrame implements GameI, Serializable {
         button.setPreferredSize(new Dimension(50, 50));
         String state = gameMap.getStateString(i, j, player);
 
-        try {
-            button.setIcon(new ImageIcon(tileImages.get(state)));
+        ImageIcon icon = TileSprites.icon(state, TileSprites.MAP_TILE_SIZE);
+        if (icon != null) {
+            button.setIcon(icon);
             logger.debug("Tile button icon set to: " + state);
-        } catch (NullPointerException e) {
+        } else {
             logger.error("Error setting icon for tile button at (" + i + ", " + j + ") state " + state);
             button.setText("Error loading image");
         }
 
         button.addActionListener(e -> handleTileClick(i, j, state));
 
-        if (state =="EMPTY") {
-            JLabel unitLabel = new JLabel(String.valueOf(gameMap.getTile(i, j).getRequiredUnits()));
-            unitLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            unitLabel.setVerticalAlignment(SwingConstants.BOTTOM);
-            unitLabel.setForeground(Color.BLACK);
-            button.add(unitLabel, BorderLayout.SOUTH);
-            logger.debug("Added unit requirement label to EMPTY tile button at (" + i + ", "+ j + "). Required units: " + gameMap.getTile(i, j).getRequiredUnits());
+        // надпись занимает всю кнопку, поэтому смена ее текста не меняет компоновку карты
+        JLabel unitLabel = new RefreshScheduler.Label(refreshScheduler, unitText(i, j, state));
+        unitLabel.setPreferredSize(button.getPreferredSize());
+        unitLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        unitLabel.setVerticalAlignment(SwingConstants.BOTTOM);
+        unitLabel.setForeground(Color.BLACK);
+        button.add(unitLabel, BorderLayout.SOUTH);
+        if (unitLabels != null) {
+            unitLabels[i][j] = unitLabel;
         }
+        logger.debug("Added unit requirement label to tile button at (" + i + ", "+ j + "). Required units: " + gameMap.getTile(i, j).getRequiredUnits());
 
         return button;
     }
 
+    /**
+     * Возвращает текст надписи клетки: количество крестьян для освоения свободной клетки.
+     * @param i Координата X клетки.
+     * @param j Координата Y клетки.
+     * @param state Состояние клетки для первого игрока.
+     * @return Количество крестьян или пустая строка для несвободной клетки.
+     */
+    private String unitText(int i, int j, String state) {
+        return state.equals("EMPTY") ? String.valueOf(gameMap.getTile(i, j).getRequiredUnits()) : "";
+    }
+
 
     /**
-     * Загружает изображения для клеток игровой карты из ресурсов приложения.
-     * Изображения хранятся в папке "/images/" и имеют соответствующие названия.
-     * Обрабатывает исключения IOException при ошибке загрузки изображений.
+     * Загружает изображения для клеток игровой карты из атласа в ресурсах приложения.
+     * Загрузка запускается в фоне при показе меню, здесь только дожидается ее окончания.
      */
     public void loadTileImages() {
-        logger.info("Loading tile images...");
-            try {
-                tileImages.put("EMPTY", ImageIO.read(getClass().getResource("/images/EMPTY.png")));
-                tileImages.put("RICE1", ImageIO.read(getClass().getResource("/images/RICE1.png")));
-                tileImages.put("RICE2", ImageIO.read(getClass().getResource("/images/RICE2.png")));
-                tileImages.put("HOUSEWATER1", ImageIO.read(getClass().getResource("/images/HOUSEWATER1.png")));
-                tileImages.put("HOUSEWATER2", ImageIO.read(getClass().getResource("/images/HOUSEWATER2.png")));
-                tileImages.put("HOUSE1", ImageIO.read(getClass().getResource("/images/HOUSED1.png")));
-                tileImages.put("HOUSE2", ImageIO.read(getClass().getResource("/images/HOUSED2.png")));
-                tileImages.put("RICEWATER1", ImageIO.read(getClass().getResource("/images/RICEWATERED1.png")));
-                tileImages.put("RICEWATER2", ImageIO.read(getClass().getResource("/images/RICEWATERED2.png")));
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.err.println("Ошибка загрузки изображений");
-            }
-        logger.info("Tile image loading completed.");
+        long start = System.nanoTime();
+        TileSprites.images();
+        logger.info("Tile images ready, waited " + (System.nanoTime() - start) / 1_000_000 + " ms");
     }
 
 
@@ -340,11 +533,11 @@ public class Game extends JFrame implements GameI, Serializable {
         logger.debug("Adding player characteristics for player: " + player);
 
         JLabel[] labels = new JLabel[5];
-        labels[0] = new JLabel("Территории: " + player.controlledTiles());
-        labels[1] = new JLabel("Вода: " + player.getWater());
-        labels[2] = new JLabel("Рис: " + player.getRice());
-        labels[3] = new JLabel("Крестьяне: " + player.getUnits());
-        labels[4] = new JLabel("Дома: " + player.getHouses());
+        labels[0] = new RefreshScheduler.Label(refreshScheduler, "Территории: " + player.controlledTiles());
+        labels[1] = new RefreshScheduler.Label(refreshScheduler, "Вода: " + player.getWater());
+        labels[2] = new RefreshScheduler.Label(refreshScheduler, "Рис: " + player.getRice());
+        labels[3] = new RefreshScheduler.Label(refreshScheduler, "Крестьяне: " + player.getUnits());
+        labels[4] = new RefreshScheduler.Label(refreshScheduler, "Дома: " + player.getHouses());
 
         for (JLabel label : labels) {
             panel.add(label);
@@ -357,6 +550,7 @@ public class Game extends JFrame implements GameI, Serializable {
     /**
      * Обрабатывает событие клика на клетку игровой карты.
      * Устанавливает флаг isTileSelected, запоминает координаты выбранной клетки и активирует кнопки действий.
+     * Поток игровой логики заранее рассчитывает ответы ИИ на действия на этой клетке.
      * @param i Координата X клетки.
      * @param j Координата Y клетки.
      * @param state Состояние клетки.
@@ -367,6 +561,7 @@ public class Game extends JFrame implements GameI, Serializable {
         isTileSelected = true;
         selectedTileX = i;
         selectedTileY = j;
+        gameLoop.hint(i, j);
 
         for (JButton button : actionButtons) {
             button.setEnabled(true);
@@ -376,13 +571,14 @@ public class Game extends JFrame implements GameI, Serializable {
 
     /**
      * Обрабатывает нажатие кнопки действия.
-     * Выполняет действие в зависимости от нажатой кнопки (сбор воды, захват территории, полив риса, строительство дома).
-     * Обновляет характеристики игроков и карту после выполнения действия.
+     * Ставит действие в очередь потока игровой логики, который выполняет его (сбор воды, захват территории,
+     * полив риса, строительство дома), ход ИИ и завершение дня; характеристики игроков и карта обновляются,
+     * когда поток логики опубликует результат хода.
      * @param e Событие нажатия кнопки.
      */
     public void handleActionClick(ActionEvent e) {
         if (isTileSelected) {
-            logger.info("Action button clicked");
+            logger.debug("Action button clicked");
 
             isTileSelected = false;
             for (JButton button : actionButtons) {
@@ -390,46 +586,109 @@ public class Game extends JFrame implements GameI, Serializable {
             }
             logger.debug("Disabled action buttons.");
 
-            int x = selectedTileX;
-            int y = selectedTileY;
-
-            if (e.getSource() == actionButtons[0]) {
-                player1.collectWater(15);
-                logger.info("Player 1 collected water.");
-                printToConsole("Вы набрали 15 единиц воды");
-                playerTurn(player2);
-                endOfDay();
-            } else if (e.getSource() == actionButtons[1]) {
-                String result = player1.claimTerritory(x, y, gameMap);
-                logger.info("Player 1 claimed territory at (" + x + ", " + y + "), Result: " + result);
-                printToConsole(result);
-                playerTurn(player2);
-                endOfDay();
-            } else if (e.getSource() == actionButtons[2]) {
-                String result = player1.waterRice(x, y, gameMap);
-                logger.info("Player 1 watered rice at (" + x + ", " + y + "), Result: {}" + result);
-                printToConsole(result);
-                playerTurn(player2);
-                endOfDay();
-            } else if (e.getSource() == actionButtons[3]) {
-                String result = player1.buildHouse(x, y, gameMap);
-                logger.info("Player 1 built house at (" + x + ", " + y + "), Result: " + result);
-                printToConsole(result);
-                playerTurn(player2);
-                endOfDay();
-            }
+            PlayerCommand command = new PlayerCommand(0, PlayerCommand.Type.valueOf(e.getActionCommand()),
+                    selectedTileX, selectedTileY);
+            gameLoop.submit(command);
+            progressTimer.start();
+            logger.debug("Player 1 action queued: " + command);
+        }
+    }
 
-            SwingUtilities.invokeLater(() -> {
-                updatePlayerCharacteristics();
-                updateMap();
-                logger.debug("Player characteristics and map updated.");
-            });
+    /**
+     * Показывает результат задачи потока игровой логики: сообщения хода в окне событий, изменившиеся клетки
+     * и ресурсы игроков, а после окончания игры - окно результата. Вызывается в потоке Swing.
+     * @param result Результат задачи.
+     */
+    private void showResult(GameLoop.Result result) {
+        if (result.getCommand() != null) {
+            printToConsole(result.getTurnDay(), 1, result.getCommand().getType(), result.getMessage());
+            BotScheduler.Turn aiTurn = result.getAiTurn();
+            printToConsole(result.getTurnDay(), 2, aiTurn.getCommand().getType(), aiTurn.getMessage());
+        } else if (result.getMessage() != null) {
+            printToConsole(result.getTurnDay(), result.getMessage());
+        }
+        lastResult = result;
+        pendingTiles.addAll(result.getTiles());
+        undoButton.setEnabled(result.canUndo());
+        redoButton.setEnabled(result.canRedo());
+        refreshScheduler.request(playersRegion);
+        refreshScheduler.request(mapRegion);
+        if (result.isGameOver() && !gameOverShown) {
+            gameOverShown = true;
+            refreshScheduler.flush();
+            showEndGameWindow(result.isPlayer1Won());
+        }
+    }
+
+    /**
+     * Обновляет индикатор хода: этап задачи потока логики и долю времени, израсходованную ходом ИИ.
+     * Когда очередь потока логики пуста, индикатор очищается и таймер останавливается.
+     */
+    private void updateProgress() {
+        String phase = gameLoop.getPhase();
+        if (!gameLoop.isBusy()) {
+            progressTimer.stop();
+            phase = null;
         }
+        progressBar.setString(phase == null ? "" : phase);
+        progressBar.setValue(GameLoop.PHASE_AI.equals(phase) ? (int) Math.round(gameLoop.getProgress() * 100) : 0);
+        cancelAiButton.setEnabled(GameLoop.PHASE_AI.equals(phase));
+    }
 
-        SwingUtilities.invokeLater(() -> {
-            updatePlayerCharacteristics();
-            updateMap();
+    /**
+     * Прерывает идущий ход ИИ; вместо прерванного хода ИИ набирает воду.
+     */
+    private void cancelAiTurn() {
+        if (gameLoop.cancelAi()) {
+            logger.info("AI turn cancelled by the player");
+        }
+    }
+
+    /**
+     * Останавливает поток игровой логики перед выходом из игры, чтобы партию можно было сохранить.
+     */
+    private void closeGameLoop() {
+        if (gameLoop != null) {
+            gameLoop.close();
+        }
+    }
+
+    /**
+     * Отменяет последний ход: возвращает карту, ресурсы игроков и номер дня к предыдущему ходу.
+     * Запись повтора начинается заново с восстановленного дня. Отмена выполняется потоком игровой логики
+     * после ходов, уже стоящих в его очереди.
+     */
+    public void undoTurn() {
+        gameLoop.execute(() -> {
+            turnHistory.undo();
+            logger.info("Turn undone, day " + session.getGameDay());
+            afterHistoryChange();
+            return "Ход отменен, день " + session.getGameDay();
         });
+        progressTimer.start();
+    }
+
+    /**
+     * Повторяет отмененный ход.
+     * Запись повтора начинается заново с восстановленного дня. Повтор выполняется потоком игровой логики.
+     */
+    public void redoTurn() {
+        gameLoop.execute(() -> {
+            turnHistory.redo();
+            logger.info("Turn redone, day " + session.getGameDay());
+            afterHistoryChange();
+            return "Ход возвращен, день " + session.getGameDay();
+        });
+        progressTimer.start();
+    }
+
+    /**
+     * Начинает запись повтора заново после перехода по истории ходов: повтор хранит дни подряд.
+     * Выполняется в потоке игровой логики.
+     */
+    private void afterHistoryChange() {
+        stopReplay();
+        startReplay();
     }
 
     /**
@@ -445,6 +704,11 @@ public class Game extends JFrame implements GameI, Serializable {
         JButton waterRiceButton = new JButton("Полить рис");
         JButton collectWaterButton = new JButton("Набрать воду");
 
+        collectWaterButton.setActionCommand(PlayerCommand.Type.COLLECT_WATER.name());
+        claimTerritoryButton.setActionCommand(PlayerCommand.Type.CLAIM_TERRITORY.name());
+        waterRiceButton.setActionCommand(PlayerCommand.Type.WATER_RICE.name());
+        buildHouseButton.setActionCommand(PlayerCommand.Type.BUILD_HOUSE.name());
+
         collectWaterButton.addActionListener(e -> handleActionClick(e));
         claimTerritoryButton.addActionListener(e -> handleActionClick(e));
         waterRiceButton.addActionListener(e -> handleActionClick(e));
@@ -470,35 +734,88 @@ public class Game extends JFrame implements GameI, Serializable {
         logger.debug("Action buttons: Collect Water, Claim Territory, Water Rice, Build House");
     }
 
+    /**
+     * Показывает на карте клетки из результатов потока игровой логики.
+     * За кадр обновляется не больше TILE_UPDATES_PER_FRAME клеток, остальные откладываются на следующий кадр,
+     * поэтому обновление не задерживает поток Swing даже после отмены хода на большой карте.
+     * Вызывается планировщиком обновления окна.
+     */
+    private void applyTileUpdates() {
+        int applied = 0;
+        while (!pendingTiles.isEmpty() && applied < TILE_UPDATES_PER_FRAME) {
+            GameLoop.TileUpdate tile = pendingTiles.poll();
+            JButton button = mapButtons[tile.getX()][tile.getY()];
+            ImageIcon icon = TileSprites.icon(tile.getState(), TileSprites.MAP_TILE_SIZE);
+            if (icon != null && button.getIcon() != icon) {
+                button.setIcon(icon);
+            }
+            unitLabels[tile.getX()][tile.getY()].setText(tile.getState().equals("EMPTY")
+                    ? String.valueOf(tile.getRequiredUnits()) : "");
+            applied++;
+        }
+        if (!pendingTiles.isEmpty()) {
+            refreshScheduler.request(mapRegion);
+        }
+        logger.debug("Applied " + applied + " tile updates, " + pendingTiles.size() + " left");
+    }
+
+    /**
+     * Показывает ресурсы игроков из последнего результата потока игровой логики.
+     * До первого хода ресурсы читаются из партии. Вызывается планировщиком обновления окна.
+     */
+    private void showPlayerStats() {
+        if (lastResult == null) {
+            updatePlayerCharacteristics();
+            return;
+        }
+        showStats(player1Labels, lastResult.getPlayer1());
+        showStats(player2Labels, lastResult.getPlayer2());
+    }
+
+    /**
+     * Показывает ресурсы игрока на его надписях.
+     * @param labels Надписи характеристик игрока.
+     * @param stats Ресурсы игрока.
+     */
+    private static void showStats(JLabel[] labels, GameLoop.Stats stats) {
+        labels[0].setText("Территории: " + stats.getControlledTiles());
+        labels[1].setText("Вода: " + stats.getWater());
+        labels[2].setText("Рис: " + stats.getRice());
+        labels[3].setText("Крестьяне: " + stats.getUnits());
+        labels[4].setText("Дома: " + stats.getHouses());
+    }
+
     /**
      * Обновляет отображение игровой карты в соответствии с текущим состоянием клетки.
-     * Перерисовывает все клетки карты, обновляя иконки.
+     * Меняет иконки и надписи только у изменившихся клеток; компоновка карты при этом не пересчитывается.
+     * Читает партию, поэтому вызывается, только пока поток игровой логики не выполняет задач.
      * Обрабатывает возможные ошибки при обновлении клетки.
      */
     public void updateMap() {
-        logger.info("Updating game map...");
+        logger.debug("Updating game map...");
+        GameEvents.MapRedraw event = new GameEvents.MapRedraw();
+        event.begin();
+        int redrawn = 0;
+        int labels = 0;
 
         for (int i = 0; i < mapSize; i++) {
             for (int j = 0; j < mapSize; j++) {
                 String state = gameMap.getStateString(i, j, player1);
-                BufferedImage img = tileImages.get(state);
+                ImageIcon icon = TileSprites.icon(state, TileSprites.MAP_TILE_SIZE);
 
                 try {
-                    if (img != null) {
-                        ImageIcon icon = new ImageIcon(img.getScaledInstance(50, 50, Image.SCALE_SMOOTH));
+                    if (icon == null) {
+                        logger.warn("Image not found for state '" + state + "' at (" + i + ", " + j + ").");
+                    } else if (mapButtons[i][j].getIcon() != icon) {
                         mapButtons[i][j].setIcon(icon);
+                        redrawn++;
                         logger.debug("Updated tile icon at (" + i + ", " + j + ") to state: " + state);
-                    } else {
-                        logger.warn("Image not found for state '" + state + "' at (" + i + ", " + j + ").");
                     }
 
-                    if (state.equals("EMPTY")) {
-                        JLabel unitLabel = new JLabel(String.valueOf(gameMap.getTile(i, j).getRequiredUnits()));
-                        unitLabel.setHorizontalAlignment(SwingConstants.CENTER);
-                        unitLabel.setVerticalAlignment(SwingConstants.BOTTOM);
-                        unitLabel.setForeground(Color.BLACK);
-                        mapButtons[i][j].add(unitLabel, BorderLayout.SOUTH);
-                        logger.debug("Added unit label to EMPTY tile at (" + i + ", " + j + ") Required units: " + gameMap.getTile(i, j).getRequiredUnits());
+                    String text = unitText(i, j, state);
+                    if (!text.equals(unitLabels[i][j].getText())) {
+                        unitLabels[i][j].setText(text);
+                        labels++;
                     }
                 } catch (Exception e) {
                     logger.error("Error updating tile at (" + i + ", " + j + ")");
@@ -506,17 +823,24 @@ public class Game extends JFrame implements GameI, Serializable {
             }
         }
 
-        mapPanel.revalidate();
-        mapPanel.repaint();
-        logger.info("Game map updated successfully.");
+        event.end();
+        if (event.shouldCommit()) {
+            event.tilesRedrawn = redrawn;
+            event.labelsChanged = labels;
+            event.day = session.getGameDay();
+            event.commit();
+        }
+        logger.debug("Game map updated: " + redrawn + " icons, " + labels + " labels changed.");
     }
 
     /**
      * Обновляет отображение характеристик игроков на панели.
-     * Перерисовывает значения территорий, воды, риса, крестьян и домов для обоих игроков.
+     * Меняет значения территорий, воды, риса, крестьян и домов для обоих игроков;
+     * компоновка панелей пересчитывается, только если надпись изменила размер.
+     * Читает партию, поэтому вызывается, только пока поток игровой логики не выполняет задач.
      */
     public void updatePlayerCharacteristics() {
-        logger.info("Updating player characteristics...");
+        logger.debug("Updating player characteristics...");
 
         player1Labels[0].setText("Территории: " + player1.controlledTiles());
         player1Labels[1].setText("Вода: " + player1.getWater());
@@ -532,24 +856,30 @@ public class Game extends JFrame implements GameI, Serializable {
         player2Labels[4].setText("Дома: " + player2.getHouses());
         logger.debug("Player 2 characteristics updated: Territories=" + player2.controlledTiles() + ", Water=" + player2.getWater() + ", Rice=" + player2.getRice() + ", Units=" + player2.getUnits() + ", Houses=" + player2.getHouses());
 
-        player1Panel.revalidate();
-        player1Panel.repaint();
-        player2Panel.revalidate();
-        player2Panel.repaint();
+        logger.debug("Player characteristics updated successfully.");
+    }
 
-        logger.info("Player characteristics updated successfully.");
+    /**
+     * Выводит сообщение партии в консольное окно игры - окно событий.
+     * Может вызываться из любого потока: окно событий добавляет сообщения пачкой раз за кадр.
+     * Номер дня передается вызывающим, потому что партию читает только поток игровой логики.
+     * @param day Номер дня, к которому относится сообщение.
+     * @param message Сообщение для вывода.
+     */
+    public void printToConsole(int day, String message) {
+        printToConsole(day, 0, null, message);
     }
 
     /**
-     * Выводит сообщение в консольное окно игры - окно событий.
-     * Использует SwingUtilities.invokeLater для безопасного обновления UI из другого потока.
+     * Выводит сообщение о действии игрока в окно событий.
+     * Может вызываться из любого потока: окно событий добавляет сообщения пачкой раз за кадр.
+     * @param day Номер дня, к которому относится сообщение.
+     * @param player Номер игрока (1 или 2, 0 - сообщение партии).
+     * @param type Тип действия или null для прочих сообщений.
      * @param message Сообщение для вывода.
      */
-    public void printToConsole(String message) {
-        SwingUtilities.invokeLater(() -> {
-            consoleArea.append(message + "\n");
-            consoleArea.setCaretPosition(consoleArea.getDocument().getLength());
-        });
+    public void printToConsole(int day, int player, PlayerCommand.Type type, String message) {
+        console.add(new EventConsole.Entry(day, player, type, message));
     }
 
     /**
@@ -603,6 +933,10 @@ public class Game extends JFrame implements GameI, Serializable {
             @Override
             public void actionPerformed(ActionEvent e) {
                 logger.info("End game window closed. Exiting application.");
+                closeGameLoop();
+                stopReplay();
+                closeEventLog();
+                closeResourceHistory();
                 endGameDialog.dispose();
                 System.exit(0);
             }
@@ -618,9 +952,13 @@ public class Game extends JFrame implements GameI, Serializable {
         });
 
 
+        JButton replayButton = new JButton("Показать повтор");
+        replayButton.addActionListener(e -> showReplay());
+
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         buttonPanel.add(closeButton);
         buttonPanel.add(graphButton);
+        buttonPanel.add(replayButton);
 
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.add(resultLabel, BorderLayout.NORTH);
@@ -632,100 +970,13 @@ public class Game extends JFrame implements GameI, Serializable {
         endGameDialog.setVisible(true);
     }
 
-    /**
-     * Выполняет ход игрока (или AI).
-     * Если это ход AI, то AI принимает решение о действии (захват территории, другие действия или сбор воды) в зависимости от ресурсов и ситуации на карте.
-     * Результат хода выводится в консольное окно событий.
-     * @param player Игрок, чей ход выполняется.
-     */
-    public void playerTurn(Player player) {
-        if (player == player2) {
-            logger.info("AI player's turn started.");
-
-            if ((player2.getUnits() >= player2.controlledTiles()) || (player2.getRice() == 0 && player2.getHouses() != 0)) {
-                String result = player2.aiPlayerClaimTerritory(player2, gameMap.getWidth() * gameMap.getHeight() / 2, gameMap);
-                logger.info("AI player claimed territory. Result: " + result);
-                printToConsole(result);
-            } else {
-                if ((player2.getWater() >= 15)) {
-                    String result = player2.aiPlayerOtherOptions(player2, gameMap);
-                    logger.info("AI player performed other action. Result: " + result);
-                    printToConsole(result);
-                } else {
-                    player2.collectWater(15);
-                    logger.info("AI player collected water (no other actions possible).");
-                    printToConsole("ИИ набрал воду, больше ему делать нечего :/");
-                }
-            }
-            logger.info("AI player's turn ended.");
-        }
-    }
-
-    /**
-     * Завершает игровой день.
-     * Увеличивает количество риса на карте, собирается рис, крестьяне потребляют его, дома производят новых крестьян.
-     * Проверяет условие окончания игры и отображает окно с результатом, если игра закончена.
-     */
-    public void endOfDay() {
-        logger.info("End of day "+ gameDay + " started.");
-
-        gameMap.growRice(player1);
-        gameMap.growRice(player2);
-        logger.debug("Rice grown for both players.");
-
-        player1.collectRice(gameMap);
-        player2.collectRice(gameMap);
-        logger.debug("Rice collected by both players.");
-
-        player1.eatRice(player1.getUnits());
-        player2.eatRice(player2.getUnits());
-        logger.debug("Rice consumed by both players.");
-
-        int newUnitsPlayer1 = player1.getHouses();
-        int newUnitsPlayer2 = player2.getHouses();
-        if (player1.getRice() != 0) {
-            newUnitsPlayer1 = player1.getHouses();
-            player1.setUnits(player1.getUnits() + newUnitsPlayer1);
-        }
-        if (player2.getRice() != 0) {
-            newUnitsPlayer2 = player2.getHouses();
-            player2.setUnits(player2.getUnits() + newUnitsPlayer2);
-        }
-        logger.debug("New units added: Player 1=" + newUnitsPlayer1 + ", Player 2=" + newUnitsPlayer2);
-
-
-        player1.saveResources();
-        player2.saveResources();
-        logger.debug("Player resources saved.");
-
-        gameDay++;
-
-        boolean player1Won = false;
-        if (isGameOver()) {
-            if (player1.getUnits() == 0 || player2.getUnits() == 0) {
-                player1Won = player1.getUnits() > player2.getUnits();
-            } else {
-                player1Won = player1.controlledTiles() > player2.controlledTiles();
-            }
-            logger.info("Game over! Player 1 won: " + player1Won);
-            showEndGameWindow(player1Won);
-        }
-
-        logger.info("End of day " + gameDay + " completed.");
-    }
-
     /**
      * Проверяет, завершена ли игра.
      * Игра заканчивается, если у одного из игроков закончились крестьяне и дома, или если один из игроков захватил 50% и более клеток.
      * @return True, если игра завершена, false - в противном случае.
      */
     public boolean isGameOver() {
-        if ((player1.getUnits() == 0 && player1.getHouses() == 0) || (player2.getUnits() == 0 && player2.getHouses() == 0)) {
-            return true;
-        } else {
-            int totalTiles = gameMap.getWidth() * gameMap.getHeight();
-            return player1.controlledTiles() >= totalTiles / 2 || player2.controlledTiles() >= totalTiles / 2;
-        }
+        return session.isGameOver();
     }
 
     /**
@@ -736,11 +987,18 @@ public class Game extends JFrame implements GameI, Serializable {
      */
     public void saveGame(String filename) throws IOException {
         logger.info("Saving game to file: " + filename);
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(player1);
-            oos.writeObject(player2);
-            oos.writeObject(gameMap);
-            oos.writeInt(gameDay);
+        GameEvents.Save event = new GameEvents.Save();
+        event.begin();
+        try {
+            SaveCatalog.write(new File(filename).toPath(), session);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.bytes = new File(filename).length();
+                event.day = session.getGameDay();
+                event.mapTiles = gameMap.getWidth() * gameMap.getHeight();
+                event.commit();
+            }
             logger.info("Game saved successfully to file: " + filename);
         } catch (IOException e) {
             logger.error("Error saving game to file " + filename + ": " + e.getMessage());
@@ -757,11 +1015,21 @@ public class Game extends JFrame implements GameI, Serializable {
      */
     public void loadGame(String filename) throws IOException, ClassNotFoundException {
         logger.info("Loading game from file: " + filename);
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            player1 = (Player) ois.readObject();
-            player2 = (Player) ois.readObject();
-            gameMap = (GameMap) ois.readObject();
-            gameDay = ois.readInt();
+        GameEvents.Load event = new GameEvents.Load();
+        event.begin();
+        try {
+            GameSession loaded = SaveCatalog.read(new File(filename).toPath());
+            GameMapI loadedMap = loaded.getGameMap();
+            int loadedDay = loaded.getGameDay();
+            setSession(loaded);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.bytes = new File(filename).length();
+                event.day = loadedDay;
+                event.mapTiles = loadedMap.getWidth() * loadedMap.getHeight();
+                event.commit();
+            }
             logger.info("Game loaded successfully from file: " + filename);
         } catch (IOException | ClassNotFoundException e) {
             logger.error("Error loading game from file " + filename + ": " + e.getMessage());
@@ -769,6 +1037,103 @@ public class Game extends JFrame implements GameI, Serializable {
         }
     }
 
+    /**
+     * Открывает каталог сохранений. При первом открытии переносит в него сохранение прежних версий.
+     * Если каталог не удается открыть, загрузка и сохранение в слоты недоступны.
+     */
+    private void openSaveCatalog() {
+        if (saveCatalog != null) {
+            return;
+        }
+        try {
+            boolean created = !new File(SAVE_DIRECTORY).exists();
+            saveCatalog = new SaveCatalog(new File(SAVE_DIRECTORY).toPath());
+            if (created) {
+                saveCatalog.importSave(new File(LEGACY_SAVE_FILE).toPath(), LEGACY_SAVE_FILE);
+            }
+        } catch (IOException e) {
+            logger.error("Error opening save catalog " + SAVE_DIRECTORY + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Показывает список сохранений из индекса каталога и возвращает выбранный слот.
+     * @param owner Родительское окно.
+     * @return Имя выбранного слота или null, если выбор отменен или сохранений нет.
+     */
+    private String chooseSave(Component owner) {
+        List<SaveInfo> saves = saveCatalog == null ? List.of() : saveCatalog.list();
+        if (saves.isEmpty()) {
+            JOptionPane.showMessageDialog(owner, "Нет сохраненных игр.", "Загрузка", JOptionPane.INFORMATION_MESSAGE);
+            return null;
+        }
+        JList<SaveInfo> list = new JList<>(saves.toArray(new SaveInfo[0]));
+        list.setSelectedIndex(0);
+        list.setVisibleRowCount(Math.min(saves.size(), 6));
+        DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected,
+                                                          boolean focused) {
+                JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, selected, focused);
+                SaveInfo info = (SaveInfo) value;
+                label.setIcon(new ImageIcon(info.getThumbnail(THUMBNAIL_SCALE)));
+                label.setText("<html><b>" + info.getSlot().replace("&", "&amp;") + "</b> - " + format.format(new Date(info.getTimestamp()))
+                        + "<br>День " + info.getDay() + ", карта " + info.getWidth() + "x" + info.getHeight()
+                        + "<br>Клетки " + info.getTiles(1) + " : " + info.getTiles(2)
+                        + ", крестьяне " + info.getUnits(1) + " : " + info.getUnits(2) + "</html>");
+                label.setIconTextGap(10);
+                return label;
+            }
+        });
+        int result = JOptionPane.showConfirmDialog(owner, new JScrollPane(list), "Загрузить игру",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION || list.getSelectedValue() == null) {
+            return null;
+        }
+        return list.getSelectedValue().getSlot();
+    }
+
+    /**
+     * Запрашивает имя слота для сохранения. По умолчанию предлагается слот текущей партии.
+     * @param owner Родительское окно.
+     * @return Имя слота или null, если сохранение отменено.
+     */
+    private String askSaveSlot(Component owner) {
+        String slot = saveSlot != null ? saveSlot : "Игра " + new SimpleDateFormat("yyyy-MM-dd HH-mm").format(new Date());
+        while (true) {
+            slot = (String) JOptionPane.showInputDialog(owner, "Имя сохранения:", "Сохранение",
+                    JOptionPane.QUESTION_MESSAGE, null, null, slot);
+            if (slot == null) {
+                return null;
+            }
+            slot = slot.strip();
+            try {
+                SaveCatalog.checkSlot(slot);
+                return slot;
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(owner, "Недопустимое имя сохранения.", "Сохранение",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Сохраняет игру в слот каталога сохранений и записывает сведения о ней в индекс.
+     * Если каталог недоступен, игра сохраняется в файл прежнего единственного сохранения.
+     * @param slot Имя слота.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void saveToSlot(String slot) throws IOException {
+        if (saveCatalog == null) {
+            saveGame(LEGACY_SAVE_FILE);
+            return;
+        }
+        saveGame(saveCatalog.getFile(slot).toString());
+        saveCatalog.add(slot, session);
+        saveSlot = slot;
+    }
+
     /**
      * Отображает диалоговое окно с графиками изменения ресурсов игроков за время игры.
      * Использует библиотеку JFreeChart для построения графиков.
@@ -818,6 +1183,51 @@ public class Game extends JFrame implements GameI, Serializable {
         logger.info("Resource graphs shown successfully.");
     }
 
+    /**
+     * Начинает запись повтора текущей партии в файл повтора.
+     * Ошибка создания файла не мешает игре, повтор в этом случае не записывается.
+     */
+    private void startReplay() {
+        try {
+            session.setRecorder(new ReplayRecorder(new File(REPLAY_FILE).toPath(), session, REPLAY_KEYFRAME_INTERVAL));
+        } catch (IOException e) {
+            logger.error("Error starting replay recording: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Завершает запись повтора и закрывает файл повтора.
+     */
+    private void stopReplay() {
+        ReplayRecorder recorder = session.getRecorder();
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                logger.error("Error closing replay file: " + e.getMessage());
+            }
+            session.setRecorder(null);
+        }
+    }
+
+    /**
+     * Отображает диалоговое окно просмотра повтора текущей партии.
+     */
+    public void showReplay() {
+        logger.info("Showing game replay...");
+        try {
+            ReplayRecorder recorder = session.getRecorder();
+            if (recorder != null) {
+                recorder.flush();
+            }
+            Replay replay = Replay.load(new File(REPLAY_FILE).toPath());
+            new ReplayViewer(this, replay).setVisible(true);
+        } catch (IOException e) {
+            logger.error("Error loading replay: " + e.getMessage());
+            JOptionPane.showMessageDialog(this, "Не удалось загрузить повтор игры", "Повтор", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     /**
      * Обрабатывает данные о ресурсах игрока и формирует словарь для построения графиков.
      * Преобразует список ресурсов игрока в словарь, где ключи - названия ресурсов, а значения - массивы значений ресурсов по дням.
@@ -829,7 +1239,7 @@ public class Game extends JFrame implements GameI, Serializable {
 
         Map<String, double[]> resourcesData = new HashMap<>();
         List<Map<String, Double>> playerResources = player.getResources();
-        int numDays = gameDay;
+        int numDays = session.getGameDay();
         String[] resourceNames = {"вода", "рис", "крестьяне", "дома"};
 
         for (String resourceName : resourceNames) {
@@ -0,0 +1,180 @@
+package gameClasses;
+
+import jdk.jfr.*;
+
+/**
+ * События Java Flight Recorder для игровых операций: действие человека, ход ИИ, этапы завершения дня,
+ * перерисовка карты, сохранение и загрузка игры.
+ * По умолчанию события выключены и почти ничего не стоят; включаются в файле настроек записи по имени
+ * (в JDK 17 и новее также опцией -XX:StartFlightRecording:+ricegame.DayPhase#enabled=true),
+ * после чего в записи видно, какая игровая операция вызвала сборку мусора или задержку.
+ */
+public final class GameEvents {
+    /**Категория событий игры в JFR*/
+    private static final String CATEGORY = "Rice Game";
+
+    private GameEvents() {
+    }
+
+    /**
+     * Действие человека: от нажатия кнопки действия до применения команды к карте.
+     */
+    @Name("ricegame.PlayerAction")
+    @Label("Player Action")
+    @Category(CATEGORY)
+    @Description("Human player's action applied to the map")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class PlayerAction extends Event {
+        @Label("Action")
+        public String action;
+        @Label("X")
+        public int x;
+        @Label("Y")
+        public int y;
+        @Label("Result")
+        @Description("Outcome of the action (ActionResult constant)")
+        public String result;
+        @Label("Day")
+        public int day;
+        @Label("Map Tiles")
+        public int mapTiles;
+    }
+
+    /**
+     * Ход ИИ: выбор действия стратегией и его применение к карте.
+     */
+    @Name("ricegame.AiTurn")
+    @Label("AI Turn")
+    @Category(CATEGORY)
+    @Description("AI player's turn, including the strategy's decision")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class AiTurn extends Event {
+        @Label("Strategy")
+        public String strategy;
+        @Label("Action")
+        @Description("Chosen action, or null for the legacy AI")
+        public String action;
+        @Label("Succeeded")
+        @Description("Whether the chosen action was applied; always false for the legacy AI")
+        public boolean succeeded;
+        @Label("Tiles Claimed")
+        public int tilesClaimed;
+        @Label("Day")
+        public int day;
+        @Label("Map Tiles")
+        public int mapTiles;
+    }
+
+    /**
+     * Один этап завершения игрового дня.
+     */
+    @Name("ricegame.DayPhase")
+    @Label("Day Phase")
+    @Category(CATEGORY)
+    @Description("One phase of the end of a game day")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class DayPhase extends Event {
+        @Label("Phase")
+        public String phase;
+        @Label("Day")
+        public int day;
+        @Label("Map Tiles")
+        public int mapTiles;
+        @Label("Controlled Tiles")
+        @Description("Tiles controlled by both players")
+        public int controlledTiles;
+
+        /**
+         * Начинает отсчет первого этапа дня.
+         * @param day Номер завершаемого дня.
+         * @return Событие этапа.
+         */
+        static DayPhase start(int day) {
+            DayPhase event = new DayPhase();
+            event.day = day;
+            event.begin();
+            return event;
+        }
+
+        /**
+         * Завершает этап и начинает отсчет следующего этапа того же дня.
+         * @param phase Название завершенного этапа.
+         * @param session Партия.
+         * @return Событие следующего этапа.
+         */
+        DayPhase next(String phase, GameSession session) {
+            end();
+            if (shouldCommit()) {
+                GameMapI gameMap = session.getGameMap();
+                this.phase = phase;
+                mapTiles = gameMap.getWidth() * gameMap.getHeight();
+                controlledTiles = session.getPlayer1().controlledTiles() + session.getPlayer2().controlledTiles();
+                commit();
+            }
+            return start(day);
+        }
+    }
+
+    /**
+     * Обновление игровой карты в окне игры.
+     */
+    @Name("ricegame.MapRedraw")
+    @Label("Map Redraw")
+    @Category(CATEGORY)
+    @Description("Redraw of the map buttons in the game window")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class MapRedraw extends Event {
+        @Label("Tiles Redrawn")
+        @Description("Tiles whose icon changed")
+        public int tilesRedrawn;
+        @Label("Labels Changed")
+        @Description("Required-unit labels whose text changed")
+        public int labelsChanged;
+        @Label("Day")
+        public int day;
+    }
+
+    /**
+     * Сохранение игры в файл.
+     */
+    @Name("ricegame.Save")
+    @Label("Game Save")
+    @Category(CATEGORY)
+    @Description("Game saved to a file")
+    @Enabled(false)
+    public static final class Save extends Event {
+        @Label("File")
+        public String file;
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+        @Label("Day")
+        public int day;
+        @Label("Map Tiles")
+        public int mapTiles;
+    }
+
+    /**
+     * Загрузка игры из файла.
+     */
+    @Name("ricegame.Load")
+    @Label("Game Load")
+    @Category(CATEGORY)
+    @Description("Game loaded from a file")
+    @Enabled(false)
+    public static final class Load extends Event {
+        @Label("File")
+        public String file;
+        @Label("Bytes Read")
+        @DataAmount
+        public long bytes;
+        @Label("Day")
+        public int day;
+        @Label("Map Tiles")
+        public int mapTiles;
+    }
+}
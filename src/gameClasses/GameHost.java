@@ -0,0 +1,458 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Контейнер, в котором одновременно живут тысячи партий без графического интерфейса.
+ * Партии продвигаются общим пулом потоков, когда наступает их время хода, а партии, к которым долго
+ * не обращались извне, выгружаются на диск в указанный каталог. Выгруженная партия загружается обратно в память
+ * только при обращении к ней; ее ходы делаются в потоке пула, который читает партию из файла и записывает обратно,
+ * поэтому количество партий в памяти ограничено партиями, к которым обращались, и размером пула.
+ * Партии играются на разреженных картах ChunkedGameMap, у которых неизменяемое количество юнитов для захвата клеток
+ * вычисляется из зерна и не хранится в каждой партии. Партия, файл которой не удалось прочитать, удаляется из контейнера,
+ * а файл остается в каталоге для разбора.
+ * Реализует интерфейс GameHostI.
+ */
+public class GameHost implements GameHostI {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(GameHost.class);
+    /**Партии, находящиеся в памяти*/
+    private final Map<Long, GameSession> resident = new HashMap<>();
+    /**Время последнего обращения извне (создание, getGame) ко всем партиям, в том числе выгруженным*/
+    private final Map<Long, Long> lastAccess = new HashMap<>();
+    /**Время, начиная с которого незавершенная партия должна сделать следующий ход*/
+    private final Map<Long, Long> readyTime = new HashMap<>();
+    /**Идентификаторы партий, выгруженных на диск*/
+    private final Set<Long> evicted = new HashSet<>();
+    /**Идентификаторы партий, которые сейчас продвигаются пулом потоков*/
+    private final Set<Long> stepping = new HashSet<>();
+    /**Пул потоков для продвижения партий*/
+    private final ExecutorService workers;
+    /**Каталог для выгруженных партий*/
+    private final Path swapDirectory;
+    /**Промежуток между ходами одной партии, мс*/
+    private final long stepInterval;
+    /**Идентификатор следующей партии*/
+    private long nextId = 1;
+    /**Файл истории ресурсов партий или null, если история не записывается*/
+    private ResourceHistoryWriter historyWriter;
+    /**Двоичный журнал событий партий или null, если события не записываются*/
+    private EventLog eventLog;
+
+    /**
+     * Создает контейнер партий, в котором каждая незавершенная партия делает ход при каждом вызове stepReadyGames.
+     * @param workerCount Количество потоков, продвигающих партии.
+     * @param swapDirectory Каталог, в который выгружаются неиспользуемые партии.
+     * @throws IOException Если каталог не удалось создать.
+     */
+    public GameHost(int workerCount, Path swapDirectory) throws IOException {
+        this(workerCount, swapDirectory, 0);
+    }
+
+    /**
+     * Создает контейнер партий.
+     * @param workerCount Количество потоков, продвигающих партии.
+     * @param swapDirectory Каталог, в который выгружаются неиспользуемые партии.
+     * @param stepInterval Промежуток между ходами одной партии, мс.
+     * @throws IOException Если каталог не удалось создать.
+     */
+    public GameHost(int workerCount, Path swapDirectory, long stepInterval) throws IOException {
+        if (stepInterval < 0) {
+            throw new IllegalArgumentException("Negative step interval: " + stepInterval);
+        }
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.swapDirectory = swapDirectory;
+        this.stepInterval = stepInterval;
+        Files.createDirectories(swapDirectory);
+        logger.info("Game host started with " + workerCount + " workers, step interval " + stepInterval
+                + " ms, swap directory: " + swapDirectory);
+    }
+
+    /**
+     * Создает новую партию на разреженной карте и размещает ее в памяти контейнера.
+     * @param mapSize Размер игровой карты.
+     * @param seed Зерно генератора случайных чисел карты.
+     * @return Идентификатор партии.
+     */
+    public synchronized long createGame(int mapSize, long seed) {
+        long id = nextId++;
+        GameSession session = new GameSession(new ChunkedGameMap(mapSize, seed), seed);
+        attachHistory(id, session);
+        session.setEventLog(eventLog, id);
+        long now = System.currentTimeMillis();
+        resident.put(id, session);
+        lastAccess.put(id, now);
+        readyTime.put(id, now);
+        return id;
+    }
+
+    /**
+     * Возвращает партию по идентификатору, при необходимости загружая ее с диска.
+     * Если партия в этот момент делает ход, метод дожидается окончания хода.
+     * @param id Идентификатор партии.
+     * @return Партия или null, если партии с таким идентификатором нет.
+     * @throws IOException Если возникает ошибка ввода-вывода при загрузке партии; партия при этом удаляется из контейнера.
+     */
+    public synchronized GameSession getGame(long id) throws IOException {
+        while (stepping.contains(id)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for game session " + id);
+            }
+        }
+        GameSession session = resident.get(id);
+        if (session == null && evicted.contains(id)) {
+            try {
+                session = pageIn(id);
+            } catch (IOException e) {
+                drop(id);
+                throw e;
+            }
+        }
+        if (session != null) {
+            lastAccess.put(id, System.currentTimeMillis());
+        }
+        return session;
+    }
+
+    /**
+     * Продвигает на один день незавершенные партии, время хода которых наступило, в том числе выгруженные на диск.
+     * Партии обрабатываются параллельно пулом потоков ограниченного размера; во время их ходов монитор контейнера свободен,
+     * а обращения к продвигаемым партиям ждут окончания хода. Выгруженная партия читается из файла, делает ход
+     * и записывается обратно в потоке пула, не оставаясь в памяти. Партия, файл которой не удалось прочитать или записать,
+     * удаляется из контейнера. Ход партии не считается обращением к ней, поэтому не откладывает ее выгрузку.
+     * @return Количество партий, сделавших ход.
+     * @throws InterruptedException Если ожидание пула потоков было прервано.
+     */
+    public int stepReadyGames() throws InterruptedException {
+        List<Long> ids = new ArrayList<>();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            ResourceHistoryWriter writer = historyWriter;
+            EventLog log = eventLog;
+            for (Map.Entry<Long, Long> entry : readyTime.entrySet()) {
+                long id = entry.getKey();
+                if (entry.getValue() > now || stepping.contains(id)) {
+                    continue;
+                }
+                GameSession session = resident.get(id);
+                ids.add(id);
+                if (session != null) {
+                    tasks.add(() -> step(session));
+                } else {
+                    tasks.add(() -> stepSwapped(id, writer, log));
+                }
+            }
+            stepping.addAll(ids);
+        }
+        Set<Long> finished = new HashSet<>();
+        Set<Long> lost = new HashSet<>();
+        int stepped = 0;
+        try {
+            List<Future<Boolean>> futures = workers.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                long id = ids.get(i);
+                try {
+                    if (futures.get(i).get()) {
+                        finished.add(id);
+                    }
+                    stepped++;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        logger.error("Error swapping game session " + id + ":", e.getCause());
+                        lost.add(id);
+                    } else {
+                        logger.error("Error stepping game session " + id + ":", e.getCause());
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                long next = System.currentTimeMillis() + stepInterval;
+                for (long id : ids) {
+                    if (lost.contains(id)) {
+                        drop(id);
+                    } else if (finished.contains(id)) {
+                        readyTime.remove(id);
+                    } else {
+                        readyTime.put(id, next);
+                    }
+                }
+                stepping.removeAll(ids);
+                notifyAll();
+            }
+        }
+        logger.debug("Stepped " + stepped + " game sessions.");
+        return stepped;
+    }
+
+    /**
+     * Выгружает на диск партии, к которым не обращались извне дольше указанного времени.
+     * Партии, которые в этот момент делают ход, не выгружаются.
+     * @param idleMillis Время простоя в миллисекундах.
+     * @return Количество выгруженных партий.
+     * @throws IOException Если возникает ошибка ввода-вывода при записи партии.
+     */
+    public synchronized int evictIdle(long idleMillis) throws IOException {
+        long deadline = System.currentTimeMillis() - idleMillis;
+        List<Long> idle = new ArrayList<>();
+        for (long id : resident.keySet()) {
+            if (lastAccess.get(id) < deadline && !stepping.contains(id)) {
+                idle.add(id);
+            }
+        }
+        for (long id : idle) {
+            pageOut(id);
+        }
+        if (!idle.isEmpty()) {
+            logger.info("Evicted " + idle.size() + " idle game sessions to disk.");
+        }
+        return idle.size();
+    }
+
+    /**
+     * Оценивает объем памяти, занимаемой партией.
+     * @param id Идентификатор партии.
+     * @return Приблизительный размер партии в байтах или 0, если партия выгружена на диск или не существует.
+     */
+    public synchronized long getMemoryUsage(long id) {
+        GameSession session = resident.get(id);
+        return session == null ? 0 : session.estimateMemory();
+    }
+
+    /**
+     * Возвращает количество партий, находящихся в памяти.
+     * @return Количество партий в памяти.
+     */
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * Возвращает количество партий, выгруженных на диск.
+     * @return Количество выгруженных партий.
+     */
+    public synchronized int getEvictedCount() {
+        return evicted.size();
+    }
+
+    /**
+     * Включает запись истории ресурсов всех партий контейнера в общий файл.
+     * Журналы партий, уже записывающих историю, дописываются и заменяются новыми.
+     * @param writer Файл истории ресурсов или null, чтобы прекратить запись.
+     * @throws IOException Если возникает ошибка ввода-вывода при дописывании журналов.
+     */
+    public synchronized void setHistoryWriter(ResourceHistoryWriter writer) throws IOException {
+        awaitStepping();
+        for (Map.Entry<Long, GameSession> entry : resident.entrySet()) {
+            finishHistory(entry.getValue());
+        }
+        historyWriter = writer;
+        for (Map.Entry<Long, GameSession> entry : resident.entrySet()) {
+            attachHistory(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Включает запись действий и завершения дней всех партий контейнера в общий журнал событий.
+     * Журнал не закрывается контейнером.
+     * @param eventLog Журнал событий или null, чтобы прекратить запись.
+     */
+    public synchronized void setEventLog(EventLog eventLog) {
+        awaitStepping();
+        this.eventLog = eventLog;
+        for (Map.Entry<Long, GameSession> entry : resident.entrySet()) {
+            entry.getValue().setEventLog(eventLog, entry.getKey());
+        }
+    }
+
+    /**
+     * Дописывает журналы истории ресурсов находящихся в памяти партий и останавливает пул потоков контейнера.
+     */
+    public synchronized void shutdown() {
+        awaitStepping();
+        for (GameSession session : resident.values()) {
+            try {
+                finishHistory(session);
+            } catch (IOException e) {
+                logger.error("Error writing resource history: " + e.getMessage());
+            }
+        }
+        workers.shutdown();
+        logger.info("Game host stopped.");
+    }
+
+    /**
+     * Дожидается окончания ходов всех продвигаемых партий. Прерывание не останавливает ожидание,
+     * а сохраняется в признаке прерывания потока.
+     */
+    private void awaitStepping() {
+        boolean interrupted = false;
+        while (!stepping.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Сериализует партию в файл и удаляет ее из памяти.
+     * @param id Идентификатор партии.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void pageOut(long id) throws IOException {
+        GameSession session = resident.get(id);
+        finishHistory(session);
+        writeSwapped(id, session);
+        resident.remove(id);
+        evicted.add(id);
+        logger.debug("Game session " + id + " paged out.");
+    }
+
+    /**
+     * Загружает выгруженную партию с диска обратно в память. Время последнего обращения к партии не меняется.
+     * @param id Идентификатор партии.
+     * @return Загруженная партия.
+     * @throws IOException Если возникает ошибка ввода-вывода или файл партии поврежден.
+     */
+    private GameSession pageIn(long id) throws IOException {
+        GameSession session = readSwapped(id);
+        Files.delete(swapFile(id));
+        attachHistory(id, session);
+        session.setEventLog(eventLog, id);
+        evicted.remove(id);
+        resident.put(id, session);
+        logger.debug("Game session " + id + " paged in.");
+        return session;
+    }
+
+    /**
+     * Делает ход партии в потоке пула и дописывает журнал истории ресурсов, если партия завершилась.
+     * @param session Партия.
+     * @return True, если партия завершилась.
+     */
+    private static boolean step(GameSession session) {
+        session.step();
+        if (session.isGameOver()) {
+            try {
+                finishHistory(session);
+            } catch (IOException e) {
+                logger.error("Error writing resource history: " + e.getMessage());
+            }
+        }
+        return session.isGameOver();
+    }
+
+    /**
+     * Делает ход выгруженной партии в потоке пула: читает партию из файла, подключает к ней журналы на время хода
+     * и записывает обратно. Монитор контейнера при этом не захватывается; обращения к партии ждут окончания хода.
+     * @param id Идентификатор партии.
+     * @param writer Файл истории ресурсов или null.
+     * @param log Журнал событий или null.
+     * @return True, если партия завершилась.
+     * @throws IOException Если возникает ошибка ввода-вывода или файл партии поврежден.
+     */
+    private boolean stepSwapped(long id, ResourceHistoryWriter writer, EventLog log) throws IOException {
+        GameSession session = readSwapped(id);
+        session.setHistory(writer == null ? null : writer.open(id));
+        session.setEventLog(log, id);
+        boolean finished = step(session);
+        try {
+            finishHistory(session);
+        } catch (IOException e) {
+            logger.error("Error writing resource history: " + e.getMessage());
+        }
+        writeSwapped(id, session);
+        return finished;
+    }
+
+    /**
+     * Читает выгруженную партию из файла, не удаляя файл.
+     * @param id Идентификатор партии.
+     * @return Партия.
+     * @throws IOException Если возникает ошибка ввода-вывода или файл партии поврежден.
+     */
+    private GameSession readSwapped(long id) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(swapFile(id))))) {
+            return (GameSession) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Swapped game session " + id + " is corrupted", e);
+        }
+    }
+
+    /**
+     * Записывает партию в файл. Партия пишется во временный файл, который затем заменяет прежний,
+     * поэтому при ошибке записи на диске остается предыдущее состояние партии.
+     * @param id Идентификатор партии.
+     * @param session Партия.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void writeSwapped(long id, GameSession session) throws IOException {
+        Path temporary = swapDirectory.resolve("game-" + id + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            oos.writeObject(session);
+        }
+        Files.move(temporary, swapFile(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Удаляет из контейнера партию, которую не удалось загрузить или записать. Файл партии, если он есть,
+     * остается в каталоге выгрузки.
+     * @param id Идентификатор партии.
+     */
+    private void drop(long id) {
+        resident.remove(id);
+        evicted.remove(id);
+        readyTime.remove(id);
+        lastAccess.remove(id);
+        logger.error("Game session " + id + " dropped, swap file kept: " + swapFile(id));
+    }
+
+    /**
+     * Подключает к партии журнал истории ресурсов, если история записывается.
+     * @param id Идентификатор партии.
+     * @param session Партия.
+     */
+    private void attachHistory(long id, GameSession session) {
+        session.setHistory(historyWriter == null ? null : historyWriter.open(id));
+    }
+
+    /**
+     * Записывает накопленные дни журнала истории ресурсов партии и отключает журнал.
+     * @param session Партия.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private static void finishHistory(GameSession session) throws IOException {
+        if (session.getHistory() != null) {
+            session.getHistory().finish();
+            session.setHistory(null);
+        }
+    }
+
+    /**
+     * Возвращает путь к файлу выгруженной партии.
+     * @param id Идентификатор партии.
+     * @return Путь к файлу.
+     */
+    private Path swapFile(long id) {
+        return swapDirectory.resolve("game-" + id + ".ser");
+    }
+}
@@ -0,0 +1,72 @@
+package gameClasses;
+
+import java.io.IOException;
+
+/**
+ * Контейнер, в котором одновременно живут тысячи партий без графического интерфейса.
+ * Партии продвигаются общим пулом потоков, когда наступает их время хода, а долго не используемые партии
+ * выгружаются на диск и загружаются обратно в память при обращении; выгруженные партии делают ходы, оставаясь на диске.
+ */
+public interface GameHostI {
+    /**
+     * Создает новую партию и размещает ее в памяти контейнера.
+     * @param mapSize Размер игровой карты.
+     * @param seed Зерно генератора случайных чисел карты.
+     * @return Идентификатор партии.
+     */
+    long createGame(int mapSize, long seed);
+    /**
+     * Возвращает партию по идентификатору, при необходимости загружая ее с диска.
+     * Если партия в этот момент делает ход, метод дожидается окончания хода.
+     * @param id Идентификатор партии.
+     * @return Партия или null, если партии с таким идентификатором нет.
+     * @throws IOException Если возникает ошибка ввода-вывода при загрузке партии.
+     */
+    GameSession getGame(long id) throws IOException;
+    /**
+     * Продвигает на один день незавершенные партии, время хода которых наступило, в том числе выгруженные на диск,
+     * которые после хода остаются выгруженными. Партии обрабатываются параллельно пулом потоков ограниченного размера.
+     * Ход партии не считается обращением к ней.
+     * @return Количество партий, сделавших ход.
+     * @throws InterruptedException Если ожидание пула потоков было прервано.
+     */
+    int stepReadyGames() throws InterruptedException;
+    /**
+     * Выгружает на диск партии, к которым не обращались извне дольше указанного времени.
+     * @param idleMillis Время простоя в миллисекундах.
+     * @return Количество выгруженных партий.
+     * @throws IOException Если возникает ошибка ввода-вывода при записи партии.
+     */
+    int evictIdle(long idleMillis) throws IOException;
+    /**
+     * Оценивает объем памяти, занимаемой партией.
+     * @param id Идентификатор партии.
+     * @return Приблизительный размер партии в байтах или 0, если партия выгружена на диск или не существует.
+     */
+    long getMemoryUsage(long id);
+    /**
+     * Возвращает количество партий, находящихся в памяти.
+     * @return Количество партий в памяти.
+     */
+    int getResidentCount();
+    /**
+     * Возвращает количество партий, выгруженных на диск.
+     * @return Количество выгруженных партий.
+     */
+    int getEvictedCount();
+    /**
+     * Дописывает журналы истории ресурсов находящихся в памяти партий и останавливает пул потоков контейнера.
+     */
+    void shutdown();
+    /**
+     * Включает запись истории ресурсов всех партий контейнера в общий файл.
+     * @param writer Файл истории ресурсов или null, чтобы прекратить запись.
+     * @throws IOException Если возникает ошибка ввода-вывода при дописывании журналов.
+     */
+    void setHistoryWriter(ResourceHistoryWriter writer) throws IOException;
+    /**
+     * Включает запись действий и завершения дней всех партий контейнера в общий журнал событий.
+     * @param eventLog Журнал событий или null, чтобы прекратить запись.
+     */
+    void setEventLog(EventLog eventLog);
+}
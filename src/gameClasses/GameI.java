@@ -70,7 +70,7 @@ public interface GameI {
     void createActionButtons(JPanel panel);
     /**
      * Обновляет отображение игровой карты в соответствии с текущим состоянием клетки.
-     * Перерисовывает все клетки карты, обновляя иконки.
+     * Меняет иконки и надписи только у изменившихся клеток.
      * Обрабатывает возможные ошибки при обновлении клетки.
      */
     void updateMap();
@@ -80,11 +80,22 @@ public interface GameI {
      */
     void updatePlayerCharacteristics();
     /**
-     * Выводит сообщение в консольное окно игры - окно событий.
-     * Использует SwingUtilities.invokeLater для безопасного обновления UI из другого потока.
+     * Выводит сообщение партии в консольное окно игры - окно событий.
+     * Может вызываться из любого потока: окно событий добавляет сообщения пачкой раз за кадр.
+     * Номер дня передается вызывающим, потому что партию читает только поток игровой логики.
+     * @param day Номер дня, к которому относится сообщение.
      * @param message Сообщение для вывода.
      */
-    void printToConsole(String message);
+    void printToConsole(int day, String message);
+    /**
+     * Выводит сообщение о действии игрока в окно событий.
+     * Может вызываться из любого потока: окно событий добавляет сообщения пачкой раз за кадр.
+     * @param day Номер дня, к которому относится сообщение.
+     * @param player Номер игрока (1 или 2, 0 - сообщение партии).
+     * @param type Тип действия или null для прочих сообщений.
+     * @param message Сообщение для вывода.
+     */
+    void printToConsole(int day, int player, PlayerCommand.Type type, String message);
     /**
      * Отображает диалоговое окно с правилами игры.
      * Создает диалоговое окно, содержащее текст с правилами игры, и делает его видимым.
@@ -96,19 +107,6 @@ public interface GameI {
      * @param playerWon Флаг, указывающий на победу игрока (true) или поражение (false).
      */
     void showEndGameWindow(boolean playerWon);
-    /**
-     * Выполняет ход игрока (или AI).
-     * Если это ход AI, то AI принимает решение о действии (захват территории, другие действия или сбор воды) в зависимости от ресурсов и ситуации на карте.
-     * Результат хода выводится в консольное окно событий.
-     * @param player Игрок, чей ход выполняется.
-     */
-    void playerTurn(Player player);
-    /**
-     * Завершает игровой день.
-     * Увеличивает количество риса на карте, собирается рис, крестьяне потребляют его, дома производят новых крестьян.
-     * Проверяет условие окончания игры и отображает окно с результатом, если игра закончена.
-     */
-    void endOfDay();
     /**
      * Проверяет, завершена ли игра.
      * Игра заканчивается, если у одного из игроков закончились крестьяне и дома, или если один из игроков захватил 50% и более клеток.
@@ -135,6 +133,19 @@ public interface GameI {
      * Использует библиотеку JFreeChart для построения графиков.
      */
     void showGraphs();
+    /**
+     * Отображает диалоговое окно просмотра повтора текущей партии.
+     * Повтор читается из файла, который записывается во время игры.
+     */
+    void showReplay();
+    /**
+     * Отменяет последний ход: возвращает карту, ресурсы игроков и номер дня к предыдущему ходу.
+     */
+    void undoTurn();
+    /**
+     * Повторяет отмененный ход.
+     */
+    void redoTurn();
     /**
      * Обрабатывает данные о ресурсах игрока и формирует словарь для построения графиков.
      * Преобразует список ресурсов игрока в словарь, где ключи - названия ресурсов, а значения - массивы значений ресурсов по дням.
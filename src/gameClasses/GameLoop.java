@@ -0,0 +1,587 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.swing.*;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поток игровой логики окна игры.
+ * Действия человека и другие изменения партии (отмена и повтор хода) ставятся в очередь и выполняются по порядку
+ * в отдельном потоке: действие человека, ход ИИ, завершение дня и запись хода в историю. Поток Swing партию
+ * не читает и не меняет: после каждой задачи ему передается неизменяемый результат Result с сообщениями,
+ * ресурсами игроков и только изменившимися клетками, поэтому работа потока Swing не зависит от размера карты.
+ * Ход ИИ можно прервать методом cancelAi, а ход выполнения текущей задачи узнать методами getPhase и getProgress.
+ * Пока очередь пуста и человек думает, AiSpeculator заранее рассчитывает ответы ИИ на его вероятные действия.
+ */
+public class GameLoop implements TileChangeListener, Closeable {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(GameLoop.class);
+    /**Время ожидания завершения текущей задачи при закрытии, мс*/
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+    /**Емкость кэша заранее рассчитанных ответов ИИ*/
+    private static final int SPECULATION_CACHE = 64;
+    /**Этап действия человека*/
+    public static final String PHASE_PLAYER = "Ход игрока";
+    /**Этап хода ИИ*/
+    public static final String PHASE_AI = "Ход ИИ";
+    /**Этап завершения дня*/
+    public static final String PHASE_END_OF_DAY = "Завершение дня";
+    /**Этап прочих задач*/
+    public static final String PHASE_TASK = "Обновление партии";
+
+    /**
+     * Получатель результатов задач. Вызывается в потоке Swing в порядке выполнения задач.
+     */
+    public interface Listener {
+        /**
+         * Вызывается после выполнения задачи.
+         * @param result Результат задачи.
+         */
+        void published(Result result);
+    }
+
+    /**
+     * Новое состояние клетки для отображения.
+     */
+    public static final class TileUpdate {
+        /**Координата x клетки*/
+        private final int x;
+        /**Координата y клетки*/
+        private final int y;
+        /**Строка состояния клетки для первого игрока*/
+        private final String state;
+        /**Количество крестьян для освоения клетки*/
+        private final int requiredUnits;
+
+        TileUpdate(int x, int y, String state, int requiredUnits) {
+            this.x = x;
+            this.y = y;
+            this.state = state;
+            this.requiredUnits = requiredUnits;
+        }
+
+        /**
+         * Возвращает координату x клетки.
+         * @return Координата x.
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * Возвращает координату y клетки.
+         * @return Координата y.
+         */
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * Возвращает строку состояния клетки для первого игрока, как GameMapI.getStateString.
+         * @return Строка состояния.
+         */
+        public String getState() {
+            return state;
+        }
+
+        /**
+         * Возвращает количество крестьян для освоения клетки.
+         * @return Количество крестьян.
+         */
+        public int getRequiredUnits() {
+            return requiredUnits;
+        }
+    }
+
+    /**
+     * Ресурсы игрока для отображения.
+     */
+    public static final class Stats {
+        /**Количество клеток игрока*/
+        private final int controlledTiles;
+        /**Количество воды*/
+        private final double water;
+        /**Количество риса*/
+        private final double rice;
+        /**Количество крестьян*/
+        private final int units;
+        /**Количество домов*/
+        private final int houses;
+
+        /**
+         * Запоминает текущие ресурсы игрока.
+         * @param player Игрок.
+         */
+        Stats(Player player) {
+            controlledTiles = player.controlledTiles();
+            water = player.getWater();
+            rice = player.getRice();
+            units = player.getUnits();
+            houses = player.getHouses();
+        }
+
+        /**
+         * Возвращает количество клеток игрока.
+         * @return Количество клеток.
+         */
+        public int getControlledTiles() {
+            return controlledTiles;
+        }
+
+        /**
+         * Возвращает количество воды.
+         * @return Количество воды.
+         */
+        public double getWater() {
+            return water;
+        }
+
+        /**
+         * Возвращает количество риса.
+         * @return Количество риса.
+         */
+        public double getRice() {
+            return rice;
+        }
+
+        /**
+         * Возвращает количество крестьян.
+         * @return Количество крестьян.
+         */
+        public int getUnits() {
+            return units;
+        }
+
+        /**
+         * Возвращает количество домов.
+         * @return Количество домов.
+         */
+        public int getHouses() {
+            return houses;
+        }
+    }
+
+    /**
+     * Неизменяемый результат задачи потока логики.
+     */
+    public static final class Result {
+        /**Номер дня после задачи*/
+        private final int day;
+        /**Номер дня, в который сделан ход; для прочих задач - номер дня после задачи*/
+        private final int turnDay;
+        /**Команда человека или null, если задача не была ходом*/
+        private final PlayerCommand command;
+        /**Результат действия человека или null, если задача не была ходом*/
+        private final ActionResult outcome;
+        /**Сообщение о выполненной задаче; может быть null*/
+        private final String message;
+        /**Ход ИИ или null*/
+        private final BotScheduler.Turn aiTurn;
+        /**Изменившиеся клетки*/
+        private final List<TileUpdate> tiles;
+        /**Ресурсы первого игрока*/
+        private final Stats player1;
+        /**Ресурсы второго игрока*/
+        private final Stats player2;
+        /**Закончена ли игра*/
+        private final boolean gameOver;
+        /**Победил ли первый игрок*/
+        private final boolean player1Won;
+        /**Есть ли ход для отмены*/
+        private final boolean canUndo;
+        /**Есть ли ход для повтора*/
+        private final boolean canRedo;
+
+        private Result(GameSession session, TurnHistory history, int turnDay, PlayerCommand command,
+                       ActionResult outcome, String message, BotScheduler.Turn aiTurn, List<TileUpdate> tiles) {
+            this.day = session.getGameDay();
+            this.turnDay = turnDay;
+            this.command = command;
+            this.outcome = outcome;
+            this.message = message;
+            this.aiTurn = aiTurn;
+            this.tiles = Collections.unmodifiableList(tiles);
+            this.player1 = new Stats(session.getPlayer1());
+            this.player2 = new Stats(session.getPlayer2());
+            this.gameOver = session.isGameOver();
+            this.player1Won = gameOver && session.isPlayer1Winner();
+            this.canUndo = history.canUndo();
+            this.canRedo = history.canRedo();
+        }
+
+        /**
+         * Возвращает номер дня после задачи.
+         * @return Номер дня.
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * Возвращает номер дня, в который сделан ход, для сообщений о ходе в окне событий.
+         * @return Номер дня хода или, если задача не была ходом, номер дня после задачи.
+         */
+        public int getTurnDay() {
+            return turnDay;
+        }
+
+        /**
+         * Возвращает команду человека.
+         * @return Команда или null, если задача не была ходом человека.
+         */
+        public PlayerCommand getCommand() {
+            return command;
+        }
+
+        /**
+         * Возвращает результат действия человека.
+         * @return Результат или null, если задача не была ходом человека.
+         */
+        public ActionResult getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Возвращает сообщение о действии человека или о выполненной задаче.
+         * Текст действия формируется при вызове, в потоке Swing.
+         * @return Сообщение или null.
+         */
+        public String getMessage() {
+            return outcome != null ? outcome.getText() : message;
+        }
+
+        /**
+         * Возвращает ход ИИ.
+         * @return Ход ИИ или null, если ИИ не ходил.
+         */
+        public BotScheduler.Turn getAiTurn() {
+            return aiTurn;
+        }
+
+        /**
+         * Возвращает клетки, изменившиеся за задачу.
+         * @return Неизменяемый список новых состояний клеток.
+         */
+        public List<TileUpdate> getTiles() {
+            return tiles;
+        }
+
+        /**
+         * Возвращает ресурсы первого игрока.
+         * @return Ресурсы игрока.
+         */
+        public Stats getPlayer1() {
+            return player1;
+        }
+
+        /**
+         * Возвращает ресурсы второго игрока.
+         * @return Ресурсы игрока.
+         */
+        public Stats getPlayer2() {
+            return player2;
+        }
+
+        /**
+         * Проверяет, закончена ли игра.
+         * @return True, если игра закончена.
+         */
+        public boolean isGameOver() {
+            return gameOver;
+        }
+
+        /**
+         * Проверяет, победил ли первый игрок.
+         * @return True, если игра закончена победой первого игрока.
+         */
+        public boolean isPlayer1Won() {
+            return player1Won;
+        }
+
+        /**
+         * Проверяет, есть ли ход для отмены.
+         * @return True, если ход можно отменить.
+         */
+        public boolean canUndo() {
+            return canUndo;
+        }
+
+        /**
+         * Проверяет, есть ли ход для повтора.
+         * @return True, если ход можно повторить.
+         */
+        public boolean canRedo() {
+            return canRedo;
+        }
+    }
+
+    /**Партия*/
+    private final GameSession session;
+    /**История ходов партии*/
+    private final TurnHistory history;
+    /**Планировщик ходов ИИ*/
+    private final BotScheduler botScheduler;
+    /**Стратегия ИИ второго игрока*/
+    private final Strategy aiStrategy;
+    /**Получатель результатов*/
+    private final Listener listener;
+    /**Очередь задач потока логики*/
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    /**Поток логики*/
+    private final ExecutorService executor;
+    /**Количество задач в очереди и выполняемых*/
+    private final AtomicInteger pending = new AtomicInteger();
+    /**Высота карты*/
+    private final int height;
+    /**Отметки клеток, изменившихся за текущую задачу*/
+    private final BitSet changed = new BitSet();
+    /**Клетки, изменившиеся за текущую задачу, в порядке изменения*/
+    private final List<int[]> changedTiles = new ArrayList<>();
+    /**Текущий этап задачи или null, если поток простаивает*/
+    private volatile String phase;
+    /**Заблаговременный расчет ответов ИИ*/
+    private final AiSpeculator speculator;
+
+    /**
+     * Создает поток логики для партии. Партию после этого можно менять только задачами потока логики.
+     * @param session Партия.
+     * @param history История ходов партии.
+     * @param botScheduler Планировщик ходов ИИ.
+     * @param aiStrategy Стратегия ИИ второго игрока.
+     * @param listener Получатель результатов задач.
+     */
+    public GameLoop(GameSession session, TurnHistory history, BotScheduler botScheduler, Strategy aiStrategy,
+                    Listener listener) {
+        this.session = session;
+        this.history = history;
+        this.botScheduler = botScheduler;
+        this.aiStrategy = aiStrategy;
+        this.listener = listener;
+        this.height = session.getGameMap().getHeight();
+        session.getGameMap().addTileChangeListener(this);
+        int threads = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+        speculator = new AiSpeculator(aiStrategy, threads, SPECULATION_CACHE);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, task -> {
+            Thread thread = new Thread(task, "game-logic");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> speculator.prepare(session));
+    }
+
+    /**
+     * Ставит в очередь ход человека: его действие, ход ИИ и завершение дня.
+     * После окончания игры ходы пропускаются.
+     * @param command Команда первого игрока.
+     */
+    public void submit(PlayerCommand command) {
+        enqueue(() -> {
+            if (session.isGameOver()) {
+                logger.debug("Game is over, command ignored: " + command);
+                return null;
+            }
+            return playTurn(command);
+        });
+    }
+
+    /**
+     * Ставит в очередь задачу, меняющую партию, например отмену хода.
+     * @param task Задача; возвращает сообщение для окна событий или null.
+     */
+    public void execute(Callable<String> task) {
+        enqueue(() -> {
+            phase = PHASE_TASK;
+            String message = task.call();
+            return new Result(session, history, session.getGameDay(), null, null, message, null, drainChanges());
+        });
+    }
+
+    /**
+     * Выполняет задачу в потоке логики после задач очереди и ждет ее окончания,
+     * например чтобы сохранить партию, пока она не меняется.
+     * @param task Задача.
+     * @param <T> Тип результата задачи.
+     * @return Результат задачи.
+     * @throws ExecutionException Если задача бросила исключение.
+     * @throws InterruptedException Если ожидание прервано.
+     */
+    public <T> T call(Callable<T> task) throws ExecutionException, InterruptedException {
+        return executor.submit(task).get();
+    }
+
+    /**
+     * Сообщает о клетке, выбранной человеком, чтобы заранее рассчитать ответы ИИ на действия на ней.
+     * Может вызываться из любого потока.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void hint(int x, int y) {
+        speculator.hint(x, y);
+    }
+
+    /**
+     * Возвращает заблаговременный расчет ответов ИИ, например для его статистики.
+     * @return Расчет ответов.
+     */
+    public AiSpeculator getSpeculator() {
+        return speculator;
+    }
+
+    /**
+     * Прерывает идущий ход ИИ; вместо него ИИ набирает воду.
+     * @return True, если ход ИИ шел и был прерван.
+     */
+    public boolean cancelAi() {
+        return botScheduler.cancel(aiStrategy);
+    }
+
+    /**
+     * Проверяет, есть ли задачи в очереди или выполняемые.
+     * @return True, если поток логики занят.
+     */
+    public boolean isBusy() {
+        return pending.get() > 0;
+    }
+
+    /**
+     * Возвращает текущий этап задачи.
+     * @return Название этапа или null, если поток простаивает.
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * Возвращает ход выполнения хода ИИ - долю израсходованного им времени хода.
+     * @return Доля от 0 до 1 или 0, если ИИ сейчас не ходит.
+     */
+    public double getProgress() {
+        return botScheduler.getProgress(aiStrategy);
+    }
+
+    /**
+     * Прерывает ход ИИ, отменяет задачи очереди и ждет окончания текущей задачи.
+     * Поток логики не прерывается, чтобы прерывание не закрыло открытые им файлы (повтор, журнал событий).
+     * После закрытия партию снова можно читать и менять в любом потоке.
+     */
+    public void close() {
+        List<Runnable> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        pending.addAndGet(-dropped.size());
+        executor.shutdown();
+        cancelAi();
+        speculator.invalidate();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Game logic thread did not stop in " + CLOSE_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        speculator.close();
+        session.getGameMap().removeTileChangeListener(this);
+    }
+
+    @Override
+    public void tileChanged(int x, int y) {
+        int index = x * height + y;
+        if (!changed.get(index)) {
+            changed.set(index);
+            changedTiles.add(new int[]{x, y});
+        }
+    }
+
+    /**
+     * Ставит задачу в очередь; результат задачи передается получателю в потоке Swing.
+     * @param task Задача; возвращает результат или null, если показывать нечего.
+     */
+    private void enqueue(Callable<Result> task) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            speculator.invalidate();
+            try {
+                Result result = task.call();
+                if (result != null) {
+                    SwingUtilities.invokeLater(() -> listener.published(result));
+                }
+            } catch (Exception e) {
+                logger.error("Error in game logic task", e);
+            } finally {
+                phase = null;
+                if (pending.decrementAndGet() == 0 && !executor.isShutdown()) {
+                    speculator.prepare(session);
+                }
+            }
+        });
+    }
+
+    /**
+     * Выполняет ход: действие человека, ход ИИ, завершение дня и запись хода в историю.
+     * @param command Команда первого игрока.
+     * @return Результат хода.
+     */
+    private Result playTurn(PlayerCommand command) {
+        Player player1 = session.getPlayer1();
+        int turnDay = session.getGameDay();
+        int x = command.getX();
+        int y = command.getY();
+        phase = PHASE_PLAYER;
+        GameEvents.PlayerAction event = new GameEvents.PlayerAction();
+        event.begin();
+        ActionResult outcome = ActionResult.of(command.getType(), session.apply(player1, command.getType(), x, y));
+        event.end();
+        if (event.shouldCommit()) {
+            GameMapI gameMap = session.getGameMap();
+            event.action = command.getType().name();
+            event.x = x;
+            event.y = y;
+            event.result = outcome.name();
+            event.day = session.getGameDay();
+            event.mapTiles = gameMap.getWidth() * gameMap.getHeight();
+            event.commit();
+        }
+        logger.debug("Player 1 action " + command + ", Result: " + outcome);
+
+        phase = PHASE_AI;
+        PlayerCommand reply = speculator.take(session);
+        BotScheduler.Turn aiTurn = reply != null
+                ? botScheduler.playTurn(session, session.getPlayer2(), aiStrategy, reply)
+                : botScheduler.playTurn(session, session.getPlayer2(), aiStrategy);
+
+        phase = PHASE_END_OF_DAY;
+        logger.debug("End of day " + session.getGameDay() + " started.");
+        session.endOfDay();
+        history.record();
+        if (session.isGameOver()) {
+            logger.info("Game over! Player 1 won: " + session.isPlayer1Winner());
+        }
+        return new Result(session, history, turnDay, command, outcome, null, aiTurn, drainChanges());
+    }
+
+    /**
+     * Возвращает новые состояния клеток, изменившихся с прошлой задачи, и сбрасывает отметки.
+     * @return Новые состояния клеток.
+     */
+    private List<TileUpdate> drainChanges() {
+        GameMapI gameMap = session.getGameMap();
+        Player player1 = session.getPlayer1();
+        List<TileUpdate> tiles = new ArrayList<>(changedTiles.size());
+        for (int[] tile : changedTiles) {
+            tiles.add(new TileUpdate(tile[0], tile[1], gameMap.getStateString(tile[0], tile[1], player1),
+                    gameMap.getTile(tile[0], tile[1]).getRequiredUnits()));
+        }
+        changed.clear();
+        changedTiles.clear();
+        return tiles;
+    }
+}
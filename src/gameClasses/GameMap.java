@@ -3,24 +3,53 @@ package gameClasses;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
  * Представляет игровую карту в игре.
  * Карта представляет собой двумерный массив клеток, каждая из которых имеет определенное количество необходимых юнитов для захвата.
  * Класс также отслеживает уровень риса на каждой клетке и состояния клеток (захвачена, полита, построен дом и т.д.)
+ * Рост риса считается лениво, см. AbstractGameMap.
  * Реализует интерфейс GameMapI и сериализуем для сохранения/загрузки игры.
  */
-public class GameMap implements GameMapI, Serializable {
+public class GameMap extends AbstractGameMap {
+    private static final long serialVersionUID = 3518180443863983918L;
     /**
      * Логгер для записи сообщений в лог-файл.
      */
     private static final Logger logger = LogManager.getLogger(GameMap.class);
+    /**Приблизительный размер клетки в памяти вместе со ссылкой на нее, уровнем риса, днем записи риса и состоянием, байт*/
+    private static final long TILE_BYTES = 52;
+    /**
+     * Сохраняемые поля карты. Уровни риса сохраняются в фиксированной точке в поле rice;
+     * поле riceLevels с уровнями double есть только в сохранениях, сделанных до перехода на фиксированную точку.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("map", Tile[][].class),
+            new ObjectStreamField("riceLevels", double[][].class),
+            new ObjectStreamField("rice", int[][].class),
+            new ObjectStreamField("riceDays", int[][].class)
+    };
     /**Массив клеток игрового поля*/
     private Tile[][] map;
-    /**Массив уровней риса*/
-    private double[][] riceLevels;
+    /**Массив уровней риса в фиксированной точке*/
+    private int[][] riceLevels;
+    /**Номера дней сбора урожая, на которые записан уровень риса клеток, или -1, если уровень записан явно*/
+    private int[][] riceDays;
+    /**
+     * Состояния клеток для RiceKernel (номер владельца в tileOwners плюс 1 и флаг полива); дублируют клетки map
+     * в плоских массивах, не сохраняются и строятся заново при загрузке
+     */
+    private transient int[][] tileStates;
+    /**Владельцы клеток в порядке номеров tileStates*/
+    private transient List<Player> tileOwners;
 
     /**
      * Создает игровую карту заданного размера.
@@ -29,63 +58,162 @@ public class GameMap implements GameMapI, Serializable {
      * @param size Размер карты (квадратная карта size x size).
      */
     public GameMap(int size) {
+        this(size, new Random());
+    }
+
+    /**
+     * Создает игровую карту заданного размера с фиксированным зерном генератора случайных чисел.
+     * Две карты с одинаковыми размером и зерном совпадают клетка в клетку.
+     * @param size Размер карты (квадратная карта size x size).
+     * @param seed Зерно генератора случайных чисел.
+     */
+    public GameMap(int size, long seed) {
+        this(size, new Random(seed));
+    }
+
+    /**
+     * Создает игровую карту заданного размера, используя указанный генератор случайных чисел.
+     * @param size Размер карты (квадратная карта size x size).
+     * @param random Генератор случайных чисел для разброса количества необходимых юнитов.
+     */
+    private GameMap(int size, Random random) {
         logger.info("Creating game map with size: " + size);
 
         map = new Tile[size][size];
-        riceLevels = new double[size][size];
+        riceLevels = new int[size][size];
+        riceDays = new int[size][size];
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
-                riceLevels[i][j] = 1;
+                riceLevels[i][j] = RiceAccount.ONE;
+                riceDays[i][j] = -1;
             }
         }
+        tileStates = new int[size][size];
+        tileOwners = new ArrayList<>();
         logger.debug("Initialized rice levels.");
 
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
-                map[i][j] = new Tile(0);
+                map[i][j] = new Tile(baseRequiredUnits(i, j, size) + random.nextInt(3));
             }
         }
-        logger.debug("Initialized map tiles.");
-
-        Random random = new Random();
-        int currentValue = 0;
+        logger.info("Game map created successfully.");
+    }
 
-        for (int i = 0; i < size; i++) {
-            int p = currentValue - 1;
-            for (int j = 0; j < size - currentValue; j++) {
-                int requiredUnits = currentValue + j + random.nextInt(3);
-                map[i][j].setRequiredUnits(requiredUnits);
-                p += 1;
+    /**
+     * Создает игровую карту по процедурному генератору: количество юнитов для захвата и начальные уровни риса
+     * берутся из генератора, блоки клеток заполняются параллельно.
+     * @param generator Генератор карты.
+     */
+    public GameMap(MapGenerator generator) {
+        int size = generator.getSize();
+        logger.info("Creating game map with size: " + size + " from generator with seed: " + generator.getSeed());
+        map = new Tile[size][size];
+        riceLevels = new int[size][size];
+        riceDays = new int[size][size];
+        tileStates = new int[size][size];
+        tileOwners = new ArrayList<>();
+        generator.generate((x, y, width, height, requiredUnits, rice) -> {
+            for (int i = 0; i < width; i++) {
+                for (int j = 0; j < height; j++) {
+                    map[x + i][y + j] = new Tile(requiredUnits[i * height + j]);
+                    riceLevels[x + i][y + j] = rice[i * height + j];
+                    riceDays[x + i][y + j] = -1;
+                }
             }
-            for (int k = size - currentValue; k < size; k++) {
-                p -= 1;
-                int requiredUnits = p + random.nextInt(3);
-                map[i][k].setRequiredUnits(requiredUnits);
+        });
+        logger.info("Game map created successfully.");
+    }
+
+    /**
+     * Создает копию карты, заменяя владельцев клеток копиями игроков.
+     * @param source Исходная карта.
+     * @param players Копии игроков по исходным игрокам.
+     */
+    private GameMap(GameMap source, Map<Player, Player> players) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        map = new Tile[width][height];
+        riceLevels = new int[width][];
+        riceDays = new int[width][];
+        tileStates = new int[width][];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                Tile tile = source.map[i][j];
+                Tile copy = new Tile(tile.getRequiredUnits());
+                if (tile.getOwner() != null) {
+                    copy.setOccupied(players.get(tile.getOwner()));
+                }
+                copy.setWatered(tile.isWatered());
+                copy.setHoused(tile.isHoused());
+                map[i][j] = copy;
             }
-            currentValue += 1;
+            riceLevels[i] = source.riceLevels[i].clone();
+            riceDays[i] = source.riceDays[i].clone();
+            tileStates[i] = source.tileStates[i].clone();
         }
-        logger.info("Game map created successfully.");
+        tileOwners = new ArrayList<>();
+        for (Player owner : source.tileOwners) {
+            tileOwners.add(players.get(owner));
+        }
+        copyRiceAccounts(source, players);
     }
 
     /**
-     * Увеличивает количество риса на клетках, контролируемых указанным игроком.
-     * Рис растет на 1 единицу в день, если клетка не полита, и на 2 единицы, если полита.
-     * Максимальный уровень риса на клетке ограничен 3 единицами.
-     * @param player Игрок, контролирующий клетки.
+     * Восстанавливает карту из сохранения.
+     * В сохранениях, сделанных до ленивого учета риса, уровни риса записаны явно,
+     * поэтому все клетки игроков становятся явными и переходят к ленивому учету после первого сбора урожая.
+     * Уровни риса из сохранений до перехода на фиксированную точку переводятся в нее.
+     * @param in Поток чтения.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     * @throws ClassNotFoundException Если класс объекта не найден.
      */
-    public void growRice(Player player) {
-        for (int i = 0; i < getWidth(); i++) {
-            for (int j = 0; j < getHeight(); j++) {
-                if (isControlled(i, j, player)) {
-                    double currentRice = getRiceAt(i, j);
-                    if (isWatered(i, j)) {
-                        setRiceAt(i, j, Math.min(currentRice + 2, 3));
-                    } else {
-                        setRiceAt(i, j, Math.min(currentRice + 1, 2));
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        map = (Tile[][]) fields.get("map", null);
+        riceLevels = (int[][]) fields.get("rice", null);
+        riceDays = (int[][]) fields.get("riceDays", null);
+        if (riceLevels == null) {
+            double[][] legacy = (double[][]) fields.get("riceLevels", null);
+            riceLevels = new int[legacy.length][];
+            for (int i = 0; i < legacy.length; i++) {
+                riceLevels[i] = new int[legacy[i].length];
+                for (int j = 0; j < legacy[i].length; j++) {
+                    riceLevels[i][j] = FixedPoint.ofTile(legacy[i][j]);
+                }
+            }
+        }
+        if (riceDays == null) {
+            riceDays = new int[getWidth()][getHeight()];
+            for (int i = 0; i < getWidth(); i++) {
+                for (int j = 0; j < getHeight(); j++) {
+                    riceDays[i][j] = -1;
+                    if (map[i][j].getOwner() != null) {
+                        tileAcquired(i, j, map[i][j].getOwner());
                     }
                 }
             }
         }
+        tileStates = new int[getWidth()][getHeight()];
+        tileOwners = new ArrayList<>();
+        for (int i = 0; i < getWidth(); i++) {
+            for (int j = 0; j < getHeight(); j++) {
+                updateTileState(i, j);
+            }
+        }
+    }
+
+    /**
+     * Сохраняет карту с уровнями риса в фиксированной точке.
+     * @param out Поток записи.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("map", map);
+        fields.put("rice", riceLevels);
+        fields.put("riceDays", riceDays);
+        out.writeFields();
     }
 
     /**
@@ -102,58 +230,16 @@ public class GameMap implements GameMapI, Serializable {
         }
         if (player.getUnits() >= map[x][y].getRequiredUnits()) {
             map[x][y].setOccupied(player);
+            updateTileState(x, y);
+            tileAcquired(x, y, player);
             player.setUnits(player.getUnits() - map[x][y].getRequiredUnits());
+            fireTileChanged(x, y);
             return true;
         } else {
             return false;
         }
     }
 
-    /**
-     * Возвращает строку, описывающую состояние клетки.
-     * Строка содержит информацию о том, занята ли клетка, кто его владелец, есть ли на ней дом и полит ли рис.
-     * @param x Координата x клетки.
-     * @param y Координата y клетки.
-     * @param player Игрок, относительно которого определяется состояние клетки.
-     * @return Строка, описывающая состояние клетки. Возможные значения: EMPTY, RICE1, RICE2, RICEWATER1, RICEWATER2, HOUSE1, HOUSE2, HOUSEWATER1, HOUSEWATER2.
-     */
-    public String getStateString(int x, int y, Player player) {
-        Tile tile = map[x][y];
-        if (tile.isOccupied()){
-            if (tile.getOwner() == player){
-                if (tile.isHoused()){
-                    if (tile.isWatered()){
-                        return "HOUSEWATER1";
-                    } else {
-                        return "HOUSE1";
-                    }
-                } else {
-                    if (tile.isWatered()){
-                        return "RICEWATER1";
-                    } else {
-                        return"RICE1";
-                    }
-                }
-            } else {
-                if (tile.isHoused()){
-                    if (tile.isWatered()){
-                        return "HOUSEWATER2";
-                    } else {
-                        return "HOUSE2";
-                    }
-                } else {
-                    if (tile.isWatered()){
-                        return "RICEWATER2";
-                    } else {
-                        return "RICE2";
-                    }
-                }
-            }
-        } else {
-            return "EMPTY";
-        }
-    }
-
     /**
      * Устанавливает начальную клетку для игрока.
      * @param x Координата x клетки.
@@ -161,7 +247,11 @@ public class GameMap implements GameMapI, Serializable {
      * @param player Игрок.
      */
     public void setStartTile(int x, int y, Player player) {
+        releaseTile(x, y);
         map[x][y].setOccupied(player);
+        updateTileState(x, y);
+        tileAcquired(x, y, player);
+        fireTileChanged(x, y);
     }
 
     /**
@@ -174,24 +264,16 @@ public class GameMap implements GameMapI, Serializable {
         return x >= 0 && x < map.length && y >= 0 && y < map[0].length;
     }
 
-    /**
-     * Проверяет, контролирует ли указанный игрок клетку.
-     * @param x Координата x клетки.
-     * @param y Координата y клетки.
-     * @param player Игрок.
-     * @return True, если игрок контролирует клетку, false - иначе.
-     */
-    public boolean isControlled(int x, int y, Player player){
-        return map[x][y].getOwner() == player;
-    }
-
     /**
      * Поливает клетку.
      * @param x Координата x клетки.
      * @param y Координата y клетки.
      */
     public void waterTile(int x, int y){
+        materialize(x, y);
         map[x][y].setWatered(true);
+        updateTileState(x, y);
+        fireTileChanged(x, y);
     }
 
     /**
@@ -201,6 +283,7 @@ public class GameMap implements GameMapI, Serializable {
      */
     public void houseTile(int x, int y){
         map[x][y].setHoused(true);
+        fireTileChanged(x, y);
     }
 
     /**
@@ -240,32 +323,102 @@ public class GameMap implements GameMapI, Serializable {
     }
 
     /**
-     * Возвращает количество риса на клетке.
+     * Возвращает клетку по координатам.
      * @param x Координата x клетки.
      * @param y Координата y клетки.
-     * @return Количество риса на клетке.
+     * @return Клетка.
      */
-    public double getRiceAt(int x, int y){
-        return riceLevels[x][y];
+    public Tile getTile(int x, int y){
+        return map[x][y];
     }
 
     /**
-     * Устанавливает количество риса на клетке.
-     * @param x Координата x клетки.
-     * @param y Координата y клетки.
-     * @param amount Количество риса.
+     * Оценивает объем памяти, занимаемой картой.
+     * @return Приблизительный размер карты в байтах.
      */
-    public void setRiceAt(int x, int y, double amount){
+    public long estimateMemory() {
+        return (long) getWidth() * getHeight() * TILE_BYTES;
+    }
+
+    protected Player ownerAt(int x, int y) {
+        return map[x][y].getOwner();
+    }
+
+    protected int storedRice(int x, int y) {
+        return riceLevels[x][y];
+    }
+
+    protected void setStoredRice(int x, int y, int amount) {
         riceLevels[x][y] = amount;
     }
 
+    protected int riceDay(int x, int y) {
+        return riceDays[x][y];
+    }
+
+    protected void setRiceDay(int x, int y, int day) {
+        riceDays[x][y] = day;
+    }
+
+    protected void setTileState(int x, int y, Player owner, boolean watered, boolean housed) {
+        if (owner == null) {
+            map[x][y].release();
+        } else {
+            map[x][y].setOccupied(owner);
+        }
+        map[x][y].setWatered(watered);
+        map[x][y].setHoused(housed);
+        updateTileState(x, y);
+    }
+
+    protected void riceColumn(int x, int[] out) {
+        System.arraycopy(riceLevels[x], 0, out, 0, getHeight());
+        for (int owner = 1; owner <= tileOwners.size(); owner++) {
+            RiceAccount account = riceAccount(tileOwners.get(owner - 1));
+            RiceKernel.advance(riceLevels[x], riceDays[x], tileStates[x], 0, getHeight(), owner, account.days,
+                    account.grown, out);
+        }
+    }
+
     /**
-     * Возвращает клетку по координатам.
+     * Обновляет состояние клетки для RiceKernel по клетке map, регистрируя нового владельца при первой встрече.
      * @param x Координата x клетки.
      * @param y Координата y клетки.
-     * @return Клетка.
      */
-    public Tile getTile(int x, int y){
-        return map[x][y];
+    private void updateTileState(int x, int y) {
+        Player owner = map[x][y].getOwner();
+        int number = 0;
+        if (owner != null) {
+            number = tileOwners.indexOf(owner) + 1;
+            if (number == 0) {
+                tileOwners.add(owner);
+                number = tileOwners.size();
+            }
+        }
+        tileStates[x][y] = number << RiceKernel.OWNER_SHIFT | (map[x][y].isWatered() ? RiceKernel.WATERED : 0);
+    }
+
+    protected void replayOccupiedTiles(TileChangeListener listener) {
+        for (int i = 0; i < getWidth(); i++) {
+            for (int j = 0; j < getHeight(); j++) {
+                if (map[i][j].getOwner() != null) {
+                    listener.tileChanged(i, j);
+                }
+            }
+        }
+    }
+
+    protected GameMap copy(Map<Player, Player> players) {
+        return new GameMap(this, players);
+    }
+
+    protected void materializeAll(Player player) {
+        for (int i = 0; i < getWidth(); i++) {
+            for (int j = 0; j < getHeight(); j++) {
+                if (riceDays[i][j] >= 0 && map[i][j].getOwner() == player) {
+                    materialize(i, j);
+                }
+            }
+        }
     }
 }
@@ -13,6 +13,13 @@ public interface GameMapI {
      * @param player Игрок, контролирующий клетки.
      */
     void growRice(Player player);
+    /**
+     * Собирает урожай риса с клеток, контролируемых указанным игроком.
+     * С каждой клетки собирается весь рис, а на клетке остается на 1 единицу меньше.
+     * @param player Игрок, контролирующий клетки.
+     * @return Собранный рис.
+     */
+    double harvestRice(Player player);
     /**
      * Попытка захвата клетки игроком.
      * Если клетка не занята и у игрока достаточно юнитов, клетка захватывается, и количество юнитов игрока уменьшается.
@@ -103,6 +110,17 @@ public interface GameMapI {
      * @param amount Количество риса.
      */
     void setRiceAt(int x, int y, double amount);
+    /**
+     * Восстанавливает сохраненное ранее состояние клетки, например при отмене хода.
+     * В отличие от игровых действий может освободить клетку, снять полив и убрать дом.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param owner Владелец клетки или null, если клетка не занята.
+     * @param watered Полита ли клетка.
+     * @param housed Есть ли на клетке дом.
+     * @param rice Количество риса на клетке.
+     */
+    void restoreTile(int x, int y, Player owner, boolean watered, boolean housed, double rice);
     /**
      * Возвращает клетку по координатам.
      * @param x Координата x клетки.
@@ -110,4 +128,19 @@ public interface GameMapI {
      * @return Клетка.
      */
     Tile getTile(int x, int y);
+    /**
+     * Оценивает объем памяти, занимаемой картой.
+     * @return Приблизительный размер карты в байтах.
+     */
+    long estimateMemory();
+    /**
+     * Добавляет слушателя изменений клеток.
+     * @param listener Слушатель.
+     */
+    void addTileChangeListener(TileChangeListener listener);
+    /**
+     * Удаляет слушателя изменений клеток.
+     * @param listener Слушатель.
+     */
+    void removeTileChangeListener(TileChangeListener listener);
 }
\ No newline at end of file
@@ -0,0 +1,355 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Представляет одну партию без графического интерфейса: карту, двух игроков и счетчик дней.
+ * Содержит игровую логику хода ИИ и завершения дня, которой пользуется окно игры и контейнер партий.
+ * Реализует интерфейс GameSessionI и сериализуем для выгрузки партии на диск.
+ */
+public class GameSession implements GameSessionI, Serializable {
+    private static final long serialVersionUID = -8961317755632015157L;
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(GameSession.class);
+    /**Приблизительный размер записи ресурсов игрока за один день, байт*/
+    private static final long DAY_RESOURCES_BYTES = 400;
+    /**Игроки*/
+    private Player player1, player2;
+    /**Игровая карта*/
+    private GameMapI gameMap;
+    /**Текущий день игры*/
+    private int gameDay;
+    /**Зерно генератора случайных чисел карты*/
+    private long seed;
+    /**Запись повтора партии, не сохраняется вместе с партией*/
+    private transient ReplayRecorder recorder;
+    /**Журнал истории ресурсов партии, не сохраняется вместе с партией*/
+    private transient ResourceHistoryWriter.GameLog history;
+    /**Двоичный журнал событий, не сохраняется вместе с партией*/
+    private transient EventLog eventLog;
+    /**Идентификатор партии в журнале событий*/
+    private transient long eventGameId;
+    /**Стратегия ИИ для партий без графического интерфейса*/
+    private transient Strategy aiStrategy;
+
+    /**
+     * Создает новую партию со случайным зерном карты.
+     * @param mapSize Размер игровой карты.
+     */
+    public GameSession(int mapSize) {
+        this(mapSize, new Random().nextLong());
+    }
+
+    /**
+     * Создает новую партию с заданным зерном карты.
+     * Первый игрок начинает в правом нижнем углу, второй - в левом верхнем.
+     * @param mapSize Размер игровой карты.
+     * @param seed Зерно генератора случайных чисел карты.
+     */
+    public GameSession(int mapSize, long seed) {
+        this(new GameMap(mapSize, seed), seed);
+    }
+
+    /**
+     * Создает новую партию на уже созданной карте, например, на разреженной карте большого размера.
+     * Первый игрок начинает в правом нижнем углу, второй - в левом верхнем.
+     * @param gameMap Игровая карта.
+     * @param seed Зерно генератора случайных чисел, с которым создана карта.
+     */
+    public GameSession(GameMapI gameMap, long seed) {
+        this.seed = seed;
+        this.gameMap = gameMap;
+        gameDay = 0;
+        player1 = new Player(gameMap.getWidth() - 1, gameMap.getHeight() - 1, 20, 10, 15, gameMap);
+        player2 = new Player(0, 0, 20, 10, 15, gameMap);
+        logger.info("Game session created with map size: " + gameMap.getWidth() + "x" + gameMap.getHeight() + ", seed: " + seed);
+    }
+
+    /**
+     * Создает партию из уже существующих игроков и карты, например, после загрузки сохранения.
+     * @param player1 Первый игрок.
+     * @param player2 Второй игрок.
+     * @param gameMap Игровая карта.
+     * @param gameDay Текущий день игры.
+     */
+    public GameSession(Player player1, Player player2, GameMapI gameMap, int gameDay) {
+        this.player1 = player1;
+        this.player2 = player2;
+        this.gameMap = gameMap;
+        this.gameDay = gameDay;
+    }
+
+    /**
+     * Создает независимую копию партии в памяти: карту, игроков, их планировщики расширения и номер дня.
+     * Журналы, запись повтора и стратегия ИИ не копируются, поэтому ходы на копии никуда не записываются.
+     * @return Копия партии.
+     * @throws UnsupportedOperationException Если клетки карты хранятся вне кучи, например в MappedGameMap.
+     */
+    GameSession copy() {
+        if (!(gameMap instanceof AbstractGameMap)) {
+            throw new UnsupportedOperationException("Game map " + gameMap.getClass().getSimpleName() + " cannot be copied");
+        }
+        Map<Player, Player> players = new IdentityHashMap<>();
+        players.put(player1, player1.copy());
+        players.put(player2, player2.copy());
+        AbstractGameMap mapCopy = ((AbstractGameMap) gameMap).copy(players);
+        players.get(player1).copyPlanner(player1, gameMap, mapCopy);
+        players.get(player2).copyPlanner(player2, gameMap, mapCopy);
+        GameSession copy = new GameSession(players.get(player1), players.get(player2), mapCopy, gameDay);
+        copy.seed = seed;
+        return copy;
+    }
+
+    /**
+     * Выполняет действие игрока и записывает его в журнал событий.
+     * @param player Игрок.
+     * @param type Тип действия.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Код результата (константа RESULT_* класса PlayerCommand).
+     */
+    public int apply(Player player, PlayerCommand.Type type, int x, int y) {
+        int result = player.apply(type, x, y, gameMap);
+        if (eventLog != null) {
+            eventLog.append(eventGameId, EventLog.Type.of(type), gameDay, player == player1 ? 1 : 2, x, y, result);
+        }
+        return result;
+    }
+
+    /**
+     * Завершает игровой день.
+     * Увеличивает количество риса на карте, собирается рис, крестьяне потребляют его, дома производят новых крестьян.
+     * Сохраняет ресурсы игроков и увеличивает номер дня.
+     * Завершение дня и окончание партии записываются в журнал событий.
+     * Каждый этап отмечается событием JFR GameEvents.DayPhase.
+     */
+    public void endOfDay() {
+        GameEvents.DayPhase phase = GameEvents.DayPhase.start(gameDay);
+        gameMap.growRice(player1);
+        gameMap.growRice(player2);
+        logger.debug("Rice grown for both players.");
+        phase = phase.next("growRice", this);
+
+        player1.collectRice(gameMap);
+        player2.collectRice(gameMap);
+        logger.debug("Rice collected by both players.");
+        phase = phase.next("collectRice", this);
+
+        player1.eatRice(player1.getUnits());
+        player2.eatRice(player2.getUnits());
+        logger.debug("Rice consumed by both players.");
+        phase = phase.next("eatRice", this);
+
+        int newUnitsPlayer1 = player1.getHouses();
+        int newUnitsPlayer2 = player2.getHouses();
+        if (player1.getRice() != 0) {
+            player1.setUnits(player1.getUnits() + newUnitsPlayer1);
+        }
+        if (player2.getRice() != 0) {
+            player2.setUnits(player2.getUnits() + newUnitsPlayer2);
+        }
+        logger.debug("New units added: Player 1=" + newUnitsPlayer1 + ", Player 2=" + newUnitsPlayer2);
+        phase = phase.next("newUnits", this);
+
+        player1.saveResources();
+        player2.saveResources();
+        logger.debug("Player resources saved.");
+
+        gameDay++;
+        phase = phase.next("saveResources", this);
+
+        if (recorder != null) {
+            try {
+                recorder.recordDay(gameDay);
+            } catch (IOException e) {
+                logger.error("Error recording replay, recording stopped: " + e.getMessage());
+                recorder = null;
+            }
+            phase = phase.next("recordReplay", this);
+        }
+        if (history != null) {
+            try {
+                history.recordDay(gameDay - 1, player1, player2);
+            } catch (IOException e) {
+                logger.error("Error writing resource history, export stopped: " + e.getMessage());
+                history = null;
+            }
+            phase.next("recordHistory", this);
+        }
+        if (eventLog != null) {
+            eventLog.append(eventGameId, EventLog.Type.END_OF_DAY, gameDay - 1, 0, 0, 0, PlayerCommand.RESULT_OK);
+            if (isGameOver()) {
+                eventLog.append(eventGameId, EventLog.Type.GAME_OVER, gameDay - 1, 0, 0, 0, isPlayer1Winner() ? 1 : 2);
+            }
+        }
+    }
+
+    /**
+     * Выполняет один полный день партии без участия человека: ход ИИ за обоих игроков и завершение дня.
+     * ИИ ходит стандартной стратегией, которая не формирует сообщений и сообщает действие,
+     * которое записывается в журнал событий.
+     */
+    public void step() {
+        aiMove(player1);
+        aiMove(player2);
+        endOfDay();
+    }
+
+    /**
+     * Выполняет ход стандартной стратегии ИИ за игрока в текущем потоке.
+     * @param player Игрок.
+     */
+    private void aiMove(Player player) {
+        if (aiStrategy == null) {
+            aiStrategy = new StandardStrategy();
+        }
+        SessionView view = new SessionView(this, player);
+        PlayerCommand command = aiStrategy.decide(view);
+        view.close();
+        apply(player, command.getType(), command.getX(), command.getY());
+    }
+
+    /**
+     * Проверяет, завершена ли игра.
+     * Игра заканчивается, если у одного из игроков закончились крестьяне и дома, или если один из игроков захватил 50% и более клеток.
+     * @return True, если игра завершена, false - в противном случае.
+     */
+    public boolean isGameOver() {
+        if ((player1.getUnits() == 0 && player1.getHouses() == 0) || (player2.getUnits() == 0 && player2.getHouses() == 0)) {
+            return true;
+        } else {
+            int totalTiles = gameMap.getWidth() * gameMap.getHeight();
+            return player1.controlledTiles() >= totalTiles / 2 || player2.controlledTiles() >= totalTiles / 2;
+        }
+    }
+
+    /**
+     * Определяет, победил ли первый игрок в завершенной игре.
+     * Если у одного из игроков не осталось крестьян, побеждает тот, у кого их больше, иначе - тот, у кого больше клеток.
+     * @return True, если первый игрок победил, false - иначе.
+     */
+    public boolean isPlayer1Winner() {
+        if (player1.getUnits() == 0 || player2.getUnits() == 0) {
+            return player1.getUnits() > player2.getUnits();
+        } else {
+            return player1.controlledTiles() > player2.controlledTiles();
+        }
+    }
+
+    /**
+     * Оценивает объем памяти, занимаемой партией.
+     * Учитывает карту и историю ресурсов обоих игроков.
+     * @return Приблизительный размер партии в байтах.
+     */
+    public long estimateMemory() {
+        long days = player1.getResources().size() + player2.getResources().size();
+        return gameMap.estimateMemory() + days * DAY_RESOURCES_BYTES;
+    }
+
+    /**
+     * Устанавливает запись повтора, в которую попадает каждый завершенный день.
+     * @param recorder Запись повтора или null, чтобы не записывать повтор.
+     */
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Возвращает запись повтора партии.
+     * @return Запись повтора или null, если повтор не записывается.
+     */
+    public ReplayRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Устанавливает журнал истории ресурсов, в который попадают ресурсы игроков за каждый завершенный день.
+     * @param history Журнал партии или null, чтобы не записывать историю.
+     */
+    public void setHistory(ResourceHistoryWriter.GameLog history) {
+        this.history = history;
+    }
+
+    /**
+     * Возвращает журнал истории ресурсов партии.
+     * @return Журнал партии или null, если история не записывается.
+     */
+    public ResourceHistoryWriter.GameLog getHistory() {
+        return history;
+    }
+
+    /**
+     * Устанавливает двоичный журнал, в который записываются действия игроков, завершение дня и окончание партии.
+     * @param eventLog Журнал событий или null, чтобы не записывать события.
+     * @param gameId Идентификатор партии в журнале.
+     */
+    public void setEventLog(EventLog eventLog, long gameId) {
+        this.eventLog = eventLog;
+        this.eventGameId = gameId;
+    }
+
+    /**
+     * Возвращает двоичный журнал событий партии.
+     * @return Журнал событий или null, если события не записываются.
+     */
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Возвращает первого игрока (человека).
+     * @return Первый игрок.
+     */
+    public Player getPlayer1() {
+        return player1;
+    }
+
+    /**
+     * Возвращает второго игрока (ИИ).
+     * @return Второй игрок.
+     */
+    public Player getPlayer2() {
+        return player2;
+    }
+
+    /**
+     * Возвращает игровую карту.
+     * @return Игровая карта.
+     */
+    public GameMapI getGameMap() {
+        return gameMap;
+    }
+
+    /**
+     * Возвращает текущий день игры.
+     * @return Номер дня.
+     */
+    public int getGameDay() {
+        return gameDay;
+    }
+
+    /**
+     * Устанавливает текущий день игры, например при отмене хода.
+     * @param gameDay Номер дня.
+     */
+    void setGameDay(int gameDay) {
+        this.gameDay = gameDay;
+    }
+
+    /**
+     * Возвращает зерно генератора случайных чисел, с которым создана карта.
+     * @return Зерно генератора, или 0, если партия загружена из сохранения.
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,100 @@
+package gameClasses;
+
+/**
+ * Представляет одну партию без графического интерфейса: карту, двух игроков и счетчик дней.
+ * Содержит игровую логику хода ИИ и завершения дня, которой пользуется окно игры и контейнер партий.
+ */
+public interface GameSessionI {
+    /**
+     * Выполняет действие игрока и записывает его в журнал событий.
+     * @param player Игрок.
+     * @param type Тип действия.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Код результата (константа RESULT_* класса PlayerCommand).
+     */
+    int apply(Player player, PlayerCommand.Type type, int x, int y);
+    /**
+     * Завершает игровой день.
+     * Увеличивает количество риса на карте, собирается рис, крестьяне потребляют его, дома производят новых крестьян.
+     * Сохраняет ресурсы игроков и увеличивает номер дня.
+     */
+    void endOfDay();
+    /**
+     * Выполняет один полный день партии без участия человека: ход ИИ за обоих игроков и завершение дня.
+     * Действия ИИ записываются в журнал событий.
+     */
+    void step();
+    /**
+     * Проверяет, завершена ли игра.
+     * Игра заканчивается, если у одного из игроков закончились крестьяне и дома, или если один из игроков захватил 50% и более клеток.
+     * @return True, если игра завершена, false - в противном случае.
+     */
+    boolean isGameOver();
+    /**
+     * Определяет, победил ли первый игрок в завершенной игре.
+     * @return True, если первый игрок победил, false - иначе.
+     */
+    boolean isPlayer1Winner();
+    /**
+     * Оценивает объем памяти, занимаемой партией.
+     * @return Приблизительный размер партии в байтах.
+     */
+    long estimateMemory();
+    /**
+     * Устанавливает запись повтора, в которую попадает каждый завершенный день.
+     * @param recorder Запись повтора или null, чтобы не записывать повтор.
+     */
+    void setRecorder(ReplayRecorder recorder);
+    /**
+     * Возвращает запись повтора партии.
+     * @return Запись повтора или null, если повтор не записывается.
+     */
+    ReplayRecorder getRecorder();
+    /**
+     * Устанавливает журнал истории ресурсов, в который попадают ресурсы игроков за каждый завершенный день.
+     * @param history Журнал партии или null, чтобы не записывать историю.
+     */
+    void setHistory(ResourceHistoryWriter.GameLog history);
+    /**
+     * Возвращает журнал истории ресурсов партии.
+     * @return Журнал партии или null, если история не записывается.
+     */
+    ResourceHistoryWriter.GameLog getHistory();
+    /**
+     * Устанавливает двоичный журнал, в который записываются действия игроков, завершение дня и окончание партии.
+     * @param eventLog Журнал событий или null, чтобы не записывать события.
+     * @param gameId Идентификатор партии в журнале.
+     */
+    void setEventLog(EventLog eventLog, long gameId);
+    /**
+     * Возвращает двоичный журнал событий партии.
+     * @return Журнал событий или null, если события не записываются.
+     */
+    EventLog getEventLog();
+    /**
+     * Возвращает первого игрока (человека).
+     * @return Первый игрок.
+     */
+    Player getPlayer1();
+    /**
+     * Возвращает второго игрока (ИИ).
+     * @return Второй игрок.
+     */
+    Player getPlayer2();
+    /**
+     * Возвращает игровую карту.
+     * @return Игровая карта.
+     */
+    GameMapI getGameMap();
+    /**
+     * Возвращает текущий день игры.
+     * @return Номер дня.
+     */
+    int getGameDay();
+    /**
+     * Возвращает зерно генератора случайных чисел, с которым создана карта.
+     * @return Зерно генератора.
+     */
+    long getSeed();
+}
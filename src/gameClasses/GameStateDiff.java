@@ -0,0 +1,385 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Вычисляет компактные изменения состояния партии между ходами для наблюдателей, которым не нужно перечитывать всю карту.
+ * Изменения содержат новые байты состояния изменившихся клеток (владелец, полив, дом в кодировке Replay),
+ * изменения уровней риса на клетках и изменения ресурсов игроков и кодируются числами переменной длины (varint),
+ * поэтому изменения обычного хода занимают десятки байт. Изменение номера дня может быть отрицательным, если ход был
+ * отменен, и кодируется зигзаг-кодом.
+ * Изменившиеся клетки отслеживаются через TileChangeListener, а уровни риса проверяются только на клетках,
+ * рис которых еще может меняться: недавно измененных и явных в учете риса карты.
+ * Изменения нужно вычислять между ходами, а не между ростом риса и сбором урожая.
+ */
+public class GameStateDiff implements TileChangeListener {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(GameStateDiff.class);
+    /**Количество дней без изменения риса, после которого клетка перестает проверяться*/
+    private static final int QUIET_DAYS = 2;
+    /**Отслеживаемая партия*/
+    private final GameSession session;
+    /**Состояние партии, известное получателям изменений*/
+    private final Mirror known;
+    /**Отметки проверяемых клеток*/
+    private final BitSet watched;
+    /**Проверяемые клетки*/
+    private int[] watchList = new int[16];
+    /**Количество проверяемых клеток*/
+    private int watchCount;
+    /**Последний день, в который клетка изменилась или стала проверяемой*/
+    private final int[] changedOnDay;
+
+    /**
+     * Копия состояния партии у получателя изменений: состояния клеток, уровни риса и ресурсы игроков.
+     */
+    public static final class Mirror {
+        /**Номер дня*/
+        private int day;
+        /**Высота карты*/
+        private final int height;
+        /**Состояния клеток*/
+        private final byte[] tiles;
+        /**Уровни риса на клетках*/
+        private final double[] rice;
+        /**Ресурсы игроков: по Replay.STATS_PER_PLAYER значений на игрока*/
+        private final double[] stats = new double[2 * Replay.STATS_PER_PLAYER];
+
+        /**
+         * Создает пустую копию.
+         * @param width Ширина карты.
+         * @param height Высота карты.
+         */
+        private Mirror(int width, int height) {
+            this.height = height;
+            this.tiles = new byte[width * height];
+            this.rice = new double[width * height];
+        }
+
+        /**
+         * Снимает полную копию состояния партии, например для первой синхронизации наблюдателя.
+         * @param session Партия.
+         * @return Копия состояния.
+         */
+        public static Mirror capture(GameSession session) {
+            GameMapI gameMap = session.getGameMap();
+            Mirror mirror = new Mirror(gameMap.getWidth(), gameMap.getHeight());
+            int[] rice = new int[gameMap.getHeight()];
+            for (int x = 0; x < gameMap.getWidth(); x++) {
+                AbstractGameMap.readRiceColumn(gameMap, x, rice);
+                for (int y = 0; y < gameMap.getHeight(); y++) {
+                    int index = x * mirror.height + y;
+                    mirror.tiles[index] = ReplayRecorder.encodeTile(gameMap, x, y, session.getPlayer1(), session.getPlayer2());
+                    mirror.rice[index] = FixedPoint.toDouble(rice[y]);
+                }
+            }
+            mirror.captureStats(session);
+            mirror.day = session.getGameDay();
+            return mirror;
+        }
+
+        /**
+         * Применяет изменения, вычисленные методом GameStateDiff.next.
+         * @param diff Закодированные изменения.
+         */
+        public void apply(byte[] diff) {
+            ByteBuffer in = ByteBuffer.wrap(diff);
+            day += (int) readSignedVarint(in);
+            int index = 0;
+            for (int count = (int) readVarint(in); count > 0; count--) {
+                index += (int) readVarint(in);
+                tiles[index] = in.get();
+            }
+            index = 0;
+            for (int count = (int) readVarint(in); count > 0; count--) {
+                index += (int) readVarint(in);
+                rice[index] = readValue(in, rice[index]);
+            }
+            for (int player = 0; player < 2; player++) {
+                int mask = in.get();
+                for (int resource = 0; resource < Replay.STATS_PER_PLAYER; resource++) {
+                    if ((mask & 1 << resource) != 0) {
+                        int stat = player * Replay.STATS_PER_PLAYER + resource;
+                        stats[stat] = readValue(in, stats[stat]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Возвращает номер дня.
+         * @return Номер дня.
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * Возвращает строку состояния клетки с точки зрения первого игрока, как GameMap.getStateString.
+         * @param x Координата x клетки.
+         * @param y Координата y клетки.
+         * @return Строка состояния клетки.
+         */
+        public String getStateString(int x, int y) {
+            return Replay.stateString(tiles[x * height + y]);
+        }
+
+        /**
+         * Возвращает количество риса на клетке.
+         * @param x Координата x клетки.
+         * @param y Координата y клетки.
+         * @return Количество риса.
+         */
+        public double getRiceAt(int x, int y) {
+            return rice[x * height + y];
+        }
+
+        /**
+         * Возвращает значение ресурса игрока.
+         * @param player Номер игрока: 0 - первый, 1 - второй.
+         * @param resource Номер ресурса: 0 - рис, 1 - вода, 2 - крестьяне, 3 - дома, 4 - клетки.
+         * @return Значение ресурса.
+         */
+        public double getStat(int player, int resource) {
+            return stats[player * Replay.STATS_PER_PLAYER + resource];
+        }
+
+        /**
+         * Записывает текущие ресурсы игроков партии.
+         * @param session Партия.
+         */
+        private void captureStats(GameSession session) {
+            Player[] players = {session.getPlayer1(), session.getPlayer2()};
+            for (int p = 0; p < players.length; p++) {
+                int offset = p * Replay.STATS_PER_PLAYER;
+                stats[offset] = players[p].getRice();
+                stats[offset + 1] = players[p].getWater();
+                stats[offset + 2] = players[p].getUnits();
+                stats[offset + 3] = players[p].getHouses();
+                stats[offset + 4] = players[p].controlledTiles();
+            }
+        }
+    }
+
+    /**
+     * Начинает отслеживать изменения партии от ее текущего состояния.
+     * Получатели изменений должны начинать с копии Mirror.capture, снятой в тот же момент.
+     * @param session Партия.
+     */
+    public GameStateDiff(GameSession session) {
+        this.session = session;
+        this.known = Mirror.capture(session);
+        GameMapI gameMap = session.getGameMap();
+        this.watched = new BitSet(gameMap.getWidth() * gameMap.getHeight());
+        this.changedOnDay = new int[gameMap.getWidth() * gameMap.getHeight()];
+        gameMap.addTileChangeListener(this);
+    }
+
+    /**
+     * Запоминает изменившуюся клетку до следующего вычисления изменений.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void tileChanged(int x, int y) {
+        watch(x * known.height + y);
+    }
+
+    /**
+     * Прекращает отслеживание изменений партии.
+     */
+    public void detach() {
+        session.getGameMap().removeTileChangeListener(this);
+    }
+
+    /**
+     * Вычисляет и кодирует изменения с предыдущего вызова (или с начала отслеживания).
+     * @return Закодированные изменения для Mirror.apply.
+     */
+    public byte[] next() {
+        GameMapI gameMap = session.getGameMap();
+        if (gameMap instanceof AbstractGameMap) {
+            for (Player player : new Player[]{session.getPlayer1(), session.getPlayer2()}) {
+                for (long index : ((AbstractGameMap) gameMap).riceAccount(player).explicitTiles) {
+                    watch((int) index);
+                }
+            }
+        } else {
+            for (int index = 0; index < changedOnDay.length; index++) {
+                watch(index);
+            }
+        }
+        Arrays.sort(watchList, 0, watchCount);
+
+        ByteArrayOutputStream tileChanges = new ByteArrayOutputStream();
+        ByteArrayOutputStream riceChanges = new ByteArrayOutputStream();
+        int tileCount = 0;
+        int riceCount = 0;
+        int lastTile = 0;
+        int lastRice = 0;
+        int kept = 0;
+        for (int i = 0; i < watchCount; i++) {
+            int index = watchList[i];
+            int x = index / known.height;
+            int y = index % known.height;
+            byte state = ReplayRecorder.encodeTile(gameMap, x, y, session.getPlayer1(), session.getPlayer2());
+            if (state != known.tiles[index]) {
+                writeVarint(tileChanges, index - lastTile);
+                tileChanges.write(state);
+                known.tiles[index] = state;
+                lastTile = index;
+                tileCount++;
+            }
+            double rice = gameMap.getRiceAt(x, y);
+            if (Double.compare(rice, known.rice[index]) != 0) {
+                writeVarint(riceChanges, index - lastRice);
+                writeValue(riceChanges, known.rice[index], rice);
+                known.rice[index] = rice;
+                lastRice = index;
+                riceCount++;
+                changedOnDay[index] = session.getGameDay();
+            }
+            if (session.getGameDay() - changedOnDay[index] < QUIET_DAYS) {
+                watchList[kept++] = index;
+            } else {
+                watched.clear(index);
+            }
+        }
+        watchCount = kept;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeSignedVarint(out, session.getGameDay() - known.day);
+        known.day = session.getGameDay();
+        writeVarint(out, tileCount);
+        out.writeBytes(tileChanges.toByteArray());
+        writeVarint(out, riceCount);
+        out.writeBytes(riceChanges.toByteArray());
+        double[] previous = known.stats.clone();
+        known.captureStats(session);
+        for (int player = 0; player < 2; player++) {
+            int mask = 0;
+            ByteArrayOutputStream values = new ByteArrayOutputStream();
+            for (int resource = 0; resource < Replay.STATS_PER_PLAYER; resource++) {
+                int stat = player * Replay.STATS_PER_PLAYER + resource;
+                if (Double.compare(previous[stat], known.stats[stat]) != 0) {
+                    mask |= 1 << resource;
+                    writeValue(values, previous[stat], known.stats[stat]);
+                }
+            }
+            out.write(mask);
+            out.writeBytes(values.toByteArray());
+        }
+        byte[] diff = out.toByteArray();
+        logger.debug("Game state diff for day " + known.day + ": " + tileCount + " tiles, " + riceCount
+                + " rice levels, " + diff.length + " bytes");
+        return diff;
+    }
+
+    /**
+     * Добавляет клетку в проверяемые.
+     * @param index Номер клетки.
+     */
+    private void watch(int index) {
+        changedOnDay[index] = session.getGameDay();
+        if (!watched.get(index)) {
+            watched.set(index);
+            if (watchCount == watchList.length) {
+                watchList = Arrays.copyOf(watchList, watchCount * 2);
+            }
+            watchList[watchCount++] = index;
+        }
+    }
+
+    /**
+     * Кодирует новое значение относительно старого: разность в половинах единицы, если она точно восстанавливается,
+     * иначе само значение целиком. Младший бит первого числа различает эти случаи.
+     * @param out Поток записи.
+     * @param oldValue Старое значение.
+     * @param newValue Новое значение.
+     */
+    private static void writeValue(ByteArrayOutputStream out, double oldValue, double newValue) {
+        double halves = (newValue - oldValue) * 2;
+        if (Math.abs(halves) < 1L << 52 && halves == Math.rint(halves) && oldValue + halves / 2 == newValue) {
+            long delta = (long) halves;
+            writeVarint(out, (delta << 1 ^ delta >> 63) << 1);
+        } else {
+            writeVarint(out, 1);
+            long bits = Double.doubleToRawLongBits(newValue);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        }
+    }
+
+    /**
+     * Декодирует значение, записанное writeValue.
+     * @param in Буфер чтения.
+     * @param oldValue Старое значение.
+     * @return Новое значение.
+     */
+    private static double readValue(ByteBuffer in, double oldValue) {
+        long tagged = readVarint(in);
+        if ((tagged & 1) != 0) {
+            return in.getDouble();
+        }
+        long zigzag = tagged >>> 1;
+        long delta = zigzag >>> 1 ^ -(zigzag & 1);
+        return oldValue + delta / 2.0;
+    }
+
+    /**
+     * Записывает число со знаком, например отрицательное изменение дня после отмены хода, зигзаг-кодом
+     * (0, -1, 1, -2, ... как 0, 1, 2, 3, ...), чтобы небольшие отрицательные числа занимали один байт, а не десять.
+     * @param out Поток записи.
+     * @param value Число.
+     */
+    private static void writeSignedVarint(ByteArrayOutputStream out, long value) {
+        writeVarint(out, value << 1 ^ value >> 63);
+    }
+
+    /**
+     * Читает число, записанное writeSignedVarint.
+     * @param in Буфер чтения.
+     * @return Число.
+     */
+    private static long readSignedVarint(ByteBuffer in) {
+        long zigzag = readVarint(in);
+        return zigzag >>> 1 ^ -(zigzag & 1);
+    }
+
+    /**
+     * Записывает неотрицательное число кодом переменной длины: по 7 бит в байте, старший бит - признак продолжения.
+     * @param out Поток записи.
+     * @param value Число.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Читает число, записанное writeVarint.
+     * @param in Буфер чтения.
+     * @return Число.
+     */
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package gameClasses;
+
+/**
+ * Представление партии только для чтения, которое получает стратегия бота.
+ * Состояние клеток и ресурсы описываются относительно игрока стратегии: "свои" клетки и ресурсы - его, "чужие" - соперника.
+ * Представление действительно только во время хода; после хода все методы бросают IllegalStateException.
+ */
+public interface GameView {
+    /**
+     * Возвращает ширину карты.
+     * @return Ширина карты.
+     */
+    int getWidth();
+    /**
+     * Возвращает высоту карты.
+     * @return Высота карты.
+     */
+    int getHeight();
+    /**
+     * Возвращает текущий день игры.
+     * @return Номер дня.
+     */
+    int getGameDay();
+    /**
+     * Возвращает строку состояния клетки относительно игрока стратегии, как GameMapI.getStateString.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Строка состояния клетки.
+     */
+    String getStateString(int x, int y);
+    /**
+     * Проверяет, принадлежит ли клетка игроку стратегии.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если клетка своя.
+     */
+    boolean isOwn(int x, int y);
+    /**
+     * Проверяет, свободна ли клетка.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если клетка никому не принадлежит.
+     */
+    boolean isFree(int x, int y);
+    /**
+     * Проверяет, полита ли клетка.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если клетка полита.
+     */
+    boolean isWatered(int x, int y);
+    /**
+     * Проверяет, есть ли дом на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если на клетке есть дом.
+     */
+    boolean isHoused(int x, int y);
+    /**
+     * Возвращает количество юнитов для захвата клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество необходимых юнитов.
+     */
+    int getRequiredUnits(int x, int y);
+    /**
+     * Возвращает количество риса на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество риса.
+     */
+    double getRiceAt(int x, int y);
+    /**
+     * Возвращает первую клетку самого выгодного маршрута расширения игрока стратегии (см. ExpansionPlanner).
+     * @return Координаты клетки {x, y} или null, если подходящего маршрута нет.
+     */
+    int[] getExpansionStep();
+    /**
+     * Возвращает количество риса игрока.
+     * @param own True - игрока стратегии, false - соперника.
+     * @return Количество риса.
+     */
+    double getRice(boolean own);
+    /**
+     * Возвращает количество воды игрока.
+     * @param own True - игрока стратегии, false - соперника.
+     * @return Количество воды.
+     */
+    double getWater(boolean own);
+    /**
+     * Возвращает количество юнитов игрока.
+     * @param own True - игрока стратегии, false - соперника.
+     * @return Количество юнитов.
+     */
+    int getUnits(boolean own);
+    /**
+     * Возвращает количество домов игрока.
+     * @param own True - игрока стратегии, false - соперника.
+     * @return Количество домов.
+     */
+    int getHouses(boolean own);
+    /**
+     * Возвращает количество клеток игрока.
+     * @param own True - игрока стратегии, false - соперника.
+     * @return Количество клеток.
+     */
+    int getControlledTiles(boolean own);
+}
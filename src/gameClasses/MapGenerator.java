@@ -0,0 +1,311 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Serializable;
+import java.util.stream.IntStream;
+
+/**
+ * Процедурный генератор карты на фрактальном шуме значений.
+ * Два слоя шума задают рельеф и влажность: рельеф добавляет к диагональной сложности клеток (как в GameMap) холмы
+ * в 0-2 юнита, а влажные низины становятся рисовыми полями с начальным уровнем риса от 1 до 2.
+ * Шум бесшовный: узлы решетки каждой октавы повторяются с периодом, равным размеру карты,
+ * поэтому правый край карты продолжает левый, а нижний - верхний.
+ * Клетка вычисляется только из зерна и координат, поэтому карту можно строить параллельно блоками
+ * и передавать блоки сразу в файл или разреженную карту, не создавая всю сетку в памяти.
+ */
+public final class MapGenerator implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(MapGenerator.class);
+    /**Сторона блока генерации в клетках (совпадает с блоком ChunkedGameMap)*/
+    static final int BLOCK_SIZE = ChunkedGameMap.CHUNK_SIZE;
+    /**Размер самой крупной детали рельефа в клетках*/
+    private static final int FEATURE_SIZE = 32;
+    /**Количество октав шума*/
+    private static final int OCTAVES = 4;
+    /**Наибольшая добавка холмов к количеству юнитов*/
+    private static final int HILL_UNITS = 2;
+    /**Влажность, начиная с которой клетка становится рисовым полем*/
+    private static final double FIELD_MOISTURE = 0.6;
+    /**Слой шума рельефа*/
+    private static final int ELEVATION = 0;
+    /**Слой шума влажности*/
+    private static final int MOISTURE = 1;
+
+    /**Размер карты*/
+    private final int size;
+    /**Зерно карты*/
+    private final long seed;
+
+    /**
+     * Создает генератор квадратной карты.
+     * @param size Размер карты (квадратная карта size x size).
+     * @param seed Зерно; одинаковые размер и зерно дают одинаковую карту.
+     * @throws IllegalArgumentException Если размер не положителен.
+     */
+    public MapGenerator(int size, long seed) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Map size must be positive: " + size);
+        }
+        this.size = size;
+        this.seed = seed;
+    }
+
+    /**
+     * Возвращает размер карты.
+     * @return Размер карты.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Возвращает зерно карты.
+     * @return Зерно.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Возвращает количество юнитов, необходимых для захвата клетки: диагональная сложность плюс высота холма.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество необходимых юнитов.
+     */
+    public int requiredUnits(int x, int y) {
+        return AbstractGameMap.baseRequiredUnits(x, y, size) + hill(noise(x, y, ELEVATION));
+    }
+
+    /**
+     * Возвращает начальный уровень риса клетки: 1 на сухих клетках и от 1 до 2 на рисовых полях.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Уровень риса.
+     */
+    public double getRiceAt(int x, int y) {
+        return FixedPoint.toDouble(riceLevel(x, y));
+    }
+
+    /**
+     * Возвращает начальный уровень риса клетки в фиксированной точке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Уровень риса в фиксированной точке.
+     */
+    int riceLevel(int x, int y) {
+        return riceLevel(noise(x, y, MOISTURE));
+    }
+
+    /**
+     * Вычисляет блок клеток. Результат совпадает с requiredUnits и riceLevel для каждой клетки, но значения узлов
+     * решетки вычисляются один раз на блок, а не для каждой клетки.
+     * @param x Координата x левого верхнего угла блока.
+     * @param y Координата y левого верхнего угла блока.
+     * @param width Ширина блока.
+     * @param height Высота блока.
+     * @param requiredUnits Количество юнитов для захвата клеток; клетка (x + i, y + j) имеет номер i * height + j.
+     * @param rice Начальные уровни риса в фиксированной точке.
+     */
+    void generateBlock(int x, int y, int width, int height, int[] requiredUnits, int[] rice) {
+        double[] elevation = new double[width * height];
+        double[] moisture = new double[width * height];
+        noise(x, y, width, height, ELEVATION, elevation);
+        noise(x, y, width, height, MOISTURE, moisture);
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                requiredUnits[i * height + j] = AbstractGameMap.baseRequiredUnits(x + i, y + j, size)
+                        + hill(elevation[i * height + j]);
+                rice[i * height + j] = riceLevel(moisture[i * height + j]);
+            }
+        }
+    }
+
+    /**
+     * Создает всю карту блоками BLOCK_SIZE x BLOCK_SIZE параллельно на всех ядрах и передает блоки получателю.
+     * В памяти одновременно находятся только блоки, которые вычисляются в данный момент.
+     * @param sink Получатель блоков; вызывается из нескольких потоков.
+     */
+    public void generate(TileSink sink) {
+        long start = System.nanoTime();
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks * blocks).parallel().forEach(block -> {
+            int x = block / blocks * BLOCK_SIZE;
+            int y = block % blocks * BLOCK_SIZE;
+            int width = Math.min(BLOCK_SIZE, size - x);
+            int height = Math.min(BLOCK_SIZE, size - y);
+            int[] requiredUnits = new int[width * height];
+            int[] rice = new int[width * height];
+            generateBlock(x, y, width, height, requiredUnits, rice);
+            sink.block(x, y, width, height, requiredUnits, rice);
+        });
+        logger.info("Generated " + size + "x" + size + " map in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Возвращает высоту холма по шуму рельефа.
+     * @param elevation Шум рельефа от 0 до 1.
+     * @return Добавка к количеству юнитов от 0 до HILL_UNITS.
+     */
+    private static int hill(double elevation) {
+        return Math.min((int) (elevation * (HILL_UNITS + 1)), HILL_UNITS);
+    }
+
+    /**
+     * Возвращает уровень риса по шуму влажности.
+     * @param moisture Шум влажности от 0 до 1.
+     * @return Уровень риса в фиксированной точке.
+     */
+    private static int riceLevel(double moisture) {
+        if (moisture <= FIELD_MOISTURE) {
+            return RiceAccount.ONE;
+        }
+        return RiceAccount.ONE + (int) ((moisture - FIELD_MOISTURE) / (1 - FIELD_MOISTURE) * RiceAccount.ONE);
+    }
+
+    /**
+     * Вычисляет фрактальный шум слоя для блока клеток теми же операциями, что и noise для одной клетки.
+     * @param x Координата x левого верхнего угла блока.
+     * @param y Координата y левого верхнего угла блока.
+     * @param width Ширина блока.
+     * @param height Высота блока.
+     * @param layer Слой шума.
+     * @param out Значения шума; клетка (x + i, y + j) имеет номер i * height + j.
+     */
+    private void noise(int x, int y, int width, int height, int layer, double[] out) {
+        double[] octave = new double[width * height];
+        double weight = 0.5;
+        double total = 0;
+        int cells = Math.max(1, size / FEATURE_SIZE);
+        for (int o = 0; o < OCTAVES && cells <= size; o++) {
+            valueNoise(x, y, width, height, cells, layer * OCTAVES + o, octave);
+            for (int i = 0; i < out.length; i++) {
+                out[i] += weight * octave[i];
+            }
+            total += weight;
+            weight /= 2;
+            cells *= 2;
+        }
+        for (int i = 0; i < out.length; i++) {
+            out[i] /= total;
+        }
+    }
+
+    /**
+     * Вычисляет шум значений для блока клеток: значения узлов решетки, покрывающих блок, хешируются один раз.
+     * @param x Координата x левого верхнего угла блока.
+     * @param y Координата y левого верхнего угла блока.
+     * @param width Ширина блока.
+     * @param height Высота блока.
+     * @param cells Количество ячеек решетки по каждой стороне.
+     * @param octave Номер октавы.
+     * @param out Значения шума; клетка (x + i, y + j) имеет номер i * height + j.
+     */
+    private void valueNoise(int x, int y, int width, int height, int cells, int octave, double[] out) {
+        int[] x0 = new int[width];
+        double[] fx = new double[width];
+        for (int i = 0; i < width; i++) {
+            double u = (double) (x + i) * cells / size;
+            x0[i] = (int) u;
+            fx[i] = smooth(u - x0[i]);
+        }
+        int[] y0 = new int[height];
+        double[] fy = new double[height];
+        for (int j = 0; j < height; j++) {
+            double v = (double) (y + j) * cells / size;
+            y0[j] = (int) v;
+            fy[j] = smooth(v - y0[j]);
+        }
+        int minX = x0[0];
+        int minY = y0[0];
+        int columns = x0[width - 1] - minX + 2;
+        int rows = y0[height - 1] - minY + 2;
+        double[] nodes = new double[columns * rows];
+        for (int i = 0; i < columns; i++) {
+            for (int j = 0; j < rows; j++) {
+                nodes[i * rows + j] = lattice((minX + i) % cells, (minY + j) % cells, octave);
+            }
+        }
+        for (int i = 0; i < width; i++) {
+            int column = (x0[i] - minX) * rows;
+            for (int j = 0; j < height; j++) {
+                int node = column + y0[j] - minY;
+                double top = lerp(nodes[node], nodes[node + rows], fx[i]);
+                double bottom = lerp(nodes[node + 1], nodes[node + rows + 1], fx[i]);
+                out[i * height + j] = lerp(top, bottom, fy[j]);
+            }
+        }
+    }
+
+    /**
+     * Возвращает фрактальный шум слоя в клетке: сумму октав шума значений с убывающими вдвое весами.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param layer Слой шума.
+     * @return Значение шума от 0 до 1.
+     */
+    private double noise(int x, int y, int layer) {
+        double sum = 0;
+        double weight = 0.5;
+        double total = 0;
+        int cells = Math.max(1, size / FEATURE_SIZE);
+        for (int octave = 0; octave < OCTAVES && cells <= size; octave++) {
+            sum += weight * valueNoise(x, y, cells, layer * OCTAVES + octave);
+            total += weight;
+            weight /= 2;
+            cells *= 2;
+        }
+        return sum / total;
+    }
+
+    /**
+     * Возвращает шум значений: сглаженную интерполяцию случайных значений в узлах решетки cells x cells,
+     * натянутой на карту. Узел с номером cells совпадает с узлом 0, поэтому шум повторяется с периодом size.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param cells Количество ячеек решетки по каждой стороне.
+     * @param octave Номер октавы, отличающий решетки разных октав и слоев.
+     * @return Значение шума от 0 до 1.
+     */
+    private double valueNoise(int x, int y, int cells, int octave) {
+        double u = (double) x * cells / size;
+        double v = (double) y * cells / size;
+        int x0 = (int) u;
+        int y0 = (int) v;
+        double fx = smooth(u - x0);
+        double fy = smooth(v - y0);
+        int x1 = x0 + 1 == cells ? 0 : x0 + 1;
+        int y1 = y0 + 1 == cells ? 0 : y0 + 1;
+        double top = lerp(lattice(x0, y0, octave), lattice(x1, y0, octave), fx);
+        double bottom = lerp(lattice(x0, y1, octave), lattice(x1, y1, octave), fx);
+        return lerp(top, bottom, fy);
+    }
+
+    /**
+     * Возвращает случайное значение узла решетки, полученное хешированием зерна, октавы и координат узла.
+     * @param x Координата x узла.
+     * @param y Координата y узла.
+     * @param octave Номер октавы.
+     * @return Значение от 0 до 1.
+     */
+    private double lattice(int x, int y, int octave) {
+        long h = seed + octave * 0x9E3779B97F4A7C15L;
+        h ^= (long) x << 32 | (y & 0xFFFFFFFFL);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    private static double smooth(double t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static double lerp(double a, double b, double t) {
+        return a + (b - a) * t;
+    }
+}
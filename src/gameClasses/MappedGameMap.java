@@ -0,0 +1,479 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Игровая карта, клетки которой хранятся вне кучи в отображенном в память файле.
+ * Каждой клетке соответствует запись фиксированной длины: флаги, владелец, количество необходимых юнитов,
+ * уровень риса и день записи риса. Нулевая запись означает нетронутую клетку, поэтому новый файл создается разреженным
+ * и страницы подгружаются операционной системой по мере обращения, а паузы сборщика мусора не зависят от размера карты.
+ * Файл делится на сегменты, каждый из которых отображается отдельным буфером.
+ * При сериализации сохраняются только путь к файлу, владельцы клеток и учет риса, а при загрузке файл снова отображается,
+ * поэтому сохраненная игра открывается без чтения клеток. Файл карты является ее текущим состоянием:
+ * продолжение игры после сохранения меняет его, и загружать имеет смысл только последнее сохранение.
+ */
+public class MappedGameMap extends AbstractGameMap implements Closeable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(MappedGameMap.class);
+    /**Сигнатура файла карты; файлы с записью клетки в 24 байта и рисом double имели сигнатуру 0x4D415031*/
+    static final int MAGIC = 0x4D415032;
+    /**Размер заголовка файла, байт*/
+    private static final int HEADER_BYTES = 64;
+    /**Размер записи клетки, байт*/
+    private static final int RECORD_BYTES = 16;
+    /**Смещение флагов в записи клетки*/
+    private static final int FLAGS = 0;
+    /**Смещение номера владельца в записи клетки (номер в списке владельцев плюс 1, 0 - клетка не занята)*/
+    private static final int OWNER = 1;
+    /**Смещение количества необходимых юнитов плюс 1 (0 - количество вычисляется из зерна)*/
+    private static final int REQUIRED_UNITS = 4;
+    /**Смещение дня записи риса плюс 1 (0 - уровень записан явно)*/
+    private static final int RICE_DAY = 8;
+    /**Смещение уровня риса в фиксированной точке минус одна единица (0 - уровень 1)*/
+    private static final int RICE = 12;
+    /**Флаг клетки: полита*/
+    private static final byte WATERED = 1;
+    /**Флаг клетки: построен дом*/
+    private static final byte HOUSED = 2;
+    /**Двоичный логарифм количества клеток в сегменте*/
+    private static final int SEGMENT_SHIFT = 25;
+    /**Маска номера клетки внутри сегмента*/
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    /**Путь к файлу карты*/
+    private final String file;
+    /**Размер карты*/
+    private final int size;
+    /**Зерно карты*/
+    private final long seed;
+    /**Владельцы клеток; в записи клетки хранится номер владельца в этом списке плюс 1*/
+    private final List<Player> owners = new ArrayList<>();
+    /**Канал файла карты*/
+    private transient FileChannel channel;
+    /**Отображенные сегменты файла*/
+    private transient MappedByteBuffer[] segments;
+
+    /**
+     * Создает карту, связанную с файлом. Файл отображается методом map.
+     * @param file Путь к файлу карты.
+     * @param size Размер карты.
+     * @param seed Зерно карты.
+     */
+    private MappedGameMap(Path file, int size, long seed) {
+        this.file = file.toString();
+        this.size = size;
+        this.seed = seed;
+    }
+
+    /**
+     * Создает новую карту в файле. Существующий файл перезаписывается.
+     * Клетки не записываются: файл создается разреженным, а количество юнитов для захвата вычисляется из зерна.
+     * @param file Путь к файлу карты.
+     * @param size Размер карты (квадратная карта size x size).
+     * @param seed Зерно карты.
+     * @return Карта.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public static MappedGameMap create(Path file, int size, long seed) throws IOException {
+        MappedGameMap gameMap = new MappedGameMap(file, size, seed);
+        gameMap.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(size).putLong(seed).rewind();
+        gameMap.channel.write(header, 0);
+        gameMap.map();
+        logger.info("Created mapped game map " + file + " with size: " + size + ", seed: " + seed);
+        return gameMap;
+    }
+
+    /**
+     * Создает новую карту в файле по процедурному генератору. Существующий файл перезаписывается.
+     * Блоки клеток вычисляются параллельно и записываются сразу в отображенный файл, минуя кучу.
+     * Блоки не пересекаются, поэтому потоки генератора пишут в разные записи файла без синхронизации.
+     * @param file Путь к файлу карты.
+     * @param generator Генератор карты.
+     * @return Карта.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public static MappedGameMap create(Path file, MapGenerator generator) throws IOException {
+        MappedGameMap gameMap = create(file, generator.getSize(), generator.getSeed());
+        generator.generate((x, y, width, height, requiredUnits, rice) -> {
+            for (int i = 0; i < width; i++) {
+                for (int j = 0; j < height; j++) {
+                    long offset = gameMap.offset(x + i, y + j);
+                    gameMap.putInt(offset + REQUIRED_UNITS, requiredUnits[i * height + j] + 1);
+                    gameMap.putInt(offset + RICE, rice[i * height + j] - RiceAccount.ONE);
+                }
+            }
+        });
+        logger.info("Generated game map into " + file);
+        return gameMap;
+    }
+
+    /**
+     * Создает карту в файле, копируя в нее клетки другой карты: владельцев, полив, дома, количество юнитов и уровни риса.
+     * Учет риса копируемой карты не переносится, поэтому весь рис на клетках записывается явно.
+     * @param file Путь к файлу карты.
+     * @param source Копируемая квадратная карта.
+     * @return Карта.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public static MappedGameMap copyOf(Path file, GameMapI source) throws IOException {
+        MappedGameMap gameMap = create(file, source.getWidth(), 0);
+        for (int x = 0; x < gameMap.size; x++) {
+            for (int y = 0; y < gameMap.size; y++) {
+                Tile tile = source.getTile(x, y);
+                long offset = gameMap.offset(x, y);
+                gameMap.putInt(offset + REQUIRED_UNITS, tile.getRequiredUnits() + 1);
+                gameMap.setStoredRice(x, y, FixedPoint.ofTile(source.getRiceAt(x, y)));
+                byte flags = 0;
+                if (tile.isWatered()) {
+                    flags |= WATERED;
+                }
+                if (tile.isHoused()) {
+                    flags |= HOUSED;
+                }
+                gameMap.putByte(offset + FLAGS, flags);
+                if (tile.getOwner() != null) {
+                    gameMap.putByte(offset + OWNER, gameMap.ownerIndex(tile.getOwner()));
+                    gameMap.tileAcquired(x, y, tile.getOwner());
+                }
+            }
+        }
+        logger.info("Copied game map into " + file);
+        return gameMap;
+    }
+
+    /**
+     * Восстанавливает карту из сохранения, отображая ее файл.
+     * @param in Поток чтения.
+     * @throws IOException Если файл карты отсутствует или не соответствует сохранению.
+     * @throws ClassNotFoundException Если класс объекта не найден.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != size
+                || header.getLong() != seed) {
+            channel.close();
+            throw new IOException("Game map file does not match the saved game: " + file);
+        }
+        map();
+        logger.info("Opened mapped game map " + file);
+    }
+
+    /**
+     * Сбрасывает изменения клеток в файл перед сохранением карты.
+     * @param out Поток записи.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        force();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Отображает сегменты файла в память. Отображение продлевает файл до полного размера карты.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void map() throws IOException {
+        long tiles = (long) size * size;
+        segments = new MappedByteBuffer[(int) ((tiles + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long first = (long) i << SEGMENT_SHIFT;
+            long count = Math.min(tiles - first, 1L << SEGMENT_SHIFT);
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + first * RECORD_BYTES,
+                    count * RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Записывает измененные страницы файла на диск.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public void force() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Сбрасывает изменения на диск и закрывает файл карты.
+     * Отображенные сегменты освобождаются сборщиком мусора.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public void close() throws IOException {
+        force();
+        channel.close();
+        logger.info("Closed mapped game map " + file);
+    }
+
+    /**
+     * Возвращает путь к файлу карты.
+     * @return Путь к файлу.
+     */
+    public Path getFile() {
+        return Paths.get(file);
+    }
+
+    /**
+     * Попытка захвата клетки игроком.
+     * Если клетка не занята и у игрока достаточно юнитов, клетка захватывается, и количество юнитов игрока уменьшается.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player Игрок, пытающийся захватить клетку.
+     * @return True, если захват успешен, false - в противном случае.
+     */
+    public boolean claimTile(int x, int y, Player player) {
+        if (ownerAt(x, y) != null) {
+            return false;
+        }
+        int requiredUnits = requiredUnitsAt(x, y);
+        if (player.getUnits() >= requiredUnits) {
+            putByte(offset(x, y) + OWNER, ownerIndex(player));
+            tileAcquired(x, y, player);
+            player.setUnits(player.getUnits() - requiredUnits);
+            fireTileChanged(x, y);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Устанавливает начальную клетку для игрока.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player Игрок.
+     */
+    public void setStartTile(int x, int y, Player player) {
+        releaseTile(x, y);
+        putByte(offset(x, y) + OWNER, ownerIndex(player));
+        tileAcquired(x, y, player);
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Проверяет, находятся ли координаты внутри границ карты.
+     * @param x Координата x.
+     * @param y Координата y.
+     * @return True, если координаты внутри границ, false - иначе.
+     */
+    public boolean isWithinBounds(int x, int y) {
+        return x >= 0 && x < size && y >= 0 && y < size;
+    }
+
+    /**
+     * Поливает клетку.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void waterTile(int x, int y) {
+        materialize(x, y);
+        long offset = offset(x, y) + FLAGS;
+        putByte(offset, (byte) (getByte(offset) | WATERED));
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Строит дом на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void houseTile(int x, int y) {
+        long offset = offset(x, y) + FLAGS;
+        putByte(offset, (byte) (getByte(offset) | HOUSED));
+        fireTileChanged(x, y);
+    }
+
+    /**
+     * Возвращает ширину карты.
+     * @return Ширина карты.
+     */
+    public int getWidth() {
+        return size;
+    }
+
+    /**
+     * Возвращает высоту карты.
+     * @return Высота карты.
+     */
+    public int getHeight() {
+        return size;
+    }
+
+    /**
+     * Проверяет, полита ли клетка.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если клетки полита, false - иначе.
+     */
+    public boolean isWatered(int x, int y) {
+        return (getByte(offset(x, y) + FLAGS) & WATERED) != 0;
+    }
+
+    /**
+     * Проверяет, есть ли дом на клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return True, если на клетке есть дом, false - иначе.
+     */
+    public boolean isHoused(int x, int y) {
+        return (getByte(offset(x, y) + FLAGS) & HOUSED) != 0;
+    }
+
+    /**
+     * Возвращает копию клетки по координатам.
+     * Клетки хранятся в файле, поэтому изменения возвращенной клетки не попадают на карту;
+     * для изменения карты используются методы claimTile, waterTile и houseTile.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Копия клетки.
+     */
+    public Tile getTile(int x, int y) {
+        Tile tile = new Tile(requiredUnitsAt(x, y));
+        Player owner = ownerAt(x, y);
+        if (owner != null) {
+            tile.setOccupied(owner);
+        }
+        tile.setWatered(isWatered(x, y));
+        tile.setHoused(isHoused(x, y));
+        return tile;
+    }
+
+    /**
+     * Оценивает объем памяти в куче, занимаемой картой. Клетки хранятся в файле и не учитываются.
+     * @return Приблизительный размер карты в куче в байтах.
+     */
+    public long estimateMemory() {
+        return 256 + 64L * segments.length;
+    }
+
+    protected Player ownerAt(int x, int y) {
+        int owner = getByte(offset(x, y) + OWNER) & 0xFF;
+        return owner == 0 ? null : owners.get(owner - 1);
+    }
+
+    protected int storedRice(int x, int y) {
+        return getInt(offset(x, y) + RICE) + RiceAccount.ONE;
+    }
+
+    protected void setStoredRice(int x, int y, int amount) {
+        putInt(offset(x, y) + RICE, amount - RiceAccount.ONE);
+    }
+
+    protected int riceDay(int x, int y) {
+        return getInt(offset(x, y) + RICE_DAY) - 1;
+    }
+
+    protected void setRiceDay(int x, int y, int day) {
+        putInt(offset(x, y) + RICE_DAY, day + 1);
+    }
+
+    protected void setTileState(int x, int y, Player owner, boolean watered, boolean housed) {
+        long offset = offset(x, y);
+        putByte(offset + OWNER, owner == null ? 0 : ownerIndex(owner));
+        putByte(offset + FLAGS, (byte) ((watered ? WATERED : 0) | (housed ? HOUSED : 0)));
+    }
+
+    protected void replayOccupiedTiles(TileChangeListener listener) {
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (getByte(offset(x, y) + OWNER) != 0) {
+                    listener.tileChanged(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Не поддерживается: клетки карты хранятся в файле, а копия в памяти заняла бы весь его размер.
+     * @param players Копии игроков по исходным игрокам.
+     * @return Не возвращает значения.
+     * @throws UnsupportedOperationException Всегда.
+     */
+    protected AbstractGameMap copy(Map<Player, Player> players) {
+        throw new UnsupportedOperationException("Mapped game map " + file + " cannot be copied in memory");
+    }
+
+    protected void materializeAll(Player player) {
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (riceDay(x, y) >= 0 && ownerAt(x, y) == player) {
+                    materialize(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает количество юнитов, необходимых для захвата клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество необходимых юнитов.
+     */
+    private int requiredUnitsAt(int x, int y) {
+        int stored = getInt(offset(x, y) + REQUIRED_UNITS);
+        return stored == 0 ? seededRequiredUnits(x, y, size, seed) : stored - 1;
+    }
+
+    /**
+     * Возвращает смещение записи клетки: номер сегмента в старших 32 битах и смещение в сегменте в младших.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Смещение записи клетки.
+     */
+    private long offset(int x, int y) {
+        long index = tileIndex(x, y);
+        return (index >>> SEGMENT_SHIFT) << 32 | (index & SEGMENT_MASK) * RECORD_BYTES;
+    }
+
+    private byte getByte(long offset) {
+        return segments[(int) (offset >>> 32)].get((int) offset);
+    }
+
+    private void putByte(long offset, byte value) {
+        segments[(int) (offset >>> 32)].put((int) offset, value);
+    }
+
+    private int getInt(long offset) {
+        return segments[(int) (offset >>> 32)].getInt((int) offset);
+    }
+
+    private void putInt(long offset, int value) {
+        segments[(int) (offset >>> 32)].putInt((int) offset, value);
+    }
+
+    /**
+     * Возвращает номер игрока для хранения в записи клетки, регистрируя игрока при первом обращении.
+     * @param player Игрок.
+     * @return Номер игрока (от 1).
+     */
+    private byte ownerIndex(Player player) {
+        for (int i = 0; i < owners.size(); i++) {
+            if (owners.get(i) == player) {
+                return (byte) (i + 1);
+            }
+        }
+        owners.add(player);
+        return (byte) owners.size();
+    }
+}
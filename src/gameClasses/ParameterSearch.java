@@ -0,0 +1,374 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Подбор порогов стандартной стратегии ИИ эволюционной стратегией (mu/mu, lambda).
+ * Каждое поколение состоит из текущего среднего вектора и lambda потомков, полученных нормальным сдвигом
+ * нормированных к границам параметров. Все кандидаты поколения играют за второго игрока против встроенного ИИ
+ * на одном и том же наборе карт (общие случайные числа), поэтому их оценки отличаются только параметрами.
+ * Новое среднее - взвешенное среднее лучших mu потомков, шаг мутации подстраивается по правилу 1/5 успеха.
+ * Партии идут без графического интерфейса параллельно на всех ядрах, результат каждого кандидата
+ * сразу дописывается строкой в CSV-файл.
+ */
+public class ParameterSearch {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(ParameterSearch.class);
+    /**Наибольшая длина партии в днях; незавершенная партия оценивается по количеству клеток*/
+    private static final int MAX_DAYS = 500;
+    /**Начальный шаг мутации в долях диапазона параметра*/
+    private static final double INITIAL_SIGMA = 0.2;
+    /**Границы шага мутации*/
+    private static final double MIN_SIGMA = 0.01, MAX_SIGMA = 0.5;
+    /**Доля успешных потомков, при которой шаг мутации не меняется*/
+    private static final double TARGET_SUCCESS = 0.2;
+
+    /**Размер карты*/
+    private final int mapSize;
+    /**Количество партий на кандидата*/
+    private final int games;
+    /**Количество потомков в поколении*/
+    private final int lambda;
+    /**Количество лучших потомков, из которых строится новое среднее*/
+    private final int mu;
+    /**Веса лучших потомков в новом среднем*/
+    private final double[] weights;
+    /**Генератор мутаций и зерен карт*/
+    private final Random random;
+    /**Пул потоков для партий*/
+    private final ExecutorService workers;
+    /**Среднее поколения в нормированных координатах [0, 1]*/
+    private double[] mean;
+    /**Шаг мутации*/
+    private double sigma = INITIAL_SIGMA;
+
+    /**
+     * Результат кандидата на наборе партий поколения.
+     */
+    public static final class Score {
+        /**Параметры кандидата*/
+        private final AiParameters parameters;
+        /**Победы и ничьи кандидата*/
+        private final int wins, draws;
+        /**Средняя доля клеток кандидата среди клеток обоих игроков*/
+        private final double tileShare;
+        /**Количество партий*/
+        private final int games;
+
+        Score(AiParameters parameters, int wins, int draws, double tileShare, int games) {
+            this.parameters = parameters;
+            this.wins = wins;
+            this.draws = draws;
+            this.tileShare = tileShare;
+            this.games = games;
+        }
+
+        /**
+         * Возвращает параметры кандидата.
+         * @return Параметры.
+         */
+        public AiParameters getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Возвращает долю очков кандидата: победа - 1, ничья - 0.5.
+         * @return Доля очков от 0 до 1.
+         */
+        public double getWinRate() {
+            return (wins + draws * 0.5) / games;
+        }
+
+        /**
+         * Возвращает среднюю долю клеток кандидата среди клеток обоих игроков в конце партии.
+         * @return Доля клеток от 0 до 1.
+         */
+        public double getTileShare() {
+            return tileShare;
+        }
+
+        /**
+         * Сравнивает кандидатов: по доле очков, а при равенстве - по доле клеток.
+         * @param other Другой кандидат.
+         * @return True, если этот кандидат лучше.
+         */
+        boolean isBetterThan(Score other) {
+            return getWinRate() != other.getWinRate() ? getWinRate() > other.getWinRate() : tileShare > other.tileShare;
+        }
+    }
+
+    /**
+     * Создает поиск, начинающийся с параметров встроенного ИИ.
+     * @param mapSize Размер карты.
+     * @param games Количество партий на кандидата.
+     * @param lambda Количество потомков в поколении.
+     * @param threads Количество потоков для партий.
+     * @param seed Зерно генератора мутаций и карт.
+     */
+    public ParameterSearch(int mapSize, int games, int lambda, int threads, long seed) {
+        this.mapSize = mapSize;
+        this.games = games;
+        this.lambda = lambda;
+        this.mu = Math.max(1, lambda / 2);
+        this.weights = new double[mu];
+        double sum = 0;
+        for (int i = 0; i < mu; i++) {
+            weights[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+            sum += weights[i];
+        }
+        for (int i = 0; i < mu; i++) {
+            weights[i] /= sum;
+        }
+        this.random = new Random(seed);
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.mean = normalize(AiParameters.DEFAULT);
+    }
+
+    /**
+     * Выполняет одно поколение поиска и записывает результаты кандидатов в CSV.
+     * Первая строка поколения - текущее среднее, остальные - потомки.
+     * @param generation Номер поколения.
+     * @param csv Поток для строк CSV.
+     * @return Результат лучшего кандидата поколения.
+     * @throws InterruptedException Если поток прерван во время ожидания партий.
+     */
+    public Score generation(int generation, PrintWriter csv) throws InterruptedException {
+        long start = System.nanoTime();
+        long[] seeds = new long[games];
+        for (int i = 0; i < games; i++) {
+            seeds[i] = random.nextLong();
+        }
+        double[][] points = new double[lambda + 1][];
+        points[0] = mean;
+        for (int i = 1; i <= lambda; i++) {
+            points[i] = new double[mean.length];
+            for (int j = 0; j < mean.length; j++) {
+                points[i][j] = Math.max(0, Math.min(1, mean[j] + sigma * random.nextGaussian()));
+            }
+        }
+        List<List<Future<int[]>>> results = new ArrayList<>();
+        for (double[] point : points) {
+            AiParameters parameters = denormalize(point);
+            List<Future<int[]>> candidate = new ArrayList<>();
+            for (long seed : seeds) {
+                candidate.add(workers.submit(() -> playGame(parameters, seed)));
+            }
+            results.add(candidate);
+        }
+        Score[] scores = new Score[points.length];
+        for (int i = 0; i < points.length; i++) {
+            scores[i] = collect(denormalize(points[i]), results.get(i));
+            write(csv, generation, i, scores[i], (System.nanoTime() - start) / 1_000_000);
+        }
+        Integer[] order = new Integer[lambda];
+        for (int i = 0; i < lambda; i++) {
+            order[i] = i + 1;
+        }
+        Arrays.sort(order, (a, b) -> scores[a].isBetterThan(scores[b]) ? -1 : scores[b].isBetterThan(scores[a]) ? 1 : 0);
+        int successes = 0;
+        for (int i = 1; i <= lambda; i++) {
+            if (scores[i].isBetterThan(scores[0])) {
+                successes++;
+            }
+        }
+        double[] next = new double[mean.length];
+        for (int i = 0; i < mu; i++) {
+            for (int j = 0; j < next.length; j++) {
+                next[j] += weights[i] * points[order[i]][j];
+            }
+        }
+        mean = next;
+        double success = (double) successes / lambda;
+        sigma = Math.max(MIN_SIGMA, Math.min(MAX_SIGMA, sigma * Math.exp((success - TARGET_SUCCESS) / (1 - TARGET_SUCCESS))));
+        Score best = scores[order[0]].isBetterThan(scores[0]) ? scores[order[0]] : scores[0];
+        logger.info("Generation " + generation + ": best win rate " + best.getWinRate() + ", " + best.getParameters()
+                + ", success " + successes + "/" + lambda + ", sigma " + sigma);
+        return best;
+    }
+
+    /**
+     * Возвращает текущее среднее поиска.
+     * @return Параметры среднего.
+     */
+    public AiParameters getMean() {
+        return denormalize(mean);
+    }
+
+    /**
+     * Останавливает пул потоков.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Играет одну партию кандидата за второго игрока против встроенного ИИ за первого.
+     * @param parameters Параметры кандидата.
+     * @param seed Зерно карты.
+     * @return {1, если кандидат победил, -1 - проиграл, 0 - ничья; клетки кандидата; клетки соперника}.
+     */
+    private int[] playGame(AiParameters parameters, long seed) {
+        GameSession session = new GameSession(mapSize, seed);
+        Player player1 = session.getPlayer1();
+        Player player2 = session.getPlayer2();
+        Strategy baseline = new StandardStrategy();
+        Strategy candidate = new StandardStrategy(parameters);
+        while (!session.isGameOver() && session.getGameDay() < MAX_DAYS) {
+            move(session, player1, baseline);
+            move(session, player2, candidate);
+            session.endOfDay();
+        }
+        int own = player2.controlledTiles();
+        int other = player1.controlledTiles();
+        int outcome;
+        if (session.isGameOver()) {
+            outcome = session.isPlayer1Winner() ? -1 : 1;
+        } else {
+            outcome = Integer.compare(own, other);
+        }
+        return new int[]{outcome, own, other};
+    }
+
+    /**
+     * Выполняет ход стратегии в потоке партии, без ограничения времени хода.
+     * @param session Партия.
+     * @param player Игрок стратегии.
+     * @param strategy Стратегия.
+     */
+    private static void move(GameSession session, Player player, Strategy strategy) {
+        SessionView view = new SessionView(session, player);
+        PlayerCommand command = strategy.decide(view);
+        view.close();
+        session.apply(player, command.getType(), command.getX(), command.getY());
+    }
+
+    /**
+     * Собирает результаты партий кандидата.
+     * @param parameters Параметры кандидата.
+     * @param futures Результаты партий.
+     * @return Результат кандидата.
+     * @throws InterruptedException Если поток прерван во время ожидания партий.
+     */
+    private Score collect(AiParameters parameters, List<Future<int[]>> futures) throws InterruptedException {
+        int wins = 0, draws = 0;
+        double share = 0;
+        for (Future<int[]> future : futures) {
+            int[] result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Game failed for " + parameters, e.getCause());
+            }
+            if (result[0] > 0) {
+                wins++;
+            } else if (result[0] == 0) {
+                draws++;
+            }
+            share += result[1] + result[2] == 0 ? 0.5 : (double) result[1] / (result[1] + result[2]);
+        }
+        return new Score(parameters, wins, draws, share / futures.size(), futures.size());
+    }
+
+    /**
+     * Записывает строку CSV с результатом кандидата и сразу сбрасывает ее на диск.
+     * @param csv Поток для строк CSV.
+     * @param generation Номер поколения.
+     * @param candidate Номер кандидата в поколении, 0 - среднее.
+     * @param score Результат кандидата.
+     * @param elapsed Время от начала поколения, мс.
+     */
+    private void write(PrintWriter csv, int generation, int candidate, Score score, long elapsed) {
+        StringBuilder line = new StringBuilder();
+        line.append(generation).append(',').append(candidate).append(',').append(String.format(Locale.ROOT, "%.4f", sigma));
+        for (double value : score.getParameters().toVector()) {
+            line.append(',').append(String.format(Locale.ROOT, "%.4f", value));
+        }
+        line.append(',').append(score.games)
+                .append(',').append(score.wins)
+                .append(',').append(score.draws)
+                .append(',').append(String.format(Locale.ROOT, "%.4f", score.getWinRate()))
+                .append(',').append(String.format(Locale.ROOT, "%.4f", score.getTileShare()))
+                .append(',').append(elapsed);
+        csv.println(line);
+        csv.flush();
+    }
+
+    /**
+     * Возвращает заголовок CSV.
+     * @return Строка заголовка.
+     */
+    private static String header() {
+        return "generation,candidate,sigma," + String.join(",", AiParameters.NAMES)
+                + ",games,wins,draws,win_rate,tile_share,elapsed_ms";
+    }
+
+    /**
+     * Переводит параметры в нормированные координаты [0, 1].
+     * @param parameters Параметры.
+     * @return Нормированный вектор.
+     */
+    private static double[] normalize(AiParameters parameters) {
+        double[] vector = parameters.toVector();
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (vector[i] - AiParameters.lowerBound(i)) / (AiParameters.upperBound(i) - AiParameters.lowerBound(i));
+        }
+        return vector;
+    }
+
+    /**
+     * Переводит нормированные координаты в параметры.
+     * @param point Нормированный вектор.
+     * @return Параметры.
+     */
+    private static AiParameters denormalize(double[] point) {
+        double[] vector = new double[point.length];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = AiParameters.lowerBound(i) + point[i] * (AiParameters.upperBound(i) - AiParameters.lowerBound(i));
+        }
+        return AiParameters.fromVector(vector);
+    }
+
+    /**
+     * Запускает подбор параметров.
+     * Аргументы: количество поколений, потомков в поколении, партий на кандидата, размер карты, путь к CSV-файлу
+     * и зерно (по умолчанию 30, 12, 200, 10, parameter-search.csv и случайное зерно).
+     * @param args Аргументы командной строки.
+     * @throws IOException Если CSV-файл не удалось записать.
+     * @throws InterruptedException Если поток прерван во время ожидания партий.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int lambda = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int mapSize = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        File output = new File(args.length > 4 ? args[4] : "parameter-search.csv");
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : new Random().nextLong();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ParameterSearch search = new ParameterSearch(mapSize, games, lambda, threads, seed);
+        try (PrintWriter csv = new PrintWriter(new BufferedWriter(new FileWriter(output)))) {
+            csv.println(header());
+            Score best = null;
+            for (int generation = 0; generation < generations; generation++) {
+                Score score = search.generation(generation, csv);
+                if (best == null || score.isBetterThan(best)) {
+                    best = score;
+                }
+                System.out.println("Generation " + generation + ": win rate " + score.getWinRate() + ", " + score.getParameters());
+            }
+            if (csv.checkError()) {
+                throw new IOException("Error writing " + output);
+            }
+            System.out.println("Best: " + best.getParameters() + " (win rate " + best.getWinRate() + ")");
+            System.out.println("Final mean: " + search.getMean());
+        } finally {
+            search.shutdown();
+        }
+    }
+}
@@ -1,17 +1,47 @@
 package gameClasses;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.*;
 
 /**
  * Представляет игрока в игре. Игрок обладает ресурсами (рис, вода), юнитами, домами и контролирует клетки на игровой карте.
  * Реализует интерфейс PlayerI и сериализуем для сохранения/загрузки состояний игры.
+ * Рис и вода хранятся в фиксированной точке (см. FixedPoint), поэтому расчеты ресурсов точны.
  */
 public class Player implements PlayerActions, Serializable {
+    private static final long serialVersionUID = 536267927484157434L;
+    /**Вода, набираемая за одно действие*/
+    private static final long WATER_COLLECTED = FixedPoint.of(15);
+    /**Вода на полив клетки*/
+    private static final long WATERING_WATER = FixedPoint.of(5);
+    /**Рис на постройку дома*/
+    private static final long HOUSE_RICE = FixedPoint.of(25);
+    /**Вода на постройку дома*/
+    private static final long HOUSE_WATER = FixedPoint.of(10);
+    /**Рис, съедаемый за единицу потребления*/
+    private static final long RICE_PER_UNIT = FixedPoint.of(3);
+    /**
+     * Сохраняемые поля игрока. Рис и вода сохраняются как double, как и до перехода на фиксированную точку,
+     * поэтому старые сохранения загружаются без преобразования.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("x", int.class),
+            new ObjectStreamField("y", int.class),
+            new ObjectStreamField("rice", double.class),
+            new ObjectStreamField("water", double.class),
+            new ObjectStreamField("units", int.class),
+            new ObjectStreamField("houses", int.class),
+            new ObjectStreamField("controlledTiles", int.class),
+            new ObjectStreamField("resources", List.class)
+    };
     /**Координаты клетки х, у*/
     private int x, y;
-    /**Количество риса, воды*/
-    private double rice, water;
+    /**Количество риса, воды в фиксированной точке*/
+    private long rice, water;
     /**Количество юнитов*/
     private int units;
     /**Количество домов*/
@@ -20,6 +50,8 @@ public class Player implements PlayerActions, Serializable {
     private int controlledTiles = 1;
     /**Список со словарями, хранящими ресурсы игрока*/
     private List<Map<String, Double>> resources = new ArrayList<>();
+    /**Планировщик расширения территории ИИ, не сохраняется вместе с игроком*/
+    private transient ExpansionPlanner planner;
 
     /**
      * Создает новый объект Player.
@@ -30,21 +62,76 @@ public class Player implements PlayerActions, Serializable {
      * @param units Начальное количество юнитов.
      * @param gameMap Игровая карта, на которой находится игрок. Используется для установки стартовой клетки.
      */
-    public Player(int x, int y, double rice, double water, int units, GameMap gameMap) {
+    public Player(int x, int y, double rice, double water, int units, GameMapI gameMap) {
         this.x = x;
         this.y = y;
         gameMap.setStartTile(x, y, this);
-        this.rice = rice;
-        this.water = water;
+        this.rice = FixedPoint.of(rice);
+        this.water = FixedPoint.of(water);
         this.units = units;
     }
 
+    /**
+     * Создает копию игрока с теми же ресурсами и историей ресурсов, но без планировщика расширения.
+     * @param source Исходный игрок.
+     */
+    private Player(Player source) {
+        this.x = source.x;
+        this.y = source.y;
+        this.rice = source.rice;
+        this.water = source.water;
+        this.units = source.units;
+        this.houses = source.houses;
+        this.controlledTiles = source.controlledTiles;
+        this.resources = new ArrayList<>(source.resources);
+    }
+
+    /**
+     * Восстанавливает игрока из сохранения, переводя рис и воду в фиксированную точку.
+     * @param in Поток чтения.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     * @throws ClassNotFoundException Если класс объекта не найден.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        x = fields.get("x", 0);
+        y = fields.get("y", 0);
+        rice = FixedPoint.of(fields.get("rice", 0.0));
+        water = FixedPoint.of(fields.get("water", 0.0));
+        units = fields.get("units", 0);
+        houses = fields.get("houses", 0);
+        controlledTiles = fields.get("controlledTiles", 1);
+        resources = (List<Map<String, Double>>) fields.get("resources", null);
+        if (resources == null) {
+            resources = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Сохраняет игрока, записывая рис и воду как double.
+     * @param out Поток записи.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("x", x);
+        fields.put("y", y);
+        fields.put("rice", getRice());
+        fields.put("water", getWater());
+        fields.put("units", units);
+        fields.put("houses", houses);
+        fields.put("controlledTiles", controlledTiles);
+        fields.put("resources", resources);
+        out.writeFields();
+    }
+
     /**
      * Добавляет указанное количество воды к запасам игрока.
      * @param amount Количество воды, которое нужно добавить.
      */
     public void collectWater(double amount) {
-        water = water + amount;
+        water = water + FixedPoint.of(amount);
     }
 
     /**
@@ -54,19 +141,30 @@ public class Player implements PlayerActions, Serializable {
      * @param x Координата x клетки.
      * @param y Координата y клетки.
      * @param gameMap Игровая карта.
-     * @return Сообщение об успешном поливе или ошибке.
+     * @return Результат: RICE_WATERED, NOT_ENOUGH_WATER или RICE_NOT_WATERED.
+     */
+    public ActionResult waterRice(int x, int y, GameMapI gameMap) {
+        return ActionResult.of(PlayerCommand.Type.WATER_RICE, tryWaterRice(x, y, gameMap));
+    }
+
+    /**
+     * Позволяет игроку полить рис на указанной клетке, не формируя текстового сообщения.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата: RESULT_OK, RESULT_NOT_ENOUGH_WATER или RESULT_NOT_ALLOWED.
      */
-    public String waterRice(int x, int y, GameMap gameMap) {
+    public int tryWaterRice(int x, int y, GameMapI gameMap) {
         if (gameMap.isWithinBounds(x, y) && gameMap.isControlled(x, y, this)) {
-            if (water < 5){
-                return "Недостаточно воды";
+            if (water < WATERING_WATER){
+                return PlayerCommand.RESULT_NOT_ENOUGH_WATER;
             } else {
-                water = water - 5;
+                water = water - WATERING_WATER;
                 gameMap.waterTile(x, y);
-                return "Вы полили рис, теперь он растёт быстрее";
+                return PlayerCommand.RESULT_OK;
             }
         } else {
-            return "Нельзя полить рис в этой клетке.";
+            return PlayerCommand.RESULT_NOT_ALLOWED;
         }
     }
 
@@ -77,14 +175,25 @@ public class Player implements PlayerActions, Serializable {
      * @param x Координата x клетки.
      * @param y Координата y клетки.
      * @param gameMap Игровая карта.
-     * @return Сообщение об успешном захвате или ошибке.
+     * @return Результат: TERRITORY_CLAIMED или TERRITORY_NOT_CLAIMED.
+     */
+    public ActionResult claimTerritory(int x, int y, GameMapI gameMap) {
+        return ActionResult.of(PlayerCommand.Type.CLAIM_TERRITORY, tryClaimTerritory(x, y, gameMap));
+    }
+
+    /**
+     * Попытка захвата территории игроком без формирования текстового сообщения.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата: RESULT_OK или RESULT_NOT_ALLOWED.
      */
-    public String claimTerritory(int x, int y, GameMap gameMap) {
+    public int tryClaimTerritory(int x, int y, GameMapI gameMap) {
         if (gameMap.isWithinBounds(x, y) && gameMap.claimTile(x, y, this)) {
             controlledTiles++;
-            return "Вы освоили территорию";
+            return PlayerCommand.RESULT_OK;
         } else {
-            return "Не удалось освоить территорию";
+            return PlayerCommand.RESULT_NOT_ALLOWED;
         }
     }
 
@@ -95,22 +204,55 @@ public class Player implements PlayerActions, Serializable {
      * @param x Координата x клетки.
      * @param y Координата y клетки.
      * @param gameMap Игровая карта.
-     * @return Сообщение об успешной постройке дома или ошибке.
+     * @return Результат: HOUSE_BUILT, NOT_ENOUGH_RESOURCES или HOUSE_NOT_BUILT.
      */
-    public String buildHouse(int x, int y, GameMap gameMap) {
+    public ActionResult buildHouse(int x, int y, GameMapI gameMap) {
+        return ActionResult.of(PlayerCommand.Type.BUILD_HOUSE, tryBuildHouse(x, y, gameMap));
+    }
+
+    /**
+     * Попытка постройки дома игроком без формирования текстового сообщения.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата: RESULT_OK, RESULT_NOT_ENOUGH_RESOURCES или RESULT_NOT_ALLOWED.
+     */
+    public int tryBuildHouse(int x, int y, GameMapI gameMap) {
         if (gameMap.isWithinBounds(x, y) && gameMap.isControlled(x, y, this) && !(gameMap.isHoused(x, y))) {
-            if (rice >= 25 && water >= 10 && units >= 1) {
-                rice =  rice - 25;
-                water = water - 10;
+            if (rice >= HOUSE_RICE && water >= HOUSE_WATER && units >= 1) {
+                rice =  rice - HOUSE_RICE;
+                water = water - HOUSE_WATER;
                 units = units - 1;
                 houses = houses + 1;
                 gameMap.houseTile(x, y);
-                return "Вы построили дом, теперь у вас будет больше крестьян";
+                return PlayerCommand.RESULT_OK;
             } else {
-                return "Недостаточно ресурсов для строительства дома.";
+                return PlayerCommand.RESULT_NOT_ENOUGH_RESOURCES;
             }
         } else {
-            return "Нельзя поcтроить дом в этой клетке.";
+            return PlayerCommand.RESULT_NOT_ALLOWED;
+        }
+    }
+
+    /**
+     * Выполняет действие игрока и возвращает код результата без текстового сообщения.
+     * @param type Тип действия.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата (константа RESULT_* класса PlayerCommand).
+     */
+    public int apply(PlayerCommand.Type type, int x, int y, GameMapI gameMap) {
+        switch (type) {
+            case COLLECT_WATER:
+                water = water + WATER_COLLECTED;
+                return PlayerCommand.RESULT_OK;
+            case CLAIM_TERRITORY:
+                return tryClaimTerritory(x, y, gameMap);
+            case WATER_RICE:
+                return tryWaterRice(x, y, gameMap);
+            default:
+                return tryBuildHouse(x, y, gameMap);
         }
     }
 
@@ -119,15 +261,8 @@ public class Player implements PlayerActions, Serializable {
      * Игрок собирает весь рис с каждой контролируемой клетки, оставляя 1 единицу риса меньше на клетке.
      * @param gameMap Игровая карта.
      */
-    public void collectRice(GameMap gameMap){
-        for (int i = 0; i < gameMap.getWidth();i++){
-            for (int j = 0; j < gameMap.getHeight(); j++) {
-                if (gameMap.isControlled(i, j, this)){
-                    rice += gameMap.getRiceAt(i, j);
-                    gameMap.setRiceAt(i, j, gameMap.getRiceAt(i, j) - 1);
-                }
-            }
-        }
+    public void collectRice(GameMapI gameMap){
+        rice += FixedPoint.of(gameMap.harvestRice(this));
     }
 
     /**
@@ -143,7 +278,7 @@ public class Player implements PlayerActions, Serializable {
      * @return Количество риса.
      */
     public double getRice() {
-        return rice;
+        return FixedPoint.toDouble(rice);
     }
 
     /**
@@ -151,7 +286,7 @@ public class Player implements PlayerActions, Serializable {
      * @return Количество воды.
      */
     public double getWater() {
-        return water;
+        return FixedPoint.toDouble(water);
     }
 
     /**
@@ -176,7 +311,7 @@ public class Player implements PlayerActions, Serializable {
      * @param amount Количество единиц потребления риса.
      */
     public void eatRice(int amount){
-        rice = Math.max(rice - amount * 3, 0);
+        rice = Math.max(rice - amount * RICE_PER_UNIT, 0);
     }
 
     /**
@@ -193,8 +328,8 @@ public class Player implements PlayerActions, Serializable {
      */
     public void saveResources(){
         Map<String, Double> dayResources = new HashMap<>();
-        dayResources.put("вода", water);
-        dayResources.put("рис", rice);
+        dayResources.put("вода", getWater());
+        dayResources.put("рис", getRice());
         double unitsd = (Integer) units;
         dayResources.put("крестьяне", unitsd);
         double housesd = (Integer) houses;
@@ -212,111 +347,90 @@ public class Player implements PlayerActions, Serializable {
     }
 
     /**
-     * Попытка захвата территории ИИ-игроком в радиусе поиска.
-     * ИИ использует поиск в ширину (BFS) для поиска ближайшего незанятого тайла, который можно захватить.
-     * @param player Игрок ИИ.
-     * @param searchRadius Радиус поиска в клетках.
-     * @param gameMap Игровая карта.
-     * @return Сообщение об успешном захвате или ошибке.
+     * Снимок ресурсов игрока для отмены ходов.
+     * История ресурсов не копируется: снимок ссылается на список игрока и помнит его длину,
+     * а в этот список после снимка только добавляются новые дни.
      */
-    public String aiPlayerClaimTerritory(Player player, int searchRadius, GameMap gameMap) {
-        int startX = 0;
-        int startY = 0;
-
-        Queue<int[]> queue = new LinkedList<>();
-        queue.offer(new int[]{startX, startY});
+    public static final class Snapshot {
+        /**Количество риса, воды в фиксированной точке*/
+        private final long rice, water;
+        /**Количество юнитов, домов и захваченных клеток*/
+        private final int units, houses, controlledTiles;
+        /**Список ресурсов игрока на момент снимка*/
+        private final List<Map<String, Double>> resources;
+        /**Длина списка ресурсов на момент снимка*/
+        private final int resourceDays;
 
-        boolean[][] visited = new boolean[gameMap.getWidth()][gameMap.getHeight()];
-        visited[startX][startY] = true;
-
-        while (!queue.isEmpty()) {
-            int[] current = queue.poll();
-            int x = current[0];
-            int y = current[1];
+        /**
+         * Снимает ресурсы игрока.
+         * @param player Игрок.
+         */
+        private Snapshot(Player player) {
+            this.rice = player.rice;
+            this.water = player.water;
+            this.units = player.units;
+            this.houses = player.houses;
+            this.controlledTiles = player.controlledTiles;
+            this.resources = player.resources;
+            this.resourceDays = player.resources.size();
+        }
+    }
 
-            if (gameMap.isWithinBounds(x, y) && gameMap.claimTile(x, y, this)) {
-                player.claimTerritory(x, y, gameMap);
-                controlledTiles++;
-                return "ИИ освоил ближайшую территорию (" + x + ", " + y + ")";
-            }
+    /**
+     * Создает независимую копию игрока для копии партии (см. GameSession.copy).
+     * @return Копия игрока.
+     */
+    Player copy() {
+        return new Player(this);
+    }
 
-            int[] dx = {0, 0, 1, -1};
-            int[] dy = {1, -1, 0, 0};
-            for (int i = 0; i < 4; i++) {
-                int nx = x + dx[i];
-                int ny = y + dy[i];
-                if (gameMap.isWithinBounds(nx, ny) && !visited[nx][ny] && dist(nx,ny,startX,startY) <= searchRadius) {
-                    queue.offer(new int[]{nx, ny});
-                    visited[nx][ny] = true;
-                }
-            }
-        }
-        return "ИИ не смог ничего освоить";
+    /**
+     * Снимает текущие ресурсы игрока.
+     * @return Снимок ресурсов.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
     }
 
     /**
-     * Вычисляет манхэттенское расстояние между двумя точками (клетками) на карте.
-     * @param x1 Координата x первой точки (клетки).
-     * @param y1 Координата y первой точки (клетки).
-     * @param x2 Координата x второй точки (клетки).
-     * @param y2 Координата y второй точки (клетки).
-     * @return Манхэттенское расстояние между двумя точками (клетками).
+     * Восстанавливает ресурсы игрока из снимка.
+     * Список ресурсов заменяется новым, поэтому снимки, ссылающиеся на прежний список, остаются верными.
+     * @param snapshot Снимок ресурсов.
      */
-    private int dist(int x1, int y1, int x2, int y2){
-        return Math.abs(x1 - x2) + Math.abs(y1 - y2);
+    public void restore(Snapshot snapshot) {
+        rice = snapshot.rice;
+        water = snapshot.water;
+        units = snapshot.units;
+        houses = snapshot.houses;
+        controlledTiles = snapshot.controlledTiles;
+        resources = new ArrayList<>(snapshot.resources.subList(0, snapshot.resourceDays));
     }
 
     /**
-     * Возвращает список координат всех клеток, контролируемых указанным игроком.
-     * @param player Игрок.
+     * Возвращает планировщик расширения территории для карты, создавая его при первом обращении или смене карты.
      * @param gameMap Игровая карта.
-     * @return Список координат (массивов из двух элементов: x и y) контролируемых клеток.
+     * @return Планировщик расширения.
      */
-    private List<int[]> getControlledTiles(Player player, GameMap gameMap) {
-        List<int[]> tiles = new ArrayList<>();
-        for (int x = 0; x < gameMap.getWidth(); x++) {
-            for (int y = 0; y < gameMap.getHeight(); y++) {
-                Tile tile = gameMap.getTile(x, y);
-                if (tile.isOccupied() && tile.getOwner() == player) {
-                    tiles.add(new int[]{x, y});
-                }
+    ExpansionPlanner expansionPlanner(GameMapI gameMap) {
+        if (planner == null || planner.getGameMap() != gameMap) {
+            if (planner != null) {
+                planner.detach();
             }
+            planner = new ExpansionPlanner(gameMap, this);
         }
-        return tiles;
+        return planner;
     }
 
     /**
-     * Реализует другие действия ИИ-игрока, если захват территории невозможен.
-     * ИИ проверяет наличие ресурсов и выполняет полив риса или строительство дома, если это возможно.
-     * Если других действий нет, ИИ собирает воду.
-     * @param player Игрок ИИ.
-     * @param gameMap Игровая карта.
-     * @return Сообщение о действии ИИ.
+     * Копирует планировщик расширения исходного игрока, если он построен для исходной карты, чтобы копия партии
+     * выбирала те же ходы без построения поля расстояний заново.
+     * @param source Исходный игрок.
+     * @param sourceMap Исходная карта.
+     * @param gameMap Копия карты.
      */
-    public String aiPlayerOtherOptions(Player player, GameMap gameMap) {
-        List<int[]> controlledTiles = getControlledTiles(player, gameMap);
-        if ((rice < units*3) || (rice < 25)) { //Изменённое условие
-            for (int[] coords : controlledTiles) {
-                int x = coords[0];
-                int y = coords[1];
-                Tile tile = gameMap.getTile(x, y);
-                if (!tile.isWatered()) {
-                    player.waterRice(x, y, gameMap);
-                    return "ИИ полил рис в клетке (" + x + ", " + y + ")";
-                }
-            }
-        } else {
-            for (int[] coords : controlledTiles) {
-                int x = coords[0];
-                int y = coords[1];
-                Tile tile = gameMap.getTile(x, y);
-                if (!tile.isHoused() && (rice >= 25 && water >= 10 && units >= 1)) {
-                    player.buildHouse(x, y, gameMap);
-                    return "ИИ построил дом в клетке (" + x + ", " + y + ")";
-                        }
-                    }
-                }
-        collectWater(15);
-        return "ИИ набрал воду, больше ему делать нечего :/";
+    void copyPlanner(Player source, GameMapI sourceMap, GameMapI gameMap) {
+        if (source.planner != null && source.planner.getGameMap() == sourceMap) {
+            planner = source.planner.copy(gameMap, this);
+        }
     }
-}
\ No newline at end of file
+}
@@ -19,9 +19,9 @@ public interface PlayerActions {
      * @param x Координата x клетки.
      * @param y Координата y клетки.
      * @param gameMap Игровая карта.
-     * @return Сообщение об успешном поливе или ошибке.
+     * @return Результат: RICE_WATERED, NOT_ENOUGH_WATER или RICE_NOT_WATERED.
      */
-    String waterRice(int x, int y, GameMap gameMap);
+    ActionResult waterRice(int x, int y, GameMapI gameMap);
     /**
      * Попытка захвата территории игроком.
      * Проверяет, находится ли клетка в пределах карты и может ли быть захвачена игроком.
@@ -29,9 +29,9 @@ public interface PlayerActions {
      * @param x Координата x клетки.
      * @param y Координата y клетки.
      * @param gameMap Игровая карта.
-     * @return Сообщение об успешном захвате или ошибке.
+     * @return Результат: TERRITORY_CLAIMED или TERRITORY_NOT_CLAIMED.
      */
-    String claimTerritory(int x, int y, GameMap gameMap);
+    ActionResult claimTerritory(int x, int y, GameMapI gameMap);
     /**
      * Попытка постройки дома игроком на указанной клетке.
      * Проверяет, находится ли клетка в пределах карты, контролируется ли она игроком и есть ли на ней уже дом.
@@ -39,15 +39,48 @@ public interface PlayerActions {
      * @param x Координата x клетки.
      * @param y Координата y клетки.
      * @param gameMap Игровая карта.
-     * @return Сообщение об успешной постройке дома или ошибке.
+     * @return Результат: HOUSE_BUILT, NOT_ENOUGH_RESOURCES или HOUSE_NOT_BUILT.
      */
-    String buildHouse(int x, int y, GameMap gameMap);
+    ActionResult buildHouse(int x, int y, GameMapI gameMap);
+    /**
+     * Позволяет игроку полить рис на указанной клетке, не формируя текстового сообщения.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата: RESULT_OK, RESULT_NOT_ENOUGH_WATER или RESULT_NOT_ALLOWED.
+     */
+    int tryWaterRice(int x, int y, GameMapI gameMap);
+    /**
+     * Попытка захвата территории игроком без формирования текстового сообщения.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата: RESULT_OK или RESULT_NOT_ALLOWED.
+     */
+    int tryClaimTerritory(int x, int y, GameMapI gameMap);
+    /**
+     * Попытка постройки дома игроком без формирования текстового сообщения.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата: RESULT_OK, RESULT_NOT_ENOUGH_RESOURCES или RESULT_NOT_ALLOWED.
+     */
+    int tryBuildHouse(int x, int y, GameMapI gameMap);
+    /**
+     * Выполняет действие игрока и возвращает код результата без текстового сообщения.
+     * @param type Тип действия.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param gameMap Игровая карта.
+     * @return Код результата (константа RESULT_* класса PlayerCommand).
+     */
+    int apply(PlayerCommand.Type type, int x, int y, GameMapI gameMap);
     /**
      * Сбор урожая риса с контролируемых игроком клеток.
      * Игрок собирает весь рис с каждой контролируемой клетки, оставляя 1 единицу риса меньше на клетке.
      * @param gameMap Игровая карта.
      */
-    void collectRice(GameMap gameMap);
+    void collectRice(GameMapI gameMap);
     /**
      * Возвращает количество юнитов игрока.
      * @return Количество юнитов.
@@ -94,22 +127,4 @@ public interface PlayerActions {
      * @return Список словарей, где каждая карта содержит ресурсы за один день.
      */
     List<Map<String, Double>> getResources();
-    /**
-     * Попытка захвата территории ИИ-игроком в радиусе поиска.
-     * ИИ использует поиск в ширину (BFS) для поиска ближайшего незанятого тайла, который можно захватить.
-     * @param player Игрок ИИ.
-     * @param searchRadius Радиус поиска в клетках.
-     * @param gameMap Игровая карта.
-     * @return Сообщение об успешном захвате или ошибке.
-     */
-    String aiPlayerClaimTerritory(Player player, int searchRadius, GameMap gameMap);
-    /**
-     * Реализует другие действия ИИ-игрока, если захват территории невозможен.
-     * ИИ проверяет наличие ресурсов и выполняет полив риса или строительство дома, если это возможно.
-     * Если других действий нет, ИИ собирает воду.
-     * @param player Игрок ИИ.
-     * @param gameMap Игровая карта.
-     * @return Сообщение о действии ИИ.
-     */
-    String aiPlayerOtherOptions(Player player, GameMap gameMap);
 }
@@ -0,0 +1,216 @@
+package gameClasses;
+
+/**
+ * Неизменяемая команда игрока: тип действия, номер игрока и координаты клетки.
+ * Команда может быть упакована в одно число long, чтобы боты, повторы и серверы
+ * могли хранить и передавать ходы без создания объектов.
+ * Формат упаковки: биты 0-7 - тип действия, 8-15 - номер игрока, 16-39 - координата x, 40-63 - координата y.
+ */
+public final class PlayerCommand {
+    /**Действие выполнено*/
+    public static final int RESULT_OK = 0;
+    /**Действие нельзя выполнить в этой клетке*/
+    public static final int RESULT_NOT_ALLOWED = 1;
+    /**Недостаточно воды*/
+    public static final int RESULT_NOT_ENOUGH_WATER = 2;
+    /**Недостаточно ресурсов*/
+    public static final int RESULT_NOT_ENOUGH_RESOURCES = 3;
+    /**Неизвестный номер игрока*/
+    public static final int RESULT_UNKNOWN_PLAYER = 4;
+
+    /**
+     * Тип действия игрока.
+     */
+    public enum Type {
+        /**Набрать воды*/
+        COLLECT_WATER,
+        /**Освоить территорию*/
+        CLAIM_TERRITORY,
+        /**Полить рис*/
+        WATER_RICE,
+        /**Построить дом*/
+        BUILD_HOUSE
+    }
+
+    /**Все типы действий по порядку, чтобы не копировать массив при каждой распаковке*/
+    private static final Type[] TYPES = Type.values();
+    /**Наибольший номер игрока, помещающийся в упакованную команду*/
+    public static final int MAX_PLAYER = 0xFF;
+    /**Наибольшая координата, помещающаяся в упакованную команду*/
+    public static final int MAX_COORDINATE = 0xFFFFFF;
+    /**Маска координаты в упакованной команде*/
+    private static final long COORDINATE_MASK = MAX_COORDINATE;
+
+    /**Номер игрока*/
+    private final int player;
+    /**Тип действия*/
+    private final Type type;
+    /**Координата x клетки*/
+    private final int x;
+    /**Координата y клетки*/
+    private final int y;
+
+    /**
+     * Создает команду игрока.
+     * @param player Номер игрока (0-255).
+     * @param type Тип действия.
+     * @param x Координата x клетки (0-16777215).
+     * @param y Координата y клетки (0-16777215).
+     * @throws IllegalArgumentException Если номер игрока или координаты не помещаются в упакованную команду.
+     */
+    public PlayerCommand(int player, Type type, int x, int y) {
+        checkRange(player, type, x, y);
+        this.player = player;
+        this.type = type;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Возвращает номер игрока.
+     * @return Номер игрока.
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * Возвращает тип действия.
+     * @return Тип действия.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Возвращает координату x клетки.
+     * @return Координата x.
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Возвращает координату y клетки.
+     * @return Координата y.
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Упаковывает команду в одно число.
+     * @return Упакованная команда.
+     */
+    public long pack() {
+        return pack(player, type, x, y);
+    }
+
+    /**
+     * Упаковывает команду в одно число без создания объекта команды.
+     * @param player Номер игрока (0-255).
+     * @param type Тип действия.
+     * @param x Координата x клетки (0-16777215).
+     * @param y Координата y клетки (0-16777215).
+     * @return Упакованная команда.
+     * @throws IllegalArgumentException Если номер игрока или координаты не помещаются в упакованную команду.
+     */
+    public static long pack(int player, Type type, int x, int y) {
+        checkRange(player, type, x, y);
+        return type.ordinal()
+                | (long) (player & 0xFF) << 8
+                | (x & COORDINATE_MASK) << 16
+                | (y & COORDINATE_MASK) << 40;
+    }
+
+    /**
+     * Проверяет, что команда помещается в упакованный формат без потери разрядов.
+     * @param player Номер игрока.
+     * @param type Тип действия.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @throws IllegalArgumentException Если номер игрока или координаты вне допустимых пределов.
+     */
+    private static void checkRange(int player, Type type, int x, int y) {
+        if (type == null) {
+            throw new IllegalArgumentException("Command type is null");
+        }
+        if (player < 0 || player > MAX_PLAYER) {
+            throw new IllegalArgumentException("Player index out of range: " + player);
+        }
+        if (x < 0 || x > MAX_COORDINATE || y < 0 || y > MAX_COORDINATE) {
+            throw new IllegalArgumentException("Coordinates out of range: (" + x + ", " + y + ")");
+        }
+    }
+
+    /**
+     * Распаковывает команду из числа.
+     * @param packed Упакованная команда.
+     * @return Команда.
+     * @throws IllegalArgumentException Если в команде записан неизвестный тип действия.
+     */
+    public static PlayerCommand unpack(long packed) {
+        Type type = packedType(packed);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown command type: " + (packed & 0xFF));
+        }
+        return new PlayerCommand(packedPlayer(packed), type, packedX(packed), packedY(packed));
+    }
+
+    /**
+     * Возвращает тип действия упакованной команды.
+     * Упакованные команды приходят от ботов, из повторов и по сети, поэтому номер типа проверяется.
+     * @param packed Упакованная команда.
+     * @return Тип действия или null, если номер типа не соответствует ни одному действию.
+     */
+    public static Type packedType(long packed) {
+        int type = (int) (packed & 0xFF);
+        return type < TYPES.length ? TYPES[type] : null;
+    }
+
+    /**
+     * Возвращает номер игрока упакованной команды.
+     * @param packed Упакованная команда.
+     * @return Номер игрока.
+     */
+    public static int packedPlayer(long packed) {
+        return (int) (packed >>> 8 & 0xFF);
+    }
+
+    /**
+     * Возвращает координату x упакованной команды.
+     * @param packed Упакованная команда.
+     * @return Координата x.
+     */
+    public static int packedX(long packed) {
+        return (int) (packed >>> 16 & COORDINATE_MASK);
+    }
+
+    /**
+     * Возвращает координату y упакованной команды.
+     * @param packed Упакованная команда.
+     * @return Координата y.
+     */
+    public static int packedY(long packed) {
+        return (int) (packed >>> 40 & COORDINATE_MASK);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PlayerCommand)) {
+            return false;
+        }
+        PlayerCommand other = (PlayerCommand) o;
+        return player == other.player && type == other.type && x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(pack());
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + x + ", " + y + ") by player " + player;
+    }
+}
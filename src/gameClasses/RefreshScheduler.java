@@ -0,0 +1,245 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Планировщик обновления окна игры.
+ * Запрос обновления только помечает область окна (карту, панель игрока) как устаревшую;
+ * все запросы, поступившие за кадр, объединяются, и каждая устаревшая область обновляется и перерисовывается
+ * не чаще одного раза за кадр. Запросы можно отправлять из любого потока, обновление выполняется в потоке Swing.
+ * Компоновка окна при обновлении не пересчитывается: надписи Label пересчитывают ее сами
+ * и только тогда, когда после смены текста изменился их предпочтительный размер.
+ * Счетчики запросов, выполненных обновлений и компоновок позволяют оценить, сколько работы сэкономлено.
+ */
+public class RefreshScheduler {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(RefreshScheduler.class);
+    /**Длительность кадра, мс*/
+    private static final int FRAME_MILLIS = 16;
+
+    /**
+     * Область окна: компонент и метод, обновляющий его содержимое по состоянию партии.
+     */
+    public static final class Region {
+        /**Название области*/
+        private final String name;
+        /**Компонент области*/
+        private final JComponent component;
+        /**Обновление содержимого области*/
+        private final Runnable update;
+        /**Флаг устаревшей области*/
+        private boolean dirty;
+
+        /**
+         * Создает область.
+         * @param name Название области.
+         * @param component Компонент области.
+         * @param update Обновление содержимого области.
+         */
+        private Region(String name, JComponent component, Runnable update) {
+            this.name = name;
+            this.component = component;
+            this.update = update;
+        }
+
+        /**
+         * Возвращает название области.
+         * @return Название области.
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Надпись, которая пересчитывает компоновку окна только при изменении своего предпочтительного размера.
+     * Обычная JLabel запрашивает компоновку при каждой смене текста, хотя при тексте той же ширины
+     * (например, число ресурса с тем же количеством цифр) достаточно перерисовать саму надпись.
+     */
+    public static class Label extends JLabel {
+        private static final long serialVersionUID = 1L;
+        /**Планировщик, считающий компоновки*/
+        private final RefreshScheduler scheduler;
+        /**Предпочтительный размер при последней компоновке*/
+        private Dimension laidOutSize;
+
+        /**
+         * Создает надпись.
+         * @param scheduler Планировщик, считающий компоновки.
+         * @param text Текст надписи.
+         */
+        public Label(RefreshScheduler scheduler, String text) {
+            super(text);
+            this.scheduler = scheduler;
+            this.laidOutSize = getPreferredSize();
+        }
+
+        @Override
+        public void revalidate() {
+            if (scheduler == null) {
+                // вызов из конструктора JLabel
+                super.revalidate();
+                return;
+            }
+            Dimension size = getPreferredSize();
+            if (size.equals(laidOutSize)) {
+                scheduler.countLayout(false);
+                return;
+            }
+            laidOutSize = size;
+            super.revalidate();
+            scheduler.countLayout(true);
+        }
+    }
+
+    /**Области окна*/
+    private final List<Region> regions = new ArrayList<>();
+    /**Таймер кадров; работает, пока есть запросы, и останавливается после кадра без обновлений*/
+    private final Timer frameTimer;
+    /**Флаг работающего таймера кадров*/
+    private boolean framePending;
+    /**Количество запросов обновления*/
+    private long requested;
+    /**Количество выполненных обновлений областей*/
+    private long performed;
+    /**Количество кадров, в которых обновлялись области*/
+    private long frames;
+    /**Количество пересчетов компоновки надписями*/
+    private long layouts;
+    /**Количество пропущенных пересчетов компоновки*/
+    private long skippedLayouts;
+
+    /**
+     * Создает планировщик без областей.
+     */
+    public RefreshScheduler() {
+        frameTimer = new Timer(FRAME_MILLIS, e -> flush());
+    }
+
+    /**
+     * Добавляет область окна.
+     * @param name Название области.
+     * @param component Компонент области, перерисовываемый после обновления.
+     * @param update Обновление содержимого области; выполняется в потоке Swing.
+     * @return Область для запросов обновления.
+     */
+    public synchronized Region addRegion(String name, JComponent component, Runnable update) {
+        Region region = new Region(name, component, update);
+        regions.add(region);
+        return region;
+    }
+
+    /**
+     * Запрашивает обновление области в ближайшем кадре. Может вызываться из любого потока;
+     * повторные запросы до начала кадра объединяются с первым.
+     * @param region Область окна.
+     */
+    public synchronized void request(Region region) {
+        requested++;
+        region.dirty = true;
+        if (!framePending) {
+            // однократный таймер нельзя надежно перезапускать из другого потока: срабатывание,
+            // совпавшее с обработкой предыдущего, теряется; поэтому таймер повторяющийся
+            framePending = true;
+            frameTimer.start();
+        }
+    }
+
+    /**
+     * Немедленно обновляет и перерисовывает устаревшие области. Вызывается таймером кадра
+     * или напрямую в потоке Swing, когда изменения нужно показать до окончания кадра.
+     */
+    public void flush() {
+        List<Region> dirty = new ArrayList<>();
+        synchronized (this) {
+            for (Region region : regions) {
+                if (region.dirty) {
+                    region.dirty = false;
+                    dirty.add(region);
+                }
+            }
+            if (dirty.isEmpty()) {
+                framePending = false;
+                frameTimer.stop();
+                return;
+            }
+            performed += dirty.size();
+            frames++;
+        }
+        for (Region region : dirty) {
+            try {
+                region.update.run();
+            } catch (RuntimeException e) {
+                logger.error("Error refreshing region " + region.name, e);
+            }
+            region.component.repaint();
+        }
+        logger.debug("Refreshed " + dirty.size() + " regions: " + this);
+    }
+
+    /**
+     * Учитывает пересчет или пропуск компоновки надписью.
+     * @param performed True, если компоновка пересчитана.
+     */
+    private synchronized void countLayout(boolean performed) {
+        if (performed) {
+            layouts++;
+        } else {
+            skippedLayouts++;
+        }
+    }
+
+    /**
+     * Возвращает количество запросов обновления.
+     * @return Количество запросов.
+     */
+    public synchronized long getRequested() {
+        return requested;
+    }
+
+    /**
+     * Возвращает количество выполненных обновлений и перерисовок областей.
+     * @return Количество обновлений.
+     */
+    public synchronized long getPerformed() {
+        return performed;
+    }
+
+    /**
+     * Возвращает количество кадров, в которых обновлялась хотя бы одна область.
+     * @return Количество кадров.
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Возвращает количество пересчетов компоновки надписями Label.
+     * @return Количество компоновок.
+     */
+    public synchronized long getLayouts() {
+        return layouts;
+    }
+
+    /**
+     * Возвращает количество смен текста надписей Label, не потребовавших компоновки.
+     * @return Количество пропущенных компоновок.
+     */
+    public synchronized long getSkippedLayouts() {
+        return skippedLayouts;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "requested " + requested + ", performed " + performed + " in " + frames + " frames, layouts "
+                + layouts + ", skipped layouts " + skippedLayouts;
+    }
+}
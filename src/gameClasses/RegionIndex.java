@@ -0,0 +1,498 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * Индекс статистики игроков по прямоугольным областям карты: количество захваченных, политых клеток и клеток с домами
+ * и сумма уровней риса на клетках игрока.
+ * Карта делится на блоки 64 x 64 клетки, как ChunkedGameMap; блоки создаются только там, где есть клетки игроков,
+ * и хранятся в хеш-таблице, поэтому индекс большой разреженной карты занимает память по числу занятых блоков.
+ * Внутри блока для каждого игрока хранятся двумерные деревья Фенвика, поэтому запрос по прямоугольнику стоит
+ * O(log² 64) на каждый пересекаемый занятый блок, а изменение клетки - O(log² 64).
+ * Индекс подписывается на изменения клеток карты и на рост и сбор риса явных клеток. Уровни устойчивых клеток
+ * (см. RiceAccount) меняются без уведомлений, поэтому для них хранятся два значения: до роста риса и после него,
+ * а запрос выбирает дерево по признаку роста в учете риса игрока. Устойчивая клетка, уровень которой изменится
+ * на следующий день, запоминается и пересчитывается при первом запросе после следующего сбора урожая.
+ */
+public class RegionIndex implements TileChangeListener {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(RegionIndex.class);
+    /**Двоичный логарифм стороны блока*/
+    private static final int BLOCK_SHIFT = ChunkedGameMap.CHUNK_SHIFT;
+    /**Сторона блока в клетках*/
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    /**Маска координаты внутри блока*/
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    /**Количество клеток блока*/
+    private static final int BLOCK_TILES = BLOCK_SIZE * BLOCK_SIZE;
+    /**Флаг состояния клетки: полита*/
+    private static final int WATERED = 1;
+    /**Флаг состояния клетки: построен дом*/
+    private static final int HOUSED = 2;
+    /**Сдвиг номера владельца в байте состояния клетки*/
+    private static final int OWNER_SHIFT = 2;
+    /**Ширина поля счетчика в упакованном узле дерева счетчиков*/
+    private static final int COUNT_BITS = 16;
+    /**Маска поля счетчика*/
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    /**Единицы счетчиков захваченных, политых клеток и клеток с домами в упакованном узле*/
+    private static final long OWNED_UNIT = 1, WATERED_UNIT = 1L << COUNT_BITS, HOUSED_UNIT = 1L << 2 * COUNT_BITS;
+    /**Индексируемая карта*/
+    private final AbstractGameMap gameMap;
+    /**Ширина и высота карты*/
+    private final int width, height;
+    /**Блоки с клетками игроков по ключу (x / 64) << 32 | (y / 64)*/
+    private final Map<Long, Block> blocks = new HashMap<>();
+    /**Игроки, номер игрока - индекс в этом списке*/
+    private final List<Player> players = new ArrayList<>();
+    /**Устойчивые клетки игроков, уровень риса которых изменится после следующего сбора урожая*/
+    private final List<Set<Long>> settling = new ArrayList<>();
+    /**Номер дня сбора урожая игроков, на который пересчитаны клетки settling*/
+    private int[] settledDays = new int[0];
+
+    /**
+     * Блок клеток: последнее учтенное состояние клеток и деревья Фенвика игроков.
+     */
+    private static final class Block {
+        /**Состояние клеток: флаги и номер владельца плюс 1*/
+        final byte[] states = new byte[BLOCK_TILES];
+        /**Уровни риса клеток до роста риса в текущем дне, в фиксированной точке*/
+        final int[] rice = new int[BLOCK_TILES];
+        /**Уровни риса клеток после роста риса в текущем дне, в фиксированной точке*/
+        final int[] grownRice = new int[BLOCK_TILES];
+        /**Деревья игроков или null, если у игрока нет клеток в блоке*/
+        Trees[] trees = new Trees[0];
+
+        /**
+         * Возвращает деревья игрока, создавая их при необходимости.
+         * @param slot Номер игрока.
+         * @return Деревья игрока.
+         */
+        Trees trees(int slot) {
+            if (slot >= trees.length) {
+                trees = Arrays.copyOf(trees, slot + 1);
+            }
+            if (trees[slot] == null) {
+                trees[slot] = new Trees();
+            }
+            return trees[slot];
+        }
+    }
+
+    /**
+     * Деревья Фенвика одного игрока в блоке. Узел (x, y) хранится по индексу x * 64 + y.
+     */
+    private static final class Trees {
+        /**Счетчики захваченных, политых клеток и клеток с домами, упакованные по 16 бит*/
+        final long[] counts = new long[BLOCK_TILES];
+        /**Уровни риса до роста*/
+        final int[] rice = new int[BLOCK_TILES];
+        /**Уровни риса после роста*/
+        final int[] grownRice = new int[BLOCK_TILES];
+        /**Суммы по всему блоку, чтобы не обходить деревья блоков, целиком покрытых запросом*/
+        long totalCounts;
+        int totalRice, totalGrownRice;
+
+        /**
+         * Прибавляет значения к клетке блока.
+         * @param x Координата x клетки в блоке.
+         * @param y Координата y клетки в блоке.
+         * @param count Упакованные счетчики.
+         * @param riceDelta Изменение уровня риса до роста.
+         * @param grownDelta Изменение уровня риса после роста.
+         */
+        void add(int x, int y, long count, int riceDelta, int grownDelta) {
+            totalCounts += count;
+            totalRice += riceDelta;
+            totalGrownRice += grownDelta;
+            for (int i = x + 1; i <= BLOCK_SIZE; i += i & -i) {
+                for (int j = y + 1; j <= BLOCK_SIZE; j += j & -j) {
+                    int node = (i - 1) * BLOCK_SIZE + j - 1;
+                    counts[node] += count;
+                    rice[node] += riceDelta;
+                    grownRice[node] += grownDelta;
+                }
+            }
+        }
+
+        /**
+         * Возвращает сумму упакованных счетчиков по прямоугольнику [x1, x2] x [y1, y2] блока.
+         * @param x1 Левая граница по x.
+         * @param y1 Левая граница по y.
+         * @param x2 Правая граница по x.
+         * @param y2 Правая граница по y.
+         * @return Упакованные суммы счетчиков.
+         */
+        long counts(int x1, int y1, int x2, int y2) {
+            if (x1 == 0 && y1 == 0 && x2 == BLOCK_MASK && y2 == BLOCK_MASK) {
+                return totalCounts;
+            }
+            return prefix(counts, x2 + 1, y2 + 1) - prefix(counts, x1, y2 + 1)
+                    - prefix(counts, x2 + 1, y1) + prefix(counts, x1, y1);
+        }
+
+        /**
+         * Возвращает сумму уровней риса по прямоугольнику [x1, x2] x [y1, y2] блока.
+         * @param grown Брать уровни после роста (true) или до роста (false).
+         * @param x1 Левая граница по x.
+         * @param y1 Левая граница по y.
+         * @param x2 Правая граница по x.
+         * @param y2 Правая граница по y.
+         * @return Сумма уровней риса в фиксированной точке.
+         */
+        int rice(boolean grown, int x1, int y1, int x2, int y2) {
+            if (x1 == 0 && y1 == 0 && x2 == BLOCK_MASK && y2 == BLOCK_MASK) {
+                return grown ? totalGrownRice : totalRice;
+            }
+            int[] tree = grown ? grownRice : rice;
+            return prefix(tree, x2 + 1, y2 + 1) - prefix(tree, x1, y2 + 1)
+                    - prefix(tree, x2 + 1, y1) + prefix(tree, x1, y1);
+        }
+
+        /**
+         * Возвращает сумму дерева по прямоугольнику [0, x) x [0, y).
+         * @param tree Дерево.
+         * @param x Граница по x, не включается.
+         * @param y Граница по y, не включается.
+         * @return Сумма.
+         */
+        static long prefix(long[] tree, int x, int y) {
+            long sum = 0;
+            for (int i = x; i > 0; i -= i & -i) {
+                for (int j = y; j > 0; j -= j & -j) {
+                    sum += tree[(i - 1) * BLOCK_SIZE + j - 1];
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Возвращает сумму дерева по прямоугольнику [0, x) x [0, y).
+         * @param tree Дерево.
+         * @param x Граница по x, не включается.
+         * @param y Граница по y, не включается.
+         * @return Сумма.
+         */
+        static int prefix(int[] tree, int x, int y) {
+            int sum = 0;
+            for (int i = x; i > 0; i -= i & -i) {
+                for (int j = y; j > 0; j -= j & -j) {
+                    sum += tree[(i - 1) * BLOCK_SIZE + j - 1];
+                }
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Строит индекс по занятым клеткам карты и подписывает его на изменения клеток.
+     * @param gameMap Индексируемая карта.
+     * @throws IllegalArgumentException Если карта не ведет ленивый учет риса (не наследует AbstractGameMap).
+     */
+    public RegionIndex(GameMapI gameMap) {
+        if (!(gameMap instanceof AbstractGameMap)) {
+            throw new IllegalArgumentException("Region index requires an AbstractGameMap, got "
+                    + gameMap.getClass().getName());
+        }
+        this.gameMap = (AbstractGameMap) gameMap;
+        this.width = gameMap.getWidth();
+        this.height = gameMap.getHeight();
+        this.gameMap.replayOccupiedTiles(this);
+        gameMap.addTileChangeListener(this);
+        logger.info("Region index built for " + players.size() + " players on " + width + "x" + height + " map, "
+                + blocks.size() + " blocks");
+    }
+
+    /**
+     * Обновляет деревья по изменившейся клетке.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void tileChanged(int x, int y) {
+        update(x, y);
+    }
+
+    /**
+     * Обновляет уровень риса клетки после роста или сбора урожая.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void riceChanged(int x, int y) {
+        update(x, y);
+    }
+
+    /**
+     * Отписывает индекс от изменений карты.
+     */
+    public void detach() {
+        gameMap.removeTileChangeListener(this);
+    }
+
+    /**
+     * Возвращает количество клеток игрока в прямоугольнике. Границы включаются и обрезаются по карте.
+     * @param player Игрок.
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Количество клеток.
+     */
+    public int countOwned(Player player, int x1, int y1, int x2, int y2) {
+        return (int) countTiles(player, OWNED_UNIT, x1, y1, x2, y2);
+    }
+
+    /**
+     * Возвращает количество политых клеток игрока в прямоугольнике. Границы включаются и обрезаются по карте.
+     * @param player Игрок.
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Количество политых клеток.
+     */
+    public int countWatered(Player player, int x1, int y1, int x2, int y2) {
+        return (int) countTiles(player, WATERED_UNIT, x1, y1, x2, y2);
+    }
+
+    /**
+     * Возвращает количество клеток игрока с домами в прямоугольнике. Границы включаются и обрезаются по карте.
+     * @param player Игрок.
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Количество клеток с домами.
+     */
+    public int countHoused(Player player, int x1, int y1, int x2, int y2) {
+        return (int) countTiles(player, HOUSED_UNIT, x1, y1, x2, y2);
+    }
+
+    /**
+     * Возвращает сумму уровней риса на клетках игрока в прямоугольнике, то есть сумму getRiceAt по этим клеткам.
+     * Границы включаются и обрезаются по карте.
+     * @param player Игрок.
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Сумма уровней риса.
+     */
+    public double sumRice(Player player, int x1, int y1, int x2, int y2) {
+        int slot = players.indexOf(player);
+        if (slot < 0) {
+            return 0;
+        }
+        settle(slot);
+        return FixedPoint.toDouble(query(slot, 0, gameMap.riceAccount(player).grown, x1, y1, x2, y2));
+    }
+
+    /**
+     * Возвращает ежедневный урожай риса клеток игрока в прямоугольнике после выхода клеток на постоянный урожай:
+     * 2 единицы с неполитой клетки и 3 с политой. Это оценка будущего урожая, а не текущий рис на клетках
+     * (см. sumRice).
+     * @param player Игрок.
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Ежедневный урожай.
+     */
+    public int steadyHarvest(Player player, int x1, int y1, int x2, int y2) {
+        return (int) (2 * countTiles(player, OWNED_UNIT, x1, y1, x2, y2)
+                + countTiles(player, WATERED_UNIT, x1, y1, x2, y2));
+    }
+
+    /**
+     * Возвращает количество блоков, в которых есть клетки игроков.
+     * @return Количество блоков.
+     */
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * Считает клетки игрока в прямоугольнике по одному из счетчиков.
+     * @param player Игрок.
+     * @param unit Единица счетчика: OWNED_UNIT, WATERED_UNIT или HOUSED_UNIT.
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Количество клеток.
+     */
+    private long countTiles(Player player, long unit, int x1, int y1, int x2, int y2) {
+        int slot = players.indexOf(player);
+        return slot < 0 ? 0 : query(slot, unit, false, x1, y1, x2, y2);
+    }
+
+    /**
+     * Складывает значения деревьев игрока по занятым блокам, пересекающим прямоугольник. Если прямоугольник
+     * покрывает больше блоков, чем занято, перебираются занятые блоки, иначе - блоки прямоугольника.
+     * @param slot Номер игрока.
+     * @param unit Единица счетчика клеток или 0, чтобы сложить уровни риса.
+     * @param grown Складывать уровни риса после роста (true) или до роста (false).
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Сумма: количество клеток или уровень риса в фиксированной точке.
+     */
+    private long query(int slot, long unit, boolean grown, int x1, int y1, int x2, int y2) {
+        x1 = Math.max(x1, 0);
+        y1 = Math.max(y1, 0);
+        x2 = Math.min(x2, width - 1);
+        y2 = Math.min(y2, height - 1);
+        if (x1 > x2 || y1 > y2) {
+            return 0;
+        }
+        int bx1 = x1 >>> BLOCK_SHIFT, by1 = y1 >>> BLOCK_SHIFT, bx2 = x2 >>> BLOCK_SHIFT, by2 = y2 >>> BLOCK_SHIFT;
+        long sum = 0;
+        if ((long) (bx2 - bx1 + 1) * (by2 - by1 + 1) <= blocks.size()) {
+            for (int bx = bx1; bx <= bx2; bx++) {
+                for (int by = by1; by <= by2; by++) {
+                    Block block = blocks.get((long) bx << 32 | by);
+                    if (block != null) {
+                        sum += blockSum(block, slot, unit, grown, bx, by, x1, y1, x2, y2);
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, Block> entry : blocks.entrySet()) {
+                int bx = (int) (entry.getKey() >>> 32);
+                int by = (int) (long) entry.getKey();
+                if (bx >= bx1 && bx <= bx2 && by >= by1 && by <= by2) {
+                    sum += blockSum(entry.getValue(), slot, unit, grown, bx, by, x1, y1, x2, y2);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Возвращает сумму деревьев игрока в блоке по части прямоугольника, попадающей в блок.
+     * @param block Блок.
+     * @param slot Номер игрока.
+     * @param unit Единица счетчика клеток или 0, чтобы сложить уровни риса.
+     * @param grown Складывать уровни риса после роста (true) или до роста (false).
+     * @param bx Номер блока по x.
+     * @param by Номер блока по y.
+     * @param x1 Левая граница по x.
+     * @param y1 Левая граница по y.
+     * @param x2 Правая граница по x.
+     * @param y2 Правая граница по y.
+     * @return Сумма по блоку.
+     */
+    private static long blockSum(Block block, int slot, long unit, boolean grown, int bx, int by,
+                                 int x1, int y1, int x2, int y2) {
+        if (slot >= block.trees.length || block.trees[slot] == null) {
+            return 0;
+        }
+        int baseX = bx << BLOCK_SHIFT, baseY = by << BLOCK_SHIFT;
+        int lx1 = Math.max(x1 - baseX, 0), ly1 = Math.max(y1 - baseY, 0);
+        int lx2 = Math.min(x2 - baseX, BLOCK_MASK), ly2 = Math.min(y2 - baseY, BLOCK_MASK);
+        Trees trees = block.trees[slot];
+        return unit == 0 ? trees.rice(grown, lx1, ly1, lx2, ly2) : trees.counts(lx1, ly1, lx2, ly2) / unit & COUNT_MASK;
+    }
+
+    /**
+     * Пересчитывает клетку: ее владельца, флаги и уровни риса до и после роста, и переносит разницу в деревья.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    private void update(int x, int y) {
+        Player owner = gameMap.ownerAt(x, y);
+        long key = (long) (x >>> BLOCK_SHIFT) << 32 | (y >>> BLOCK_SHIFT);
+        Block block = blocks.get(key);
+        if (block == null) {
+            if (owner == null) {
+                return;
+            }
+            block = new Block();
+            blocks.put(key, block);
+        }
+        int local = (x & BLOCK_MASK) << BLOCK_SHIFT | (y & BLOCK_MASK);
+        int oldState = block.states[local] & 0xFF;
+        int oldSlot = (oldState >>> OWNER_SHIFT) - 1;
+        int newState = 0, rice = 0, grownRice = 0;
+        long index = (long) x * height + y;
+        if (oldSlot >= 0) {
+            settling.get(oldSlot).remove(index);
+        }
+        if (owner != null) {
+            int slot = slot(owner);
+            boolean watered = gameMap.isWatered(x, y);
+            newState = (slot + 1) << OWNER_SHIFT | (watered ? WATERED : 0) | (gameMap.isHoused(x, y) ? HOUSED : 0);
+            int day = gameMap.riceDay(x, y);
+            rice = gameMap.storedRice(x, y);
+            grownRice = rice;
+            if (day >= 0) {
+                int elapsed = gameMap.riceAccount(owner).days - day;
+                int level = rice;
+                rice = RiceAccount.advance(level, watered, elapsed);
+                grownRice = RiceAccount.grow(rice, watered);
+                if (elapsed <= 0 && RiceAccount.advance(level, watered, 1) != rice) {
+                    settling.get(slot).add(index);
+                }
+            }
+        }
+        if (oldState == newState && block.rice[local] == rice && block.grownRice[local] == grownRice) {
+            return;
+        }
+        int lx = x & BLOCK_MASK, ly = y & BLOCK_MASK;
+        if (oldSlot >= 0) {
+            block.trees(oldSlot).add(lx, ly, -counts(oldState), -block.rice[local], -block.grownRice[local]);
+        }
+        if (newState != 0) {
+            block.trees((newState >>> OWNER_SHIFT) - 1).add(lx, ly, counts(newState), rice, grownRice);
+        }
+        block.states[local] = (byte) newState;
+        block.rice[local] = rice;
+        block.grownRice[local] = grownRice;
+    }
+
+    /**
+     * Пересчитывает устойчивые клетки игрока, уровень риса которых изменился после сбора урожая.
+     * @param slot Номер игрока.
+     */
+    private void settle(int slot) {
+        int days = gameMap.riceAccount(players.get(slot)).days;
+        if (settledDays[slot] == days) {
+            return;
+        }
+        settledDays[slot] = days;
+        for (long index : new ArrayList<>(settling.get(slot))) {
+            update((int) (index / height), (int) (index % height));
+        }
+    }
+
+    /**
+     * Возвращает упакованные счетчики одной клетки по байту состояния.
+     * @param state Байт состояния клетки.
+     * @return Упакованные счетчики.
+     */
+    private static long counts(int state) {
+        return OWNED_UNIT + ((state & WATERED) != 0 ? WATERED_UNIT : 0) + ((state & HOUSED) != 0 ? HOUSED_UNIT : 0);
+    }
+
+    /**
+     * Возвращает номер игрока, добавляя нового игрока.
+     * @param player Игрок.
+     * @return Номер игрока.
+     */
+    private int slot(Player player) {
+        int slot = players.indexOf(player);
+        if (slot < 0) {
+            players.add(player);
+            settling.add(new HashSet<>());
+            settledDays = Arrays.copyOf(settledDays, players.size());
+            settledDays[players.size() - 1] = gameMap.riceAccount(player).days;
+            slot = players.size() - 1;
+        }
+        return slot;
+    }
+}
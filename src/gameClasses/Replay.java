@@ -0,0 +1,316 @@
+package gameClasses;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Повтор партии, прочитанный из файла, записанного ReplayRecorder.
+ * Позволяет получить состояние карты и ресурсы игроков на любой день за O(K),
+ * где K - период опорных кадров: берется ближайший предшествующий опорный кадр и к нему применяются изменения по дням.
+ */
+public class Replay {
+    /**Сигнатура файла повтора*/
+    static final int MAGIC = 0x52504C31;
+    /**Тип записи: опорный кадр*/
+    static final int RECORD_KEYFRAME = 1;
+    /**Тип записи: изменения за день*/
+    static final int RECORD_DELTA = 2;
+    /**Клетка принадлежит первому игроку*/
+    static final int OWNER_PLAYER1 = 1;
+    /**Клетка принадлежит второму игроку*/
+    static final int OWNER_PLAYER2 = 2;
+    /**Маска владельца клетки*/
+    static final int OWNER_MASK = 3;
+    /**Клетка полита*/
+    static final int TILE_WATERED = 4;
+    /**На клетке построен дом*/
+    static final int TILE_HOUSED = 8;
+    /**Количество значений ресурсов одного игрока: рис, вода, крестьяне, дома, клетки*/
+    static final int STATS_PER_PLAYER = 5;
+
+    /**Зерно генератора случайных чисел карты*/
+    private final long seed;
+    /**Ширина карты*/
+    private final int width;
+    /**Высота карты*/
+    private final int height;
+    /**Период опорных кадров в днях*/
+    private final int keyframeInterval;
+    /**Количество необходимых для захвата юнитов по клеткам*/
+    private final int[] requiredUnits;
+    /**Первый записанный день*/
+    private int firstDay;
+    /**Опорные кадры в порядке дней*/
+    private final List<Frame> keyframes = new ArrayList<>();
+    /**Индексы изменившихся клеток по дням, начиная с firstDay; null для дней с опорным кадром*/
+    private final List<int[]> deltaTiles = new ArrayList<>();
+    /**Новые состояния изменившихся клеток по дням, начиная с firstDay*/
+    private final List<byte[]> deltaStates = new ArrayList<>();
+    /**Ресурсы игроков по дням, начиная с firstDay*/
+    private final List<double[]> stats = new ArrayList<>();
+
+    /**
+     * Состояние партии на один день.
+     */
+    public static class Frame {
+        /**Номер дня*/
+        private final int day;
+        /**Состояния клеток*/
+        private final byte[] tiles;
+        /**Ресурсы игроков*/
+        private final double[] stats;
+        /**Высота карты*/
+        private final int height;
+
+        /**
+         * Создает состояние партии на день.
+         * @param day Номер дня.
+         * @param tiles Состояния клеток.
+         * @param stats Ресурсы игроков.
+         * @param height Высота карты.
+         */
+        Frame(int day, byte[] tiles, double[] stats, int height) {
+            this.day = day;
+            this.tiles = tiles;
+            this.stats = stats;
+            this.height = height;
+        }
+
+        /**
+         * Возвращает номер дня.
+         * @return Номер дня.
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * Возвращает строку состояния клетки с точки зрения первого игрока, как GameMap.getStateString.
+         * @param x Координата x клетки.
+         * @param y Координата y клетки.
+         * @return Строка состояния клетки.
+         */
+        public String getStateString(int x, int y) {
+            return stateString(tiles[x * height + y]);
+        }
+
+        /**
+         * Возвращает значение ресурса игрока.
+         * @param player Номер игрока: 0 - первый, 1 - второй.
+         * @param resource Номер ресурса: 0 - рис, 1 - вода, 2 - крестьяне, 3 - дома, 4 - клетки.
+         * @return Значение ресурса.
+         */
+        public double getStat(int player, int resource) {
+            return stats[player * STATS_PER_PLAYER + resource];
+        }
+    }
+
+    /**
+     * Возвращает строку состояния клетки с точки зрения первого игрока по байту состояния клетки.
+     * @param state Байт состояния клетки.
+     * @return Строка состояния клетки, как GameMap.getStateString.
+     */
+    static String stateString(int state) {
+        int owner = state & OWNER_MASK;
+        if (owner == 0) {
+            return "EMPTY";
+        }
+        String suffix = owner == OWNER_PLAYER1 ? "1" : "2";
+        boolean watered = (state & TILE_WATERED) != 0;
+        if ((state & TILE_HOUSED) != 0) {
+            return (watered ? "HOUSEWATER" : "HOUSE") + suffix;
+        }
+        return (watered ? "RICEWATER" : "RICE") + suffix;
+    }
+
+    /**
+     * Создает пустой повтор с заголовком из файла.
+     * @param seed Зерно генератора случайных чисел карты.
+     * @param width Ширина карты.
+     * @param height Высота карты.
+     * @param keyframeInterval Период опорных кадров.
+     */
+    private Replay(long seed, int width, int height, int keyframeInterval) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.keyframeInterval = keyframeInterval;
+        this.requiredUnits = new int[width * height];
+    }
+
+    /**
+     * Читает повтор из файла.
+     * @param file Файл повтора.
+     * @return Повтор.
+     * @throws IOException Если возникает ошибка ввода-вывода или файл не является повтором.
+     */
+    public static Replay load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a replay file: " + file);
+            }
+            Replay replay = new Replay(in.readLong(), in.readInt(), in.readInt(), in.readInt());
+            for (int i = 0; i < replay.requiredUnits.length; i++) {
+                replay.requiredUnits[i] = in.readInt();
+            }
+            int type;
+            while ((type = in.read()) != -1) {
+                try {
+                    replay.readRecord(in, type);
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+            if (replay.keyframes.isEmpty()) {
+                throw new IOException("Replay file has no keyframes: " + file);
+            }
+            return replay;
+        }
+    }
+
+    /**
+     * Читает одну запись повтора. Недописанная последняя запись отбрасывается.
+     * @param in Поток чтения.
+     * @param type Тип записи.
+     * @throws IOException Если возникает ошибка ввода-вывода или тип записи неизвестен.
+     */
+    private void readRecord(DataInputStream in, int type) throws IOException {
+        int day = in.readInt();
+        if (type == RECORD_KEYFRAME) {
+            byte[] tiles = new byte[width * height];
+            in.readFully(tiles);
+            double[] dayStats = readStats(in);
+            if (keyframes.isEmpty()) {
+                firstDay = day;
+            }
+            keyframes.add(new Frame(day, tiles, dayStats, height));
+            deltaTiles.add(null);
+            deltaStates.add(null);
+            stats.add(dayStats);
+        } else if (type == RECORD_DELTA) {
+            int count = in.readInt();
+            int[] indices = new int[count];
+            byte[] states = new byte[count];
+            for (int i = 0; i < count; i++) {
+                indices[i] = in.readInt();
+                states[i] = in.readByte();
+            }
+            double[] dayStats = readStats(in);
+            deltaTiles.add(indices);
+            deltaStates.add(states);
+            stats.add(dayStats);
+        } else {
+            throw new IOException("Unknown replay record type: " + type);
+        }
+    }
+
+    /**
+     * Читает ресурсы обоих игроков.
+     * @param in Поток чтения.
+     * @return Ресурсы игроков.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private static double[] readStats(DataInputStream in) throws IOException {
+        double[] values = new double[2 * STATS_PER_PLAYER];
+        for (int player = 0; player < 2; player++) {
+            int base = player * STATS_PER_PLAYER;
+            values[base] = in.readDouble();
+            values[base + 1] = in.readDouble();
+            values[base + 2] = in.readInt();
+            values[base + 3] = in.readInt();
+            values[base + 4] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Возвращает состояние партии на указанный день.
+     * Берет ближайший опорный кадр не позже этого дня и применяет к нему изменения последующих дней.
+     * @param day Номер дня от getFirstDay() до getLastDay().
+     * @return Состояние партии.
+     */
+    public Frame frameAt(int day) {
+        int target = Math.max(firstDay, Math.min(day, getLastDay()));
+        int low = 0;
+        int high = keyframes.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (keyframes.get(mid).getDay() <= target) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Frame keyframe = keyframes.get(low);
+        byte[] tiles = keyframe.tiles.clone();
+        for (int d = keyframe.getDay() + 1; d <= target; d++) {
+            int[] indices = deltaTiles.get(d - firstDay);
+            byte[] states = deltaStates.get(d - firstDay);
+            for (int i = 0; i < indices.length; i++) {
+                tiles[indices[i]] = states[i];
+            }
+        }
+        return new Frame(target, tiles, stats.get(target - firstDay), height);
+    }
+
+    /**
+     * Возвращает первый записанный день.
+     * @return Номер дня.
+     */
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    /**
+     * Возвращает последний записанный день.
+     * @return Номер дня.
+     */
+    public int getLastDay() {
+        return firstDay + stats.size() - 1;
+    }
+
+    /**
+     * Возвращает зерно генератора случайных чисел карты.
+     * @return Зерно генератора.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Возвращает ширину карты.
+     * @return Ширина карты.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Возвращает высоту карты.
+     * @return Высота карты.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Возвращает период опорных кадров в днях.
+     * @return Период опорных кадров.
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Возвращает количество юнитов, необходимых для захвата клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Количество необходимых юнитов.
+     */
+    public int getRequiredUnits(int x, int y) {
+        return requiredUnits[x * height + y];
+    }
+}
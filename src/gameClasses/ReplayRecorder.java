@@ -0,0 +1,199 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Записывает повтор партии в файл.
+ * Сначала записываются зерно карты, количество необходимых юнитов на клетках и полное состояние карты,
+ * затем за каждый день - только изменившиеся клетки и ресурсы игроков,
+ * а каждые keyframeInterval дней - снова полное состояние карты (опорный кадр).
+ * Изменения клеток отслеживаются через TileChangeListener, поэтому запись дня стоит O(изменившихся клеток).
+ */
+public class ReplayRecorder implements TileChangeListener, Closeable {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(ReplayRecorder.class);
+    /**Поток записи файла повтора*/
+    private final DataOutputStream out;
+    /**Записываемая партия*/
+    private final GameSession session;
+    /**Период опорных кадров в днях*/
+    private final int keyframeInterval;
+    /**Высота карты*/
+    private final int height;
+    /**Отметки клеток, изменившихся за текущий день*/
+    private final BitSet changed;
+    /**Индексы клеток, изменившихся за текущий день*/
+    private int[] changedTiles = new int[16];
+    /**Количество клеток, изменившихся за текущий день*/
+    private int changedCount;
+    /**День последнего опорного кадра*/
+    private int lastKeyframeDay;
+
+    /**
+     * Создает файл повтора и записывает в него заголовок и начальное состояние партии.
+     * @param file Файл повтора.
+     * @param session Записываемая партия.
+     * @param keyframeInterval Период опорных кадров в днях.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public ReplayRecorder(Path file, GameSession session, int keyframeInterval) throws IOException {
+        this.session = session;
+        this.keyframeInterval = keyframeInterval;
+        GameMapI gameMap = session.getGameMap();
+        this.height = gameMap.getHeight();
+        this.changed = new BitSet(gameMap.getWidth() * height);
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+
+        out.writeInt(Replay.MAGIC);
+        out.writeLong(session.getSeed());
+        out.writeInt(gameMap.getWidth());
+        out.writeInt(height);
+        out.writeInt(keyframeInterval);
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < height; y++) {
+                out.writeInt(gameMap.getTile(x, y).getRequiredUnits());
+            }
+        }
+        writeKeyframe(session.getGameDay());
+        gameMap.addTileChangeListener(this);
+        logger.info("Replay recording started: " + file);
+    }
+
+    /**
+     * Запоминает изменившуюся клетку до конца дня.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void tileChanged(int x, int y) {
+        int index = x * height + y;
+        if (!changed.get(index)) {
+            changed.set(index);
+            if (changedCount == changedTiles.length) {
+                changedTiles = Arrays.copyOf(changedTiles, changedCount * 2);
+            }
+            changedTiles[changedCount++] = index;
+        }
+    }
+
+    /**
+     * Записывает прошедший день: изменения клеток и ресурсы игроков,
+     * либо полный опорный кадр, если с предыдущего прошло keyframeInterval дней.
+     * @param day Номер завершившегося дня.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public void recordDay(int day) throws IOException {
+        if (day - lastKeyframeDay >= keyframeInterval) {
+            writeKeyframe(day);
+        } else {
+            GameMapI gameMap = session.getGameMap();
+            out.writeByte(Replay.RECORD_DELTA);
+            out.writeInt(day);
+            out.writeInt(changedCount);
+            for (int i = 0; i < changedCount; i++) {
+                int index = changedTiles[i];
+                out.writeInt(index);
+                out.writeByte(encodeTile(gameMap, index / height, index % height));
+            }
+            writePlayers();
+        }
+        changed.clear();
+        changedCount = 0;
+    }
+
+    /**
+     * Сбрасывает записанные данные в файл.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Прекращает запись и закрывает файл повтора.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public void close() throws IOException {
+        session.getGameMap().removeTileChangeListener(this);
+        out.close();
+        logger.info("Replay recording finished.");
+    }
+
+    /**
+     * Записывает полное состояние карты и ресурсы игроков.
+     * @param day Номер дня.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void writeKeyframe(int day) throws IOException {
+        GameMapI gameMap = session.getGameMap();
+        out.writeByte(Replay.RECORD_KEYFRAME);
+        out.writeInt(day);
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < height; y++) {
+                out.writeByte(encodeTile(gameMap, x, y));
+            }
+        }
+        writePlayers();
+        lastKeyframeDay = day;
+        logger.debug("Replay keyframe written for day " + day);
+    }
+
+    /**
+     * Записывает ресурсы обоих игроков.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void writePlayers() throws IOException {
+        for (Player player : new Player[]{session.getPlayer1(), session.getPlayer2()}) {
+            out.writeDouble(player.getRice());
+            out.writeDouble(player.getWater());
+            out.writeInt(player.getUnits());
+            out.writeInt(player.getHouses());
+            out.writeInt(player.controlledTiles());
+        }
+    }
+
+    /**
+     * Кодирует состояние клетки в один байт: владелец, полив и дом.
+     * @param gameMap Игровая карта.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Байт состояния клетки.
+     */
+    private byte encodeTile(GameMapI gameMap, int x, int y) {
+        return encodeTile(gameMap, x, y, session.getPlayer1(), session.getPlayer2());
+    }
+
+    /**
+     * Кодирует состояние клетки в один байт: владелец (константы OWNER_* класса Replay), полив и дом.
+     * @param gameMap Игровая карта.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @param player1 Первый игрок.
+     * @param player2 Второй игрок.
+     * @return Байт состояния клетки.
+     */
+    static byte encodeTile(GameMapI gameMap, int x, int y, Player player1, Player player2) {
+        Tile tile = gameMap.getTile(x, y);
+        int state = 0;
+        if (tile.getOwner() == player1) {
+            state = Replay.OWNER_PLAYER1;
+        } else if (tile.getOwner() == player2) {
+            state = Replay.OWNER_PLAYER2;
+        }
+        if (tile.isWatered()) {
+            state |= Replay.TILE_WATERED;
+        }
+        if (tile.isHoused()) {
+            state |= Replay.TILE_HOUSED;
+        }
+        return (byte) state;
+    }
+}
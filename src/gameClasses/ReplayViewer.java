@@ -0,0 +1,85 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Диалоговое окно просмотра повтора партии.
+ * Ползунок выбирает день, карта и ресурсы игроков показываются на этот день.
+ */
+public class ReplayViewer extends JDialog {
+    private static final long serialVersionUID = 4992745339966466760L;
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(ReplayViewer.class);
+    /**Повтор партии*/
+    private final Replay replay;
+    /**Клетки карты*/
+    private final JLabel[][] tileLabels;
+    /**Надпись с ресурсами игроков*/
+    private final JLabel statsLabel = new JLabel();
+
+    /**
+     * Создает окно просмотра повтора.
+     * @param owner Родительское окно.
+     * @param replay Повтор партии.
+     */
+    public ReplayViewer(Frame owner, Replay replay) {
+        super(owner, "Повтор игры", true);
+        this.replay = replay;
+        setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+
+        JPanel mapPanel = new JPanel(new GridLayout(replay.getWidth(), replay.getHeight()));
+        tileLabels = new JLabel[replay.getWidth()][replay.getHeight()];
+        for (int i = 0; i < replay.getWidth(); i++) {
+            for (int j = 0; j < replay.getHeight(); j++) {
+                tileLabels[i][j] = new JLabel();
+                tileLabels[i][j].setHorizontalTextPosition(SwingConstants.CENTER);
+                mapPanel.add(tileLabels[i][j]);
+            }
+        }
+        mapPanel.setBorder(BorderFactory.createTitledBorder("Карта"));
+
+        JSlider daySlider = new JSlider(replay.getFirstDay(), replay.getLastDay(), replay.getLastDay());
+        daySlider.setBorder(BorderFactory.createTitledBorder("День"));
+        daySlider.setPaintLabels(true);
+        daySlider.setMajorTickSpacing(Math.max(1, replay.getKeyframeInterval()));
+        daySlider.addChangeListener(e -> showDay(daySlider.getValue()));
+
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        mainPanel.add(statsLabel, BorderLayout.NORTH);
+        mainPanel.add(mapPanel, BorderLayout.CENTER);
+        mainPanel.add(daySlider, BorderLayout.SOUTH);
+        add(mainPanel);
+
+        showDay(replay.getLastDay());
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * Показывает состояние партии на указанный день.
+     * @param day Номер дня.
+     */
+    private void showDay(int day) {
+        Replay.Frame frame = replay.frameAt(day);
+        for (int i = 0; i < replay.getWidth(); i++) {
+            for (int j = 0; j < replay.getHeight(); j++) {
+                String state = frame.getStateString(i, j);
+                tileLabels[i][j].setIcon(TileSprites.icon(state, TileSprites.REPLAY_TILE_SIZE));
+                tileLabels[i][j].setText(state.equals("EMPTY") ? String.valueOf(replay.getRequiredUnits(i, j)) : "");
+            }
+        }
+        statsLabel.setText("<html>День " + frame.getDay()
+                + "<br>Игрок 1: рис " + frame.getStat(0, 0) + ", вода " + frame.getStat(0, 1)
+                + ", крестьяне " + (int) frame.getStat(0, 2) + ", дома " + (int) frame.getStat(0, 3) + ", территории " + (int) frame.getStat(0, 4)
+                + "<br>ИИ: рис " + frame.getStat(1, 0) + ", вода " + frame.getStat(1, 1)
+                + ", крестьяне " + (int) frame.getStat(1, 2) + ", дома " + (int) frame.getStat(1, 3) + ", территории " + (int) frame.getStat(1, 4)
+                + "</html>");
+        logger.debug("Replay shows day " + frame.getDay());
+    }
+}
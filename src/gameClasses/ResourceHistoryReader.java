@@ -0,0 +1,267 @@
+package gameClasses;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение файла истории ресурсов, записанного ResourceHistoryWriter.
+ * Файл читается потоком блок за блоком, поэтому память не зависит от количества партий в файле:
+ * в памяти находится только текущий распакованный блок и накапливаемые агрегаты.
+ */
+public class ResourceHistoryReader implements Closeable {
+    /**Сигнатура файла истории ресурсов*/
+    static final int MAGIC = 0x52534831;
+    /**Количество игроков в партии*/
+    static final int PLAYERS = 2;
+
+    /**
+     * Столбцы истории ресурсов. Значения одного столбца хранятся подряд, у каждого столбца фиксированная ширина.
+     */
+    public enum Column {
+        /**Рис*/
+        RICE(8),
+        /**Вода*/
+        WATER(8),
+        /**Крестьяне*/
+        UNITS(4),
+        /**Дома*/
+        HOUSES(4),
+        /**Клетки*/
+        TILES(4);
+
+        /**Ширина значения, байт*/
+        final int width;
+
+        Column(int width) {
+            this.width = width;
+        }
+    }
+
+    /**Ширина всех столбцов одного игрока за один день, байт*/
+    static final int PLAYER_DAY_BYTES = Arrays.stream(Column.values()).mapToInt(c -> c.width).sum();
+
+    /**
+     * Обходчик блоков файла.
+     */
+    public interface BlockVisitor {
+        /**
+         * Вызывается для каждого блока файла. Блок действителен только во время вызова.
+         * @param block Блок.
+         */
+        void visit(Block block);
+    }
+
+    /**
+     * Блок истории: ресурсы игроков одной партии за несколько дней подряд.
+     */
+    public static final class Block {
+        /**Идентификатор партии*/
+        private long gameId;
+        /**Первый день блока*/
+        private int firstDay;
+        /**Количество дней в блоке*/
+        private int dayCount;
+        /**Распакованные столбцы блока*/
+        private ByteBuffer data;
+
+        /**
+         * Возвращает идентификатор партии.
+         * @return Идентификатор партии.
+         */
+        public long getGameId() {
+            return gameId;
+        }
+
+        /**
+         * Возвращает первый день блока.
+         * @return Номер дня.
+         */
+        public int getFirstDay() {
+            return firstDay;
+        }
+
+        /**
+         * Возвращает количество дней в блоке.
+         * @return Количество дней.
+         */
+        public int getDayCount() {
+            return dayCount;
+        }
+
+        /**
+         * Возвращает значение ресурса игрока за день блока.
+         * @param player Номер игрока (0 или 1).
+         * @param column Столбец.
+         * @param index Номер дня внутри блока.
+         * @return Значение ресурса.
+         */
+        public double get(int player, Column column, int index) {
+            int offset = columnOffset(player, column, dayCount) + index * column.width;
+            return column.width == 8 ? data.getDouble(offset) : data.getInt(offset);
+        }
+    }
+
+    /**
+     * Накопитель средних значений ресурса по дням. Память пропорциональна количеству дней, а не партий.
+     */
+    private static final class MeanByDay implements BlockVisitor {
+        /**Номер игрока*/
+        private final int player;
+        /**Столбец*/
+        private final Column column;
+        /**Суммы значений по дням*/
+        private double[] sums = new double[16];
+        /**Количество значений по дням*/
+        private long[] counts = new long[16];
+
+        MeanByDay(int player, Column column) {
+            this.player = player;
+            this.column = column;
+        }
+
+        public void visit(Block block) {
+            int lastDay = block.getFirstDay() + block.getDayCount();
+            if (lastDay > sums.length) {
+                int length = Math.max(lastDay, sums.length * 2);
+                sums = Arrays.copyOf(sums, length);
+                counts = Arrays.copyOf(counts, length);
+            }
+            for (int i = 0; i < block.getDayCount(); i++) {
+                sums[block.getFirstDay() + i] += block.get(player, column, i);
+                counts[block.getFirstDay() + i]++;
+            }
+        }
+
+        /**
+         * Возвращает средние значения.
+         * @return Средние значения по номеру дня, начиная с 0; для дней без данных - NaN.
+         */
+        double[] result() {
+            int days = counts.length;
+            while (days > 0 && counts[days - 1] == 0) {
+                days--;
+            }
+            double[] means = new double[days];
+            for (int day = 0; day < days; day++) {
+                means[day] = counts[day] == 0 ? Double.NaN : sums[day] / counts[day];
+            }
+            return means;
+        }
+    }
+
+    /**Поток чтения файла*/
+    private final DataInputStream in;
+    /**Количество дней в полном блоке*/
+    private final int blockDays;
+    /**Распаковщик блоков*/
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Открывает файл истории ресурсов.
+     * @param file Файл истории.
+     * @throws IOException Если файл не является файлом истории или возникает ошибка ввода-вывода.
+     */
+    public ResourceHistoryReader(Path file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        if (in.readInt() != MAGIC) {
+            in.close();
+            throw new IOException("Not a resource history file: " + file);
+        }
+        blockDays = in.readInt();
+    }
+
+    /**
+     * Возвращает количество дней в полном блоке.
+     * @return Количество дней.
+     */
+    public int getBlockDays() {
+        return blockDays;
+    }
+
+    /**
+     * Читает блоки до конца файла и передает их обходчику.
+     * @param visitor Обходчик блоков.
+     * @throws IOException Если файл поврежден или возникает ошибка ввода-вывода.
+     */
+    public void scan(BlockVisitor visitor) throws IOException {
+        Block block = new Block();
+        byte[] compressed = new byte[0];
+        byte[] raw = new byte[0];
+        while (true) {
+            try {
+                block.gameId = in.readLong();
+            } catch (EOFException e) {
+                return;
+            }
+            block.firstDay = in.readInt();
+            block.dayCount = in.readInt();
+            int rawLength = block.dayCount * PLAYERS * PLAYER_DAY_BYTES;
+            int compressedLength = in.readInt();
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            if (raw.length < rawLength) {
+                raw = new byte[rawLength];
+            }
+            in.readFully(compressed, 0, compressedLength);
+            inflater.reset();
+            inflater.setInput(compressed, 0, compressedLength);
+            try {
+                if (inflater.inflate(raw, 0, rawLength) != rawLength) {
+                    throw new IOException("Truncated resource history block of game " + block.gameId);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted resource history block of game " + block.gameId, e);
+            }
+            block.data = ByteBuffer.wrap(raw, 0, rawLength);
+            visitor.visit(block);
+        }
+    }
+
+    /**
+     * Считает среднее значение ресурса игрока по дням среди всех партий, доживших до этого дня.
+     * Файл читается до конца.
+     * @param player Номер игрока (0 или 1).
+     * @param column Столбец.
+     * @return Средние значения по номеру дня, начиная с первого дня партии под номером 0; для дней без данных - NaN.
+     * @throws IOException Если файл поврежден или возникает ошибка ввода-вывода.
+     */
+    public double[] meanByDay(int player, Column column) throws IOException {
+        MeanByDay mean = new MeanByDay(player, column);
+        scan(mean);
+        return mean.result();
+    }
+
+    /**
+     * Закрывает файл.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Возвращает смещение столбца игрока в распакованном блоке.
+     * Блок хранит столбцы по игрокам: для каждого игрока подряд все значения каждого столбца в порядке Column.
+     * @param player Номер игрока.
+     * @param column Столбец.
+     * @param dayCount Количество дней в блоке.
+     * @return Смещение в байтах.
+     */
+    static int columnOffset(int player, Column column, int dayCount) {
+        int offset = player * PLAYER_DAY_BYTES;
+        for (Column previous : Column.values()) {
+            if (previous == column) {
+                break;
+            }
+            offset += previous.width;
+        }
+        return offset * dayCount;
+    }
+}
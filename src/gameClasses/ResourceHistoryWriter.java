@@ -0,0 +1,199 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Потоковая запись истории ресурсов игроков в файл, дописываемый только в конец.
+ * Ресурсы каждой партии копятся в журнале партии и записываются сжатым блоком за каждые blockDays дней.
+ * Внутри блока данные хранятся по столбцам фиксированной ширины (см. ResourceHistoryReader.Column),
+ * поэтому одинаковые значения соседних дней хорошо сжимаются.
+ * В один файл могут писать одновременно много партий, например все партии GameHost.
+ */
+public class ResourceHistoryWriter implements Closeable {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(ResourceHistoryWriter.class);
+    /**Поток записи файла*/
+    private final DataOutputStream out;
+    /**Количество дней в полном блоке*/
+    private final int blockDays;
+    /**Упаковщик блоков*/
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    /**Буфер сжатого блока*/
+    private byte[] compressed = new byte[1024];
+
+    /**
+     * Журнал ресурсов одной партии: копит дни до полного блока.
+     */
+    public final class GameLog {
+        /**Идентификатор партии*/
+        private final long gameId;
+        /**Первый день текущего блока*/
+        private int firstDay;
+        /**Количество дней в текущем блоке*/
+        private int dayCount;
+        /**Столбцы текущего блока*/
+        private final ByteBuffer block = ByteBuffer.allocate(blockDays * ResourceHistoryReader.PLAYERS
+                * ResourceHistoryReader.PLAYER_DAY_BYTES);
+
+        /**
+         * Создает журнал партии.
+         * @param gameId Идентификатор партии.
+         */
+        private GameLog(long gameId) {
+            this.gameId = gameId;
+        }
+
+        /**
+         * Добавляет ресурсы игроков за прошедший день и записывает блок, если он заполнен.
+         * @param day Номер прошедшего дня, начиная с 0, как в журнале событий и в списке ресурсов игрока.
+         * @param player1 Первый игрок.
+         * @param player2 Второй игрок.
+         * @throws IOException Если возникает ошибка ввода-вывода.
+         */
+        public void recordDay(int day, Player player1, Player player2) throws IOException {
+            if (dayCount == 0) {
+                firstDay = day;
+            }
+            Player[] players = {player1, player2};
+            for (int p = 0; p < players.length; p++) {
+                Player player = players[p];
+                block.putDouble(offset(p, ResourceHistoryReader.Column.RICE), player.getRice());
+                block.putDouble(offset(p, ResourceHistoryReader.Column.WATER), player.getWater());
+                block.putInt(offset(p, ResourceHistoryReader.Column.UNITS), player.getUnits());
+                block.putInt(offset(p, ResourceHistoryReader.Column.HOUSES), player.getHouses());
+                block.putInt(offset(p, ResourceHistoryReader.Column.TILES), player.controlledTiles());
+            }
+            dayCount++;
+            if (dayCount == blockDays) {
+                finish();
+            }
+        }
+
+        /**
+         * Записывает накопленные дни неполным блоком, например при завершении или выгрузке партии.
+         * @throws IOException Если возникает ошибка ввода-вывода.
+         */
+        public void finish() throws IOException {
+            if (dayCount == 0) {
+                return;
+            }
+            writeBlock(gameId, firstDay, dayCount, pack());
+            dayCount = 0;
+        }
+
+        /**
+         * Возвращает смещение значения текущего дня в столбцах полного блока.
+         * @param player Номер игрока.
+         * @param column Столбец.
+         * @return Смещение в байтах.
+         */
+        private int offset(int player, ResourceHistoryReader.Column column) {
+            return ResourceHistoryReader.columnOffset(player, column, blockDays) + dayCount * column.width;
+        }
+
+        /**
+         * Сдвигает столбцы неполного блока вплотную друг к другу.
+         * @return Столбцы блока длиной dayCount дней.
+         */
+        private byte[] pack() {
+            byte[] packed = new byte[dayCount * ResourceHistoryReader.PLAYERS * ResourceHistoryReader.PLAYER_DAY_BYTES];
+            for (int p = 0; p < ResourceHistoryReader.PLAYERS; p++) {
+                for (ResourceHistoryReader.Column column : ResourceHistoryReader.Column.values()) {
+                    System.arraycopy(block.array(), ResourceHistoryReader.columnOffset(p, column, blockDays), packed,
+                            ResourceHistoryReader.columnOffset(p, column, dayCount), dayCount * column.width);
+                }
+            }
+            return packed;
+        }
+    }
+
+    /**
+     * Открывает файл истории для дописывания, создавая его при необходимости.
+     * @param file Файл истории.
+     * @param blockDays Количество дней в блоке; для существующего файла должно совпадать с записанным.
+     * @throws IOException Если существующий файл не является файлом истории с тем же размером блока
+     * или возникает ошибка ввода-вывода.
+     */
+    public ResourceHistoryWriter(Path file, int blockDays) throws IOException {
+        this.blockDays = blockDays;
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        if (exists) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                if (in.readInt() != ResourceHistoryReader.MAGIC || in.readInt() != blockDays) {
+                    throw new IOException("Resource history file has another format: " + file);
+                }
+            }
+        }
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+        if (!exists) {
+            out.writeInt(ResourceHistoryReader.MAGIC);
+            out.writeInt(blockDays);
+        }
+        logger.info("Resource history " + (exists ? "opened" : "created") + ": " + file);
+    }
+
+    /**
+     * Создает журнал ресурсов партии.
+     * @param gameId Идентификатор партии.
+     * @return Журнал партии.
+     */
+    public GameLog open(long gameId) {
+        return new GameLog(gameId);
+    }
+
+    /**
+     * Сбрасывает записанные блоки в файл.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Закрывает файл. Неполные блоки открытых журналов нужно записать заранее методом GameLog.finish.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public synchronized void close() throws IOException {
+        out.close();
+        deflater.end();
+        logger.info("Resource history closed.");
+    }
+
+    /**
+     * Сжимает и записывает блок.
+     * @param gameId Идентификатор партии.
+     * @param firstDay Первый день блока.
+     * @param dayCount Количество дней в блоке.
+     * @param columns Столбцы блока.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private synchronized void writeBlock(long gameId, int firstDay, int dayCount, byte[] columns) throws IOException {
+        deflater.reset();
+        deflater.setInput(columns);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        out.writeLong(gameId);
+        out.writeInt(firstDay);
+        out.writeInt(dayCount);
+        out.writeInt(length);
+        out.write(compressed, 0, length);
+    }
+}
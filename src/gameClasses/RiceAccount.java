@@ -0,0 +1,90 @@
+package gameClasses;
+
+import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Учет риса одного игрока на карте для ленивого расчета урожая.
+ * Клетки игрока делятся на "устойчивые", урожай которых одинаков каждый день и учитывается суммой steadyHarvest,
+ * и "явные", которые изменились за текущий день или еще не вышли на постоянный урожай и обрабатываются поклеточно.
+ * Также содержит правила роста риса в замкнутой форме. Уровни и урожай записаны в фиксированной точке (см. FixedPoint).
+ */
+class RiceAccount implements Serializable {
+    private static final long serialVersionUID = -220957142451272995L;
+    /**Одна единица риса в фиксированной точке*/
+    static final int ONE = FixedPoint.SCALE;
+    /**
+     * Предел количества дней в advance: политая клетка выходит на 2 единицы не более чем за два дня,
+     * поэтому предел влияет только на уровни ниже миллиона единиц со знаком минус, зато расчет остается в int.
+     */
+    static final int MAX_ELAPSED_DAYS = 1 << 20;
+    /**Количество завершенных дней сбора урожая*/
+    int days;
+    /**Вырос ли рис в текущем дне (growRice вызван, сбор еще не проведен)*/
+    boolean grown;
+    /**Суммарный ежедневный урожай устойчивых клеток в фиксированной точке*/
+    long steadyHarvest;
+    /**Индексы явных клеток игрока*/
+    final Set<Long> explicitTiles = new LinkedHashSet<>();
+
+    /**
+     * Создает независимую копию учета.
+     * @return Копия учета.
+     */
+    RiceAccount copy() {
+        RiceAccount copy = new RiceAccount();
+        copy.days = days;
+        copy.grown = grown;
+        copy.steadyHarvest = steadyHarvest;
+        copy.explicitTiles.addAll(explicitTiles);
+        return copy;
+    }
+
+    /**
+     * Рост риса за день: +1 до 2 на неполитой клетке, +2 до 3 на политой.
+     * @param level Уровень риса.
+     * @param watered Полита ли клетка.
+     * @return Уровень риса после роста.
+     */
+    static int grow(int level, boolean watered) {
+        return watered ? Math.min(level + 2 * ONE, 3 * ONE) : Math.min(level + ONE, 2 * ONE);
+    }
+
+    /**
+     * Уровень риса через указанное количество полных дней (рост и сбор урожая).
+     * За день неполитая клетка переходит из r в min(r, 1), политая - в min(r + 1, 2).
+     * @param level Уровень риса.
+     * @param watered Полита ли клетка.
+     * @param days Количество дней.
+     * @return Уровень риса.
+     */
+    static int advance(int level, boolean watered, int days) {
+        if (days <= 0) {
+            return level;
+        }
+        return watered ? Math.min(Math.min(level, 2 * ONE) + Math.min(days, MAX_ELAPSED_DAYS) * ONE, 2 * ONE)
+                : Math.min(level, ONE);
+    }
+
+    /**
+     * Проверяет, будет ли урожай клетки одинаковым каждый день.
+     * Неполитая клетка дает min(r + 1, 2) всегда, политая выходит на 3 единицы, как только уровень не меньше 1.
+     * @param level Уровень риса в начале дня.
+     * @param watered Полита ли клетка.
+     * @return True, если урожай клетки постоянен.
+     */
+    static boolean isSteady(int level, boolean watered) {
+        return !watered || level >= ONE;
+    }
+
+    /**
+     * Ежедневный урожай устойчивой клетки.
+     * @param level Уровень риса в начале дня.
+     * @param watered Полита ли клетка.
+     * @return Урожай за день.
+     */
+    static int dailyHarvest(int level, boolean watered) {
+        return grow(level, watered);
+    }
+}
@@ -0,0 +1,130 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Расчет текущих уровней риса столбца клеток по записанным уровням (правила RiceAccount в замкнутой форме).
+ * Столбец задается плоскими массивами в фиксированной точке: записанные уровни, дни записи и состояния клеток
+ * (номер владельца, сдвинутый на OWNER_SHIFT, и флаг полива WATERED), поэтому расчет сводится к поэлементным
+ * операциям с масками: совпадение владельца, устойчивость клетки, полив, минимум с пределом.
+ * Если JVM запущена с модулем jdk.incubator.vector (--add-modules jdk.incubator.vector), расчет выполняет
+ * векторная реализация RiceVectorKernel, иначе - скалярная; обе дают одинаковый результат.
+ * RiceVectorKernel лежит в отдельном каталоге исходников vector (модуль coursework-vector) и только он компилируется
+ * с модулем jdk.incubator.vector; остальной код от него не зависит и загружает его по имени, поэтому без этого
+ * каталога в пути классов также используется скалярная реализация.
+ * Системное свойство gameClasses.scalarRice=true отключает векторную реализацию.
+ */
+final class RiceKernel {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(RiceKernel.class);
+    /**Флаг состояния клетки: полита*/
+    static final int WATERED = 1;
+    /**Сдвиг номера владельца в состоянии клетки (номер начинается с 1, 0 - клетка не занята)*/
+    static final int OWNER_SHIFT = 1;
+
+    /**
+     * Реализация расчета уровней риса.
+     */
+    interface Kernel {
+        /**
+         * Записывает текущие уровни риса устойчивых клеток владельца в out; остальные элементы out не меняются.
+         * @param rice Записанные уровни риса в фиксированной точке.
+         * @param days Дни сбора урожая, на которые записаны уровни, или -1 для явных клеток.
+         * @param states Состояния клеток: номер владельца, сдвинутый на OWNER_SHIFT, и флаг WATERED.
+         * @param from Первый элемент.
+         * @param to Элемент после последнего.
+         * @param owner Номер владельца.
+         * @param accountDays Количество завершенных дней сбора урожая владельца.
+         * @param grown Вырос ли рис владельца в текущем дне.
+         * @param out Текущие уровни риса в фиксированной точке.
+         */
+        void advance(int[] rice, int[] days, int[] states, int from, int to, int owner, int accountDays,
+                     boolean grown, int[] out);
+    }
+
+    /**Используемая реализация*/
+    private static final Kernel KERNEL = load();
+
+    private RiceKernel() {
+    }
+
+    /**
+     * Записывает текущие уровни риса устойчивых клеток владельца в out, см. Kernel.advance.
+     * @param rice Записанные уровни риса в фиксированной точке.
+     * @param days Дни сбора урожая, на которые записаны уровни, или -1 для явных клеток.
+     * @param states Состояния клеток.
+     * @param from Первый элемент.
+     * @param to Элемент после последнего.
+     * @param owner Номер владельца.
+     * @param accountDays Количество завершенных дней сбора урожая владельца.
+     * @param grown Вырос ли рис владельца в текущем дне.
+     * @param out Текущие уровни риса в фиксированной точке.
+     */
+    static void advance(int[] rice, int[] days, int[] states, int from, int to, int owner, int accountDays,
+                        boolean grown, int[] out) {
+        KERNEL.advance(rice, days, states, from, to, owner, accountDays, grown, out);
+    }
+
+    /**
+     * Скалярная реализация Kernel.advance; векторная реализация обрабатывает ею остаток столбца.
+     * @param rice Записанные уровни риса в фиксированной точке.
+     * @param days Дни сбора урожая, на которые записаны уровни, или -1 для явных клеток.
+     * @param states Состояния клеток.
+     * @param from Первый элемент.
+     * @param to Элемент после последнего.
+     * @param owner Номер владельца.
+     * @param accountDays Количество завершенных дней сбора урожая владельца.
+     * @param grown Вырос ли рис владельца в текущем дне.
+     * @param out Текущие уровни риса в фиксированной точке.
+     */
+    static void advanceScalar(int[] rice, int[] days, int[] states, int from, int to, int owner, int accountDays,
+                              boolean grown, int[] out) {
+        for (int i = from; i < to; i++) {
+            if (states[i] >>> OWNER_SHIFT == owner && days[i] >= 0) {
+                boolean watered = (states[i] & WATERED) != 0;
+                int level = RiceAccount.advance(rice[i], watered, accountDays - days[i]);
+                out[i] = grown ? RiceAccount.grow(level, watered) : level;
+            }
+        }
+    }
+
+    /**
+     * Проверяет, используется ли векторная реализация.
+     * @return True, если расчет выполняет RiceVectorKernel.
+     */
+    static boolean isVectorized() {
+        return !(KERNEL instanceof Scalar);
+    }
+
+    /**
+     * Выбирает реализацию: векторную, если доступен модуль jdk.incubator.vector и она не отключена, иначе скалярную.
+     * @return Реализация.
+     */
+    private static Kernel load() {
+        if (Boolean.getBoolean("gameClasses.scalarRice")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new Scalar();
+        }
+        try {
+            Kernel kernel = (Kernel) Class.forName("gameClasses.RiceVectorKernel").getDeclaredConstructor().newInstance();
+            logger.info("Using vectorized rice kernel: " + kernel);
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("Vectorized rice kernel is not available, using scalar: " + e);
+            return new Scalar();
+        }
+    }
+
+    /**
+     * Скалярная реализация.
+     */
+    private static final class Scalar implements Kernel {
+        public void advance(int[] rice, int[] days, int[] states, int from, int to, int owner, int accountDays,
+                            boolean grown, int[] out) {
+            advanceScalar(rice, days, states, from, to, owner, accountDays, grown, out);
+        }
+    }
+}
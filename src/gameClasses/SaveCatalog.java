@@ -0,0 +1,346 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Каталог сохраненных игр: именованные слоты в отдельной папке и индексный файл со сведениями о каждом сохранении.
+ * Слот хранится в файле "имя.sav" в том же формате, что и прежнее единственное сохранение (игроки, карта, день).
+ * Индекс "index.dat" содержит для каждого слота SaveInfo: день, размер карты, клетки и ресурсы игроков,
+ * время сохранения и уменьшенную карту, поэтому список из сотен сохранений строится чтением одного небольшого файла.
+ * Если индекс отсутствует или поврежден, при открытии каталога он перестраивается чтением всех сохранений;
+ * сохранения, добавленные в папку или удаленные из нее без участия каталога, учитываются по списку файлов папки.
+ * Индекс записывается во временный файл и подменяет прежний, поэтому прерванная запись не портит его.
+ */
+public class SaveCatalog {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(SaveCatalog.class);
+    /**Сигнатура индексного файла*/
+    static final int MAGIC = 0x53564931;
+    /**Имя индексного файла*/
+    static final String INDEX_FILE = "index.dat";
+    /**Расширение файлов слотов*/
+    static final String EXTENSION = ".sav";
+    /**Наибольшая длина имени слота*/
+    private static final int MAX_SLOT_LENGTH = 64;
+    /**Символы, недопустимые в имени слота (недопустимы в именах файлов)*/
+    private static final String FORBIDDEN = "\\/:*?\"<>|";
+
+    /**Папка сохранений*/
+    private final Path directory;
+    /**Сведения о сохранениях по имени слота*/
+    private final Map<String, SaveInfo> entries = new HashMap<>();
+
+    /**
+     * Открывает каталог сохранений, создавая папку при необходимости.
+     * Читает индекс; если его нет или он поврежден, перестраивает индекс по файлам сохранений.
+     * @param directory Папка сохранений.
+     * @throws IOException Если папку не удается создать или прочитать.
+     */
+    public SaveCatalog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        Path index = directory.resolve(INDEX_FILE);
+        boolean indexed = false;
+        if (Files.exists(index)) {
+            try {
+                readIndex(index);
+                indexed = true;
+            } catch (IOException e) {
+                logger.warn("Save index " + index + " is unreadable, rebuilding: " + e.getMessage());
+                entries.clear();
+            }
+        }
+        if (indexed) {
+            synchronize();
+        } else {
+            rebuild();
+        }
+        logger.info("Opened save catalog " + directory + " with " + entries.size() + " saves");
+    }
+
+    /**
+     * Записывает партию в файл сохранения: игроков, карту и номер дня.
+     * @param file Файл сохранения.
+     * @param session Партия.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public static void write(Path file, GameSession session) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            oos.writeObject(session.getPlayer1());
+            oos.writeObject(session.getPlayer2());
+            oos.writeObject(session.getGameMap());
+            oos.writeInt(session.getGameDay());
+        }
+    }
+
+    /**
+     * Читает партию из файла сохранения.
+     * @param file Файл сохранения.
+     * @return Партия.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     * @throws ClassNotFoundException Если класс объекта не найден.
+     */
+    public static GameSession read(Path file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Player player1 = (Player) ois.readObject();
+            Player player2 = (Player) ois.readObject();
+            GameMapI gameMap = (GameMapI) ois.readObject();
+            int day = ois.readInt();
+            return new GameSession(player1, player2, gameMap, day);
+        }
+    }
+
+    /**
+     * Возвращает сведения о сохранениях из индекса, начиная с самого нового.
+     * @return Список сведений о сохранениях.
+     */
+    public List<SaveInfo> list() {
+        List<SaveInfo> list = new ArrayList<>(entries.values());
+        list.sort(Comparator.comparingLong(SaveInfo::getTimestamp).reversed().thenComparing(SaveInfo::getSlot));
+        return list;
+    }
+
+    /**
+     * Возвращает сведения о сохранении.
+     * @param slot Имя слота.
+     * @return Сведения о сохранении или null, если слота нет.
+     */
+    public SaveInfo get(String slot) {
+        return entries.get(slot);
+    }
+
+    /**
+     * Возвращает файл слота.
+     * @param slot Имя слота.
+     * @return Файл сохранения.
+     * @throws IllegalArgumentException Если имя слота недопустимо.
+     */
+    public Path getFile(String slot) {
+        checkSlot(slot);
+        return directory.resolve(slot + EXTENSION);
+    }
+
+    /**
+     * Сохраняет партию в слот и записывает сведения о ней в индекс.
+     * @param slot Имя слота; существующий слот перезаписывается.
+     * @param session Партия.
+     * @return Сведения о сохранении.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     * @throws IllegalArgumentException Если имя слота недопустимо.
+     */
+    public SaveInfo save(String slot, GameSession session) throws IOException {
+        write(getFile(slot), session);
+        return add(slot, session);
+    }
+
+    /**
+     * Записывает в индекс сведения о партии, уже сохраненной в файл слота.
+     * @param slot Имя слота.
+     * @param session Сохраненная партия.
+     * @return Сведения о сохранении.
+     * @throws IOException Если не удается записать индекс.
+     * @throws IllegalArgumentException Если имя слота недопустимо.
+     */
+    public SaveInfo add(String slot, GameSession session) throws IOException {
+        checkSlot(slot);
+        SaveInfo info = SaveInfo.of(slot, System.currentTimeMillis(), session);
+        entries.put(slot, info);
+        writeIndex();
+        return info;
+    }
+
+    /**
+     * Загружает партию из слота.
+     * @param slot Имя слота.
+     * @return Партия.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     * @throws ClassNotFoundException Если класс объекта не найден.
+     * @throws IllegalArgumentException Если имя слота недопустимо.
+     */
+    public GameSession load(String slot) throws IOException, ClassNotFoundException {
+        return read(getFile(slot));
+    }
+
+    /**
+     * Удаляет слот и его сведения из индекса.
+     * @param slot Имя слота.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     * @throws IllegalArgumentException Если имя слота недопустимо.
+     */
+    public void delete(String slot) throws IOException {
+        Files.deleteIfExists(getFile(slot));
+        if (entries.remove(slot) != null) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Копирует в каталог сохранение из отдельного файла (например, прежнее единственное сохранение) как новый слот.
+     * Ничего не делает, если файла нет или слот уже занят.
+     * @param file Файл сохранения.
+     * @param slot Имя слота.
+     * @return True, если сохранение добавлено.
+     * @throws IOException Если файл не удается скопировать или прочитать.
+     * @throws IllegalArgumentException Если имя слота недопустимо.
+     */
+    public boolean importSave(Path file, String slot) throws IOException {
+        Path target = getFile(slot);
+        if (!Files.isRegularFile(file) || entries.containsKey(slot) || Files.exists(target)) {
+            return false;
+        }
+        Files.copy(file, target);
+        if (!index(target)) {
+            Files.delete(target);
+            return false;
+        }
+        writeIndex();
+        logger.info("Imported save " + file + " as slot " + slot);
+        return true;
+    }
+
+    /**
+     * Перестраивает индекс, читая все сохранения папки. Время сохранения берется из времени изменения файла.
+     * Нечитаемые сохранения пропускаются.
+     * @throws IOException Если папку не удается прочитать или индекс не удается записать.
+     */
+    public void rebuild() throws IOException {
+        long start = System.nanoTime();
+        entries.clear();
+        for (Path file : saveFiles()) {
+            index(file);
+        }
+        writeIndex();
+        logger.info("Rebuilt save index of " + directory + ": " + entries.size() + " saves in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Приводит индекс в соответствие со списком файлов папки: добавляет сохранения, которых нет в индексе,
+     * и убирает сведения об удаленных файлах. Сохранения, уже записанные в индекс, не читаются.
+     * @throws IOException Если папку не удается прочитать или индекс не удается записать.
+     */
+    private void synchronize() throws IOException {
+        Set<String> slots = new HashSet<>();
+        boolean changed = false;
+        for (Path file : saveFiles()) {
+            String slot = slotOf(file);
+            slots.add(slot);
+            if (!entries.containsKey(slot)) {
+                changed |= index(file);
+            }
+        }
+        changed |= entries.keySet().retainAll(slots);
+        if (changed) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Читает сохранение и добавляет сведения о нем в индекс (без записи индекса).
+     * @param file Файл сохранения.
+     * @return True, если сохранение прочитано.
+     */
+    private boolean index(Path file) {
+        String slot = slotOf(file);
+        try {
+            GameSession session = read(file);
+            entries.put(slot, SaveInfo.of(slot, Files.getLastModifiedTime(file).toMillis(), session));
+            return true;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Skipping unreadable save " + file + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Возвращает файлы сохранений папки.
+     * @return Список файлов с расширением EXTENSION.
+     * @throws IOException Если папку не удается прочитать.
+     */
+    private List<Path> saveFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Читает индекс.
+     * @param index Индексный файл.
+     * @throws IOException Если возникает ошибка ввода-вывода или файл не является индексом.
+     */
+    private void readIndex(Path index) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a save index: " + index);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                SaveInfo info = SaveInfo.read(in);
+                entries.put(info.getSlot(), info);
+            }
+        }
+    }
+
+    /**
+     * Записывает индекс во временный файл и заменяет им прежний индекс.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    private void writeIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        Path temporary = directory.resolve(INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (SaveInfo info : entries.values()) {
+                info.write(out);
+            }
+        }
+        try {
+            Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Возвращает имя слота файла сохранения.
+     * @param file Файл сохранения.
+     * @return Имя слота.
+     */
+    private static String slotOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    /**
+     * Проверяет имя слота: непустое, не длиннее MAX_SLOT_LENGTH, без управляющих символов,
+     * символов, недопустимых в именах файлов, и точки в начале.
+     * @param slot Имя слота.
+     * @throws IllegalArgumentException Если имя слота недопустимо.
+     */
+    static void checkSlot(String slot) {
+        if (slot == null || slot.isBlank() || slot.length() > MAX_SLOT_LENGTH || slot.startsWith(".")
+                || !slot.equals(slot.strip())) {
+            throw new IllegalArgumentException("Invalid save slot name: " + slot);
+        }
+        for (int i = 0; i < slot.length(); i++) {
+            char c = slot.charAt(i);
+            if (Character.isISOControl(c) || FORBIDDEN.indexOf(c) >= 0) {
+                throw new IllegalArgumentException("Invalid save slot name: " + slot);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package gameClasses;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Сведения о сохраненной игре из индекса каталога сохранений: имя слота, время сохранения, день, размер карты,
+ * ресурсы и клетки игроков и уменьшенная карта. Позволяют показать список сохранений, не читая самих сохранений.
+ */
+public final class SaveInfo {
+    /**Наибольшая сторона уменьшенной карты в клетках*/
+    static final int THUMBNAIL_SIZE = 32;
+    /**Цвет свободной клетки на уменьшенной карте*/
+    private static final Color FREE = new Color(0xC8E6A0);
+    /**Цвета клеток игроков на уменьшенной карте*/
+    private static final Color[] OWNERS = {FREE, new Color(0x3C78D8), new Color(0xD84B3C)};
+
+    /**Имя слота*/
+    private final String slot;
+    /**Время сохранения, мс от начала эпохи*/
+    private final long timestamp;
+    /**Номер дня*/
+    private final int day;
+    /**Размеры карты*/
+    private final int width, height;
+    /**Количество клеток игроков*/
+    private final int tiles1, tiles2;
+    /**Количество крестьян игроков*/
+    private final int units1, units2;
+    /**Количество домов игроков*/
+    private final int houses1, houses2;
+    /**Количество риса игроков*/
+    private final double rice1, rice2;
+    /**Размеры уменьшенной карты*/
+    private final int thumbnailWidth, thumbnailHeight;
+    /**Состояния клеток уменьшенной карты (см. ReplayRecorder.encodeTile), клетка (x, y) имеет номер x * thumbnailHeight + y*/
+    private final byte[] thumbnail;
+
+    private SaveInfo(String slot, long timestamp, int day, int width, int height, int tiles1, int tiles2, int units1,
+                     int units2, int houses1, int houses2, double rice1, double rice2, int thumbnailWidth,
+                     int thumbnailHeight, byte[] thumbnail) {
+        this.slot = slot;
+        this.timestamp = timestamp;
+        this.day = day;
+        this.width = width;
+        this.height = height;
+        this.tiles1 = tiles1;
+        this.tiles2 = tiles2;
+        this.units1 = units1;
+        this.units2 = units2;
+        this.houses1 = houses1;
+        this.houses2 = houses2;
+        this.rice1 = rice1;
+        this.rice2 = rice2;
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailHeight;
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * Собирает сведения о партии. Уменьшенная карта строится выборкой клеток с шагом, при котором ее сторона
+     * не превышает THUMBNAIL_SIZE.
+     * @param slot Имя слота.
+     * @param timestamp Время сохранения, мс от начала эпохи.
+     * @param session Партия.
+     * @return Сведения о сохранении.
+     */
+    static SaveInfo of(String slot, long timestamp, GameSession session) {
+        GameMapI gameMap = session.getGameMap();
+        Player player1 = session.getPlayer1();
+        Player player2 = session.getPlayer2();
+        int width = gameMap.getWidth();
+        int height = gameMap.getHeight();
+        int step = Math.max(1, (Math.max(width, height) + THUMBNAIL_SIZE - 1) / THUMBNAIL_SIZE);
+        int thumbnailWidth = (width + step - 1) / step;
+        int thumbnailHeight = (height + step - 1) / step;
+        byte[] thumbnail = new byte[thumbnailWidth * thumbnailHeight];
+        for (int i = 0; i < thumbnailWidth; i++) {
+            for (int j = 0; j < thumbnailHeight; j++) {
+                thumbnail[i * thumbnailHeight + j] = ReplayRecorder.encodeTile(gameMap, i * step, j * step,
+                        player1, player2);
+            }
+        }
+        return new SaveInfo(slot, timestamp, session.getGameDay(), width, height,
+                player1.controlledTiles(), player2.controlledTiles(), player1.getUnits(), player2.getUnits(),
+                player1.getHouses(), player2.getHouses(), player1.getRice(), player2.getRice(),
+                thumbnailWidth, thumbnailHeight, thumbnail);
+    }
+
+    /**
+     * Читает сведения о сохранении из индекса.
+     * @param in Поток чтения индекса.
+     * @return Сведения о сохранении.
+     * @throws IOException Если возникает ошибка ввода-вывода или запись повреждена.
+     */
+    static SaveInfo read(DataInputStream in) throws IOException {
+        String slot = in.readUTF();
+        long timestamp = in.readLong();
+        int day = in.readInt();
+        int width = in.readInt();
+        int height = in.readInt();
+        int tiles1 = in.readInt();
+        int tiles2 = in.readInt();
+        int units1 = in.readInt();
+        int units2 = in.readInt();
+        int houses1 = in.readInt();
+        int houses2 = in.readInt();
+        double rice1 = in.readDouble();
+        double rice2 = in.readDouble();
+        int thumbnailWidth = in.readInt();
+        int thumbnailHeight = in.readInt();
+        if (thumbnailWidth < 0 || thumbnailWidth > THUMBNAIL_SIZE || thumbnailHeight < 0
+                || thumbnailHeight > THUMBNAIL_SIZE) {
+            throw new IOException("Corrupted save index entry: " + slot);
+        }
+        byte[] thumbnail = new byte[thumbnailWidth * thumbnailHeight];
+        in.readFully(thumbnail);
+        return new SaveInfo(slot, timestamp, day, width, height, tiles1, tiles2, units1, units2, houses1, houses2,
+                rice1, rice2, thumbnailWidth, thumbnailHeight, thumbnail);
+    }
+
+    /**
+     * Записывает сведения о сохранении в индекс.
+     * @param out Поток записи индекса.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(slot);
+        out.writeLong(timestamp);
+        out.writeInt(day);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(tiles1);
+        out.writeInt(tiles2);
+        out.writeInt(units1);
+        out.writeInt(units2);
+        out.writeInt(houses1);
+        out.writeInt(houses2);
+        out.writeDouble(rice1);
+        out.writeDouble(rice2);
+        out.writeInt(thumbnailWidth);
+        out.writeInt(thumbnailHeight);
+        out.write(thumbnail);
+    }
+
+    /**
+     * Возвращает имя слота.
+     * @return Имя слота.
+     */
+    public String getSlot() {
+        return slot;
+    }
+
+    /**
+     * Возвращает время сохранения.
+     * @return Время сохранения, мс от начала эпохи.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Возвращает номер дня.
+     * @return Номер дня.
+     */
+    public int getDay() {
+        return day;
+    }
+
+    /**
+     * Возвращает ширину карты.
+     * @return Ширина карты.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Возвращает высоту карты.
+     * @return Высота карты.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Возвращает количество клеток игрока.
+     * @param player Номер игрока: 1 или 2.
+     * @return Количество клеток.
+     */
+    public int getTiles(int player) {
+        return player == 1 ? tiles1 : tiles2;
+    }
+
+    /**
+     * Возвращает количество крестьян игрока.
+     * @param player Номер игрока: 1 или 2.
+     * @return Количество крестьян.
+     */
+    public int getUnits(int player) {
+        return player == 1 ? units1 : units2;
+    }
+
+    /**
+     * Возвращает количество домов игрока.
+     * @param player Номер игрока: 1 или 2.
+     * @return Количество домов.
+     */
+    public int getHouses(int player) {
+        return player == 1 ? houses1 : houses2;
+    }
+
+    /**
+     * Возвращает количество риса игрока.
+     * @param player Номер игрока: 1 или 2.
+     * @return Количество риса.
+     */
+    public double getRice(int player) {
+        return player == 1 ? rice1 : rice2;
+    }
+
+    /**
+     * Рисует уменьшенную карту так же, как карта показана в окне игры (координата x - строка):
+     * свободные клетки, клетки игроков и дома (более темный цвет).
+     * @param scale Размер клетки уменьшенной карты в пикселях.
+     * @return Изображение уменьшенной карты.
+     */
+    public BufferedImage getThumbnail(int scale) {
+        BufferedImage image = new BufferedImage(Math.max(1, thumbnailHeight * scale), Math.max(1, thumbnailWidth * scale),
+                BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < thumbnailWidth; i++) {
+            for (int j = 0; j < thumbnailHeight; j++) {
+                int state = thumbnail[i * thumbnailHeight + j];
+                Color color = OWNERS[Math.min(state & Replay.OWNER_MASK, OWNERS.length - 1)];
+                if ((state & Replay.TILE_HOUSED) != 0) {
+                    color = color.darker();
+                }
+                for (int px = 0; px < scale; px++) {
+                    for (int py = 0; py < scale; py++) {
+                        image.setRGB(j * scale + px, i * scale + py, color.getRGB());
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public String toString() {
+        return slot + " (day " + day + ", " + width + "x" + height + ", tiles " + tiles1 + ":" + tiles2 + ")";
+    }
+}
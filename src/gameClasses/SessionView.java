@@ -0,0 +1,139 @@
+package gameClasses;
+
+import java.util.function.Supplier;
+
+/**
+ * Представление партии для стратегии бота поверх GameSession.
+ * Маршрут расширения вычисляется заранее в потоке игры, поэтому стратегия не обращается к планировщику расширения,
+ * который обновляется вместе с картой. После хода представление закрывается методом close.
+ */
+final class SessionView implements GameView {
+    /**Партия*/
+    private final GameSession session;
+    /**Игрок стратегии и его соперник*/
+    private final Player player, opponent;
+    /**Игровая карта*/
+    private final GameMapI gameMap;
+    /**Первая клетка маршрута расширения или null*/
+    private final int[] expansionStep;
+    /**Закрыто ли представление*/
+    private volatile boolean closed;
+
+    /**
+     * Создает представление партии со стороны игрока.
+     * @param session Партия.
+     * @param player Игрок стратегии.
+     */
+    SessionView(GameSession session, Player player) {
+        this.session = session;
+        this.player = player;
+        this.opponent = player == session.getPlayer1() ? session.getPlayer2() : session.getPlayer1();
+        this.gameMap = session.getGameMap();
+        ExpansionPlanner planner = player.expansionPlanner(gameMap);
+        int[] target = planner.chooseTarget(player.getUnits());
+        this.expansionStep = target == null ? null : planner.firstStep(target);
+    }
+
+    /**
+     * Закрывает представление: дальнейшие обращения бросают IllegalStateException.
+     */
+    void close() {
+        closed = true;
+    }
+
+    public int getWidth() {
+        return read(() -> gameMap.getWidth());
+    }
+
+    public int getHeight() {
+        return read(() -> gameMap.getHeight());
+    }
+
+    public int getGameDay() {
+        return read(() -> session.getGameDay());
+    }
+
+    public String getStateString(int x, int y) {
+        return read(() -> gameMap.getStateString(x, y, player));
+    }
+
+    public boolean isOwn(int x, int y) {
+        return read(() -> gameMap.isControlled(x, y, player));
+    }
+
+    public boolean isFree(int x, int y) {
+        return read(() -> gameMap.getStateString(x, y, player).equals("EMPTY"));
+    }
+
+    public boolean isWatered(int x, int y) {
+        return read(() -> gameMap.isWatered(x, y));
+    }
+
+    public boolean isHoused(int x, int y) {
+        return read(() -> gameMap.isHoused(x, y));
+    }
+
+    public int getRequiredUnits(int x, int y) {
+        return read(() -> gameMap.getTile(x, y).getRequiredUnits());
+    }
+
+    public double getRiceAt(int x, int y) {
+        return read(() -> gameMap.getRiceAt(x, y));
+    }
+
+    public int[] getExpansionStep() {
+        return read(() -> expansionStep == null ? null : expansionStep.clone());
+    }
+
+    public double getRice(boolean own) {
+        return read(() -> (own ? player : opponent).getRice());
+    }
+
+    public double getWater(boolean own) {
+        return read(() -> (own ? player : opponent).getWater());
+    }
+
+    public int getUnits(boolean own) {
+        return read(() -> (own ? player : opponent).getUnits());
+    }
+
+    public int getHouses(boolean own) {
+        return read(() -> (own ? player : opponent).getHouses());
+    }
+
+    public int getControlledTiles(boolean own) {
+        return read(() -> (own ? player : opponent).controlledTiles());
+    }
+
+    /**
+     * Читает состояние партии, если ход еще не закончился.
+     * Поток стратегии, не ответившей на прерывание, может продолжать чтение, когда поток игры уже меняет партию.
+     * Поэтому закрытие проверяется и до, и после чтения: значение, прочитанное одновременно с изменением партии,
+     * не возвращается стратегии, а исключение, вызванное таким чтением, заменяется IllegalStateException.
+     * Само чтение при этом не защищено: оставленный поток может прочитать несогласованное состояние
+     * (но не передать его стратегии), поэтому такие потоки и оставляются с наименьшим приоритетом.
+     * @param reader Чтение состояния.
+     * @return Прочитанное значение.
+     */
+    private <T> T read(Supplier<T> reader) {
+        check();
+        T value;
+        try {
+            value = reader.get();
+        } catch (RuntimeException e) {
+            check();
+            throw e;
+        }
+        check();
+        return value;
+    }
+
+    /**
+     * Проверяет, что ход, для которого создано представление, еще не закончился.
+     */
+    private void check() {
+        if (closed) {
+            throw new IllegalStateException("Game view is used after the end of the move");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package gameClasses;
+
+/**
+ * Встроенная стратегия ИИ, которая видит партию через представление GameView.
+ * Если юнитов не меньше, чем клеток, или закончился рис при наличии домов, ИИ расширяет территорию по маршруту
+ * планировщика расширения, а если маршрута нет - захватывает ближайшую к углу (0, 0) доступную свободную клетку.
+ * Если захватить нечего, ход пропадает, как у прежнего ИИ: стратегия пытается захватить угол (0, 0),
+ * который заведомо нельзя захватить, и партия не меняется.
+ * Иначе при запасе воды от 15 единиц ИИ поливает рис или строит дом, а в остальных случаях набирает воду.
+ * Пороги задаются набором AiParameters; по умолчанию используются параметры встроенного ИИ.
+ */
+public class StandardStrategy implements Strategy {
+    /**Стоимость дома в рисе*/
+    private static final int HOUSE_RICE = 25;
+    /**Стоимость дома в воде*/
+    private static final int HOUSE_WATER = 10;
+    /**Пороги стратегии*/
+    private final AiParameters parameters;
+
+    /**
+     * Создает стратегию с параметрами встроенного ИИ.
+     */
+    public StandardStrategy() {
+        this(AiParameters.DEFAULT);
+    }
+
+    /**
+     * Создает стратегию с заданными порогами.
+     * @param parameters Пороги стратегии.
+     */
+    public StandardStrategy(AiParameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Возвращает пороги стратегии.
+     * @return Пороги стратегии.
+     */
+    public AiParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Возвращает название стратегии.
+     * @return Название стратегии.
+     */
+    public String getName() {
+        return "Стандартный ИИ";
+    }
+
+    /**
+     * Выбирает действие на текущий ход.
+     * @param view Представление партии со стороны игрока стратегии.
+     * @return Команда игрока.
+     */
+    public PlayerCommand decide(GameView view) {
+        int units = view.getUnits(true);
+        if (units >= parameters.getClaimRatio() * view.getControlledTiles(true)
+                || (view.getRice(true) == 0 && view.getHouses(true) != 0)) {
+            int[] step = view.getExpansionStep();
+            if (step == null) {
+                step = nearestFreeTile(view, units);
+            }
+            if (step == null) {
+                step = new int[]{0, 0};
+            }
+            return new PlayerCommand(0, PlayerCommand.Type.CLAIM_TERRITORY, step[0], step[1]);
+        } else if (view.getWater(true) >= parameters.getWaterThreshold()) {
+            PlayerCommand command = otherOption(view);
+            if (command != null) {
+                return command;
+            }
+        }
+        return new PlayerCommand(0, PlayerCommand.Type.COLLECT_WATER, 0, 0);
+    }
+
+    /**
+     * Выбирает полив риса или постройку дома на своей клетке.
+     * @param view Представление партии.
+     * @return Команда или null, если ни полить рис, ни построить дом нельзя.
+     */
+    private PlayerCommand otherOption(GameView view) {
+        double rice = view.getRice(true);
+        int units = view.getUnits(true);
+        boolean water = rice < units * parameters.getRicePerUnit() || rice < parameters.getRiceReserve();
+        if (!water && (rice < HOUSE_RICE || view.getWater(true) < HOUSE_WATER || units < 1)) {
+            return null;
+        }
+        for (int x = 0; x < view.getWidth(); x++) {
+            for (int y = 0; y < view.getHeight(); y++) {
+                if (!view.isOwn(x, y)) {
+                    continue;
+                }
+                if (water && !view.isWatered(x, y)) {
+                    return new PlayerCommand(0, PlayerCommand.Type.WATER_RICE, x, y);
+                }
+                if (!water && !view.isHoused(x, y)) {
+                    return new PlayerCommand(0, PlayerCommand.Type.BUILD_HOUSE, x, y);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ищет свободную клетку, которую можно захватить, в порядке удаления от угла (0, 0)
+     * в пределах радиуса поиска из параметров стратегии.
+     * @param view Представление партии.
+     * @param units Количество юнитов игрока.
+     * @return Координаты клетки {x, y} или null, если такой клетки нет.
+     */
+    private int[] nearestFreeTile(GameView view, int units) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        int radius = (int) Math.min(width + height - 2, parameters.getSearchRadius() * width * height);
+        for (int distance = 0; distance <= radius; distance++) {
+            for (int x = Math.max(0, distance - height + 1); x <= Math.min(distance, width - 1); x++) {
+                int y = distance - x;
+                if (view.isFree(x, y) && view.getRequiredUnits(x, y) <= units) {
+                    return new int[]{x, y};
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,21 @@
+package gameClasses;
+
+/**
+ * Стратегия бота: по состоянию партии выбирает действие игрока на текущий ход.
+ * Стратегия видит партию только через GameView и не может изменить ее напрямую.
+ * Ходы стратегии выполняет BotScheduler, который ограничивает время хода процессорным временем.
+ */
+public interface Strategy {
+    /**
+     * Возвращает название стратегии для сообщений и статистики.
+     * @return Название стратегии.
+     */
+    String getName();
+    /**
+     * Выбирает действие на текущий ход.
+     * Вызывается в потоке планировщика; представление партии действительно только до возврата из метода.
+     * @param view Представление партии со стороны игрока стратегии.
+     * @return Команда игрока; номер игрока в команде не учитывается. Null означает ход по умолчанию.
+     */
+    PlayerCommand decide(GameView view);
+}
@@ -7,6 +7,7 @@ import java.io.Serializable;
  * Реализует интерфейс TileI и сериализуем для сохранения/загрузки состояний игры.
  */
 public class Tile implements TileI, Serializable {
+    private static final long serialVersionUID = 303309945474382182L;
     /**Количество требуемых для захвата юнитов*/
     private int requiredUnits;
     /**Флаг занята ли клетка*/
@@ -36,6 +37,14 @@ public class Tile implements TileI, Serializable {
         this.owner = player;
     }
 
+    /**
+     * Освобождает клетку: клетка становится незанятой и теряет владельца.
+     */
+    public void release() {
+        this.occupied = false;
+        this.owner = null;
+    }
+
     /**
      * Проверяет, занята ли клетка.
      * @return True, если клетка занята, false - иначе.
@@ -0,0 +1,24 @@
+package gameClasses;
+
+/**
+ * Получает уведомления об изменении клеток игровой карты: захвате, поливе, постройке дома и явной установке уровня риса.
+ * Отдельно можно получать уведомления о росте и сборе риса на явных клетках (см. AbstractGameMap).
+ */
+public interface TileChangeListener {
+    /**
+     * Вызывается после изменения клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    void tileChanged(int x, int y);
+
+    /**
+     * Вызывается после того, как рост или сбор урожая изменил уровень риса явной клетки или перевел ее в устойчивые.
+     * Уровни риса устойчивых клеток меняются без уведомлений, вместе с признаком роста в учете риса владельца.
+     * По умолчанию ничего не делает.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    default void riceChanged(int x, int y) {
+    }
+}
@@ -9,6 +9,10 @@ public interface TileI {
      * @param player Игрок, который занимает клетку.
      */
     void setOccupied(Player player);
+    /**
+     * Освобождает клетку: клетка становится незанятой и теряет владельца.
+     */
+    void release();
     /**
      * Проверяет, занята ли клетка.
      * @return True, если клетка занята, false - иначе.
@@ -0,0 +1,19 @@
+package gameClasses;
+
+/**
+ * Получает клетки, созданные генератором карты MapGenerator, прямоугольными блоками.
+ * Блоки передаются из нескольких потоков одновременно; блоки не пересекаются.
+ */
+public interface TileSink {
+    /**
+     * Принимает блок клеток. Клетка (x + i, y + j) имеет в массивах номер i * height + j.
+     * Массивы принадлежат генератору и используются повторно после возврата из метода.
+     * @param x Координата x левого верхнего угла блока.
+     * @param y Координата y левого верхнего угла блока.
+     * @param width Ширина блока.
+     * @param height Высота блока.
+     * @param requiredUnits Количество юнитов для захвата клеток.
+     * @param rice Начальные уровни риса в фиксированной точке.
+     */
+    void block(int x, int y, int width, int height, int[] requiredUnits, int[] rice);
+}
@@ -0,0 +1,173 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Изображения клеток карты.
+ * Все изображения упакованы в один атлас "/images/atlas.png" (сетка 3x3 клеток по 50 пикселей),
+ * который декодируется один раз в фоновом потоке, пока показывается меню. Затем из атласа параллельно
+ * нарезаются и масштабируются значки для всех используемых размеров клеток в формате, совместимом с экраном,
+ * поэтому при перерисовке карты изображения не декодируются и не масштабируются заново.
+ */
+public final class TileSprites {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(TileSprites.class);
+    /**Путь к атласу в ресурсах приложения*/
+    private static final String ATLAS = "/images/atlas.png";
+    /**Размер клетки в атласе, пикселей*/
+    private static final int SPRITE_SIZE = 50;
+    /**Количество клеток в строке атласа*/
+    private static final int ATLAS_COLUMNS = 3;
+    /**Строки состояния клеток в порядке их расположения в атласе*/
+    private static final String[] STATES = {"EMPTY", "RICE1", "RICE2", "RICEWATER1", "RICEWATER2",
+            "HOUSE1", "HOUSE2", "HOUSEWATER1", "HOUSEWATER2"};
+    /**Исходные файлы изображений в порядке STATES, из которых собирается атлас*/
+    private static final String[] SOURCE_FILES = {"EMPTY.png", "RICE1.png", "RICE2.png", "RICEWATERED1.png",
+            "RICEWATERED2.png", "HOUSED1.png", "HOUSED2.png", "HOUSEWATER1.png", "HOUSEWATER2.png"};
+    /**Размер клетки на игровой карте, пикселей*/
+    public static final int MAP_TILE_SIZE = 50;
+    /**Размер клетки в окне повтора, пикселей*/
+    public static final int REPLAY_TILE_SIZE = 30;
+    /**Размеры клеток, для которых значки готовятся заранее*/
+    private static final int[] PRELOADED_SIZES = {MAP_TILE_SIZE, REPLAY_TILE_SIZE};
+    /**Значки по размеру и строке состояния*/
+    private static final Map<Integer, Map<String, ImageIcon>> icons = new ConcurrentHashMap<>();
+    /**Фоновая загрузка изображений*/
+    private static CompletableFuture<Map<String, BufferedImage>> loading;
+
+    private TileSprites() {
+    }
+
+    /**
+     * Запускает фоновую загрузку изображений, если она еще не запущена.
+     * Атлас декодируется в отдельном потоке, значки всех размеров масштабируются параллельно.
+     */
+    public static synchronized void preload() {
+        if (loading != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        loading = CompletableFuture.supplyAsync(TileSprites::decodeAtlas).thenApply(sprites -> {
+            Arrays.stream(PRELOADED_SIZES).parallel().forEach(size -> icons.put(size, scaleAll(sprites, size)));
+            logger.info("Tile sprites ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return sprites;
+        });
+    }
+
+    /**
+     * Возвращает изображения клеток исходного размера, дожидаясь окончания загрузки.
+     * @return Изображения по строкам состояния.
+     */
+    public static Map<String, BufferedImage> images() {
+        preload();
+        return loading.join();
+    }
+
+    /**
+     * Возвращает значок клетки указанного размера. Значки кешируются и используются повторно.
+     * @param state Строка состояния клетки.
+     * @param size Размер клетки, пикселей.
+     * @return Значок или null, если изображения для состояния нет.
+     */
+    public static ImageIcon icon(String state, int size) {
+        Map<String, ImageIcon> sized = icons.get(size);
+        if (sized == null) {
+            Map<String, BufferedImage> sprites = images();
+            sized = icons.computeIfAbsent(size, s -> scaleAll(sprites, s));
+        }
+        return sized.get(state);
+    }
+
+    /**
+     * Декодирует атлас и нарезает его на изображения клеток.
+     * @return Изображения по строкам состояния.
+     */
+    private static Map<String, BufferedImage> decodeAtlas() {
+        Map<String, BufferedImage> sprites = new HashMap<>();
+        try (InputStream in = TileSprites.class.getResourceAsStream(ATLAS)) {
+            if (in == null) {
+                throw new IOException("Resource not found: " + ATLAS);
+            }
+            BufferedImage atlas = ImageIO.read(in);
+            for (int i = 0; i < STATES.length; i++) {
+                sprites.put(STATES[i], atlas.getSubimage(i % ATLAS_COLUMNS * SPRITE_SIZE,
+                        i / ATLAS_COLUMNS * SPRITE_SIZE, SPRITE_SIZE, SPRITE_SIZE));
+            }
+        } catch (IOException e) {
+            logger.error("Error loading tile atlas", e);
+        }
+        return sprites;
+    }
+
+    /**
+     * Масштабирует все изображения клеток до указанного размера в формат, совместимый с экраном.
+     * @param sprites Изображения исходного размера.
+     * @param size Размер клетки, пикселей.
+     * @return Значки по строкам состояния.
+     */
+    private static Map<String, ImageIcon> scaleAll(Map<String, BufferedImage> sprites, int size) {
+        Map<String, ImageIcon> scaled = new HashMap<>();
+        for (Map.Entry<String, BufferedImage> entry : sprites.entrySet()) {
+            BufferedImage image = createImage(size);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(entry.getValue(), 0, 0, size, size, null);
+            g.dispose();
+            scaled.put(entry.getKey(), new ImageIcon(image));
+        }
+        return scaled;
+    }
+
+    /**
+     * Создает пустое изображение с прозрачностью в формате экрана, а без экрана - в формате ARGB.
+     * @param size Размер изображения, пикселей.
+     * @return Изображение.
+     */
+    private static BufferedImage createImage(int size) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration().createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Собирает атлас из отдельных изображений клеток.
+     * Запускается вручную после изменения изображений: первый аргумент - папка с изображениями,
+     * второй - путь к создаваемому атласу (по умолчанию src/images и src/images/atlas.png).
+     * @param args Аргументы командной строки.
+     * @throws IOException Если возникает ошибка ввода-вывода.
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "src/images");
+        File output = new File(args.length > 1 ? args[1] : "src/images/atlas.png");
+        int rows = (SOURCE_FILES.length + ATLAS_COLUMNS - 1) / ATLAS_COLUMNS;
+        BufferedImage atlas = new BufferedImage(ATLAS_COLUMNS * SPRITE_SIZE, rows * SPRITE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (int i = 0; i < SOURCE_FILES.length; i++) {
+            BufferedImage sprite = ImageIO.read(new File(directory, SOURCE_FILES[i]));
+            g.drawImage(sprite, i % ATLAS_COLUMNS * SPRITE_SIZE, i / ATLAS_COLUMNS * SPRITE_SIZE,
+                    SPRITE_SIZE, SPRITE_SIZE, null);
+        }
+        g.dispose();
+        ImageIO.write(atlas, "png", output);
+        System.out.println("Atlas written to " + output);
+    }
+}
@@ -0,0 +1,441 @@
+package gameClasses;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * История ходов партии для отмены и повтора ходов.
+ * Состояние клеток каждого хода хранится в неизменяемом префиксном дереве: листья дерева - блоки по 64 клетки
+ * (байт состояния в кодировке Replay и уровень риса), узлы - массивы по 32 ссылки. Ход копирует только листья
+ * изменившихся клеток и путь от них до корня, а остальные узлы разделяет с предыдущим ходом, поэтому
+ * хранение хода стоит O(изменившихся блоков), а любой прошлый ход доступен сразу по своему корню.
+ * Изменившиеся клетки отслеживаются через TileChangeListener, а уровни риса, как и в GameStateDiff,
+ * проверяются только на явных и недавно измененных клетках. Ходы нужно записывать после завершения дня.
+ */
+public class TurnHistory implements TileChangeListener {
+    /**
+     * Логгер для записи сообщений в лог-файл.
+     */
+    private static final Logger logger = LogManager.getLogger(TurnHistory.class);
+    /**Двоичный логарифм количества клеток в листе*/
+    private static final int LEAF_SHIFT = 6;
+    /**Количество клеток в листе*/
+    private static final int LEAF_SIZE = 1 << LEAF_SHIFT;
+    /**Двоичный логарифм количества ссылок в узле*/
+    private static final int BRANCH_SHIFT = 5;
+    /**Количество ссылок в узле*/
+    private static final int BRANCH_SIZE = 1 << BRANCH_SHIFT;
+    /**Уровень риса на клетке, которой нет в дереве*/
+    private static final double DEFAULT_RICE = 1;
+    /**Количество записанных ходов без изменения риса, после которого клетка перестает проверяться*/
+    private static final int QUIET_TURNS = 2;
+    /**Отслеживаемая партия*/
+    private final GameSession session;
+    /**Высота карты*/
+    private final int height;
+    /**Количество клеток карты*/
+    private final long tileCount;
+    /**Количество уровней узлов над листьями*/
+    private final int depth;
+    /**Записанные ходы*/
+    private final List<Turn> turns = new ArrayList<>();
+    /**Номер хода, соответствующего состоянию партии*/
+    private int current;
+    /**Дерево, соответствующее карте на момент последней записи или восстановления*/
+    private Node head;
+    /**Клетки, изменившиеся после последней записи или восстановления*/
+    private final Set<Long> changed = new HashSet<>();
+    /**Недавно измененные клетки и номер записи, на которой они изменились*/
+    private final Map<Long, Integer> recent = new HashMap<>();
+    /**Количество выполненных записей*/
+    private int records;
+    /**Метка узлов, созданных текущей записью: такие узлы можно менять на месте*/
+    private Object edit;
+
+    /**
+     * Узел дерева: либо массив ссылок на дочерние узлы, либо лист с состояниями клеток.
+     * Узел не меняется после того, как запись, создавшая его, завершена.
+     */
+    private static final class Node {
+        /**Запись, создавшая узел*/
+        private final Object edit;
+        /**Дочерние узлы; null у листа*/
+        private final Node[] children;
+        /**Состояния клеток листа в кодировке Replay; null у узла*/
+        private final byte[] states;
+        /**Уровни риса на клетках листа; null у узла*/
+        private final double[] rice;
+
+        private Node(Object edit, Node[] children, byte[] states, double[] rice) {
+            this.edit = edit;
+            this.children = children;
+            this.states = states;
+            this.rice = rice;
+        }
+    }
+
+    /**
+     * Записанный ход: состояние клеток, ресурсы игроков и номер дня.
+     */
+    public final class Turn {
+        /**Корень дерева клеток*/
+        private final Node root;
+        /**Номер дня*/
+        private final int day;
+        /**Ресурсы игроков*/
+        private final Player.Snapshot player1, player2;
+
+        private Turn(Node root) {
+            this.root = root;
+            this.day = session.getGameDay();
+            this.player1 = session.getPlayer1().snapshot();
+            this.player2 = session.getPlayer2().snapshot();
+        }
+
+        /**
+         * Возвращает номер дня хода.
+         * @return Номер дня.
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * Возвращает строку состояния клетки относительно первого игрока, как GameMapI.getStateString.
+         * @param x Координата x клетки.
+         * @param y Координата y клетки.
+         * @return Строка состояния клетки.
+         */
+        public String getStateString(int x, int y) {
+            Node leaf = leaf(root, tileIndex(x, y));
+            return Replay.stateString(leaf == null ? 0 : leaf.states[local(tileIndex(x, y))]);
+        }
+
+        /**
+         * Возвращает количество риса на клетке.
+         * @param x Координата x клетки.
+         * @param y Координата y клетки.
+         * @return Количество риса на клетке.
+         */
+        public double getRiceAt(int x, int y) {
+            Node leaf = leaf(root, tileIndex(x, y));
+            return leaf == null ? DEFAULT_RICE : leaf.rice[local(tileIndex(x, y))];
+        }
+    }
+
+    /**
+     * Начинает историю с текущего состояния партии и подписывается на изменения клеток карты.
+     * Начальное состояние снимается один раз проходом по всей карте; в дерево попадают только блоки,
+     * отличающиеся от незанятых клеток с начальным уровнем риса.
+     * @param session Партия.
+     */
+    public TurnHistory(GameSession session) {
+        this.session = session;
+        GameMapI gameMap = session.getGameMap();
+        this.height = gameMap.getHeight();
+        this.tileCount = (long) gameMap.getWidth() * height;
+        int levels = 1;
+        while (levels * BRANCH_SHIFT + LEAF_SHIFT < 64 && tileCount > 1L << (levels * BRANCH_SHIFT + LEAF_SHIFT)) {
+            levels++;
+        }
+        this.depth = levels;
+
+        edit = new Object();
+        head = new Node(edit, new Node[BRANCH_SIZE], null, null);
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < height; y++) {
+                long index = tileIndex(x, y);
+                byte state = ReplayRecorder.encodeTile(gameMap, x, y, session.getPlayer1(), session.getPlayer2());
+                double rice = gameMap.getRiceAt(x, y);
+                if (state != 0 || rice != DEFAULT_RICE) {
+                    head = set(head, index, state, rice);
+                }
+                if ((state & Replay.OWNER_MASK) != 0) {
+                    recent.put(index, 0);
+                }
+            }
+        }
+        edit = null;
+        turns.add(new Turn(head));
+        gameMap.addTileChangeListener(this);
+        logger.info("Turn history started on day " + session.getGameDay());
+    }
+
+    /**
+     * Запоминает изменившуюся клетку до следующей записи.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     */
+    public void tileChanged(int x, int y) {
+        changed.add(tileIndex(x, y));
+    }
+
+    /**
+     * Прекращает отслеживание изменений партии.
+     */
+    public void detach() {
+        session.getGameMap().removeTileChangeListener(this);
+    }
+
+    /**
+     * Записывает текущее состояние партии как новый ход. Отмененные ходы после текущего отбрасываются.
+     */
+    public void record() {
+        head = commit();
+        turns.subList(current + 1, turns.size()).clear();
+        turns.add(new Turn(head));
+        current++;
+        logger.debug("Turn " + current + " recorded on day " + session.getGameDay());
+    }
+
+    /**
+     * Проверяет, есть ли ход, который можно отменить.
+     * @return True, если есть предыдущий ход.
+     */
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    /**
+     * Проверяет, есть ли отмененный ход, который можно повторить.
+     * @return True, если есть следующий ход.
+     */
+    public boolean canRedo() {
+        return current < turns.size() - 1;
+    }
+
+    /**
+     * Отменяет последний ход, возвращая партию в состояние предыдущего хода.
+     */
+    public void undo() {
+        if (canUndo()) {
+            restore(current - 1);
+        }
+    }
+
+    /**
+     * Повторяет отмененный ход.
+     */
+    public void redo() {
+        if (canRedo()) {
+            restore(current + 1);
+        }
+    }
+
+    /**
+     * Возвращает партию в состояние указанного хода.
+     * Меняются только клетки, отличающиеся от текущего состояния; сравнение пропускает общие поддеревья целиком.
+     * Изменения партии после последней записи теряются.
+     * @param turn Номер хода от 0 до getTurnCount() - 1.
+     */
+    public void restore(int turn) {
+        Node live = commit();
+        Turn target = turns.get(turn);
+        int restored = diff(live, target.root, depth, 0);
+        session.getPlayer1().restore(target.player1);
+        session.getPlayer2().restore(target.player2);
+        session.setGameDay(target.day);
+        changed.clear();
+        head = target.root;
+        current = turn;
+        logger.info("Restored turn " + turn + " (day " + target.day + "), tiles changed: " + restored);
+    }
+
+    /**
+     * Возвращает количество записанных ходов, включая начальное состояние.
+     * @return Количество ходов.
+     */
+    public int getTurnCount() {
+        return turns.size();
+    }
+
+    /**
+     * Возвращает номер хода, соответствующего текущему состоянию партии.
+     * @return Номер хода.
+     */
+    public int getCurrentTurn() {
+        return current;
+    }
+
+    /**
+     * Возвращает записанный ход.
+     * @param turn Номер хода от 0 до getTurnCount() - 1.
+     * @return Ход.
+     */
+    public Turn getTurn(int turn) {
+        return turns.get(turn);
+    }
+
+    /**
+     * Переносит в дерево изменения карты после последней записи или восстановления.
+     * Проверяются изменившиеся клетки, явные клетки учета риса и клетки, изменившиеся за последние QUIET_TURNS записей:
+     * рис устойчивой клетки меняется не больше одного раза, в первый день после перехода в устойчивые.
+     * @return Корень дерева текущего состояния карты.
+     */
+    private Node commit() {
+        GameMapI gameMap = session.getGameMap();
+        Player player1 = session.getPlayer1();
+        Player player2 = session.getPlayer2();
+        records++;
+        edit = new Object();
+        Set<Long> watched = new HashSet<>(changed);
+        if (gameMap instanceof AbstractGameMap) {
+            for (Player player : new Player[]{player1, player2}) {
+                watched.addAll(((AbstractGameMap) gameMap).riceAccount(player).explicitTiles);
+            }
+        } else {
+            for (long index = 0; index < tileCount; index++) {
+                watched.add(index);
+            }
+        }
+        for (long index : watched) {
+            recent.put(index, records);
+        }
+        Node root = head;
+        int updated = 0;
+        Iterator<Map.Entry<Long, Integer>> iterator = recent.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Integer> entry = iterator.next();
+            long index = entry.getKey();
+            int x = (int) (index / height);
+            int y = (int) (index % height);
+            byte state = ReplayRecorder.encodeTile(gameMap, x, y, player1, player2);
+            double rice = gameMap.getRiceAt(x, y);
+            Node leaf = leaf(root, index);
+            byte oldState = leaf == null ? 0 : leaf.states[local(index)];
+            double oldRice = leaf == null ? DEFAULT_RICE : leaf.rice[local(index)];
+            if (state != oldState || rice != oldRice) {
+                root = set(root, index, state, rice);
+                updated++;
+            }
+            if (records - entry.getValue() >= QUIET_TURNS) {
+                iterator.remove();
+            }
+        }
+        changed.clear();
+        edit = null;
+        logger.debug("Turn history commit: " + watched.size() + " tiles changed or explicit, " + updated + " updated");
+        return root;
+    }
+
+    /**
+     * Приводит клетки карты из дерева from к состоянию из дерева to.
+     * @param from Узел дерева текущего состояния карты.
+     * @param to Узел дерева восстанавливаемого состояния.
+     * @param level Уровень узлов: 0 у листьев.
+     * @param base Номер первой клетки узла.
+     * @return Количество восстановленных клеток.
+     */
+    private int diff(Node from, Node to, int level, long base) {
+        if (from == to) {
+            return 0;
+        }
+        int restored = 0;
+        if (level == 0) {
+            GameMapI gameMap = session.getGameMap();
+            for (int i = 0; i < LEAF_SIZE && base + i < tileCount; i++) {
+                byte oldState = from == null ? 0 : from.states[i];
+                double oldRice = from == null ? DEFAULT_RICE : from.rice[i];
+                byte state = to == null ? 0 : to.states[i];
+                double rice = to == null ? DEFAULT_RICE : to.rice[i];
+                if (state != oldState || rice != oldRice) {
+                    long index = base + i;
+                    int owner = state & Replay.OWNER_MASK;
+                    gameMap.restoreTile((int) (index / height), (int) (index % height),
+                            owner == Replay.OWNER_PLAYER1 ? session.getPlayer1()
+                                    : owner == Replay.OWNER_PLAYER2 ? session.getPlayer2() : null,
+                            (state & Replay.TILE_WATERED) != 0, (state & Replay.TILE_HOUSED) != 0, rice);
+                    restored++;
+                }
+            }
+            return restored;
+        }
+        long span = 1L << (LEAF_SHIFT + (level - 1) * BRANCH_SHIFT);
+        for (int slot = 0; slot < BRANCH_SIZE; slot++) {
+            restored += diff(from == null ? null : from.children[slot], to == null ? null : to.children[slot],
+                    level - 1, base + slot * span);
+        }
+        return restored;
+    }
+
+    /**
+     * Записывает состояние клетки, копируя лист и путь до корня, если они созданы не текущей записью.
+     * @param root Корень дерева.
+     * @param index Номер клетки.
+     * @param state Байт состояния клетки.
+     * @param rice Уровень риса на клетке.
+     * @return Корень дерева с записанной клеткой.
+     */
+    private Node set(Node root, long index, byte state, double rice) {
+        Node top = editable(root, false);
+        Node node = top;
+        for (int level = depth; level > 0; level--) {
+            int slot = (int) (index >>> (LEAF_SHIFT + (level - 1) * BRANCH_SHIFT)) & (BRANCH_SIZE - 1);
+            Node child = editable(node.children[slot], level == 1);
+            node.children[slot] = child;
+            node = child;
+        }
+        node.states[local(index)] = state;
+        node.rice[local(index)] = rice;
+        return top;
+    }
+
+    /**
+     * Возвращает узел, который можно менять в текущей записи: сам узел, если он создан этой записью, иначе копию.
+     * @param node Узел или null, если узла еще нет.
+     * @param leaf Является ли узел листом.
+     * @return Изменяемый узел.
+     */
+    private Node editable(Node node, boolean leaf) {
+        if (node != null && node.edit == edit) {
+            return node;
+        }
+        if (leaf) {
+            byte[] states = node == null ? new byte[LEAF_SIZE] : node.states.clone();
+            double[] rice;
+            if (node == null) {
+                rice = new double[LEAF_SIZE];
+                Arrays.fill(rice, DEFAULT_RICE);
+            } else {
+                rice = node.rice.clone();
+            }
+            return new Node(edit, null, states, rice);
+        }
+        return new Node(edit, node == null ? new Node[BRANCH_SIZE] : node.children.clone(), null, null);
+    }
+
+    /**
+     * Находит лист клетки.
+     * @param root Корень дерева.
+     * @param index Номер клетки.
+     * @return Лист или null, если клетки нет в дереве.
+     */
+    private Node leaf(Node root, long index) {
+        Node node = root;
+        for (int level = depth; level > 0 && node != null; level--) {
+            node = node.children[(int) (index >>> (LEAF_SHIFT + (level - 1) * BRANCH_SHIFT)) & (BRANCH_SIZE - 1)];
+        }
+        return node;
+    }
+
+    /**
+     * Возвращает сквозной номер клетки.
+     * @param x Координата x клетки.
+     * @param y Координата y клетки.
+     * @return Номер клетки x * высота + y.
+     */
+    private long tileIndex(int x, int y) {
+        return (long) x * height + y;
+    }
+
+    /**
+     * Возвращает номер клетки внутри листа.
+     * @param index Номер клетки.
+     * @return Номер клетки в листе.
+     */
+    private static int local(long index) {
+        return (int) index & (LEAF_SIZE - 1);
+    }
+}
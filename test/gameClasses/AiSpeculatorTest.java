@@ -0,0 +1,122 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Random;
+
+/**
+ * Проверка AiSpeculator: ответ ИИ из кэша должен совпадать с ходом, который стратегия выбирает по той же партии
+ * без кэша. Партии играются стандартной стратегией за обоих игроков; в каждый день снимается копия партии,
+ * рассчитывается ответ на ход первого игрока, и после хода ответ из кэша сравнивается с решением стратегии
+ * на живой партии с ее пересчитываемыми планировщиками. Иногда клетки освобождаются и захватываются вне очереди,
+ * как при отмене ходов, чтобы планировщики партии пересчитывались по изменениям, а не строились заново.
+ * Запускается как обычная программа; при расхождениях или отсутствии попаданий завершается с кодом 1.
+ */
+public class AiSpeculatorTest {
+    /**Количество партий*/
+    private static final int GAMES = 12;
+    /**Наибольшее количество дней в партии*/
+    private static final int DAYS = 40;
+    /**Наибольшее время ожидания расчета ответа, мс*/
+    private static final long WAIT_MS = 5000;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) throws InterruptedException {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(45);
+        Strategy strategy = new StandardStrategy();
+        int hits = 0;
+        for (int game = 0; game < GAMES; game++) {
+            GameSession session = new GameSession(15 + random.nextInt(30), game);
+            try (AiSpeculator speculator = new AiSpeculator(strategy, 2, 64)) {
+                for (int day = 0; day < DAYS && !session.isGameOver(); day++) {
+                    if (random.nextInt(4) == 0) {
+                        disturb(session, random);
+                    }
+                    PlayerCommand human = decide(strategy, session, session.getPlayer1());
+                    speculator.prepare(session);
+                    if (human.getType() != PlayerCommand.Type.COLLECT_WATER) {
+                        speculator.hint(human.getX(), human.getY());
+                    }
+                    speculator.await(WAIT_MS);
+                    speculator.invalidate();
+                    session.apply(session.getPlayer1(), human.getType(), human.getX(), human.getY());
+                    PlayerCommand reply = speculator.take(session);
+                    PlayerCommand live = decide(strategy, session, session.getPlayer2());
+                    if (reply != null) {
+                        hits++;
+                        check(reply.getType() == live.getType() && reply.getX() == live.getX()
+                                        && reply.getY() == live.getY(),
+                                "game " + game + ", day " + day + ": cached " + reply + ", live " + live);
+                    }
+                    session.apply(session.getPlayer2(), live.getType(), live.getX(), live.getY());
+                    session.endOfDay();
+                }
+            }
+        }
+        check(hits > 0, "no cached replies were used");
+        System.out.println("Hits: " + hits + ", checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Выбирает ход стратегии за игрока по живой партии.
+     * @param strategy Стратегия.
+     * @param session Партия.
+     * @param player Игрок.
+     * @return Команда игрока.
+     */
+    private static PlayerCommand decide(Strategy strategy, GameSession session, Player player) {
+        SessionView view = new SessionView(session, player);
+        try {
+            PlayerCommand command = strategy.decide(view);
+            return command != null ? command : new PlayerCommand(0, PlayerCommand.Type.COLLECT_WATER, 0, 0);
+        } finally {
+            view.close();
+        }
+    }
+
+    /**
+     * Освобождает несколько клеток игроков и захватывает несколько свободных клеток, как отмена и повтор ходов.
+     * @param session Партия.
+     * @param random Генератор случайных чисел.
+     */
+    private static void disturb(GameSession session, Random random) {
+        GameMapI gameMap = session.getGameMap();
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        for (int i = 0; i < 4; i++) {
+            int x = random.nextInt(gameMap.getWidth());
+            int y = random.nextInt(gameMap.getHeight());
+            Player owner = gameMap.getTile(x, y).getOwner();
+            if (owner != null && owner.controlledTiles() > 1) {
+                gameMap.restoreTile(x, y, null, false, false, gameMap.getRiceAt(x, y));
+            } else if (owner == null) {
+                gameMap.restoreTile(x, y, players[random.nextInt(2)], false, false, gameMap.getRiceAt(x, y));
+            }
+        }
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Проверка упаковки команд PlayerCommand и пакетного применения CommandBatch.
+ * Упакованные команды с неизвестным типом действия, номером игрока или координатами вне карты должны отклоняться
+ * кодом результата, не меняя партию. Смешанные пакеты из правильных и испорченных команд применяются к одной партии,
+ * а только правильные команды по одной - к такой же партии; коды результатов правильных команд и состояние партий
+ * должны совпадать.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class CommandBatchTest {
+    /**Количество смешанных пакетов*/
+    private static final int BATCHES = 300;
+    /**Наибольшее количество команд в пакете*/
+    private static final int BATCH_SIZE = 40;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        packing();
+        rejected();
+        Random random = new Random(27);
+        for (int batch = 0; batch < BATCHES; batch++) {
+            mixed(random, batch);
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Проверяет упаковку и распаковку команд и распознавание неизвестных типов действий.
+     */
+    private static void packing() {
+        int[][] values = {{0, 0, 0}, {1, 5, 7}, {PlayerCommand.MAX_PLAYER, PlayerCommand.MAX_COORDINATE, 0},
+                {3, 0, PlayerCommand.MAX_COORDINATE}};
+        for (PlayerCommand.Type type : PlayerCommand.Type.values()) {
+            for (int[] value : values) {
+                PlayerCommand command = new PlayerCommand(value[0], type, value[1], value[2]);
+                check(PlayerCommand.unpack(command.pack()).equals(command), "round trip of " + command);
+                check(PlayerCommand.packedType(command.pack()) == type, "packed type of " + command);
+            }
+        }
+        for (int type = PlayerCommand.Type.values().length; type <= 0xFF; type++) {
+            long packed = PlayerCommand.pack(1, PlayerCommand.Type.CLAIM_TERRITORY, 2, 3) & ~0xFFL | type;
+            check(PlayerCommand.packedType(packed) == null, "packed type " + type + " is not rejected");
+            try {
+                PlayerCommand.unpack(packed);
+                check(false, "unpacked command with type " + type);
+            } catch (IllegalArgumentException e) {
+                check(true, "unpack rejects type " + type);
+            }
+        }
+    }
+
+    /**
+     * Проверяет коды результатов испорченных команд и то, что они не меняют партию.
+     */
+    private static void rejected() {
+        GameSession session = new GameSession(20, 1);
+        GameSession expected = new GameSession(20, 1);
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        long claim = PlayerCommand.pack(0, PlayerCommand.Type.CLAIM_TERRITORY, 18, 19);
+        long[] commands = {
+                claim & ~0xFFL | 0xFF,
+                claim & ~0xFFL | PlayerCommand.Type.values().length,
+                PlayerCommand.pack(2, PlayerCommand.Type.CLAIM_TERRITORY, 18, 19),
+                PlayerCommand.pack(PlayerCommand.MAX_PLAYER, PlayerCommand.Type.COLLECT_WATER, 0, 0),
+                PlayerCommand.pack(0, PlayerCommand.Type.CLAIM_TERRITORY, 20, 19),
+                PlayerCommand.pack(0, PlayerCommand.Type.WATER_RICE, 19, PlayerCommand.MAX_COORDINATE),
+                PlayerCommand.pack(0, PlayerCommand.Type.BUILD_HOUSE, PlayerCommand.MAX_COORDINATE, 19),
+                PlayerCommand.pack(1, PlayerCommand.Type.CLAIM_TERRITORY, 0, 20)
+        };
+        int[] codes = {PlayerCommand.RESULT_NOT_ALLOWED, PlayerCommand.RESULT_NOT_ALLOWED,
+                PlayerCommand.RESULT_UNKNOWN_PLAYER, PlayerCommand.RESULT_UNKNOWN_PLAYER,
+                PlayerCommand.RESULT_NOT_ALLOWED, PlayerCommand.RESULT_NOT_ALLOWED,
+                PlayerCommand.RESULT_NOT_ALLOWED, PlayerCommand.RESULT_NOT_ALLOWED};
+        int[] results = CommandBatch.apply(commands, players, session.getGameMap());
+        check(Arrays.equals(results, codes), "rejected commands: " + Arrays.toString(results)
+                + ", expected " + Arrays.toString(codes));
+        compare(session, expected, "rejected commands");
+    }
+
+    /**
+     * Применяет смешанный пакет к партии и только правильные команды по одной к такой же партии.
+     * @param random Генератор случайных чисел.
+     * @param batch Номер пакета.
+     */
+    private static void mixed(Random random, int batch) {
+        int size = 10 + random.nextInt(20);
+        GameSession session = new GameSession(size, batch);
+        GameSession expected = new GameSession(size, batch);
+        for (int day = random.nextInt(10); day > 0 && !session.isGameOver(); day--) {
+            session.step();
+            expected.step();
+        }
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        Player[] expectedPlayers = {expected.getPlayer1(), expected.getPlayer2()};
+        int count = 1 + random.nextInt(BATCH_SIZE);
+        long[] commands = new long[count];
+        List<PlayerCommand> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            PlayerCommand.Type type = PlayerCommand.Type.values()[random.nextInt(PlayerCommand.Type.values().length)];
+            int player = random.nextInt(2);
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            switch (random.nextInt(4)) {
+                case 0:
+                    commands[i] = PlayerCommand.pack(player, type, x, y) & ~0xFFL
+                            | PlayerCommand.Type.values().length + random.nextInt(0xFF - PlayerCommand.Type.values().length + 1);
+                    break;
+                case 1:
+                    commands[i] = PlayerCommand.pack(2 + random.nextInt(PlayerCommand.MAX_PLAYER - 1), type, x, y);
+                    break;
+                default:
+                    commands[i] = PlayerCommand.pack(player, type, x, y);
+                    valid.add(new PlayerCommand(player, type, x, y));
+                    validIndexes.add(i);
+            }
+        }
+        int[] results = CommandBatch.apply(commands, players, session.getGameMap());
+        int[] expectedResults = CommandBatch.apply(valid, expectedPlayers, expected.getGameMap());
+        String name = "batch " + batch;
+        for (int i = 0, j = 0; i < count; i++) {
+            if (j < validIndexes.size() && validIndexes.get(j) == i) {
+                check(results[i] == expectedResults[j], name + ", command " + i + ": result " + results[i]
+                        + ", expected " + expectedResults[j]);
+                j++;
+            } else {
+                check(results[i] == PlayerCommand.RESULT_NOT_ALLOWED || results[i] == PlayerCommand.RESULT_UNKNOWN_PLAYER,
+                        name + ", command " + i + ": corrupted command result " + results[i]);
+            }
+        }
+        compare(session, expected, name);
+    }
+
+    /**
+     * Сравнивает ресурсы игроков и клетки партий.
+     * @param session Партия.
+     * @param expected Ожидаемая партия.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(GameSession session, GameSession expected, String name) {
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        Player[] expectedPlayers = {expected.getPlayer1(), expected.getPlayer2()};
+        for (int p = 0; p < players.length; p++) {
+            check(players[p].getUnits() == expectedPlayers[p].getUnits() && players[p].getRice() == expectedPlayers[p].getRice()
+                    && players[p].getWater() == expectedPlayers[p].getWater()
+                    && players[p].getHouses() == expectedPlayers[p].getHouses()
+                    && players[p].controlledTiles() == expectedPlayers[p].controlledTiles(),
+                    name + ": resources of player " + (p + 1) + " differ");
+        }
+        GameMapI gameMap = session.getGameMap();
+        GameMapI expectedMap = expected.getGameMap();
+        boolean same = true;
+        for (int x = 0; x < gameMap.getWidth() && same; x++) {
+            for (int y = 0; y < gameMap.getHeight() && same; y++) {
+                for (int p = 0; p < players.length; p++) {
+                    same &= gameMap.isControlled(x, y, players[p]) == expectedMap.isControlled(x, y, expectedPlayers[p]);
+                }
+                same &= gameMap.isWatered(x, y) == expectedMap.isWatered(x, y)
+                        && gameMap.isHoused(x, y) == expectedMap.isHoused(x, y);
+            }
+        }
+        check(same, name + ": tiles differ");
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Проверка пересчета ExpansionPlanner на совпадение с планировщиком, построенным заново.
+ * Партии играются стандартной стратегией; между днями случайные клетки освобождаются и восстанавливаются, как при
+ * отмене ходов, и захватываются вне очереди. После каждого дня у планировщиков обоих игроков, которые пересчитываются
+ * по изменениям карты, сравниваются с новыми планировщиками расстояния и маршруты до всех клеток, цели расширения
+ * при разном количестве юнитов и первые шаги к ним. Кроме того, копия партии, снятая в случайный день, доигрывается
+ * рядом с исходной: новые планировщики копии должны давать те же ходы, что и пересчитанные планировщики партии.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class ExpansionPlannerEquivalenceTest {
+    /**Количество партий*/
+    private static final int GAMES = 60;
+    /**Наибольшее количество дней в партии*/
+    private static final int DAYS = 60;
+    /**Количества юнитов, для которых выбирается цель расширения*/
+    private static final int[] UNITS = {0, 1, 2, 3, 5, 8, 13, 40, Integer.MAX_VALUE};
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(33);
+        for (int game = 0; game < GAMES; game++) {
+            GameSession session = new GameSession(12 + random.nextInt(40), game);
+            GameSession copy = null;
+            int copyDay = 1 + random.nextInt(DAYS / 2);
+            for (int day = 0; day < DAYS && !session.isGameOver(); day++) {
+                if (day == copyDay) {
+                    copy = session.copy();
+                }
+                session.step();
+                if (copy != null) {
+                    copy.step();
+                    compareMaps(session, copy, "game " + game + " copy", day);
+                } else if (random.nextInt(3) == 0) {
+                    disturb(session, random);
+                }
+                String name = "game " + game + ", day " + day;
+                compare(session.getGameMap(), session.getPlayer1(), name + ", player 1");
+                compare(session.getGameMap(), session.getPlayer2(), name + ", player 2");
+            }
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Освобождает несколько клеток игроков и захватывает несколько свободных клеток, как отмена и повтор ходов.
+     * @param session Партия.
+     * @param random Генератор случайных чисел.
+     */
+    private static void disturb(GameSession session, Random random) {
+        GameMapI gameMap = session.getGameMap();
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        int changes = 1 + random.nextInt(6);
+        for (int i = 0; i < changes; i++) {
+            int x = random.nextInt(gameMap.getWidth());
+            int y = random.nextInt(gameMap.getHeight());
+            Player owner = gameMap.getTile(x, y).getOwner();
+            if (owner != null && owner.controlledTiles() > 1) {
+                gameMap.restoreTile(x, y, null, false, false, gameMap.getRiceAt(x, y));
+            } else if (owner == null) {
+                gameMap.restoreTile(x, y, players[random.nextInt(2)], false, false, gameMap.getRiceAt(x, y));
+            }
+        }
+    }
+
+    /**
+     * Сравнивает пересчитанный планировщик игрока с новым.
+     * @param gameMap Игровая карта.
+     * @param player Игрок.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(GameMapI gameMap, Player player, String name) {
+        ExpansionPlanner incremental = player.expansionPlanner(gameMap);
+        ExpansionPlanner fresh = new ExpansionPlanner(gameMap, player);
+        try {
+            for (int x = 0; x < gameMap.getWidth(); x++) {
+                for (int y = 0; y < gameMap.getHeight(); y++) {
+                    check(incremental.getDistance(x, y) == fresh.getDistance(x, y), name, "distance to " + x + "," + y);
+                    check(sameRoute(incremental.route(x, y), fresh.route(x, y)), name, "route to " + x + "," + y);
+                }
+            }
+            for (int units : UNITS) {
+                int[] target = incremental.chooseTarget(units);
+                int[] expected = fresh.chooseTarget(units);
+                check(Arrays.equals(target, expected), name, "target for " + units + " units: "
+                        + Arrays.toString(target) + ", expected " + Arrays.toString(expected));
+                if (target != null && expected != null) {
+                    check(Arrays.equals(incremental.firstStep(target), fresh.firstStep(expected)), name,
+                            "first step for " + units + " units");
+                }
+            }
+        } finally {
+            fresh.detach();
+        }
+    }
+
+    /**
+     * Сравнивает владельцев всех клеток партии и ее копии.
+     * @param session Партия.
+     * @param copy Копия партии.
+     * @param name Название проверки для сообщений.
+     * @param day Номер дня.
+     */
+    private static void compareMaps(GameSession session, GameSession copy, String name, int day) {
+        GameMapI gameMap = session.getGameMap();
+        GameMapI copyMap = copy.getGameMap();
+        boolean same = true;
+        for (int x = 0; x < gameMap.getWidth() && same; x++) {
+            for (int y = 0; y < gameMap.getHeight() && same; y++) {
+                same = gameMap.isControlled(x, y, session.getPlayer1()) == copyMap.isControlled(x, y, copy.getPlayer1())
+                        && gameMap.isControlled(x, y, session.getPlayer2()) == copyMap.isControlled(x, y, copy.getPlayer2());
+            }
+        }
+        check(same, name, "tile owners differ on day " + day);
+    }
+
+    /**
+     * Сравнивает маршруты.
+     * @param route Маршрут.
+     * @param expected Ожидаемый маршрут.
+     * @return True, если маршруты проходят по одним и тем же клеткам.
+     */
+    private static boolean sameRoute(List<int[]> route, List<int[]> expected) {
+        if (route.size() != expected.size()) {
+            return false;
+        }
+        for (int i = 0; i < route.size(); i++) {
+            if (!Arrays.equals(route.get(i), expected.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param name Название проверки.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String name, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(name + ": " + what);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Проверка GameHost: партии, которые делают ходы в контейнере и выгружаются на диск, должны совпадать с такими же
+ * партиями, сыгранными в памяти. Все партии выгружаются в начале и периодически в ходе игры; после каждого шага
+ * проверяется, что в памяти находятся только партии, к которым обращались, а выгруженные партии делают ходы,
+ * оставаясь на диске. Партии, к которым обращались, сравниваются с эталонными по дню, ресурсам игроков и владельцам
+ * клеток. В конце файлы двух партий портятся: контейнер должен удалить их, не останавливая остальные партии.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class GameHostTest {
+    /**Количество партий*/
+    private static final int GAMES = 40;
+    /**Количество шагов контейнера*/
+    private static final int DAYS = 40;
+    /**Количество потоков контейнера*/
+    private static final int WORKERS = 4;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.FATAL);
+        Path directory = Files.createTempDirectory("game-host-test");
+        try {
+            run(directory);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Играет партии в контейнере и в памяти и сравнивает их.
+     * @param directory Каталог выгрузки партий.
+     * @throws Exception Если контейнер выбрасывает исключение.
+     */
+    private static void run(Path directory) throws Exception {
+        Random random = new Random(26);
+        GameHost host = new GameHost(WORKERS, directory);
+        GameSession[] expected = new GameSession[GAMES + 1];
+        for (int game = 1; game <= GAMES; game++) {
+            int size = 15 + random.nextInt(30);
+            check(host.createGame(size, game) == game, "game " + game + " id");
+            expected[game] = new GameSession(new ChunkedGameMap(size, game), game);
+        }
+        evictAll(host);
+        Set<Long> accessed = new HashSet<>();
+        for (int day = 0; day < DAYS; day++) {
+            int due = 0;
+            for (int game = 1; game <= GAMES; game++) {
+                if (!expected[game].isGameOver()) {
+                    expected[game].step();
+                    due++;
+                }
+            }
+            check(host.stepReadyGames() == due, "day " + day + ": stepped games");
+            check(host.getResidentCount() == accessed.size(), "day " + day + ": " + host.getResidentCount()
+                    + " resident games, " + accessed.size() + " accessed");
+            check(host.getEvictedCount() == GAMES - accessed.size(), "day " + day + ": evicted games");
+            for (int i = 0; i < 3; i++) {
+                long id = 1 + random.nextInt(GAMES);
+                accessed.add(id);
+                GameSession session = host.getGame(id);
+                compare(session, expected[(int) id], "day " + day + ", game " + id);
+                check(host.getMemoryUsage(id) > 0, "day " + day + ", game " + id + " memory usage");
+            }
+            if (day % 10 == 9) {
+                evictAll(host);
+                accessed.clear();
+            }
+        }
+        for (int game = 1; game <= GAMES; game++) {
+            compare(host.getGame(game), expected[game], "end, game " + game);
+        }
+        evictAll(host);
+        long stepped = -1, read = -1;
+        for (int game = 1; game <= GAMES && (stepped < 0 || read < 0); game++) {
+            if (stepped < 0 && !expected[game].isGameOver()) {
+                stepped = game;
+            } else if (read < 0) {
+                read = game;
+            }
+        }
+        Files.write(directory.resolve("game-" + stepped + ".ser"), new byte[]{1, 2, 3});
+        int due = 0;
+        for (int game = 1; game <= GAMES; game++) {
+            due += expected[game].isGameOver() ? 0 : 1;
+        }
+        check(host.stepReadyGames() == due - 1, "stepped games with a corrupted file");
+        check(host.getGame(stepped) == null, "game with a corrupted file was not dropped when stepped");
+        Files.write(directory.resolve("game-" + read + ".ser"), new byte[0]);
+        try {
+            host.getGame(read);
+            check(false, "no error reading a corrupted game");
+        } catch (IOException e) {
+            check(host.getGame(read) == null, "game with a corrupted file was not dropped when read");
+        }
+        check(host.getEvictedCount() == GAMES - 2, "evicted games after dropping corrupted ones");
+        check(host.stepReadyGames() == due - 1 - (expected[(int) read].isGameOver() ? 0 : 1),
+                "stepped games after dropping corrupted ones");
+        host.shutdown();
+    }
+
+    /**
+     * Выгружает все партии контейнера.
+     * @param host Контейнер.
+     * @throws Exception Если выгрузка не удалась или ожидание было прервано.
+     */
+    private static void evictAll(GameHost host) throws Exception {
+        Thread.sleep(5);
+        host.evictIdle(1);
+        check(host.getResidentCount() == 0, "resident games after eviction");
+    }
+
+    /**
+     * Сравнивает партию контейнера с эталонной.
+     * @param session Партия контейнера.
+     * @param expected Эталонная партия.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(GameSession session, GameSession expected, String name) {
+        check(session != null, name + ": game not found");
+        if (session == null) {
+            return;
+        }
+        check(session.getGameDay() == expected.getGameDay(), name + ": day " + session.getGameDay()
+                + ", expected " + expected.getGameDay());
+        compare(session.getPlayer1(), expected.getPlayer1(), name + ", player 1");
+        compare(session.getPlayer2(), expected.getPlayer2(), name + ", player 2");
+        GameMapI gameMap = session.getGameMap();
+        GameMapI expectedMap = expected.getGameMap();
+        boolean same = true;
+        for (int x = 0; x < gameMap.getWidth() && same; x++) {
+            for (int y = 0; y < gameMap.getHeight() && same; y++) {
+                same = gameMap.isControlled(x, y, session.getPlayer1()) == expectedMap.isControlled(x, y, expected.getPlayer1())
+                        && gameMap.isControlled(x, y, session.getPlayer2()) == expectedMap.isControlled(x, y, expected.getPlayer2())
+                        && gameMap.getRiceAt(x, y) == expectedMap.getRiceAt(x, y);
+            }
+        }
+        check(same, name + ": tiles differ");
+    }
+
+    /**
+     * Сравнивает ресурсы игрока с эталонными.
+     * @param player Игрок партии контейнера.
+     * @param expected Игрок эталонной партии.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(Player player, Player expected, String name) {
+        check(player.getUnits() == expected.getUnits() && player.getRice() == expected.getRice()
+                && player.getWater() == expected.getWater() && player.getHouses() == expected.getHouses()
+                && player.controlledTiles() == expected.controlledTiles(), name + ": resources differ");
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
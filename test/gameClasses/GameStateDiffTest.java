@@ -0,0 +1,107 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Random;
+
+/**
+ * Проверка GameStateDiff: копия состояния у наблюдателя, к которой по очереди применяются изменения каждого хода,
+ * должна совпадать с полной копией Mirror.capture по дню, состояниям клеток, уровням риса и ресурсам игроков.
+ * Партии иногда откатываются на несколько ходов назад через TurnHistory, поэтому изменения дня бывают отрицательными;
+ * отрицательное изменение дня на несколько ходов должно занимать один байт.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class GameStateDiffTest {
+    /**Количество партий*/
+    private static final int GAMES = 30;
+    /**Количество записей изменений в партии*/
+    private static final int STEPS = 80;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(36);
+        int undone = 0;
+        for (int game = 0; game < GAMES; game++) {
+            GameSession session = new GameSession(10 + random.nextInt(40), game);
+            TurnHistory history = new TurnHistory(session);
+            GameStateDiff differ = new GameStateDiff(session);
+            GameStateDiff.Mirror mirror = GameStateDiff.Mirror.capture(session);
+            for (int step = 0; step < STEPS; step++) {
+                String name = "game " + game + ", step " + step;
+                int day = session.getGameDay();
+                if (history.canUndo() && random.nextInt(6) == 0) {
+                    history.restore(Math.max(0, history.getCurrentTurn() - 1 - random.nextInt(5)));
+                    undone++;
+                } else if (session.isGameOver()) {
+                    break;
+                } else {
+                    session.step();
+                    history.record();
+                }
+                byte[] diff = differ.next();
+                int delta = session.getGameDay() - day;
+                check(diff.length > 0 && diff[0] == (delta << 1 ^ delta >> 31), name + ": day change " + delta
+                        + " encoded as " + (diff.length > 0 ? diff[0] : "nothing"));
+                mirror.apply(diff);
+                compare(mirror, GameStateDiff.Mirror.capture(session), session, name);
+            }
+            differ.detach();
+            history.detach();
+        }
+        check(undone > 0, "no turns were undone");
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Сравнивает копию состояния, собранную из изменений, с полной копией.
+     * @param mirror Копия, собранная из изменений.
+     * @param expected Полная копия.
+     * @param session Партия.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(GameStateDiff.Mirror mirror, GameStateDiff.Mirror expected, GameSession session, String name) {
+        check(mirror.getDay() == expected.getDay(), name + ": day " + mirror.getDay() + ", expected " + expected.getDay());
+        GameMapI gameMap = session.getGameMap();
+        boolean tiles = true, rice = true;
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < gameMap.getHeight(); y++) {
+                tiles &= mirror.getStateString(x, y).equals(expected.getStateString(x, y));
+                rice &= Double.compare(mirror.getRiceAt(x, y), expected.getRiceAt(x, y)) == 0;
+            }
+        }
+        check(tiles, name + ": tiles differ");
+        check(rice, name + ": rice levels differ");
+        for (int p = 0; p < 2; p++) {
+            for (int r = 0; r < Replay.STATS_PER_PLAYER; r++) {
+                check(Double.compare(mirror.getStat(p, r), expected.getStat(p, r)) == 0, name + ": resource " + r
+                        + " of player " + (p + 1) + " is " + mirror.getStat(p, r) + ", expected " + expected.getStat(p, r));
+            }
+        }
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
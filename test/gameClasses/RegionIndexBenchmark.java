@@ -0,0 +1,119 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Random;
+
+/**
+ * Сравнение запросов RegionIndex с перебором клеток: плотная карта GameMap 2000 x 2000, на трети клеток которой
+ * есть клетки игрока, и разреженная ChunkedGameMap 1 000 000 x 1 000 000 с несколькими занятыми областями.
+ * Печатает время построения индекса, среднее время запроса количества клеток и суммы риса индексом и перебором
+ * и проверяет, что ответы совпадают. Запускается как обычная программа.
+ */
+public class RegionIndexBenchmark {
+    /**Количество запросов индекса на карту*/
+    private static final int QUERIES = 20000;
+    /**Количество запросов перебором на карту*/
+    private static final int BRUTE_QUERIES = 50;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(1);
+
+        int size = 2000;
+        GameMap dense = new GameMap(size, 1);
+        Player player = new Player(0, 0, 0, 0, Integer.MAX_VALUE, dense);
+        for (int i = 0; i < size * size / 3; i++) {
+            dense.claimTile(random.nextInt(size), random.nextInt(size), player);
+        }
+        run("GameMap " + size + "x" + size, dense, player, 0, 0, size, random);
+
+        int sparseSize = 1_000_000;
+        ChunkedGameMap sparse = new ChunkedGameMap(sparseSize, 1);
+        Player sparsePlayer = new Player(0, 0, 0, 0, Integer.MAX_VALUE, sparse);
+        int area = 3000;
+        int originX = sparseSize / 2, originY = sparseSize / 3;
+        for (int cluster = 0; cluster < 20; cluster++) {
+            int cx = originX + random.nextInt(area - 200), cy = originY + random.nextInt(area - 200);
+            for (int i = 0; i < 15000; i++) {
+                sparse.claimTile(cx + random.nextInt(200), cy + random.nextInt(200), sparsePlayer);
+            }
+        }
+        run("ChunkedGameMap " + sparseSize + "x" + sparseSize, sparse, sparsePlayer, originX, originY, area, random);
+    }
+
+    /**
+     * Строит индекс карты и сравнивает запросы индекса с перебором на прямоугольниках внутри области.
+     * @param name Название карты.
+     * @param gameMap Игровая карта.
+     * @param player Игрок, клетки которого считаются.
+     * @param originX Координата x области запросов.
+     * @param originY Координата y области запросов.
+     * @param area Сторона области запросов.
+     * @param random Генератор случайных чисел.
+     */
+    private static void run(String name, GameMapI gameMap, Player player, int originX, int originY, int area,
+                            Random random) {
+        gameMap.growRice(player);
+        gameMap.harvestRice(player);
+        long start = System.nanoTime();
+        RegionIndex index = new RegionIndex(gameMap);
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        int[][] queries = new int[QUERIES][4];
+        for (int[] query : queries) {
+            query[0] = originX + random.nextInt(area);
+            query[1] = originY + random.nextInt(area);
+            query[2] = query[0] + random.nextInt(area);
+            query[3] = query[1] + random.nextInt(area);
+        }
+        long sink = 0;
+        start = System.nanoTime();
+        for (int[] query : queries) {
+            sink += index.countOwned(player, query[0], query[1], query[2], query[3]);
+            sink += (long) index.sumRice(player, query[0], query[1], query[2], query[3]);
+        }
+        double indexMicros = (System.nanoTime() - start) / 1e3 / QUERIES;
+        int mismatches = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < BRUTE_QUERIES; q++) {
+            int[] query = queries[q];
+            int owned = 0;
+            double rice = 0;
+            for (int x = query[0]; x <= Math.min(query[2], gameMap.getWidth() - 1); x++) {
+                for (int y = query[1]; y <= Math.min(query[3], gameMap.getHeight() - 1); y++) {
+                    if (gameMap.isControlled(x, y, player)) {
+                        owned++;
+                        rice += gameMap.getRiceAt(x, y);
+                    }
+                }
+            }
+            if (owned != index.countOwned(player, query[0], query[1], query[2], query[3])
+                    || rice != index.sumRice(player, query[0], query[1], query[2], query[3])) {
+                mismatches++;
+            }
+        }
+        double bruteMicros = (System.nanoTime() - start) / 1e3 / BRUTE_QUERIES;
+        int[] owned = new int[2 * 10000];
+        int updates = 0;
+        while (updates < 10000) {
+            int x = originX + random.nextInt(area), y = originY + random.nextInt(area);
+            if (gameMap.isControlled(x, y, player)) {
+                owned[2 * updates] = x;
+                owned[2 * updates + 1] = y;
+                updates++;
+            }
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            gameMap.waterTile(owned[2 * i], owned[2 * i + 1]);
+        }
+        double updateMicros = (System.nanoTime() - start) / 1e3 / updates;
+        index.detach();
+        System.out.printf("%s: build %.1f ms, %d blocks; query: index %.2f us, brute force %.0f us (x%.0f); "
+                        + "watering with index %.2f us; mismatches %d (%d)%n", name, buildMillis, index.getBlockCount(),
+                indexMicros, bruteMicros, bruteMicros / indexMicros, updateMicros, mismatches, sink % 10);
+    }
+}
@@ -0,0 +1,160 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Проверка RegionIndex перебором клеток: количество захваченных, политых клеток и клеток с домами и сумма getRiceAt
+ * по случайным прямоугольникам, в том числе выходящим за карту. Партии играются на картах всех видов со случайными
+ * захватами, поливами, домами, записями уровня риса, ростом и сбором урожая в обычном и нарушенном порядке;
+ * запросы задаются и до, и после роста риса. Индекс строится по уже занятой карте, чтобы проверить и построение.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class RegionIndexTest {
+    /**Количество партий на каждый вид карты*/
+    private static final int GAMES = 40;
+    /**Количество дней в партии*/
+    private static final int DAYS = 40;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) throws IOException {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(7);
+        Path directory = Files.createTempDirectory("region-test");
+        for (int game = 0; game < GAMES; game++) {
+            int size = 5 + random.nextInt(150);
+            run(new GameMap(size, game), random, "GameMap " + game);
+            run(new ChunkedGameMap(size, game), random, "ChunkedGameMap " + game);
+            Path file = directory.resolve("map-" + game);
+            try (MappedGameMap mapped = MappedGameMap.create(file, size, game)) {
+                run(mapped, random, "MappedGameMap " + game);
+            }
+            Files.delete(file);
+        }
+        Files.delete(directory);
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Играет одну партию и сравнивает ответы индекса с перебором.
+     * @param gameMap Игровая карта.
+     * @param random Генератор случайных чисел.
+     * @param name Название партии для сообщений.
+     */
+    private static void run(GameMapI gameMap, Random random, String name) {
+        int size = gameMap.getWidth();
+        Player[] players = {new Player(size - 1, size - 1, 20, 10, Integer.MAX_VALUE, gameMap),
+                new Player(0, 0, 20, 10, Integer.MAX_VALUE, gameMap)};
+        for (int i = 0; i < size; i++) {
+            gameMap.claimTile(random.nextInt(size), random.nextInt(size), players[random.nextInt(players.length)]);
+        }
+        RegionIndex index = new RegionIndex(gameMap);
+        for (int day = 0; day < DAYS; day++) {
+            int actions = random.nextInt(3 * size);
+            for (int k = 0; k < actions; k++) {
+                int x = random.nextInt(size);
+                int y = random.nextInt(size);
+                switch (random.nextInt(5)) {
+                    case 0:
+                    case 1:
+                        gameMap.claimTile(x, y, players[random.nextInt(players.length)]);
+                        break;
+                    case 2:
+                        gameMap.waterTile(x, y);
+                        break;
+                    case 3:
+                        gameMap.houseTile(x, y);
+                        break;
+                    default:
+                        if (random.nextInt(4) == 0) {
+                            gameMap.setRiceAt(x, y, random.nextInt(9) - 4 + (random.nextBoolean() ? 0.5 : 0));
+                        }
+                }
+            }
+            compare(gameMap, index, players, random, name, day);
+            int mode = random.nextInt(20);
+            int grows = mode == 0 ? 0 : mode == 1 ? 2 : 1;
+            for (Player player : players) {
+                for (int i = 0; i < grows; i++) {
+                    gameMap.growRice(player);
+                }
+            }
+            compare(gameMap, index, players, random, name, day);
+            for (Player player : players) {
+                gameMap.harvestRice(player);
+            }
+        }
+        index.detach();
+    }
+
+    /**
+     * Сравнивает ответы индекса с перебором на нескольких случайных прямоугольниках.
+     * @param gameMap Игровая карта.
+     * @param index Индекс карты.
+     * @param players Игроки.
+     * @param random Генератор случайных чисел.
+     * @param name Название партии.
+     * @param day Номер дня.
+     */
+    private static void compare(GameMapI gameMap, RegionIndex index, Player[] players, Random random, String name,
+                                int day) {
+        int size = gameMap.getWidth();
+        for (int q = 0; q < 8; q++) {
+            int x1 = random.nextInt(size + 4) - 2;
+            int y1 = random.nextInt(size + 4) - 2;
+            int x2 = x1 + random.nextInt(size + 2);
+            int y2 = y1 + random.nextInt(size + 2);
+            for (Player player : players) {
+                int owned = 0, watered = 0, housed = 0;
+                double rice = 0;
+                for (int x = Math.max(x1, 0); x <= Math.min(x2, size - 1); x++) {
+                    for (int y = Math.max(y1, 0); y <= Math.min(y2, size - 1); y++) {
+                        if (gameMap.isControlled(x, y, player)) {
+                            owned++;
+                            watered += gameMap.isWatered(x, y) ? 1 : 0;
+                            housed += gameMap.isHoused(x, y) ? 1 : 0;
+                            rice += gameMap.getRiceAt(x, y);
+                        }
+                    }
+                }
+                check(index.countOwned(player, x1, y1, x2, y2), owned, name, day, "owned");
+                check(index.countWatered(player, x1, y1, x2, y2), watered, name, day, "watered");
+                check(index.countHoused(player, x1, y1, x2, y2), housed, name, day, "housed");
+                check(index.sumRice(player, x1, y1, x2, y2), rice, name, day, "rice");
+                check(index.steadyHarvest(player, x1, y1, x2, y2), 2 * owned + watered, name, day, "steady harvest");
+            }
+        }
+    }
+
+    /**
+     * Сравнивает ответ индекса с перебором и сообщает о первых расхождениях.
+     * @param actual Ответ индекса.
+     * @param expected Результат перебора.
+     * @param name Название партии.
+     * @param day Номер дня.
+     * @param what Что сравнивается.
+     */
+    private static void check(double actual, double expected, String name, int day, String what) {
+        checks++;
+        if (Math.abs(actual - expected) > 1e-6) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(name + ", day " + day + ": " + what + " is " + actual + ", expected " + expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Проверка записи и просмотра повторов: партии записываются ReplayRecorder с разным периодом опорных кадров,
+ * а после каждого дня снимается состояние клеток и ресурсы игроков. Затем повтор читается Replay.load, и состояние
+ * на каждый день, в том числе на дни между опорными кадрами, запрошенное в случайном порядке, как при перемотке
+ * ползунком ReplayViewer, должно совпадать со снятым. Иногда клетки освобождаются и захватываются вне очереди,
+ * как при отмене ходов, чтобы в изменениях дня были и освобожденные клетки.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class ReplayTest {
+    /**Периоды опорных кадров*/
+    private static final int[] KEYFRAME_INTERVALS = {1, 3, 7, 10, 1000};
+    /**Количество партий на каждый период*/
+    private static final int GAMES = 6;
+    /**Наибольшее количество дней в партии*/
+    private static final int DAYS = 60;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(28);
+        Path file = Files.createTempFile("replay-test", ".replay");
+        try {
+            for (int interval : KEYFRAME_INTERVALS) {
+                for (int game = 0; game < GAMES; game++) {
+                    play(file, interval, new GameSession(10 + random.nextInt(30), game), random,
+                            "interval " + interval + ", game " + game);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Записывает повтор партии и сравнивает состояния, прочитанные из повтора, со снятыми во время игры.
+     * @param file Файл повтора.
+     * @param interval Период опорных кадров.
+     * @param session Партия.
+     * @param random Генератор случайных чисел.
+     * @param name Название партии для сообщений.
+     * @throws Exception Если возникает ошибка ввода-вывода.
+     */
+    private static void play(Path file, int interval, GameSession session, Random random, String name) throws Exception {
+        List<byte[]> tiles = new ArrayList<>();
+        List<double[]> stats = new ArrayList<>();
+        try (ReplayRecorder recorder = new ReplayRecorder(file, session, interval)) {
+            session.setRecorder(recorder);
+            capture(session, tiles, stats);
+            for (int day = 0; day < DAYS && !session.isGameOver(); day++) {
+                if (random.nextInt(4) == 0) {
+                    disturb(session, random);
+                }
+                session.step();
+                capture(session, tiles, stats);
+            }
+        }
+        Replay replay = Replay.load(file);
+        GameMapI gameMap = session.getGameMap();
+        check(replay.getFirstDay() == 0 && replay.getLastDay() == tiles.size() - 1, name + ": days "
+                + replay.getFirstDay() + ".." + replay.getLastDay() + ", expected 0.." + (tiles.size() - 1));
+        check(replay.getSeed() == session.getSeed() && replay.getWidth() == gameMap.getWidth()
+                && replay.getHeight() == gameMap.getHeight() && replay.getKeyframeInterval() == interval, name + ": header");
+        boolean units = true;
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < gameMap.getHeight(); y++) {
+                units &= replay.getRequiredUnits(x, y) == gameMap.getTile(x, y).getRequiredUnits();
+            }
+        }
+        check(units, name + ": required units");
+        List<Integer> days = new ArrayList<>();
+        for (int day = 0; day < tiles.size(); day++) {
+            days.add(day);
+        }
+        Collections.shuffle(days, random);
+        for (int day : days) {
+            compare(replay.frameAt(day), tiles.get(day), stats.get(day), gameMap.getHeight(), name + ", day " + day);
+        }
+    }
+
+    /**
+     * Снимает состояние клеток и ресурсы игроков партии.
+     * @param session Партия.
+     * @param tiles Состояния клеток по дням.
+     * @param stats Ресурсы игроков по дням.
+     */
+    private static void capture(GameSession session, List<byte[]> tiles, List<double[]> stats) {
+        GameMapI gameMap = session.getGameMap();
+        byte[] states = new byte[gameMap.getWidth() * gameMap.getHeight()];
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < gameMap.getHeight(); y++) {
+                states[x * gameMap.getHeight() + y] = ReplayRecorder.encodeTile(gameMap, x, y,
+                        session.getPlayer1(), session.getPlayer2());
+            }
+        }
+        tiles.add(states);
+        double[] values = new double[2 * Replay.STATS_PER_PLAYER];
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        for (int p = 0; p < players.length; p++) {
+            values[p * Replay.STATS_PER_PLAYER] = players[p].getRice();
+            values[p * Replay.STATS_PER_PLAYER + 1] = players[p].getWater();
+            values[p * Replay.STATS_PER_PLAYER + 2] = players[p].getUnits();
+            values[p * Replay.STATS_PER_PLAYER + 3] = players[p].getHouses();
+            values[p * Replay.STATS_PER_PLAYER + 4] = players[p].controlledTiles();
+        }
+        stats.add(values);
+    }
+
+    /**
+     * Сравнивает состояние партии из повтора со снятым.
+     * @param frame Состояние из повтора.
+     * @param tiles Снятые состояния клеток.
+     * @param stats Снятые ресурсы игроков.
+     * @param height Высота карты.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(Replay.Frame frame, byte[] tiles, double[] stats, int height, String name) {
+        boolean same = true;
+        for (int i = 0; i < tiles.length && same; i++) {
+            same = frame.getStateString(i / height, i % height).equals(Replay.stateString(tiles[i]));
+        }
+        check(same, name + ": tiles differ");
+        for (int p = 0; p < 2; p++) {
+            for (int r = 0; r < Replay.STATS_PER_PLAYER; r++) {
+                check(frame.getStat(p, r) == stats[p * Replay.STATS_PER_PLAYER + r], name + ": resource " + r
+                        + " of player " + (p + 1) + " is " + frame.getStat(p, r));
+            }
+        }
+    }
+
+    /**
+     * Освобождает несколько клеток игроков и захватывает несколько свободных клеток, как отмена и повтор ходов.
+     * @param session Партия.
+     * @param random Генератор случайных чисел.
+     */
+    private static void disturb(GameSession session, Random random) {
+        GameMapI gameMap = session.getGameMap();
+        Player[] players = {session.getPlayer1(), session.getPlayer2()};
+        for (int i = 0; i < 4; i++) {
+            int x = random.nextInt(gameMap.getWidth());
+            int y = random.nextInt(gameMap.getHeight());
+            Player owner = gameMap.getTile(x, y).getOwner();
+            if (owner != null && owner.controlledTiles() > 1) {
+                gameMap.restoreTile(x, y, null, false, false, gameMap.getRiceAt(x, y));
+            } else if (owner == null) {
+                gameMap.restoreTile(x, y, players[random.nextInt(2)], true, false, gameMap.getRiceAt(x, y));
+            }
+        }
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Проверка записи истории ресурсов ResourceHistoryWriter и чтения ResourceHistoryReader.
+ * Партии пишут историю в общий файл; журналы партий время от времени дописываются неполным блоком и открываются
+ * заново, как при выгрузке партии на диск, а партии контейнера GameHost выгружаются на самом деле. Ресурсы игроков,
+ * прочитанные из файла, должны совпадать со снятыми после каждого дня, каждый день должен встречаться ровно один раз,
+ * а средние значения по дням должны начинаться с первого дня партии под номером 0.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class ResourceHistoryTest {
+    /**Количество партий*/
+    private static final int GAMES = 20;
+    /**Наибольшее количество дней в партии*/
+    private static final int DAYS = 50;
+    /**Количество дней в блоке*/
+    private static final int BLOCK_DAYS = 7;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.FATAL);
+        Path directory = Files.createTempDirectory("resource-history-test");
+        try {
+            Random random = new Random(35);
+            Path file = directory.resolve("sessions.rsh");
+            compare(file, sessions(file, random), "sessions");
+            file = directory.resolve("host.rsh");
+            compare(file, host(file, directory.resolve("swap"), random), "host");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Играет партии, которые пишут историю напрямую, иногда дописывая и открывая заново журнал партии.
+     * @param file Файл истории.
+     * @param random Генератор случайных чисел.
+     * @return Ресурсы игроков по партиям и дням.
+     * @throws Exception Если возникает ошибка ввода-вывода.
+     */
+    private static Map<Long, List<double[]>> sessions(Path file, Random random) throws Exception {
+        Map<Long, List<double[]>> expected = new HashMap<>();
+        try (ResourceHistoryWriter writer = new ResourceHistoryWriter(file, BLOCK_DAYS)) {
+            for (long id = 0; id < GAMES; id++) {
+                GameSession session = new GameSession(10 + random.nextInt(30), id);
+                session.setHistory(writer.open(id));
+                List<double[]> days = new ArrayList<>();
+                for (int day = 0; day < DAYS && !session.isGameOver(); day++) {
+                    session.step();
+                    days.add(capture(session));
+                    if (random.nextInt(5) == 0) {
+                        session.getHistory().finish();
+                        session.setHistory(writer.open(id));
+                    }
+                }
+                session.getHistory().finish();
+                expected.put(id, days);
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Играет партии контейнера, который пишет историю и периодически выгружает все партии на диск.
+     * @param file Файл истории.
+     * @param swap Каталог выгрузки партий.
+     * @param random Генератор случайных чисел.
+     * @return Ресурсы игроков по партиям и дням.
+     * @throws Exception Если контейнер выбрасывает исключение.
+     */
+    private static Map<Long, List<double[]>> host(Path file, Path swap, Random random) throws Exception {
+        Map<Long, List<double[]>> expected = new HashMap<>();
+        GameSession[] sessions = new GameSession[GAMES + 1];
+        GameHost host = new GameHost(4, swap);
+        try (ResourceHistoryWriter writer = new ResourceHistoryWriter(file, BLOCK_DAYS)) {
+            host.setHistoryWriter(writer);
+            for (int game = 1; game <= GAMES; game++) {
+                int size = 10 + random.nextInt(30);
+                long id = host.createGame(size, game);
+                sessions[game] = new GameSession(new ChunkedGameMap(size, game), game);
+                expected.put(id, new ArrayList<>());
+            }
+            for (int day = 0; day < DAYS; day++) {
+                for (int game = 1; game <= GAMES; game++) {
+                    if (!sessions[game].isGameOver()) {
+                        sessions[game].step();
+                        expected.get((long) game).add(capture(sessions[game]));
+                    }
+                }
+                host.stepReadyGames();
+                if (random.nextInt(4) == 0) {
+                    Thread.sleep(2);
+                    host.evictIdle(1);
+                } else if (random.nextInt(3) == 0) {
+                    host.getGame(1 + random.nextInt(GAMES));
+                }
+            }
+            host.shutdown();
+        }
+        return expected;
+    }
+
+    /**
+     * Снимает ресурсы обоих игроков в порядке столбцов ResourceHistoryReader.Column.
+     * @param session Партия.
+     * @return Ресурсы игроков.
+     */
+    private static double[] capture(GameSession session) {
+        double[] values = new double[ResourceHistoryReader.PLAYERS * ResourceHistoryReader.Column.values().length];
+        int i = 0;
+        for (Player player : new Player[]{session.getPlayer1(), session.getPlayer2()}) {
+            values[i++] = player.getRice();
+            values[i++] = player.getWater();
+            values[i++] = player.getUnits();
+            values[i++] = player.getHouses();
+            values[i++] = player.controlledTiles();
+        }
+        return values;
+    }
+
+    /**
+     * Читает файл истории и сравнивает его с ожидаемыми ресурсами.
+     * @param file Файл истории.
+     * @param expected Ресурсы игроков по партиям и дням.
+     * @param name Название проверки для сообщений.
+     * @throws Exception Если возникает ошибка ввода-вывода.
+     */
+    private static void compare(Path file, Map<Long, List<double[]>> expected, String name) throws Exception {
+        ResourceHistoryReader.Column[] columns = ResourceHistoryReader.Column.values();
+        Map<Long, int[]> seen = new HashMap<>();
+        int[] blocks = new int[1];
+        try (ResourceHistoryReader reader = new ResourceHistoryReader(file)) {
+            check(reader.getBlockDays() == BLOCK_DAYS, name + ": block days");
+            reader.scan(block -> {
+                blocks[0]++;
+                List<double[]> days = expected.get(block.getGameId());
+                check(days != null, name + ": unknown game " + block.getGameId());
+                if (days == null) {
+                    return;
+                }
+                check(block.getDayCount() > 0 && block.getDayCount() <= BLOCK_DAYS, name + ": block of "
+                        + block.getDayCount() + " days");
+                int[] counts = seen.computeIfAbsent(block.getGameId(), id -> new int[days.size()]);
+                for (int i = 0; i < block.getDayCount(); i++) {
+                    int day = block.getFirstDay() + i;
+                    check(day >= 0 && day < days.size(), name + ", game " + block.getGameId() + ": day " + day);
+                    if (day < 0 || day >= days.size()) {
+                        continue;
+                    }
+                    counts[day]++;
+                    boolean same = true;
+                    for (int p = 0; p < ResourceHistoryReader.PLAYERS; p++) {
+                        for (int c = 0; c < columns.length; c++) {
+                            same &= block.get(p, columns[c], i) == days.get(day)[p * columns.length + c];
+                        }
+                    }
+                    check(same, name + ", game " + block.getGameId() + ", day " + day + ": resources differ");
+                }
+            });
+        }
+        check(blocks[0] > expected.size(), name + ": only " + blocks[0] + " blocks");
+        for (Map.Entry<Long, List<double[]>> entry : expected.entrySet()) {
+            int[] counts = seen.getOrDefault(entry.getKey(), new int[entry.getValue().size()]);
+            for (int day = 0; day < counts.length; day++) {
+                check(counts[day] == 1, name + ", game " + entry.getKey() + ": day " + day + " read " + counts[day] + " times");
+            }
+        }
+        for (int p = 0; p < ResourceHistoryReader.PLAYERS; p++) {
+            for (int c = 0; c < columns.length; c++) {
+                double[] means;
+                try (ResourceHistoryReader reader = new ResourceHistoryReader(file)) {
+                    means = reader.meanByDay(p, columns[c]);
+                }
+                double[] sums = new double[DAYS];
+                int[] counts = new int[DAYS];
+                int length = 0;
+                for (List<double[]> days : expected.values()) {
+                    for (int day = 0; day < days.size(); day++) {
+                        sums[day] += days.get(day)[p * columns.length + c];
+                        counts[day]++;
+                    }
+                    length = Math.max(length, days.size());
+                }
+                check(means.length == length, name + ": " + means.length + " days of means, expected " + length);
+                for (int day = 0; day < Math.min(length, means.length); day++) {
+                    double mean = sums[day] / counts[day];
+                    check(Math.abs(means[day] - mean) <= 1e-9 * Math.max(1, Math.abs(mean)), name + ": mean of "
+                            + columns[c] + " of player " + p + " on day " + day + " is " + means[day] + ", expected " + mean);
+                }
+            }
+        }
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Проверка ленивого расчета урожая (RiceAccount) на совпадение с прежними поклеточными циклами роста и сбора риса.
+ * На случайных картах всех видов выполняются случайные захваты, поливы, постройки домов и записи уровня риса,
+ * а рост и сбор вызываются как в обычном порядке, так и повторно или пропускаются. После каждого дня сравниваются
+ * урожай игроков и уровни риса всех клеток с эталоном, который считается циклами исходной версии GameMap и Player.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class RiceGrowthEquivalenceTest {
+    /**Количество партий на каждый вид карты*/
+    private static final int GAMES = 100;
+    /**Количество дней в партии*/
+    private static final int DAYS = 60;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) throws IOException {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(42);
+        Path directory = Files.createTempDirectory("rice-test");
+        for (int game = 0; game < GAMES; game++) {
+            int size = 3 + random.nextInt(15);
+            run(new GameMap(size, game), random, "GameMap " + game);
+            run(new ChunkedGameMap(size, game), random, "ChunkedGameMap " + game);
+            Path file = directory.resolve("map-" + game);
+            try (MappedGameMap mapped = MappedGameMap.create(file, size, game)) {
+                run(mapped, random, "MappedGameMap " + game);
+            }
+            Files.delete(file);
+        }
+        Files.delete(directory);
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Играет одну партию на карте и сравнивает ее с эталоном.
+     * @param gameMap Игровая карта.
+     * @param random Генератор случайных чисел.
+     * @param name Название партии для сообщений.
+     */
+    private static void run(GameMapI gameMap, Random random, String name) {
+        int width = gameMap.getWidth();
+        int height = gameMap.getHeight();
+        Player[] players = {new Player(width - 1, height - 1, 20, 10, 1000, gameMap),
+                new Player(0, 0, 20, 10, 1000, gameMap)};
+        double[][] reference = new double[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                reference[x][y] = gameMap.getRiceAt(x, y);
+            }
+        }
+        for (int day = 0; day < DAYS; day++) {
+            int actions = random.nextInt(4);
+            for (int k = 0; k < actions; k++) {
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        gameMap.claimTile(x, y, players[random.nextInt(players.length)]);
+                        break;
+                    case 1:
+                        gameMap.waterTile(x, y);
+                        break;
+                    case 2:
+                        gameMap.houseTile(x, y);
+                        break;
+                    default:
+                        if (random.nextInt(5) == 0) {
+                            double amount = random.nextInt(9) - 4 + (random.nextBoolean() ? 0.5 : 0);
+                            gameMap.setRiceAt(x, y, amount);
+                            reference[x][y] = amount;
+                        }
+                }
+            }
+            int mode = random.nextInt(20);
+            int grows = mode == 0 ? 0 : mode == 1 ? 2 : 1;
+            for (Player player : players) {
+                for (int i = 0; i < grows; i++) {
+                    gameMap.growRice(player);
+                    referenceGrow(gameMap, reference, player);
+                }
+            }
+            for (Player player : players) {
+                compare(gameMap.harvestRice(player), referenceCollect(gameMap, reference, player), name, day, "harvest");
+            }
+            compareLevels(gameMap, reference, name, day);
+            if (random.nextInt(10) == 0) {
+                gameMap.growRice(players[0]);
+                referenceGrow(gameMap, reference, players[0]);
+                compareLevels(gameMap, reference, name, day);
+                compare(gameMap.harvestRice(players[0]), referenceCollect(gameMap, reference, players[0]), name, day,
+                        "extra harvest");
+            }
+        }
+    }
+
+    /**
+     * Рост риса на клетках игрока, как в исходном GameMap.growRice.
+     * @param gameMap Игровая карта.
+     * @param reference Эталонные уровни риса.
+     * @param player Игрок.
+     */
+    private static void referenceGrow(GameMapI gameMap, double[][] reference, Player player) {
+        for (int i = 0; i < reference.length; i++) {
+            for (int j = 0; j < reference[i].length; j++) {
+                if (gameMap.isControlled(i, j, player)) {
+                    reference[i][j] = gameMap.isWatered(i, j) ? Math.min(reference[i][j] + 2, 3)
+                            : Math.min(reference[i][j] + 1, 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Сбор риса с клеток игрока, как в исходном Player.collectRice.
+     * @param gameMap Игровая карта.
+     * @param reference Эталонные уровни риса.
+     * @param player Игрок.
+     * @return Собранный рис.
+     */
+    private static double referenceCollect(GameMapI gameMap, double[][] reference, Player player) {
+        double rice = 0;
+        for (int i = 0; i < reference.length; i++) {
+            for (int j = 0; j < reference[i].length; j++) {
+                if (gameMap.isControlled(i, j, player)) {
+                    rice += reference[i][j];
+                    reference[i][j] -= 1;
+                }
+            }
+        }
+        return rice;
+    }
+
+    /**
+     * Сравнивает уровни риса всех клеток с эталоном.
+     * @param gameMap Игровая карта.
+     * @param reference Эталонные уровни риса.
+     * @param name Название партии.
+     * @param day Номер дня.
+     */
+    private static void compareLevels(GameMapI gameMap, double[][] reference, String name, int day) {
+        for (int x = 0; x < reference.length; x++) {
+            for (int y = 0; y < reference[x].length; y++) {
+                compare(gameMap.getRiceAt(x, y), reference[x][y], name, day, "level at (" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    /**
+     * Сравнивает значение с эталоном и сообщает о первых расхождениях.
+     * @param actual Значение ленивого расчета.
+     * @param expected Эталонное значение.
+     * @param name Название партии.
+     * @param day Номер дня.
+     * @param what Что сравнивается.
+     */
+    private static void compare(double actual, double expected, String name, int day, String what) {
+        checks++;
+        if (actual != expected) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(name + ", day " + day + ": " + what + " is " + actual + ", expected " + expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Random;
+
+/**
+ * Сравнение векторной и скалярной реализаций расчета уровней риса: время на клетку для столбцов разной длины
+ * и время чтения риса всей карты GameMap 2000 x 2000 столбцами через RiceKernel и поклеточно через getRiceAt.
+ * Запускается как обычная программа; векторная реализация используется только с модулем jdk.incubator.vector
+ * (--add-modules jdk.incubator.vector) и классами каталога vector в пути классов, без них сравнивается
+ * скалярная реализация сама с собой.
+ */
+public class RiceKernelBenchmark {
+    /**Длины столбцов*/
+    private static final int[] LENGTHS = {13, 64, 1000, 65536};
+    /**Количество обрабатываемых клеток в одном замере*/
+    private static final int TILES = 50_000_000;
+    /**Количество замеров; первые считаются прогревом*/
+    private static final int ROUNDS = 8;
+    /**Количество замеров прогрева*/
+    private static final int WARMUP = 5;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        System.out.println("Vectorized: " + RiceKernel.isVectorized());
+        long sink = 0;
+        for (int length : LENGTHS) {
+            sink += columns(length);
+        }
+        sink += map(2000);
+        System.out.println(sink == 42 ? "" : "Done");
+    }
+
+    /**
+     * Замеряет обе реализации на случайном столбце.
+     * @param length Длина столбца.
+     * @return Значение, не дающее JIT выбросить расчет.
+     */
+    private static long columns(int length) {
+        Random random = new Random(3);
+        int[] rice = new int[length], days = new int[length], states = new int[length], out = new int[length];
+        for (int i = 0; i < length; i++) {
+            rice[i] = random.nextInt(3) * RiceAccount.ONE;
+            days[i] = random.nextInt(5) == 0 ? -1 : random.nextInt(10);
+            states[i] = random.nextInt(3) << RiceKernel.OWNER_SHIFT | (random.nextBoolean() ? RiceKernel.WATERED : 0);
+        }
+        int repeats = Math.max(1, TILES / length);
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int k = 0; k < repeats; k++) {
+                for (int owner = 1; owner <= 2; owner++) {
+                    RiceKernel.advanceScalar(rice, days, states, 0, length, owner, 12, (k & 1) == 0, out);
+                }
+                sink += out[k % length];
+            }
+            double scalar = (System.nanoTime() - start) / (double) repeats / length;
+            start = System.nanoTime();
+            for (int k = 0; k < repeats; k++) {
+                for (int owner = 1; owner <= 2; owner++) {
+                    RiceKernel.advance(rice, days, states, 0, length, owner, 12, (k & 1) == 0, out);
+                }
+                sink += out[k % length];
+            }
+            double kernel = (System.nanoTime() - start) / (double) repeats / length;
+            if (round >= WARMUP) {
+                System.out.printf("Column of %d: scalar %.2f ns/tile, kernel %.2f ns/tile (x%.1f)%n",
+                        length, scalar, kernel, scalar / kernel);
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * Замеряет чтение риса всей карты после нескольких дней роста и сбора урожая.
+     * @param size Сторона карты.
+     * @return Значение, не дающее JIT выбросить расчет.
+     */
+    private static long map(int size) {
+        GameMap gameMap = new GameMap(size, 3);
+        Player player1 = new Player(size - 1, size - 1, 100, 100, Integer.MAX_VALUE, gameMap);
+        Player player2 = new Player(0, 0, 100, 100, Integer.MAX_VALUE, gameMap);
+        Random random = new Random(5);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int owner = random.nextInt(3);
+                if (owner != 0 && gameMap.claimTile(x, y, owner == 1 ? player1 : player2) && random.nextBoolean()) {
+                    gameMap.waterTile(x, y);
+                }
+            }
+        }
+        for (int day = 0; day < 3; day++) {
+            gameMap.growRice(player1);
+            gameMap.growRice(player2);
+            gameMap.harvestRice(player1);
+            gameMap.harvestRice(player2);
+        }
+        int[] column = new int[size];
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int x = 0; x < size; x++) {
+                gameMap.riceColumn(x, column);
+                sink += column[x];
+            }
+            double columns = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    sink += (long) gameMap.getRiceAt(x, y);
+                }
+            }
+            double tiles = (System.nanoTime() - start) / 1e6;
+            if (round >= WARMUP) {
+                System.out.printf("GameMap %dx%d: columns %.1f ms (%.2f ns/tile), getRiceAt %.1f ms%n",
+                        size, size, columns, columns * 1e6 / size / size, tiles);
+            }
+        }
+        return sink;
+    }
+}
@@ -0,0 +1,151 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Проверка векторной реализации расчета уровней риса (RiceVectorKernel) на совпадение со скалярной
+ * RiceKernel.advanceScalar. Сравниваются все элементы выходного массива, в том числе вне диапазона и у клеток
+ * чужих владельцев, которые не должны меняться. Диапазоны начинаются и заканчиваются на всех смещениях относительно
+ * длины вектора, поэтому проверяется и остаток, не кратный длине вектора; значения включают крайние уровни риса,
+ * дни записи и дни учета вплоть до Integer.MAX_VALUE. Затем на сыгранных партиях уровни риса столбцов,
+ * прочитанные через RiceKernel, сравниваются с getRiceAt.
+ * Запускается как обычная программа с модулем jdk.incubator.vector (--add-modules jdk.incubator.vector)
+ * и классами каталога vector в пути классов (путь классов модуля coursework-vector);
+ * без них или при расхождениях завершается с кодом 1.
+ */
+public class RiceKernelEquivalenceTest {
+    /**Количество случайных наборов массивов*/
+    private static final int ARRAYS = 20000;
+    /**Наибольшая длина массивов для перебора всех диапазонов*/
+    private static final int MAX_LENGTH = 70;
+    /**Количество партий*/
+    private static final int GAMES = 40;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        if (!RiceKernel.isVectorized()) {
+            System.out.println("Vectorized rice kernel is not in use; run with --add-modules jdk.incubator.vector"
+                    + " and the vector classes on the class path");
+            System.exit(1);
+        }
+        Random random = new Random(1);
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            for (int from = 0; from <= length; from++) {
+                for (int to = from; to <= length; to++) {
+                    compare(random, length, from, to, "range " + from + ".." + to + " of " + length);
+                }
+            }
+        }
+        for (int i = 0; i < ARRAYS; i++) {
+            int length = random.nextInt(MAX_LENGTH * 4);
+            int from = random.nextInt(length + 1);
+            compare(random, length, from, from + random.nextInt(length - from + 1), "random arrays " + i);
+        }
+        for (int game = 0; game < GAMES; game++) {
+            play(new GameSession(10 + game * 3, game), "game " + game);
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Заполняет случайные массивы столбца и сравнивает результаты векторной и скалярной реализаций.
+     * @param random Генератор случайных чисел.
+     * @param length Длина массивов.
+     * @param from Первый элемент.
+     * @param to Элемент после последнего.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(Random random, int length, int from, int to, String name) {
+        int[] rice = new int[length], days = new int[length], states = new int[length];
+        int[] vector = new int[length], scalar = new int[length];
+        for (int i = 0; i < length; i++) {
+            rice[i] = extreme(random, random.nextInt(5000) - 1000);
+            days[i] = random.nextInt(6) == 0 ? -1 : extreme(random, random.nextInt(30)) & Integer.MAX_VALUE;
+            states[i] = random.nextInt(4) << RiceKernel.OWNER_SHIFT | (random.nextBoolean() ? RiceKernel.WATERED : 0);
+            vector[i] = scalar[i] = random.nextInt();
+        }
+        int owner = random.nextInt(4);
+        int accountDays = extreme(random, random.nextInt(40)) & Integer.MAX_VALUE;
+        boolean grown = random.nextBoolean();
+        RiceKernel.advance(rice, days, states, from, to, owner, accountDays, grown, vector);
+        RiceKernel.advanceScalar(rice, days, states, from, to, owner, accountDays, grown, scalar);
+        checks++;
+        if (!Arrays.equals(vector, scalar)) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(name + ": vector " + Arrays.toString(vector) + ", scalar " + Arrays.toString(scalar));
+            }
+        }
+    }
+
+    /**
+     * Иногда заменяет обычное значение крайним.
+     * @param random Генератор случайных чисел.
+     * @param value Обычное значение.
+     * @return Значение или одно из крайних: Integer.MIN_VALUE, Integer.MAX_VALUE, пределы уровня риса и дней.
+     */
+    private static int extreme(Random random, int value) {
+        switch (random.nextInt(16)) {
+            case 0:
+                return Integer.MIN_VALUE;
+            case 1:
+                return Integer.MAX_VALUE;
+            case 2:
+                return 3 * RiceAccount.ONE;
+            case 3:
+                return RiceAccount.MAX_ELAPSED_DAYS + random.nextInt(3) - 1;
+            case 4:
+                return random.nextInt();
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Играет партию и после каждого дня сравнивает уровни риса столбцов с getRiceAt, в том числе в середине дня,
+     * после роста и до сбора урожая.
+     * @param session Партия.
+     * @param name Название партии для сообщений.
+     */
+    private static void play(GameSession session, String name) {
+        GameMapI gameMap = session.getGameMap();
+        int[] column = new int[gameMap.getHeight()];
+        for (int day = 0; day < 80 && !session.isGameOver(); day++) {
+            session.step();
+            boolean midDay = day % 7 == 3;
+            if (midDay) {
+                gameMap.growRice(session.getPlayer1());
+            }
+            for (int x = 0; x < gameMap.getWidth(); x++) {
+                AbstractGameMap.readRiceColumn(gameMap, x, column);
+                for (int y = 0; y < gameMap.getHeight(); y++) {
+                    checks++;
+                    if (FixedPoint.toDouble(column[y]) != gameMap.getRiceAt(x, y)) {
+                        failures++;
+                        if (failures <= 10) {
+                            System.out.println(name + ", day " + day + ": rice at " + x + "," + y + " is "
+                                    + FixedPoint.toDouble(column[y]) + ", expected " + gameMap.getRiceAt(x, y));
+                        }
+                    }
+                }
+            }
+            if (midDay) {
+                gameMap.harvestRice(session.getPlayer1());
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Проверка каталога сохранений SaveCatalog. Партии сохраняются в слоты, после чего каталог открывается заново:
+ * сведения, прочитанные из индекса, должны совпадать с записанными, а загруженные партии - с сохраненными.
+ * Перезапись слота должна заменять его сведения, не добавляя новых. Если индекса нет, он поврежден или обрезан,
+ * каталог должен перестроить его по файлам сохранений, пропуская нечитаемые; сохранения, добавленные в папку
+ * или удаленные из нее мимо каталога, должны учитываться при открытии.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class SaveCatalogTest {
+    /**Количество слотов*/
+    private static final int SLOTS = 8;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.FATAL);
+        Path directory = Files.createTempDirectory("save-catalog-test");
+        try {
+            run(directory.resolve("saves"), new Random(50));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Сохраняет партии и проверяет каталог после повторных открытий, перезаписи слота и порчи индекса.
+     * @param directory Папка сохранений.
+     * @param random Генератор случайных чисел.
+     * @throws Exception Если возникает ошибка ввода-вывода.
+     */
+    private static void run(Path directory, Random random) throws Exception {
+        Map<String, SaveInfo> expected = new HashMap<>();
+        SaveCatalog catalog = new SaveCatalog(directory);
+        check(catalog.list().isEmpty(), "new catalog is not empty");
+        for (int i = 0; i < SLOTS; i++) {
+            String slot = "slot " + i;
+            GameSession session = play(10 + random.nextInt(40), i, random.nextInt(30));
+            SaveInfo info = catalog.save(slot, session);
+            check(catalog.get(slot) == info, slot + ": saved info is not in the catalog");
+            compare(SaveInfo.of(slot, info.getTimestamp(), session), info, slot + " saved");
+            expected.put(slot, info);
+        }
+        Path index = directory.resolve(SaveCatalog.INDEX_FILE);
+        check(Files.isRegularFile(index), "index was not written");
+        check(!Files.exists(directory.resolve(SaveCatalog.INDEX_FILE + ".tmp")), "temporary index was left behind");
+        compare(new SaveCatalog(directory), expected, true, "reopened");
+
+        String slot = "slot 3";
+        GameSession session = play(20, 100, 45);
+        SaveInfo info = catalog.save(slot, session);
+        check(catalog.list().size() == SLOTS, "overwrite: " + catalog.list().size() + " saves");
+        expected.put(slot, info);
+        SaveCatalog reopened = new SaveCatalog(directory);
+        compare(reopened, expected, true, "overwritten");
+        GameSession loaded = reopened.load(slot);
+        compare(SaveInfo.of(slot, info.getTimestamp(), loaded), info, "overwritten slot loaded");
+
+        Files.delete(index);
+        compare(new SaveCatalog(directory), expected, false, "missing index");
+        check(Files.isRegularFile(index), "missing index was not rebuilt");
+
+        Files.write(index, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        compare(new SaveCatalog(directory), expected, false, "corrupt index");
+
+        byte[] bytes = Files.readAllBytes(index);
+        Files.write(index, Arrays.copyOf(bytes, bytes.length / 2));
+        compare(new SaveCatalog(directory), expected, false, "truncated index");
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(index))) {
+            out.writeInt(SaveCatalog.MAGIC);
+            out.writeInt(-1);
+        }
+        compare(new SaveCatalog(directory), expected, false, "empty index");
+
+        Files.write(directory.resolve("broken" + SaveCatalog.EXTENSION), new byte[]{0, 1, 2});
+        Files.delete(index);
+        compare(new SaveCatalog(directory), expected, false, "unreadable save");
+        Files.delete(directory.resolve("broken" + SaveCatalog.EXTENSION));
+
+        Files.copy(catalog.getFile("slot 0"), directory.resolve("copied" + SaveCatalog.EXTENSION));
+        Files.delete(catalog.getFile("slot 1"));
+        expected.put("copied", expected.get("slot 0"));
+        expected.remove("slot 1");
+        compare(new SaveCatalog(directory), expected, false, "files changed outside");
+    }
+
+    /**
+     * Создает партию и играет ее несколько дней.
+     * @param size Размер карты.
+     * @param seed Зерно карты.
+     * @param days Количество дней.
+     * @return Партия.
+     */
+    private static GameSession play(int size, long seed, int days) {
+        GameSession session = new GameSession(size, seed);
+        for (int day = 0; day < days && !session.isGameOver(); day++) {
+            session.step();
+        }
+        return session;
+    }
+
+    /**
+     * Сравнивает сведения каталога с ожидаемыми.
+     * @param catalog Каталог.
+     * @param expected Ожидаемые сведения по слотам.
+     * @param timestamps True, если время сохранения должно совпадать (индекс не перестраивался).
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(SaveCatalog catalog, Map<String, SaveInfo> expected, boolean timestamps, String name) {
+        check(catalog.list().size() == expected.size(), name + ": " + catalog.list().size() + " saves, expected "
+                + expected.size());
+        long previous = Long.MAX_VALUE;
+        for (SaveInfo info : catalog.list()) {
+            check(info.getTimestamp() <= previous, name + ": saves are not sorted by time");
+            previous = info.getTimestamp();
+        }
+        for (Map.Entry<String, SaveInfo> entry : expected.entrySet()) {
+            SaveInfo info = catalog.get(entry.getKey());
+            check(info != null, name + ": " + entry.getKey() + " is missing");
+            if (info == null) {
+                continue;
+            }
+            check(!timestamps || info.getTimestamp() == entry.getValue().getTimestamp(), name + ", " + entry.getKey()
+                    + ": timestamp " + info.getTimestamp() + ", expected " + entry.getValue().getTimestamp());
+            compare(info, entry.getValue(), name + ", " + entry.getKey());
+        }
+    }
+
+    /**
+     * Сравнивает сведения о сохранении с ожидаемыми, кроме имени слота и времени сохранения.
+     * @param actual Сведения о сохранении.
+     * @param expected Ожидаемые сведения.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(SaveInfo actual, SaveInfo expected, String name) {
+        check(actual.getDay() == expected.getDay(), name + ": day " + actual.getDay() + ", expected " + expected.getDay());
+        check(actual.getWidth() == expected.getWidth() && actual.getHeight() == expected.getHeight(), name + ": map size");
+        boolean players = true;
+        for (int p = 1; p <= 2; p++) {
+            players &= actual.getTiles(p) == expected.getTiles(p) && actual.getUnits(p) == expected.getUnits(p)
+                    && actual.getHouses(p) == expected.getHouses(p)
+                    && Double.compare(actual.getRice(p), expected.getRice(p)) == 0;
+        }
+        check(players, name + ": player resources differ");
+        check(Arrays.equals(pixels(actual), pixels(expected)), name + ": thumbnails differ");
+    }
+
+    /**
+     * Возвращает пиксели уменьшенной карты.
+     * @param info Сведения о сохранении.
+     * @return Цвета пикселей.
+     */
+    private static int[] pixels(SaveInfo info) {
+        BufferedImage image = info.getThumbnail(1);
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
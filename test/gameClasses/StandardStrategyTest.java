@@ -0,0 +1,108 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+/**
+ * Проверка хода StandardStrategy, когда ИИ решает расширяться, но захватить нечего: как у прежнего ИИ, ход должен
+ * пропадать неудачной попыткой захвата, не меняя ни ресурсов игроков, ни карты, а не превращаться в набор воды.
+ * Проверяются карта без свободных клеток и карта, на которой свободные клетки слишком дороги.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class StandardStrategyTest {
+    /**Размер карты*/
+    private static final int SIZE = 12;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        for (int seed = 0; seed < 10; seed++) {
+            run(seed, false, "seed " + seed + ", no free tiles");
+            run(seed, true, "seed " + seed + ", expensive free tiles");
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Занимает карту первым игроком, оставляя второму только начальную клетку, и проверяет ход второго игрока.
+     * @param seed Зерно карты.
+     * @param expensive True, чтобы оставить несколько свободных клеток, захват которых стоит больше юнитов игрока.
+     * @param name Название проверки для сообщений.
+     */
+    private static void run(long seed, boolean expensive, String name) {
+        GameMap gameMap = new GameMap(SIZE, seed);
+        GameSession session = new GameSession(gameMap, seed);
+        Player player = session.getPlayer2();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (gameMap.getTile(x, y).getOwner() != null) {
+                    continue;
+                }
+                if (expensive && (x + y) % 5 == 1) {
+                    gameMap.getTile(x, y).setRequiredUnits(player.getUnits() + 1);
+                } else {
+                    gameMap.restoreTile(x, y, session.getPlayer1(), false, false, gameMap.getRiceAt(x, y));
+                }
+            }
+        }
+        byte[] tiles = tiles(session);
+        double rice = player.getRice(), water = player.getWater();
+        int units = player.getUnits(), controlled = player.controlledTiles();
+        SessionView view = new SessionView(session, player);
+        PlayerCommand command = new StandardStrategy().decide(view);
+        view.close();
+        check(command != null && command.getType() == PlayerCommand.Type.CLAIM_TERRITORY,
+                name + ": command " + command + " instead of a claim");
+        if (command == null) {
+            return;
+        }
+        int result = session.apply(player, command.getType(), command.getX(), command.getY());
+        check(result == PlayerCommand.RESULT_NOT_ALLOWED, name + ": result " + result);
+        check(player.getRice() == rice && player.getWater() == water && player.getUnits() == units
+                && player.controlledTiles() == controlled, name + ": resources changed");
+        check(Arrays.equals(tiles(session), tiles), name + ": tiles changed");
+    }
+
+    /**
+     * Возвращает состояния всех клеток партии.
+     * @param session Партия.
+     * @return Байты состояния клеток, как в повторе.
+     */
+    private static byte[] tiles(GameSession session) {
+        GameMapI gameMap = session.getGameMap();
+        byte[] states = new byte[gameMap.getWidth() * gameMap.getHeight()];
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < gameMap.getHeight(); y++) {
+                states[x * gameMap.getHeight() + y] = ReplayRecorder.encodeTile(gameMap, x, y,
+                        session.getPlayer1(), session.getPlayer2());
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package gameClasses;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Проверка TurnHistory: после каждого записанного хода снимается полная копия состояния партии (GameStateDiff.Mirror).
+ * Затем ходы отменяются, повторяются и восстанавливаются по номеру в случайном порядке; после каждого перехода
+ * партия и записанный ход должны совпадать со снятой копией по дню, состояниям клеток, уровням риса и ресурсам игроков.
+ * После перехода назад партия иногда доигрывается: ход с восстановленного состояния должен повторять ранее сыгранный,
+ * а отмененные ходы после него - отбрасываться.
+ * Запускается как обычная программа; при расхождениях завершается с кодом 1.
+ */
+public class TurnHistoryTest {
+    /**Количество партий*/
+    private static final int GAMES = 30;
+    /**Наибольшее количество дней в партии*/
+    private static final int DAYS = 40;
+    /**Количество переходов по истории в партии*/
+    private static final int MOVES = 120;
+
+    /**Количество сравнений*/
+    private static long checks;
+    /**Количество расхождений*/
+    private static long failures;
+
+    public static void main(String[] args) {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        Random random = new Random(37);
+        for (int game = 0; game < GAMES; game++) {
+            play(new GameSession(10 + random.nextInt(40), game), random, "game " + game);
+        }
+        System.out.println("Checks: " + checks + ", failures: " + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Играет партию с записью истории и переходит по ней.
+     * @param session Партия.
+     * @param random Генератор случайных чисел.
+     * @param name Название партии для сообщений.
+     */
+    private static void play(GameSession session, Random random, String name) {
+        TurnHistory history = new TurnHistory(session);
+        List<GameStateDiff.Mirror> states = new ArrayList<>();
+        states.add(GameStateDiff.Mirror.capture(session));
+        for (int day = 0; day < DAYS && !session.isGameOver(); day++) {
+            session.step();
+            history.record();
+            states.add(GameStateDiff.Mirror.capture(session));
+        }
+        check(history.getTurnCount() == states.size(), name + ": " + history.getTurnCount() + " turns, expected "
+                + states.size());
+        for (int move = 0; move < MOVES; move++) {
+            String step = name + ", move " + move;
+            int current = history.getCurrentTurn();
+            int expected;
+            switch (random.nextInt(4)) {
+                case 0:
+                    check(history.canUndo() == current > 0, step + ": canUndo");
+                    history.undo();
+                    expected = Math.max(0, current - 1);
+                    break;
+                case 1:
+                    check(history.canRedo() == current < states.size() - 1, step + ": canRedo");
+                    history.redo();
+                    expected = Math.min(states.size() - 1, current + 1);
+                    break;
+                case 2:
+                    expected = random.nextInt(states.size());
+                    history.restore(expected);
+                    break;
+                default:
+                    if (current == states.size() - 1 || session.isGameOver()) {
+                        continue;
+                    }
+                    session.step();
+                    history.record();
+                    expected = current + 1;
+                    check(!history.canRedo(), step + ": redo after a new turn");
+                    check(history.getTurnCount() == expected + 1, step + ": turns after a new turn");
+                    states.subList(expected + 1, states.size()).clear();
+            }
+            check(history.getCurrentTurn() == expected, step + ": turn " + history.getCurrentTurn() + ", expected " + expected);
+            compare(session, history.getTurn(expected), states.get(expected), step);
+        }
+        history.detach();
+    }
+
+    /**
+     * Сравнивает партию и записанный ход со снятой копией состояния.
+     * @param session Партия.
+     * @param turn Записанный ход.
+     * @param expected Снятая копия состояния хода.
+     * @param name Название проверки для сообщений.
+     */
+    private static void compare(GameSession session, TurnHistory.Turn turn, GameStateDiff.Mirror expected, String name) {
+        GameStateDiff.Mirror actual = GameStateDiff.Mirror.capture(session);
+        check(actual.getDay() == expected.getDay() && turn.getDay() == expected.getDay(), name + ": day "
+                + actual.getDay() + ", turn day " + turn.getDay() + ", expected " + expected.getDay());
+        GameMapI gameMap = session.getGameMap();
+        boolean tiles = true, rice = true, recorded = true;
+        for (int x = 0; x < gameMap.getWidth(); x++) {
+            for (int y = 0; y < gameMap.getHeight(); y++) {
+                tiles &= actual.getStateString(x, y).equals(expected.getStateString(x, y));
+                rice &= Double.compare(actual.getRiceAt(x, y), expected.getRiceAt(x, y)) == 0;
+                recorded &= turn.getStateString(x, y).equals(expected.getStateString(x, y))
+                        && Double.compare(turn.getRiceAt(x, y), expected.getRiceAt(x, y)) == 0;
+            }
+        }
+        check(tiles, name + ": tiles differ");
+        check(rice, name + ": rice levels differ");
+        check(recorded, name + ": recorded turn differs");
+        boolean stats = true;
+        for (int p = 0; p < 2; p++) {
+            for (int r = 0; r < Replay.STATS_PER_PLAYER; r++) {
+                stats &= Double.compare(actual.getStat(p, r), expected.getStat(p, r)) == 0;
+            }
+        }
+        check(stats, name + ": player resources differ");
+    }
+
+    /**
+     * Учитывает сравнение и сообщает о первых расхождениях.
+     * @param ok Результат сравнения.
+     * @param what Что сравнивается.
+     */
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            if (failures <= 10) {
+                System.out.println(what);
+            }
+        }
+    }
+}
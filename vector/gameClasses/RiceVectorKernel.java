@@ -0,0 +1,52 @@
+package gameClasses;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Векторная реализация расчета уровней риса на Java Vector API (модуль jdk.incubator.vector).
+ * Вынесена в отдельный каталог исходников, который компилируется с --add-modules jdk.incubator.vector.
+ * Загружается RiceKernel только при наличии модуля; вычисляет то же, что RiceKernel.advanceScalar,
+ * по несколько клеток за операцию: оба варианта правила (полита клетка или нет) считаются для всех клеток,
+ * а нужный выбирается маской.
+ */
+final class RiceVectorKernel implements RiceKernel.Kernel {
+    /**Предпочтительная для процессора длина вектора*/
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    /**Одна единица риса в фиксированной точке*/
+    private static final int ONE = RiceAccount.ONE;
+
+    public void advance(int[] rice, int[] days, int[] states, int from, int to, int owner, int accountDays,
+                        boolean grown, int[] out) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector state = IntVector.fromArray(SPECIES, states, i);
+            IntVector day = IntVector.fromArray(SPECIES, days, i);
+            VectorMask<Integer> steady = state.lanewise(VectorOperators.AND, ~RiceKernel.WATERED)
+                    .eq(owner << RiceKernel.OWNER_SHIFT).and(day.compare(VectorOperators.GE, 0));
+            if (!steady.anyTrue()) {
+                continue;
+            }
+            VectorMask<Integer> watered = state.lanewise(VectorOperators.AND, RiceKernel.WATERED).eq(RiceKernel.WATERED);
+            IntVector level = IntVector.fromArray(SPECIES, rice, i);
+            IntVector elapsed = IntVector.broadcast(SPECIES, accountDays).sub(day);
+            IntVector wateredLevel = level.min(2 * ONE)
+                    .add(elapsed.min(RiceAccount.MAX_ELAPSED_DAYS).mul(ONE)).min(2 * ONE);
+            IntVector dryLevel = level.min(ONE);
+            level = level.blend(dryLevel.blend(wateredLevel, watered), elapsed.compare(VectorOperators.GT, 0));
+            if (grown) {
+                level = level.add(ONE).min(2 * ONE).blend(level.add(2 * ONE).min(3 * ONE), watered);
+            }
+            IntVector.fromArray(SPECIES, out, i).blend(level, steady).intoArray(out, i);
+        }
+        RiceKernel.advanceScalar(rice, days, states, i, to, owner, accountDays, grown, out);
+    }
+
+    @Override
+    public String toString() {
+        return SPECIES.length() + " lanes of " + SPECIES.elementType();
+    }
+}